@@ -71,6 +71,104 @@ public @interface GenBuilder {
      */
     boolean elementAdder() default false;
 
+    /**
+     * Note: the released Builder will be reset and reused by other acquire(), never touch it after release().
+     * @return if true, will add Builder's reset() to restore default values in place,
+     *         and static Builder.acquire() + release() backed by a thread-local pool.
+     *         default false.
+     */
+    boolean reusable() default false;
+
+    /**
+     * Note: need the equals() and hashCode() generated (or declared), so Set, List, Map and array fields are not allowed.
+     * @return if true, build() will return the canonical instance from a weak intern table (lock-striped) of the class,
+     *         and static internHitRatio() will be added for judging the memory savings.
+     *         default false.
+     */
+    boolean intern() default false;
+
+    /**
+     * Note: fields declared as Collection, List, Set, SortedSet, Map, SortedMap will be frozen to unmodifiable,
+     * fields declared as concrete class (e.g. ArrayList) are not allowed, since they can't be frozen.
+     * @return if true, for the Set, List, Map type of field, build() will freeze it (only if changed) into target,
+     *         and Builder from newBuilder() will share it and copy it lazily on the first addToXX / setXX.
+     *         default false, share the same mutable reference between Builder and target.
+     */
+    boolean copyOnWrite() default false;
+
+    /**
+     * Note: field with {@link Getter} or {@link Setter}, and {@link Enums} with stringValues() are not packed.
+     * @return if true, boolean fields and int fields with {@link Enums#intValues()} (as range of min to max)
+     *         will be packed into long bitfields in target and Builder, and target always use getter for them.
+     *         default false, one field per property.
+     */
+    boolean packed() default false;
+
+    /**
+     * Note: only primitive, boxed, String, primitive array, and Set, List, Map of boxed or String are supported,
+     * generic class is not supported, the generated code calls {@link com.johnsoft.annotations.runtime.Codec},
+     * so this module is needed at runtime.
+     * @return if true, will add serializedSize(), writeTo(ByteBuffer) and static readFrom(ByteBuffer),
+     *         with varint for numbers, length-prefixed String and collections, and schema fingerprint as header.
+     *         default false.
+     */
+    boolean binaryCodec() default false;
+
+    /**
+     * Note: only primitive and String fields without {@link Getter} are supported, generic class is not supported.
+     * @return if true, will add nested class Flyweight, which wraps a ByteBuffer (e.g. MappedByteBuffer) and offset,
+     *         and decodes the fields in place from a fixed layout, with the same getters as target
+     *         (String as reusable CharSequence view), plus static write(ByteBuffer, int, target) for records.
+     *         default false.
+     */
+    boolean flyweight() default false;
+
+    /**
+     * Note: generic class and property named size (the row count) are not supported.
+     * @return if true, will add nested class Batch, which holds rows of target as one array per field (columns),
+     *         with add(target), add(Builder), indexed getters e.g. getXX(int i), materialize(int i),
+     *         and spliterator() over row indexes for parallel streams.
+     *         default false.
+     */
+    boolean batch() default false;
+
+    /**
+     * Note: only primitive, boxed, String, and Set, List, Map (with String key) of them are supported,
+     * generic class is not supported, the generated code calls {@link com.johnsoft.annotations.runtime.Json},
+     * so this module is needed at runtime.
+     * @return if true, will add toJson(Appendable) and static fromJson(Reader), streaming without tree or reflection,
+     *         fromJson fills a new Builder, so missing keys keep the defaults.
+     *         default false.
+     */
+    boolean jsonCodec() default false;
+
+    /**
+     * Note: at most 64 properties, generic class is not supported.
+     * @return if true, will add diff(target) and nested class Delta, which holds a long bitmask of changed properties
+     *         (e.g. Delta.WINDOW_HEIGHT) and only the changed values, with applyTo(target) and applyTo(Builder),
+     *         plus serializedSize(), writeTo(ByteBuffer) and static readFrom(ByteBuffer) if {@link #binaryCodec()}.
+     *         default false.
+     */
+    boolean delta() default false;
+
+    /**
+     * Note: generic class is not supported, join target (e.g. a manager) can hold the Registry and delegate to it.
+     * @return if true, will add nested class Registry, which holds the class and its nested classes in one Snapshot,
+     *         wait-free for readers and published by CAS, with persistence by the codec options.
+     *         default false.
+     */
+    boolean registry() default false;
+
+    /**
+     * Note: only primitive fields (not {@link Primitive} elements) are held,
+     * generic class and property named sequence (the lock) are not supported.
+     * @return if true, will add nested class Live, which holds the primitive fields of target inline under a sequence
+     *         lock, set(target) for writers (e.g. the result of build()), and for readers without lock or allocation:
+     *         read(Live.Values) copies a consistent snapshot into a reusable Values, getXX() reads one field.
+     *         default false.
+     */
+    boolean live() default false;
+
     /**
      * The value as pattern will replace field's getter's body which generated.<br/>
      * Note: <br/>
@@ -111,4 +209,51 @@ public @interface GenBuilder {
         int[] intValues() default {};
         String[] stringValues() default {};
     }
+
+    /**
+     * Store List (or Collection) of Integer, Long, Double as int[], long[], double[], without boxing. <br/>
+     * Note: <br/>
+     * 1. Target got getXX(int index), xxSize(), forEachXX(IntConsumer) and xxToArray() instead of the field,
+     *    Builder got setXX(int... values) and addToXX(int value), no matter {@link GenBuilder#elementAdder()}.<br/>
+     * 2. Set and Map are not supported, and you can't use this with {@link Getter}, {@link Setter}, {@link Enums}
+     *    for the same field.<br/>
+     */
+    @Documented
+    @Target(ElementType.FIELD)
+    @Retention(RetentionPolicy.CLASS)
+    @interface Primitive {
+    }
+
+    /**
+     * The field's initializer is pure and its value is immutable, so evaluate it only once into Builder's static field,
+     * not in every Builder(). <br/>
+     * Note: <br/>
+     * 1. Absent initializer, literals and static final constants of the descriptor are already cheap, need not this.<br/>
+     * 2. If all fields' initializers are cheap or pure, target's no-arg constructor copies a shared DEFAULT instance.<br/>
+     * 3. Set, List, Map field is not allowed with {@link GenBuilder#elementAdder()}, which changes it in place.<br/>
+     */
+    @Documented
+    @Target(ElementType.FIELD)
+    @Retention(RetentionPolicy.CLASS)
+    @interface Pure {
+    }
+
+    /**
+     * Compute the field's value on the first call of its getter and cache it in target, instead of on every call
+     * or at build time, needs {@link GenBuilder#getter()}. <br/>
+     * Note: <br/>
+     * 1. With {@link Getter} ("return ..." only), the field is built as usual, the result of the template is memoized,
+     *    reference result cached by a racy single-check on a volatile field (null result is computed again),
+     *    primitive result published by a volatile flag, so the template should be side-effect free.<br/>
+     * 2. Without {@link Getter}, the initializer (not primitive) is deferred from Builder() to the first getXX(),
+     *    so the field holds null until then, and null set by Builder also means the default,
+     *    equals() computes it only to compare with a computed one, hashCode() skips it, toString() prints "<default>".
+     *    binaryCodec, flyweight, batch, jsonCodec, delta, which read the field directly, are not allowed with it.<br/>
+     * 3. You can't use this with {@link Primitive}, {@link Enums}, {@link Pure}, or Set, List, Map field.<br/>
+     */
+    @Documented
+    @Target(ElementType.FIELD)
+    @Retention(RetentionPolicy.CLASS)
+    @interface Lazy {
+    }
 }
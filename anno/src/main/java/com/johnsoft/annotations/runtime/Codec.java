@@ -0,0 +1,175 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.johnsoft.annotations.runtime;
+
+import java.nio.ByteBuffer;
+
+/**
+ * varint, zigzag and UTF-8 helpers shared by the code generated for
+ * {@link com.johnsoft.annotations.GenBuilder#binaryCodec()} and {@link com.johnsoft.annotations.GenBuilder#delta()},
+ * no intermediate byte[].<br/>
+ * NOTE:
+ * 1. Not for calling by hand, the format is the one generated code writes and reads.<br/>
+ * 2. String: varint (UTF-8 length + 1, 0 for null) + UTF-8, supplementary characters as 4 bytes.<br/>
+ * 3. Reads of corrupt input throw IllegalArgumentException, e.g. varint longer than 10 bytes,
+ *    or length more than the remaining bytes, so nothing larger than the buffer is allocated.<br/>
+ *
+ * @author John Kenrinus Lee
+ * @version 2019-05-26
+ */
+public final class Codec {
+    private Codec() {
+    }
+
+    public static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    public static long unZigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    public static int varintSize(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            ++size;
+            value >>>= 7;
+        }
+        return size;
+    }
+
+    public static void putVarint(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    public static long getVarint(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < Long.SIZE; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint, longer than 10 bytes");
+    }
+
+    /**
+     * Read varint (length + 1, 0 for null) of String, array, Collection or Map,
+     * every element takes 1 byte at least, so the length is never more than the remaining bytes.
+     * @return length, or -1 for null
+     */
+    public static int getLength(ByteBuffer buffer) {
+        long length = getVarint(buffer) - 1;
+        if (length < -1 || length > buffer.remaining()) {
+            throw new IllegalArgumentException("Malformed length " + length + ", remaining " + buffer.remaining());
+        }
+        return (int) length;
+    }
+
+    public static int stringSize(String value) {
+        if (value == null) {
+            return 1;
+        }
+        int length = utf8Length(value);
+        return varintSize(length + 1) + length;
+    }
+
+    public static void putString(ByteBuffer buffer, String value) {
+        if (value == null) {
+            buffer.put((byte) 0);
+            return;
+        }
+        putVarint(buffer, utf8Length(value) + 1);
+        for (int i = 0; i < value.length(); ++i) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                buffer.put((byte) c);
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xC0 | (c >> 6)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            } else if (isSurrogatePair(value, i)) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buffer.put((byte) (0xF0 | (codePoint >> 18)));
+                buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+            } else {
+                buffer.put((byte) (0xE0 | (c >> 12)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+
+    public static String getString(ByteBuffer buffer) {
+        int length = getLength(buffer);
+        if (length < 0) {
+            return null;
+        }
+        char[] chars = new char[length];
+        int count = 0;
+        int end = buffer.position() + length;
+        while (buffer.position() < end) {
+            int b = buffer.get() & 0xFF;
+            if (b < 0x80) {
+                chars[count++] = (char) b;
+            } else if (b < 0xE0) {
+                chars[count++] = (char) (((b & 0x1F) << 6) | (buffer.get() & 0x3F));
+            } else if (b < 0xF0) {
+                chars[count++] = (char) (((b & 0x0F) << 12) | ((buffer.get() & 0x3F) << 6) | (buffer.get() & 0x3F));
+            } else {
+                int codePoint = ((b & 0x07) << 18) | ((buffer.get() & 0x3F) << 12)
+                        | ((buffer.get() & 0x3F) << 6) | (buffer.get() & 0x3F);
+                chars[count++] = Character.highSurrogate(codePoint);
+                chars[count++] = Character.lowSurrogate(codePoint);
+            }
+        }
+        if (buffer.position() != end) {
+            throw new IllegalArgumentException("Malformed UTF-8, the last character exceeds the length");
+        }
+        return new String(chars, 0, count);
+    }
+
+    private static int utf8Length(String value) {
+        int length = value.length();
+        for (int i = 0; i < value.length(); ++i) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                continue;
+            }
+            if (c < 0x800) {
+                length += 1;
+            } else if (isSurrogatePair(value, i)) {
+                length += 2;
+                ++i;
+            } else {
+                length += 2;
+            }
+        }
+        return length;
+    }
+
+    private static boolean isSurrogatePair(String value, int index) {
+        return Character.isHighSurrogate(value.charAt(index))
+                && index + 1 < value.length() && Character.isLowSurrogate(value.charAt(index + 1));
+    }
+}
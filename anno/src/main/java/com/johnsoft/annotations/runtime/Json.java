@@ -0,0 +1,332 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.johnsoft.annotations.runtime;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Streaming JSON reader over Reader without tree, and the writer helpers,
+ * shared by the code generated for {@link com.johnsoft.annotations.GenBuilder#jsonCodec()}.<br/>
+ * NOTE:
+ * 1. Not thread safe, one instance per fromJson call.<br/>
+ * 2. Malformed input throws IllegalArgumentException, I/O error of the Reader throws IOException.<br/>
+ * 3. Elements of object and array must be separated by ',', numbers out of the range of the read type
+ *    (e.g. {@link #nextInt()}) are malformed, not truncated.<br/>
+ *
+ * @author John Kenrinus Lee
+ * @version 2019-05-26
+ */
+public final class Json {
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final Reader in;
+    private final char[] buffer = new char[1024];
+    private final StringBuilder chars = new StringBuilder();
+    private int position;
+    private int limit;
+    private boolean first; // no ',' before the next element
+
+    public Json(Reader in) {
+        this.in = in;
+    }
+
+    private boolean fill() throws IOException {
+        int count = in.read(buffer, 0, buffer.length);
+        position = 0;
+        limit = Math.max(count, 0);
+        return count > 0;
+    }
+
+    /**
+     * @return next char after whitespaces (not consumed), or -1 at the end
+     */
+    public int peek() throws IOException {
+        while (position < limit || fill()) {
+            char c = buffer[position];
+            if (c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+                return c;
+            }
+            ++position;
+        }
+        return -1;
+    }
+
+    private char read() throws IOException {
+        if (position == limit && !fill()) {
+            throw new IllegalArgumentException("Unexpected end of JSON");
+        }
+        return buffer[position++];
+    }
+
+    public void expect(char expected) throws IOException {
+        int c = peek();
+        if (c != expected) {
+            throw new IllegalArgumentException("Expected '" + expected + "' but got "
+                    + (c < 0 ? "end" : "'" + (char) c + "'"));
+        }
+        ++position;
+        first = expected == '{' || expected == '[';
+    }
+
+    public void expectEnd() throws IOException {
+        if (peek() >= 0) {
+            throw new IllegalArgumentException("Unexpected '" + (char) peek() + "' after JSON");
+        }
+    }
+
+    private void literal(String literal) throws IOException {
+        peek();
+        for (int i = 0; i < literal.length(); ++i) {
+            if (read() != literal.charAt(i)) {
+                throw new IllegalArgumentException("Expected " + literal);
+            }
+        }
+    }
+
+    /**
+     * Consume the close or the comma before next element, the comma is required except for the first one
+     * @return false if reached the close of object or array
+     */
+    public boolean hasNext(char close) throws IOException {
+        int c = peek();
+        boolean next = c != close;
+        if (!next) {
+            ++position;
+        } else if (!first) {
+            expect(',');
+        }
+        first = false;
+        return next;
+    }
+
+    /**
+     * @return true if null consumed
+     */
+    public boolean nextNull() throws IOException {
+        if (peek() != 'n') {
+            return false;
+        }
+        literal("null");
+        return true;
+    }
+
+    public String nextName() throws IOException {
+        String name = nextString();
+        expect(':');
+        return name;
+    }
+
+    public String nextString() throws IOException {
+        if (nextNull()) {
+            return null;
+        }
+        expect('"');
+        chars.setLength(0);
+        for (char c = read(); c != '"'; c = read()) {
+            if (c == '\\') {
+                c = read();
+                switch (c) {
+                    case 'b':
+                        c = '\b';
+                        break;
+                    case 'f':
+                        c = '\f';
+                        break;
+                    case 'n':
+                        c = '\n';
+                        break;
+                    case 'r':
+                        c = '\r';
+                        break;
+                    case 't':
+                        c = '\t';
+                        break;
+                    case 'u':
+                        int code = 0;
+                        for (int i = 0; i < 4; ++i) {
+                            int digit = Character.digit(read(), 16);
+                            if (digit < 0) {
+                                throw new IllegalArgumentException("Malformed \\u escape");
+                            }
+                            code = (code << 4) | digit;
+                        }
+                        c = (char) code;
+                        break;
+                    default: // '"', '\\', '/'
+                        break;
+                }
+            }
+            chars.append(c);
+        }
+        return chars.toString();
+    }
+
+    public char nextChar() throws IOException {
+        String value = nextString();
+        if (value == null || value.length() != 1) {
+            throw new IllegalArgumentException("Expected one char but got " + value);
+        }
+        return value.charAt(0);
+    }
+
+    public boolean nextBoolean() throws IOException {
+        if (peek() == 't') {
+            literal("true");
+            return true;
+        }
+        literal("false");
+        return false;
+    }
+
+    public long nextLong() throws IOException {
+        boolean negative = peek() == '-';
+        if (negative) {
+            ++position;
+        }
+        // accumulate negatively, so Long.MIN_VALUE is readable
+        long bound = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        long value = 0;
+        int digits = 0;
+        while ((position < limit || fill()) && buffer[position] >= '0' && buffer[position] <= '9') {
+            int digit = buffer[position++] - '0';
+            if (value < bound / 10 || value * 10 < bound + digit) {
+                throw new IllegalArgumentException("Integer overflow of long");
+            }
+            value = value * 10 - digit;
+            ++digits;
+        }
+        if (digits == 0) {
+            throw new IllegalArgumentException("Expected integer");
+        }
+        return negative ? value : -value;
+    }
+
+    public int nextInt() throws IOException {
+        return (int) nextLong(Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    public short nextShort() throws IOException {
+        return (short) nextLong(Short.MIN_VALUE, Short.MAX_VALUE);
+    }
+
+    public byte nextByte() throws IOException {
+        return (byte) nextLong(Byte.MIN_VALUE, Byte.MAX_VALUE);
+    }
+
+    private long nextLong(long min, long max) throws IOException {
+        long value = nextLong();
+        if (value < min || value > max) {
+            throw new IllegalArgumentException("Integer " + value + " out of range [" + min + ", " + max + "]");
+        }
+        return value;
+    }
+
+    /**
+     * Also accept String, e.g. "NaN", but not number overflows to infinity, e.g. 1e400
+     */
+    public double nextDouble() throws IOException {
+        if (peek() == '"') {
+            return Double.parseDouble(nextString());
+        }
+        chars.setLength(0);
+        while (position < limit || fill()) {
+            char c = buffer[position];
+            if ((c < '0' || c > '9') && c != '-' && c != '+' && c != '.' && c != 'e' && c != 'E') {
+                break;
+            }
+            chars.append(c);
+            ++position;
+        }
+        double value = Double.parseDouble(chars.toString());
+        if (Double.isInfinite(value)) {
+            throw new IllegalArgumentException("Number " + chars + " out of range of double");
+        }
+        return value;
+    }
+
+    /**
+     * Also accept String, e.g. "NaN", but not finite number out of float's range, e.g. 1e39
+     */
+    public float nextFloat() throws IOException {
+        double value = nextDouble();
+        if (!Double.isInfinite(value) && Math.abs(value) > Float.MAX_VALUE) {
+            throw new IllegalArgumentException("Number " + value + " out of range of float");
+        }
+        return (float) value;
+    }
+
+    public void skipValue() throws IOException {
+        int c = peek();
+        if (c == '{') {
+            expect('{');
+            while (hasNext('}')) {
+                nextName();
+                skipValue();
+            }
+        } else if (c == '[') {
+            expect('[');
+            while (hasNext(']')) {
+                skipValue();
+            }
+        } else if (c == '"') {
+            nextString();
+        } else if (c == 't' || c == 'f') {
+            nextBoolean();
+        } else if (!nextNull()) {
+            nextDouble();
+        }
+    }
+
+    public static void writeString(Appendable out, String value) throws IOException {
+        if (value == null) {
+            out.append("null");
+            return;
+        }
+        out.append('"');
+        for (int i = 0; i < value.length(); ++i) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.append('\\').append(c);
+            } else if (c < 0x20) {
+                out.append("\\u00").append(HEX[c >> 4]).append(HEX[c & 0xF]);
+            } else {
+                out.append(c);
+            }
+        }
+        out.append('"');
+    }
+
+    /**
+     * write non-finite value as String
+     */
+    public static void writeNumber(Appendable out, double value) throws IOException {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            out.append('"').append(String.valueOf(value)).append('"');
+        } else {
+            out.append(String.valueOf(value));
+        }
+    }
+
+    public static void writeNumber(Appendable out, float value) throws IOException {
+        if (Float.isNaN(value) || Float.isInfinite(value)) {
+            out.append('"').append(String.valueOf(value)).append('"');
+        } else {
+            out.append(String.valueOf(value));
+        }
+    }
+}
@@ -35,6 +35,9 @@ import com.google.auto.service.AutoService;
 
 /**
  * The annotation processor<br/>
+ * NOTE: registered as Gradle "isolating" incremental processor
+ * (see META-INF/gradle/incremental.annotation.processors),
+ * so every generated type must keep its annotated source type as originating element.<br/>
  *
  * @author John Kenrinus Lee
  * @version 2019-04-17
@@ -0,0 +1,247 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.johnsoft.tools;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.stream.IntStream;
+
+import javax.lang.model.element.Modifier;
+
+import com.squareup.javapoet.AnnotationSpec;
+import com.squareup.javapoet.ArrayTypeName;
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+
+/**
+ * Render nested class Batch of target, rows stored as one array per target's instance field,
+ * for {@link GenBuilderRenderer}.<br/>
+ * NOTE:
+ * 1. Columns are the same types as target's fields (packed words as long[], primitive elements as int[][] etc.),
+ *    parameterized types are stored as raw arrays, since generic array can't be created.<br/>
+ * 2. Getters take the row index first, e.g. getXX(int i), getXX(int i, int index) for primitive elements,
+ *    and go through getter's template of {@link com.johnsoft.annotations.GenBuilder.Getter} if target does.<br/>
+ * 3. Columns are always accessed as this.xx, so they never clash with parameters and locals,
+ *    but a property named {@link #SIZE} clashes with the row count, rejected by {@link GenBuilderProcessor}.<br/>
+ *
+ * @author John Kenrinus Lee
+ * @version 2019-05-16
+ */
+final class BatchRenderer {
+    static final String SIZE = "size";
+    private static final String INDEX = "i";
+    private static final String VALUE = "value";
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final AnnotationSpec SUPPRESS_UNCHECKED = AnnotationSpec.builder(SuppressWarnings.class)
+                                                                           .addMember("value", "$S", "unchecked")
+                                                                           .build();
+    private static final AnnotationSpec SUPPRESS_RAWTYPES = AnnotationSpec.builder(SuppressWarnings.class)
+                                                                          .addMember("value", "$S", "rawtypes")
+                                                                          .build();
+
+    private BatchRenderer() {
+    }
+
+    /**
+     * @param fields target's instance fields
+     * @param materialize true if the private all-fields constructor rendered, then add materialize(int)
+     */
+    static TypeSpec render(DescriptorModel model, PackedLayout packedLayout, List<FieldSpec> fields,
+                           boolean materialize) {
+        ClassName targetClassName = model.targetClassName;
+        ClassName batchClassName = targetClassName.nestedClass("Batch");
+        String simpleName = targetClassName.simpleName();
+        TypeSpec.Builder batch = TypeSpec.classBuilder(batchClassName)
+                                         .addJavadoc("Rows of $N as columns, one array per field, "
+                                                 + "so scan of one column is a linear pass.\n"
+                                                 + "Use {@code StreamSupport.intStream(batch.spliterator(), true)} "
+                                                 + "for parallel stream of row indexes.\n", simpleName)
+                                         .addModifiers(Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL);
+
+        MethodSpec.Builder constructor = MethodSpec.constructorBuilder()
+                                                   .addModifiers(Modifier.PUBLIC)
+                                                   .addParameter(TypeName.INT, "capacity");
+        CodeBlock.Builder addCode = CodeBlock.builder();
+        MethodSpec.Builder grow = MethodSpec.methodBuilder("grow")
+                                            .addModifiers(Modifier.PRIVATE)
+                                            .addStatement("int capacity = Math.max($L, $N * 2)",
+                                                    DEFAULT_CAPACITY, SIZE);
+        MethodSpec.Builder clear = MethodSpec.methodBuilder("clear")
+                                             .addJavadoc("Remove all rows, and release the referenced values\n")
+                                             .addModifiers(Modifier.PUBLIC);
+        boolean raw = false;
+        for (FieldSpec field : fields) {
+            TypeName columnType = ArrayTypeName.of(erasure(field.type));
+            FieldSpec.Builder column = FieldSpec.builder(columnType, field.name, Modifier.PRIVATE);
+            if (field.type instanceof ParameterizedTypeName) {
+                column.addAnnotation(SUPPRESS_RAWTYPES);
+                raw = true;
+            }
+            batch.addField(column.build());
+            constructor.addStatement("this.$N = $L", field.name, newArray(erasure(field.type), "capacity"));
+            addCode.addStatement("this.$N[this.$N] = $N.$N", field.name, SIZE, VALUE, field.name);
+            grow.addStatement("this.$N = $T.copyOf(this.$N, capacity)", field.name, Arrays.class, field.name);
+            if (!field.type.isPrimitive()) {
+                clear.addStatement("$T.fill(this.$N, 0, this.$N, null)", Arrays.class, field.name, SIZE);
+            }
+        }
+        batch.addField(TypeName.INT, SIZE, Modifier.PRIVATE);
+
+        batch.addMethod(MethodSpec.constructorBuilder()
+                                  .addModifiers(Modifier.PUBLIC)
+                                  .addStatement("this($L)", DEFAULT_CAPACITY)
+                                  .build());
+        if (raw) {
+            constructor.addAnnotation(SUPPRESS_RAWTYPES);
+        }
+        batch.addMethod(constructor.build());
+        batch.addMethod(MethodSpec.methodBuilder(SIZE)
+                                  .addModifiers(Modifier.PUBLIC)
+                                  .returns(TypeName.INT)
+                                  .addStatement("return $N", SIZE)
+                                  .build());
+        MethodSpec.Builder add = MethodSpec.methodBuilder("add")
+                                           .addModifiers(Modifier.PUBLIC)
+                                           .returns(batchClassName)
+                                           .addParameter(targetClassName, VALUE);
+        if (!fields.isEmpty()) {
+            add.beginControlFlow("if (this.$N == this.$N.length)", SIZE, fields.get(0).name)
+               .addStatement("grow()")
+               .endControlFlow();
+        }
+        batch.addMethod(add.addCode(addCode.build())
+                           .addStatement("++this.$N", SIZE)
+                           .addStatement("return this")
+                           .build());
+        batch.addMethod(MethodSpec.methodBuilder("add")
+                                  .addJavadoc("Same as add(builder.build()), but never interned\n")
+                                  .addModifiers(Modifier.PUBLIC)
+                                  .returns(batchClassName)
+                                  .addParameter(GenBuilderRenderer.builderType(model), "builder")
+                                  .addStatement("return add(new $N(builder))", simpleName)
+                                  .build());
+        batch.addMethod(clear.addStatement("this.$N = 0", SIZE).build());
+
+        // getters, same names as target's, with row index
+        for (DescriptorModel.Property property : model.properties()) {
+            String name = property.name;
+            MethodSpec.Builder getter = MethodSpec.methodBuilder(property.getterName)
+                                                  .addAnnotations(property.methodAnnotations)
+                                                  .addJavadoc(property.javadoc)
+                                                  .addModifiers(Modifier.PUBLIC)
+                                                  .addParameter(TypeName.INT, INDEX)
+                                                  .addStatement("checkIndex($N)", INDEX);
+            PackedLayout.Slot slot = packedLayout.slot(property);
+            if (slot != null) {
+                getter.returns(property.type)
+                      .addStatement("return $L", slot.read(CodeBlock.of("this.$N[$N]", slot.word, INDEX)));
+            } else if (property.primitiveElementType != null) {
+                batch.addMethod(getter.returns(property.primitiveElementType)
+                                      .addParameter(TypeName.INT, "index")
+                                      .addStatement("return this.$N[$N][index]", name, INDEX)
+                                      .build());
+                getter = MethodSpec.methodBuilder(name + "Size")
+                                   .addModifiers(Modifier.PUBLIC)
+                                   .returns(TypeName.INT)
+                                   .addParameter(TypeName.INT, INDEX)
+                                   .addStatement("checkIndex($N)", INDEX)
+                                   .addStatement("return this.$N[$N].length", name, INDEX);
+            } else {
+                if (property.type instanceof ParameterizedTypeName) {
+                    getter.addAnnotation(SUPPRESS_UNCHECKED);
+                }
+                String content = "return $N";
+                if (model.options.useGetter && property.getterTemplate != null) {
+                    content = property.getterTemplate;
+                }
+                getter.returns(property.type)
+                      .addStatement(content, "this." + name + "[" + INDEX + "]");
+            }
+            batch.addMethod(getter.build());
+        }
+
+        if (materialize) {
+            MethodSpec.Builder method = MethodSpec.methodBuilder("materialize")
+                                                  .addJavadoc("@return a new $N with the values of the row\n",
+                                                          simpleName)
+                                                  .addModifiers(Modifier.PUBLIC)
+                                                  .returns(targetClassName)
+                                                  .addParameter(TypeName.INT, INDEX)
+                                                  .addStatement("checkIndex($N)", INDEX);
+            CodeBlock.Builder arguments = CodeBlock.builder();
+            boolean unchecked = false;
+            for (int i = 0; i < fields.size(); ++i) {
+                FieldSpec field = fields.get(i);
+                unchecked |= field.type instanceof ParameterizedTypeName;
+                arguments.add(i == 0 ? "this.$N[$N]" : ", this.$N[$N]", field.name, INDEX);
+            }
+            if (unchecked) {
+                method.addAnnotation(SUPPRESS_UNCHECKED);
+            }
+            if (model.options.intern) {
+                method.addStatement("return $N.intern(new $N($L))", simpleName, simpleName, arguments.build());
+            } else {
+                method.addStatement("return new $N($L)", simpleName, arguments.build());
+            }
+            batch.addMethod(method.build());
+        }
+
+        batch.addMethod(MethodSpec.methodBuilder("spliterator")
+                                  .addJavadoc("@return spliterator of row indexes, from 0 to size() exclusive\n")
+                                  .addModifiers(Modifier.PUBLIC)
+                                  .returns(Spliterator.OfInt.class)
+                                  .addStatement("return $T.range(0, $N).spliterator()", IntStream.class, SIZE)
+                                  .build());
+        batch.addMethod(MethodSpec.methodBuilder("checkIndex")
+                                  .addModifiers(Modifier.PRIVATE)
+                                  .addParameter(TypeName.INT, INDEX)
+                                  .beginControlFlow("if ($N < 0 || $N >= $N)", INDEX, INDEX, SIZE)
+                                  .addStatement("throw new $T(\"Index: \" + $N + \", Size: \" + $N)",
+                                          IndexOutOfBoundsException.class, INDEX, SIZE)
+                                  .endControlFlow()
+                                  .build());
+        if (!fields.isEmpty()) {
+            batch.addMethod(grow.build());
+        }
+        return batch.build();
+    }
+
+    /**
+     * @return e.g. "new int[length][]" for int[]
+     */
+    private static CodeBlock newArray(TypeName componentType, String length) {
+        StringBuilder dimensions = new StringBuilder();
+        while (componentType instanceof ArrayTypeName) {
+            componentType = ((ArrayTypeName) componentType).componentType;
+            dimensions.append("[]");
+        }
+        return CodeBlock.of("new $T[$N]$L", componentType, length, dimensions);
+    }
+
+    /**
+     * @return raw type of parameterized type, or the type itself
+     */
+    private static TypeName erasure(TypeName type) {
+        return type instanceof ParameterizedTypeName ? ((ParameterizedTypeName) type).rawType : type;
+    }
+}
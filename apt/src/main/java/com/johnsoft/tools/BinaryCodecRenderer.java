@@ -0,0 +1,384 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.johnsoft.tools;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.lang.model.element.Modifier;
+
+import com.johnsoft.annotations.runtime.Codec;
+import com.squareup.javapoet.ArrayTypeName;
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+
+/**
+ * Render serializedSize(), writeTo(ByteBuffer) and static readFrom(ByteBuffer) of target,
+ * for {@link GenBuilderRenderer}.<br/>
+ * NOTE:
+ * 1. Layout: 8 bytes schema fingerprint (of class name, field names and types, packed slots and enum values),
+ *    then target's instance fields in declared order (packed words after others).<br/>
+ * 2. boolean, byte: 1 byte; char: varint; short, int, long: zigzag varint; float, double: 4, 8 bytes;
+ *    boxed: 1 byte presence + value; String: varint (UTF-8 length + 1, 0 for null) + UTF-8;
+ *    primitive array, Collection, Map: varint (size + 1, 0 for null) + elements (key, value).<br/>
+ * 3. The varint, zigzag and UTF-8 helpers are in {@link Codec} of the annotations module, not generated.<br/>
+ * 4. readFrom reads every field into a local named as field, the other locals (e.g. xxLength) get a number suffix
+ *    if the name is used, e.g. by a field named buffer.<br/>
+ *
+ * @author John Kenrinus Lee
+ * @version 2019-05-14
+ */
+final class BinaryCodecRenderer {
+    private static final String BUFFER = "buffer";
+    static final String SCHEMA_FINGERPRINT = "SCHEMA_FINGERPRINT";
+    private static final ClassName STRING = ClassName.get(String.class);
+    static final ClassName CODEC = ClassName.get(Codec.class);
+
+    private BinaryCodecRenderer() {
+    }
+
+    /**
+     * @return true if the property's type can be encoded
+     */
+    static boolean isSupported(DescriptorModel.Property property) {
+        TypeName type = property.type;
+        if (property.primitiveElementType != null || isScalar(type)) {
+            return true;
+        }
+        if (type instanceof ArrayTypeName) {
+            return ((ArrayTypeName) type).componentType.isPrimitive();
+        }
+        if (property.collectionKind == DescriptorModel.CollectionKind.NONE
+                || (property.collectionInterface && CopyOnWriteRenderer.mutableType(property) == null)) {
+            return false;
+        }
+        for (TypeName elementType : property.elementTypes) {
+            if (!isScalar(elementType)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param fields target's instance fields, in order of the private all-fields constructor
+     */
+    static void render(DescriptorModel model, List<FieldSpec> fields,
+                       List<FieldSpec> targetFields, List<MethodSpec> targetMethods) {
+        ClassName targetClassName = model.targetClassName;
+        String simpleName = targetClassName.simpleName();
+
+        StringBuilder schema = new StringBuilder(targetClassName.toString());
+        for (FieldSpec field : fields) {
+            schema.append(';').append(field.type).append(' ').append(field.name);
+        }
+        PackedLayout packedLayout = PackedLayout.of(model);
+        for (DescriptorModel.Property property : model.properties()) {
+            PackedLayout.Slot slot = packedLayout.slot(property);
+            if (slot != null) {
+                schema.append(";slot ").append(property.name).append('@').append(slot.word)
+                      .append(':').append(slot.shift).append('+').append(slot.bits).append('-').append(slot.min);
+            }
+            if (property.isEnums()) {
+                schema.append(";enum ").append(property.name).append(property.enumNames)
+                      .append(property.enumIntValues).append(property.enumStringValues);
+            }
+        }
+        String hex = GenerationCache.fingerprint(schema.toString()).substring(0, 16);
+        // private static final long SCHEMA_FINGERPRINT
+        targetFields.add(FieldSpec.builder(TypeName.LONG, SCHEMA_FINGERPRINT,
+                Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                                  .initializer("0x$LL", hex)
+                                  .build());
+
+        MethodSpec.Builder size = MethodSpec.methodBuilder("serializedSize")
+                                            .addJavadoc("@return bytes written by {@link #writeTo(ByteBuffer)}\n")
+                                            .addModifiers(Modifier.PUBLIC)
+                                            .returns(TypeName.INT)
+                                            .addStatement("int size = $L", Long.BYTES);
+        MethodSpec.Builder write = MethodSpec.methodBuilder("writeTo")
+                                             .addJavadoc("Write at buffer's position, "
+                                                     + "buffer should have {@link #serializedSize()} remaining.\n"
+                                                     + "@return the buffer\n")
+                                             .addModifiers(Modifier.PUBLIC)
+                                             .returns(ByteBuffer.class)
+                                             .addParameter(ByteBuffer.class, BUFFER)
+                                             .addStatement("$N.putLong($N)", BUFFER, SCHEMA_FINGERPRINT);
+        MethodSpec.Builder read = MethodSpec.methodBuilder("readFrom")
+                                            .addJavadoc("Read from buffer's position, which written by "
+                                                    + "{@link #writeTo(ByteBuffer)}.\n"
+                                                    + "@throws IllegalArgumentException if schema mismatch or corrupt\n"
+                                                    + "@throws java.nio.BufferUnderflowException if truncated\n")
+                                            .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                                            .returns(targetClassName)
+                                            .addParameter(ByteBuffer.class, BUFFER)
+                                            .beginControlFlow("if ($N.getLong() != $N)", BUFFER, SCHEMA_FINGERPRINT)
+                                            .addStatement("throw new $T($S)", IllegalArgumentException.class,
+                                                    "Schema mismatch of " + simpleName)
+                                            .endControlFlow();
+        CodeBlock.Builder arguments = CodeBlock.builder();
+        Set<String> locals = new HashSet<>(Collections.singleton(BUFFER));
+        List<String> fieldLocals = newLocals(fields, locals);
+        for (int i = 0; i < fields.size(); ++i) {
+            renderField(model, fields.get(i), fieldLocals.get(i), locals, size, write, read);
+            arguments.add(i == 0 ? "$N" : ", $N", fieldLocals.get(i));
+        }
+        targetMethods.add(size.addStatement("return size").build());
+        targetMethods.add(write.addStatement("return $N", BUFFER).build());
+        if (model.options.intern) {
+            read.addStatement("return $N.intern(new $N($L))", simpleName, simpleName, arguments.build());
+        } else {
+            read.addStatement("return new $N($L)", simpleName, arguments.build());
+        }
+        targetMethods.add(read.build());
+    }
+
+    /**
+     * @param locals names of parameters and locals of readFrom, which the locals of fields are added to
+     * @return the local of readFrom for every field, named as field unless it is used
+     */
+    static List<String> newLocals(List<FieldSpec> fields, Set<String> locals) {
+        List<String> names = new ArrayList<>();
+        for (FieldSpec field : fields) {
+            String name = uniqueName(field.name, locals);
+            locals.add(name);
+            names.add(name);
+        }
+        return names;
+    }
+
+    /**
+     * @return name, or name with the smallest number suffix, which is not in used
+     */
+    private static String uniqueName(String name, Set<String> used) {
+        String unique = name;
+        for (int i = 1; used.contains(unique); ++i) {
+            unique = name + i;
+        }
+        return unique;
+    }
+
+    /**
+     * Add size of "this.field" to local "size", write it to "buffer", and read it into the local,
+     * the extra locals of read are unique in locals.
+     */
+    static void renderField(DescriptorModel model, FieldSpec field, String local, Set<String> locals,
+                            MethodSpec.Builder size, MethodSpec.Builder write, MethodSpec.Builder read) {
+        DescriptorModel.Property property = null;
+        for (DescriptorModel.Property candidate : model.properties()) {
+            if (candidate.name.equals(field.name) && candidate.primitiveElementType == null) {
+                property = candidate;
+            }
+        }
+        String value = "this." + field.name;
+        if (property != null && property.collectionKind != DescriptorModel.CollectionKind.NONE) {
+            renderCollection(property, local, locals, value, model.options, size, write, read);
+        } else if (field.type instanceof ArrayTypeName) {
+            renderArray((ArrayTypeName) field.type, local, locals, value, size, write, read);
+        } else {
+            size.addStatement("size += $L", scalarSize(field.type, value));
+            write.addCode(writeScalar(field.type, value));
+            read.addStatement("$T $N = $L", field.type, local, readScalar(field.type));
+        }
+    }
+
+    private static void renderArray(ArrayTypeName type, String name, Set<String> locals, String value,
+                                    MethodSpec.Builder size, MethodSpec.Builder write, MethodSpec.Builder read) {
+        TypeName component = type.componentType;
+        String length = uniqueName(name + "Length", locals);
+        locals.add(length);
+        String index = uniqueName("i", locals);
+        size.beginControlFlow("if ($N == null)", value)
+            .addStatement("size += 1")
+            .nextControlFlow("else")
+            .addStatement("size += $T.varintSize($N.length + 1)", CODEC, value);
+        write.beginControlFlow("if ($N == null)", value)
+             .addStatement("$T.putVarint($N, 0)", CODEC, BUFFER)
+             .nextControlFlow("else")
+             .addStatement("$T.putVarint($N, $N.length + 1)", CODEC, BUFFER, value);
+        read.addStatement("int $N = $T.getLength($N)", length, CODEC, BUFFER)
+            .addStatement("$T $N = null", type, name)
+            .beginControlFlow("if ($N >= 0)", length)
+            .addStatement("$N = new $T[$N]", name, component, length);
+        if (TypeName.BYTE.equals(component)) { // bulk
+            size.addStatement("size += $N.length", value);
+            write.addStatement("$N.put($N)", BUFFER, value);
+            read.addStatement("$N.get($N)", BUFFER, name);
+        } else {
+            size.beginControlFlow("for ($T value : $N)", component, value)
+                .addStatement("size += $L", scalarSize(component, "value"))
+                .endControlFlow();
+            write.beginControlFlow("for ($T value : $N)", component, value)
+                 .addCode(writeScalar(component, "value"))
+                 .endControlFlow();
+            read.beginControlFlow("for (int $N = 0; $N < $N; ++$N)", index, index, length, index)
+                .addStatement("$N[$N] = $L", name, index, readScalar(component))
+                .endControlFlow();
+        }
+        size.endControlFlow();
+        write.endControlFlow();
+        read.endControlFlow();
+    }
+
+    private static void renderCollection(DescriptorModel.Property property, String name, Set<String> locals,
+                                         String value, DescriptorModel.Options options, MethodSpec.Builder size,
+                                         MethodSpec.Builder write, MethodSpec.Builder read) {
+        String length = uniqueName(name + "Length", locals);
+        locals.add(length);
+        String index = uniqueName("i", locals);
+        boolean map = property.collectionKind == DescriptorModel.CollectionKind.MAP;
+        TypeName first = property.elementTypes.get(0);
+        TypeName second = map ? property.elementTypes.get(1) : null;
+        ClassName mutableType = property.collectionInterface ? CopyOnWriteRenderer.mutableType(property)
+                                                             : property.collectionRawType;
+        TypeName entryType = map ? ParameterizedTypeName.get(ClassName.get(Map.Entry.class), first, second) : first;
+        String element = map ? "entry" : "value";
+        String key = map ? "entry.getKey()" : "value";
+
+        size.beginControlFlow("if ($N == null)", value)
+            .addStatement("size += 1")
+            .nextControlFlow("else")
+            .addStatement("size += $T.varintSize($N.size() + 1)", CODEC, value)
+            .beginControlFlow("for ($T $N : $N$L)", entryType, element, value, map ? ".entrySet()" : "")
+            .addStatement("size += $L", scalarSize(first, key));
+        write.beginControlFlow("if ($N == null)", value)
+             .addStatement("$T.putVarint($N, 0)", CODEC, BUFFER)
+             .nextControlFlow("else")
+             .addStatement("$T.putVarint($N, $N.size() + 1)", CODEC, BUFFER, value)
+             .beginControlFlow("for ($T $N : $N$L)", entryType, element, value, map ? ".entrySet()" : "")
+             .addCode(writeScalar(first, key));
+        if (map) {
+            size.addStatement("size += $L", scalarSize(second, "entry.getValue()"));
+            write.addCode(writeScalar(second, "entry.getValue()"));
+        }
+        size.endControlFlow().endControlFlow();
+        write.endControlFlow().endControlFlow();
+
+        read.addStatement("int $N = $T.getLength($N)", length, CODEC, BUFFER)
+            .addStatement("$T $N = null", property.type, name)
+            .beginControlFlow("if ($N >= 0)", length);
+        if (ClassName.get(ArrayList.class).equals(mutableType)) {
+            read.addStatement("$N = new $T<>($N)", name, mutableType, length);
+        } else {
+            read.addStatement("$N = new $T<>()", name, mutableType);
+        }
+        read.beginControlFlow("for (int $N = 0; $N < $N; ++$N)", index, index, length, index);
+        if (map) {
+            read.addStatement("$N.put($L, $L)", name, readScalar(first), readScalar(second));
+        } else {
+            read.addStatement("$N.add($L)", name, readScalar(first));
+        }
+        read.endControlFlow();
+        if (options.copyOnWrite && property.collectionInterface) {
+            read.addStatement("$N = $L", name, CopyOnWriteRenderer.frozen(property, name, "Builder"));
+        }
+        read.endControlFlow();
+    }
+
+    private static boolean isScalar(TypeName type) {
+        return type.isPrimitive() || type.isBoxedPrimitive() || STRING.equals(type);
+    }
+
+    private static CodeBlock scalarSize(TypeName type, String value) {
+        if (type.isBoxedPrimitive()) {
+            return CodeBlock.of("($N == null ? 1 : 1 + $L)", value, scalarSize(type.unbox(), value));
+        }
+        if (STRING.equals(type)) {
+            return CodeBlock.of("$T.stringSize($N)", CODEC, value);
+        }
+        if (TypeName.BOOLEAN.equals(type) || TypeName.BYTE.equals(type)) {
+            return CodeBlock.of("1");
+        }
+        if (TypeName.FLOAT.equals(type)) {
+            return CodeBlock.of("$L", Float.BYTES);
+        }
+        if (TypeName.DOUBLE.equals(type)) {
+            return CodeBlock.of("$L", Double.BYTES);
+        }
+        if (TypeName.CHAR.equals(type)) {
+            return CodeBlock.of("$T.varintSize($N)", CODEC, value);
+        }
+        return CodeBlock.of("$T.varintSize($T.zigzag($N))", CODEC, CODEC, value);
+    }
+
+    private static CodeBlock writeScalar(TypeName type, String value) {
+        if (type.isBoxedPrimitive()) {
+            return CodeBlock.builder()
+                            .beginControlFlow("if ($N == null)", value)
+                            .addStatement("$N.put((byte) 0)", BUFFER)
+                            .nextControlFlow("else")
+                            .addStatement("$N.put((byte) 1)", BUFFER)
+                            .add(writeScalar(type.unbox(), value))
+                            .endControlFlow()
+                            .build();
+        }
+        CodeBlock statement;
+        if (STRING.equals(type)) {
+            statement = CodeBlock.of("$T.putString($N, $N)", CODEC, BUFFER, value);
+        } else if (TypeName.BOOLEAN.equals(type)) {
+            statement = CodeBlock.of("$N.put((byte) ($N ? 1 : 0))", BUFFER, value);
+        } else if (TypeName.BYTE.equals(type)) {
+            statement = CodeBlock.of("$N.put($N)", BUFFER, value);
+        } else if (TypeName.FLOAT.equals(type)) {
+            statement = CodeBlock.of("$N.putFloat($N)", BUFFER, value);
+        } else if (TypeName.DOUBLE.equals(type)) {
+            statement = CodeBlock.of("$N.putDouble($N)", BUFFER, value);
+        } else if (TypeName.CHAR.equals(type)) {
+            statement = CodeBlock.of("$T.putVarint($N, $N)", CODEC, BUFFER, value);
+        } else {
+            statement = CodeBlock.of("$T.putVarint($N, $T.zigzag($N))", CODEC, BUFFER, CODEC, value);
+        }
+        return CodeBlock.builder().addStatement("$L", statement).build();
+    }
+
+    private static CodeBlock readScalar(TypeName type) {
+        if (type.isBoxedPrimitive()) {
+            return CodeBlock.of("$N.get() == 0 ? null : $L", BUFFER, readScalar(type.unbox()));
+        }
+        if (STRING.equals(type)) {
+            return CodeBlock.of("$T.getString($N)", CODEC, BUFFER);
+        }
+        if (TypeName.BOOLEAN.equals(type)) {
+            return CodeBlock.of("$N.get() != 0", BUFFER);
+        }
+        if (TypeName.BYTE.equals(type)) {
+            return CodeBlock.of("$N.get()", BUFFER);
+        }
+        if (TypeName.FLOAT.equals(type)) {
+            return CodeBlock.of("$N.getFloat()", BUFFER);
+        }
+        if (TypeName.DOUBLE.equals(type)) {
+            return CodeBlock.of("$N.getDouble()", BUFFER);
+        }
+        if (TypeName.CHAR.equals(type)) {
+            return CodeBlock.of("(char) $T.getVarint($N)", CODEC, BUFFER);
+        }
+        if (TypeName.LONG.equals(type)) {
+            return CodeBlock.of("$T.unZigzag($T.getVarint($N))", CODEC, CODEC, BUFFER);
+        }
+        return CodeBlock.of("($T) $T.unZigzag($T.getVarint($N))", type, CODEC, CODEC, BUFFER);
+    }
+}
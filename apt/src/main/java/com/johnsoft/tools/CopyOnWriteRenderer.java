@@ -0,0 +1,252 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.johnsoft.tools;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import javax.lang.model.element.Modifier;
+
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeVariableName;
+
+/**
+ * Render copy-on-write Collection/Map properties of Builder, for {@link GenBuilderRenderer}.<br/>
+ * NOTE:
+ * 1. Builder keeps "xxxFrozen" which is the instance last handed to a built target,
+ *    build() freezes "xxx" only if it is changed since then, so repeated build() share one frozen instance.<br/>
+ * 2. addToXxx copies the frozen instance to a mutable one before the first write after build(),
+ *    setXxx just replace the reference, so need no copy.<br/>
+ * 3. Interfaces in {@link DescriptorModel#FREEZABLE_TYPES} are frozen to unmodifiable ones
+ *    (empty and singleton are shared by Collections), other interfaces are not supported and keep the shared
+ *    reference, concrete types are rejected by {@link GenBuilderProcessor}.<br/>
+ * 4. With {@link com.johnsoft.annotations.GenBuilder#reusable()} and an empty initializer (e.g. new ArrayList<>()),
+ *    Builder keeps its own instance as "xxxBuffer", which build() only copies from, so reset() clears it in place.<br/>
+ *
+ * @author John Kenrinus Lee
+ * @version 2019-05-10
+ */
+final class CopyOnWriteRenderer {
+    private static final String FROZEN_SUFFIX = "Frozen";
+    private static final String BUFFER_SUFFIX = "Buffer";
+    private static final ClassName LIST = ClassName.get(List.class);
+    private static final ClassName SET = ClassName.get(Set.class);
+    private static final ClassName MAP = ClassName.get(Map.class);
+
+    private CopyOnWriteRenderer() {
+    }
+
+    static boolean isSupported(DescriptorModel.Property property) {
+        return mutableType(property) != null;
+    }
+
+    static String frozenName(DescriptorModel.Property property) {
+        return property.name + FROZEN_SUFFIX;
+    }
+
+    static String freezeMethodName(DescriptorModel.Property property) {
+        return "freeze" + Character.toUpperCase(property.name.charAt(0)) + property.name.substring(1);
+    }
+
+    /**
+     * add the frozen field, freezeXxx() and the shared static helpers (only once) to Builder
+     */
+    static void render(DescriptorModel.Property property, List<FieldSpec> builderFields,
+                       List<MethodSpec> builderHelperMethods, CodeBlock.Builder builderResetCode) {
+        String name = property.name;
+        String frozenName = frozenName(property);
+        builderFields.add(FieldSpec.builder(property.type, frozenName, Modifier.PRIVATE).build());
+        builderResetCode.addStatement("this.$N = null", frozenName);
+
+        String helper = helperName(property);
+        if (helper != null) {
+            addHelper(helper, builderHelperMethods);
+        }
+        CodeBlock frozen = frozen(property, name, null);
+        int index = 0; // keep the static helpers after all freezeXxx()
+        while (index < builderHelperMethods.size()
+                && !builderHelperMethods.get(index).hasModifier(Modifier.STATIC)) {
+            ++index;
+        }
+        builderHelperMethods.add(index, MethodSpec.methodBuilder(freezeMethodName(property))
+                                           .addModifiers(Modifier.PRIVATE)
+                                           .returns(property.type)
+                                           .beginControlFlow("if ($N != $N)", name, frozenName)
+                                           .addStatement("$N = $N = $L", frozenName, name, frozen)
+                                           .endControlFlow()
+                                           .addStatement("return $N", name)
+                                           .build());
+    }
+
+    /**
+     * @return true if the initializer is like "new ArrayList<>()", so reset() can clear the Builder's own instance
+     */
+    static boolean hasEmptyDefault(DescriptorModel.Property property) {
+        return !"null".equals(property.defaultValue) && !PrimitiveElementsRenderer.hasDefaultElements(property);
+    }
+
+    /**
+     * add the buffer field to Builder, and the default statement which creates it once then clears it in place
+     */
+    static void renderBuffer(DescriptorModel.Property property, List<FieldSpec> builderFields,
+                             CodeBlock.Builder builderDefaultCode) {
+        String name = property.name;
+        String bufferName = name + BUFFER_SUFFIX;
+        builderFields.add(FieldSpec.builder(property.type, bufferName, Modifier.PRIVATE).build());
+        builderDefaultCode.beginControlFlow("if ($N == null)", bufferName)
+                          .addStatement("$N = $L", bufferName, property.defaultValue)
+                          .nextControlFlow("else")
+                          .addStatement("$N.clear()", bufferName)
+                          .endControlFlow()
+                          .addStatement("this.$N = $N", name, bufferName);
+    }
+
+    /**
+     * @param builderName null if called in Builder, else the Builder's simple name for calling its static helpers
+     * @return expression freezes the value (a variable name)
+     */
+    static CodeBlock frozen(DescriptorModel.Property property, String value, String builderName) {
+        String helper = helperName(property);
+        if (helper != null) {
+            return builderName == null ? CodeBlock.of("$N($N)", helper, value)
+                                       : CodeBlock.of("$N.$N($N)", builderName, helper, value);
+        }
+        // SortedSet, SortedMap
+        String unmodifiable = "java.util.SortedSet".equals(property.collectionRawType.toString())
+                ? "unmodifiableSortedSet" : "unmodifiableSortedMap";
+        return CodeBlock.of("$N == null ? null : $T.$N(new $T<>($N))", value, Collections.class,
+                unmodifiable, mutableType(property), value);
+    }
+
+    /**
+     * @return code for addToXxx, which copies the frozen instance before write
+     */
+    static CodeBlock copyBeforeWrite(DescriptorModel.Property property) {
+        String name = property.name;
+        return CodeBlock.builder()
+                        .beginControlFlow("if ($N != null && $N == $N)", name, name, frozenName(property))
+                        .addStatement("$N = new $T<>($N)", name, mutableType(property), name)
+                        .endControlFlow()
+                        .build();
+    }
+
+    static ClassName mutableType(DescriptorModel.Property property) {
+        switch (property.collectionRawType.toString()) {
+            case "java.util.Collection":
+            case "java.util.List":
+                return ClassName.get(ArrayList.class);
+            case "java.util.Set":
+                return ClassName.get(LinkedHashSet.class);
+            case "java.util.SortedSet":
+                return ClassName.get(TreeSet.class);
+            case "java.util.Map":
+                return ClassName.get(LinkedHashMap.class);
+            case "java.util.SortedMap":
+                return ClassName.get(TreeMap.class);
+            default:
+                return null;
+        }
+    }
+
+    private static String helperName(DescriptorModel.Property property) {
+        switch (property.collectionRawType.toString()) {
+            case "java.util.Collection":
+            case "java.util.List":
+                return "frozenList";
+            case "java.util.Set":
+                return "frozenSet";
+            case "java.util.Map":
+                return "frozenMap";
+            default:
+                return null;
+        }
+    }
+
+    private static void addHelper(String helper, List<MethodSpec> builderHelperMethods) {
+        for (MethodSpec method : builderHelperMethods) {
+            if (helper.equals(method.name)) {
+                return;
+            }
+        }
+        TypeVariableName k = TypeVariableName.get("K");
+        TypeVariableName e = TypeVariableName.get("E");
+        MethodSpec.Builder builder = MethodSpec.methodBuilder(helper)
+                                               .addModifiers(Modifier.PRIVATE, Modifier.STATIC);
+        TypeName type;
+        String empty;
+        String singleton;
+        String unmodifiable;
+        ClassName copyType;
+        if ("frozenMap".equals(helper)) {
+            builder.addTypeVariable(k).addTypeVariable(e);
+            type = ParameterizedTypeName.get(MAP, k, e);
+            builder.addParameter(type, "map").returns(type)
+                   .beginControlFlow("if (map == null)")
+                   .addStatement("return null")
+                   .endControlFlow()
+                   .beginControlFlow("switch (map.size())")
+                   .addStatement("case 0: return $T.emptyMap()", Collections.class)
+                   .beginControlFlow("case 1:")
+                   .addStatement("$T<$T, $T> entry = map.entrySet().iterator().next()", Map.Entry.class, k, e)
+                   .addStatement("return $T.singletonMap(entry.getKey(), entry.getValue())", Collections.class)
+                   .endControlFlow()
+                   .addStatement("default: return $T.unmodifiableMap(new $T<>(map))",
+                           Collections.class, LinkedHashMap.class)
+                   .endControlFlow();
+            builderHelperMethods.add(builder.build());
+            return;
+        }
+        builder.addTypeVariable(e);
+        if ("frozenSet".equals(helper)) {
+            type = ParameterizedTypeName.get(SET, e);
+            empty = "emptySet";
+            singleton = "singleton";
+            unmodifiable = "unmodifiableSet";
+            copyType = ClassName.get(LinkedHashSet.class);
+        } else {
+            type = ParameterizedTypeName.get(LIST, e);
+            empty = "emptyList";
+            singleton = "singletonList";
+            unmodifiable = "unmodifiableList";
+            copyType = ClassName.get(ArrayList.class);
+        }
+        builder.addParameter(ParameterizedTypeName.get(ClassName.get(Collection.class), e), "values")
+               .returns(type)
+               .beginControlFlow("if (values == null)")
+               .addStatement("return null")
+               .endControlFlow()
+               .beginControlFlow("switch (values.size())")
+               .addStatement("case 0: return $T.$N()", Collections.class, empty)
+               .addStatement("case 1: return $T.$N(values.iterator().next())", Collections.class, singleton)
+               .addStatement("default: return $T.$N(new $T<>(values))", Collections.class, unmodifiable, copyType)
+               .endControlFlow();
+        builderHelperMethods.add(builder.build());
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.johnsoft.tools;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.lang.model.element.Modifier;
+
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+
+/**
+ * Render diff(XXX) of target and nested class Delta, for {@link GenBuilderRenderer}.<br/>
+ * NOTE:
+ * 1. One bit per property in declared order (at most 64), e.g. Delta.WINDOW_HEIGHT,
+ *    Delta holds the changed values only, packed properties by their whole words.<br/>
+ * 2. a.diff(b).applyTo(a) equals b, applyTo(Builder) writes the changed values into Builder's fields.<br/>
+ * 3. With binaryCodec, Delta also has serializedSize(), writeTo(ByteBuffer) and static readFrom(ByteBuffer):
+ *    target's schema fingerprint, varint of mask, then the changed fields in target's layout.<br/>
+ *
+ * @author John Kenrinus Lee
+ * @version 2019-05-18
+ */
+final class DeltaRenderer {
+    static final int MAX_PROPERTIES = Long.SIZE;
+
+    private static final String MASK = "mask";
+    private static final String DELTA = "delta";
+    private static final String BUILDER = "builder";
+    private static final String BUFFER = "buffer";
+
+    private DeltaRenderer() {
+    }
+
+    /**
+     * @param fields target's instance fields
+     */
+    static void render(DescriptorModel model, PackedLayout packedLayout, List<FieldSpec> fields,
+                       List<MethodSpec> targetMethods, List<TypeSpec> nestTypes) {
+        ClassName targetClassName = model.targetClassName;
+        ClassName deltaClassName = targetClassName.nestedClass("Delta");
+        TypeName builderType = GenBuilderRenderer.builderType(model);
+        String simpleName = targetClassName.simpleName();
+        List<DescriptorModel.Property> properties = model.properties();
+
+        // bits of properties stored in each field, packed word holds several
+        Map<String, List<String>> fieldBits = new LinkedHashMap<>();
+        for (FieldSpec field : fields) {
+            fieldBits.put(field.name, new ArrayList<String>());
+        }
+        TypeSpec.Builder delta = TypeSpec.classBuilder(deltaClassName)
+                                         .addJavadoc("Changed properties from one $N to another, "
+                                                 + "see {@link $N#diff($N)}.\n", simpleName, simpleName, simpleName)
+                                         .addModifiers(Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL);
+        MethodSpec.Builder diff = MethodSpec.methodBuilder("diff")
+                                            .addJavadoc("@return changes from this to that, "
+                                                    + "so diff(that).applyTo(this) equals that\n")
+                                            .addModifiers(Modifier.PUBLIC)
+                                            .returns(deltaClassName)
+                                            .addParameter(targetClassName, "that")
+                                            .addStatement("$T $N = new $T()", deltaClassName, DELTA, deltaClassName);
+        MethodSpec.Builder applyToBuilder = MethodSpec.methodBuilder("applyTo")
+                                                      .addJavadoc("Write the changed values into builder\n")
+                                                      .addModifiers(Modifier.PUBLIC)
+                                                      .addParameter(builderType, BUILDER);
+        for (int i = 0; i < properties.size(); ++i) {
+            DescriptorModel.Property property = properties.get(i);
+            String name = property.name;
+            String constant = property.constantName();
+            delta.addField(FieldSpec.builder(TypeName.LONG, constant, Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL)
+                                    .initializer("1L << $L", i)
+                                    .build());
+            PackedLayout.Slot slot = packedLayout.slot(property);
+            String field = slot == null ? name : slot.word;
+            fieldBits.get(field).add(constant);
+
+            CodeBlock differs = slot == null
+                                ? CodeBlock.of("!($L)", GenBuilderRenderer.equalsExpression(property))
+                                : slot.differs("this", "that");
+            diff.beginControlFlow("if ($L)", differs)
+                .addStatement("$N.$N |= $T.$N", DELTA, MASK, deltaClassName, constant)
+                .addStatement("$N.$N = that.$N", DELTA, field, field)
+                .endControlFlow();
+
+            applyToBuilder.beginControlFlow("if (($N & $N) != 0)", MASK, constant);
+            if (slot != null) {
+                applyToBuilder.addStatement("$L", slot.copy("this", BUILDER));
+            } else if (property.primitiveElementType != null) {
+                applyToBuilder.addStatement("$N.$N = this.$N", BUILDER, name, name)
+                              .addStatement("$N.$NSize = this.$N.length", BUILDER, name, name);
+            } else if (model.options.copyOnWrite && property.collectionRawType != null
+                    && CopyOnWriteRenderer.isSupported(property)) {
+                applyToBuilder.addStatement("$N.$N = $N.$N = this.$N", BUILDER, CopyOnWriteRenderer.frozenName(property),
+                        BUILDER, name, name);
+            } else {
+                applyToBuilder.addStatement("$N.$N = this.$N", BUILDER, name, name);
+            }
+            applyToBuilder.endControlFlow();
+        }
+
+        delta.addField(TypeName.LONG, MASK, Modifier.PRIVATE);
+        for (FieldSpec field : fields) {
+            delta.addField(field.type, field.name, Modifier.PRIVATE);
+        }
+        delta.addMethod(MethodSpec.constructorBuilder().addModifiers(Modifier.PRIVATE).build());
+        delta.addMethod(MethodSpec.methodBuilder(MASK)
+                                  .addJavadoc("@return bits of changed properties, e.g. $N\n",
+                                          properties.isEmpty() ? "0" : properties.get(0).constantName())
+                                  .addModifiers(Modifier.PUBLIC)
+                                  .returns(TypeName.LONG)
+                                  .addStatement("return $N", MASK)
+                                  .build());
+        delta.addMethod(MethodSpec.methodBuilder("isEmpty")
+                                  .addModifiers(Modifier.PUBLIC)
+                                  .returns(TypeName.BOOLEAN)
+                                  .addStatement("return $N == 0", MASK)
+                                  .build());
+        delta.addMethod(MethodSpec.methodBuilder("isChanged")
+                                  .addJavadoc("@return true if any of the properties changed\n")
+                                  .addModifiers(Modifier.PUBLIC)
+                                  .returns(TypeName.BOOLEAN)
+                                  .addParameter(TypeName.LONG, "properties")
+                                  .addStatement("return ($N & properties) != 0", MASK)
+                                  .build());
+        delta.addMethod(MethodSpec.methodBuilder("applyTo")
+                                  .addJavadoc("@return the target with changed values, or itself if nothing changed\n")
+                                  .addModifiers(Modifier.PUBLIC)
+                                  .returns(targetClassName)
+                                  .addParameter(targetClassName, "target")
+                                  .beginControlFlow("if ($N == 0)", MASK)
+                                  .addStatement("return target")
+                                  .endControlFlow()
+                                  .addStatement("$T $N = target.newBuilder()", builderType, BUILDER)
+                                  .addStatement("applyTo($N)", BUILDER)
+                                  .addStatement("return $N.build()", BUILDER)
+                                  .build());
+        delta.addMethod(applyToBuilder.build());
+        if (model.options.binaryCodec) {
+            renderCodec(model, deltaClassName, fields, fieldBits, delta);
+        }
+        targetMethods.add(diff.addStatement("return $N", DELTA).build());
+        nestTypes.add(delta.build());
+    }
+
+    private static void renderCodec(DescriptorModel model, ClassName deltaClassName, List<FieldSpec> fields,
+                                    Map<String, List<String>> fieldBits, TypeSpec.Builder delta) {
+        ClassName codec = BinaryCodecRenderer.CODEC;
+        String fingerprint = BinaryCodecRenderer.SCHEMA_FINGERPRINT;
+        MethodSpec.Builder size = MethodSpec.methodBuilder("serializedSize")
+                                            .addJavadoc("@return bytes written by {@link #writeTo(ByteBuffer)}\n")
+                                            .addModifiers(Modifier.PUBLIC)
+                                            .returns(TypeName.INT)
+                                            .addStatement("int size = $L + $T.varintSize($N)", Long.BYTES, codec,
+                                                    MASK);
+        MethodSpec.Builder write = MethodSpec.methodBuilder("writeTo")
+                                             .addJavadoc("Write at buffer's position, the changed values only.\n"
+                                                     + "@return the buffer\n")
+                                             .addModifiers(Modifier.PUBLIC)
+                                             .returns(ByteBuffer.class)
+                                             .addParameter(ByteBuffer.class, BUFFER)
+                                             .addStatement("$N.putLong($N)", BUFFER, fingerprint)
+                                             .addStatement("$T.putVarint($N, $N)", codec, BUFFER, MASK);
+        MethodSpec.Builder read = MethodSpec.methodBuilder("readFrom")
+                                            .addJavadoc("Read from buffer's position, which written by "
+                                                    + "{@link #writeTo(ByteBuffer)}.\n"
+                                                    + "@throws IllegalArgumentException if schema mismatch or corrupt\n"
+                                                    + "@throws java.nio.BufferUnderflowException if truncated\n")
+                                            .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                                            .returns(deltaClassName)
+                                            .addParameter(ByteBuffer.class, BUFFER)
+                                            .beginControlFlow("if ($N.getLong() != $N)", BUFFER, fingerprint)
+                                            .addStatement("throw new $T($S)", IllegalArgumentException.class,
+                                                    "Schema mismatch of " + model.targetClassName.simpleName())
+                                            .endControlFlow()
+                                            .addStatement("$T $N = new $T()", deltaClassName, DELTA, deltaClassName)
+                                            .addStatement("$N.$N = $T.getVarint($N)", DELTA, MASK, codec, BUFFER);
+        Set<String> locals = new HashSet<>(Arrays.asList(BUFFER, DELTA));
+        List<String> fieldLocals = BinaryCodecRenderer.newLocals(fields, locals);
+        for (int f = 0; f < fields.size(); ++f) {
+            FieldSpec field = fields.get(f);
+            List<String> constants = fieldBits.get(field.name);
+            if (constants.isEmpty()) {
+                continue;
+            }
+            CodeBlock.Builder bits = CodeBlock.builder();
+            for (int i = 0; i < constants.size(); ++i) {
+                bits.add(i == 0 ? "$N" : " | $N", constants.get(i));
+            }
+            if (constants.size() > 1) {
+                bits = CodeBlock.builder().add("($L)", bits.build());
+            }
+            CodeBlock condition = CodeBlock.of("($N & $L) != 0", MASK, bits.build());
+            size.beginControlFlow("if ($L)", condition);
+            write.beginControlFlow("if ($L)", condition);
+            read.beginControlFlow("if (($N.$N & $L) != 0)", DELTA, MASK, bits.build());
+            BinaryCodecRenderer.renderField(model, field, fieldLocals.get(f), locals, size, write, read);
+            read.addStatement("$N.$N = $N", DELTA, field.name, fieldLocals.get(f));
+            size.endControlFlow();
+            write.endControlFlow();
+            read.endControlFlow();
+        }
+        delta.addMethod(size.addStatement("return size").build());
+        delta.addMethod(write.addStatement("return $N", BUFFER).build());
+        delta.addMethod(read.addStatement("return $N", DELTA).build());
+    }
+}
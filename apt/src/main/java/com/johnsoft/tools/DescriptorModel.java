@@ -0,0 +1,410 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.johnsoft.tools;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.lang.model.element.Element;
+
+import com.johnsoft.annotations.GenBuilder;
+import com.squareup.javapoet.AnnotationSpec;
+import com.squareup.javapoet.ArrayTypeName;
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeVariableName;
+import com.squareup.javapoet.WildcardTypeName;
+
+/**
+ * Immutable model of one descriptor class (or its nested class), for {@link GenBuilderProcessor}.<br/>
+ * NOTE:
+ * 1. Extracted from javac tree on javac's thread, then can be rendered by {@link GenBuilderRenderer} on any thread.<br/>
+ * 2. Only hold JavaPoet's immutable specs and plain values, never javac's tree or symbol,
+ *    except {@link #originatingElement} which just be passed to Filer.<br/>
+ *
+ * @author John Kenrinus Lee
+ * @version 2019-05-08
+ */
+final class DescriptorModel {
+    final ClassName targetClassName;
+    final Element originatingElement;
+    final boolean topLevel;
+    final Options options;
+    final String classDoc;
+    final List<AnnotationSpec> annotations;
+    final TypeName superclass;
+    final List<TypeName> interfaces;
+    final List<TypeVariableName> typeParameters;
+    /**
+     * static fields, instance properties, copied methods and nested types, in declared order
+     */
+    final List<Member> members;
+
+    DescriptorModel(ClassName targetClassName, Element originatingElement, boolean topLevel, Options options,
+                    String classDoc, List<AnnotationSpec> annotations, TypeName superclass,
+                    List<TypeName> interfaces, List<TypeVariableName> typeParameters, List<Member> members) {
+        this.targetClassName = targetClassName;
+        this.originatingElement = originatingElement;
+        this.topLevel = topLevel;
+        this.options = options;
+        this.classDoc = classDoc;
+        this.annotations = immutable(annotations);
+        this.superclass = superclass;
+        this.interfaces = immutable(interfaces);
+        this.typeParameters = immutable(typeParameters);
+        this.members = immutable(members);
+    }
+
+    List<Property> properties() {
+        List<Property> properties = new ArrayList<>();
+        for (Member member : members) {
+            if (member.property != null) {
+                properties.add(member.property);
+            }
+        }
+        return properties;
+    }
+
+    List<DescriptorModel> nestedTypes() {
+        List<DescriptorModel> nestedTypes = new ArrayList<>();
+        for (Member member : members) {
+            if (member.nested != null) {
+                nestedTypes.add(member.nested);
+            }
+        }
+        return nestedTypes;
+    }
+
+    /**
+     * @return true if descriptor declared the method (copied to target) with the same name and parameter count
+     */
+    boolean declaresMethod(String name, int parameterCount) {
+        for (Member member : members) {
+            if (member.method != null && name.equals(member.method.name)
+                    && member.method.parameters.size() == parameterCount) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return target type, with wildcards for type parameters if has
+     */
+    TypeName targetTypeWithWildcards() {
+        if (typeParameters.isEmpty()) {
+            return targetClassName;
+        }
+        TypeName[] wildcards = new TypeName[typeParameters.size()];
+        Arrays.fill(wildcards, WildcardTypeName.subtypeOf(Object.class));
+        return ParameterizedTypeName.get(targetClassName, wildcards);
+    }
+
+    static <T> List<T> immutable(List<T> list) {
+        return Collections.unmodifiableList(new ArrayList<>(list));
+    }
+
+    /**
+     * Values of {@link GenBuilder} on the top-level descriptor, shared by nested types.
+     */
+    static final class Options {
+        final boolean useGetter;
+        final boolean inheritable;
+        final boolean nested;
+        final boolean elementAdder;
+        final boolean reusable;
+        final boolean intern;
+        final boolean copyOnWrite;
+        final boolean packed;
+        final boolean binaryCodec;
+        final boolean flyweight;
+        final boolean batch;
+        final boolean jsonCodec;
+        final boolean delta;
+        final boolean registry;
+        final boolean live;
+        final List<ClassName> joinTargets;
+        /**
+         * names of the enabled options which don't support generic class, in the order of checking
+         */
+        final List<String> genericUnsupported;
+
+        /**
+         * @param joinTargets {@link GenBuilder#join()}, which can't be read from annotation as Class
+         */
+        Options(GenBuilder annotation, List<ClassName> joinTargets) {
+            this.useGetter = annotation.getter();
+            this.inheritable = annotation.inheritable();
+            this.nested = annotation.nested();
+            this.elementAdder = annotation.elementAdder();
+            this.reusable = annotation.reusable();
+            this.intern = annotation.intern();
+            this.copyOnWrite = annotation.copyOnWrite();
+            this.packed = annotation.packed();
+            this.binaryCodec = annotation.binaryCodec();
+            this.flyweight = annotation.flyweight();
+            this.batch = annotation.batch();
+            this.jsonCodec = annotation.jsonCodec();
+            this.delta = annotation.delta();
+            this.registry = annotation.registry();
+            this.live = annotation.live();
+            this.joinTargets = immutable(joinTargets);
+
+            Map<String, Boolean> nonGeneric = new LinkedHashMap<>();
+            nonGeneric.put("binaryCodec", binaryCodec);
+            nonGeneric.put("flyweight", flyweight);
+            nonGeneric.put("batch", batch);
+            nonGeneric.put("jsonCodec", jsonCodec);
+            nonGeneric.put("registry", registry);
+            nonGeneric.put("live", live);
+            nonGeneric.put("delta", delta);
+            List<String> genericUnsupported = new ArrayList<>();
+            for (Map.Entry<String, Boolean> entry : nonGeneric.entrySet()) {
+                if (entry.getValue()) {
+                    genericUnsupported.add(entry.getKey());
+                }
+            }
+            this.genericUnsupported = immutable(genericUnsupported);
+        }
+    }
+
+    /**
+     * One of static field, instance property, copied method or nested type.
+     */
+    static final class Member {
+        final FieldSpec staticField;
+        final Property property;
+        final MethodSpec method;
+        final DescriptorModel nested;
+
+        private Member(FieldSpec staticField, Property property, MethodSpec method, DescriptorModel nested) {
+            this.staticField = staticField;
+            this.property = property;
+            this.method = method;
+            this.nested = nested;
+        }
+
+        static Member of(FieldSpec staticField) {
+            return new Member(staticField, null, null, null);
+        }
+
+        static Member of(Property property) {
+            return new Member(null, property, null, null);
+        }
+
+        static Member of(MethodSpec method) {
+            return new Member(null, null, method, null);
+        }
+
+        static Member of(DescriptorModel nested) {
+            return new Member(null, null, null, nested);
+        }
+    }
+
+    /**
+     * Collection and Map interfaces which copyOnWrite can freeze to unmodifiable ones
+     */
+    static final List<String> FREEZABLE_TYPES = Arrays.asList("java.util.Collection", "java.util.List",
+            "java.util.Set", "java.util.SortedSet", "java.util.Map", "java.util.SortedMap");
+
+    enum CollectionKind {
+        NONE, COLLECTION, MAP
+    }
+
+    /**
+     * How Builder gets the default value from field's initializer
+     */
+    enum DefaultKind {
+        /**
+         * absent, literals or constants, cheap to evaluate every time
+         */
+        CONSTANT,
+        /**
+         * marked {@link com.johnsoft.annotations.GenBuilder.Pure}, evaluate once into static final field
+         */
+        PURE,
+        /**
+         * evaluate in every Builder()
+         */
+        PER_INSTANCE
+    }
+
+    /**
+     * Instance field of descriptor, which make the final field in target and the field in Builder.
+     */
+    static final class Property {
+        final String name;
+        final TypeName type;
+        /**
+         * initializer's source, with simple names resolved, "null" if absent
+         */
+        final String defaultValue;
+        final String javadoc;
+        /**
+         * annotations for field, method, parameter, without GenBuilder's ones
+         */
+        final List<AnnotationSpec> fieldAnnotations;
+        final List<AnnotationSpec> methodAnnotations;
+        final List<AnnotationSpec> parameterAnnotations;
+        final String getterName;
+        final String setterName;
+        final String elementAddName;
+        /**
+         * {@link com.johnsoft.annotations.GenBuilder.Getter}'s value, or null
+         */
+        final String getterTemplate;
+        /**
+         * {@link com.johnsoft.annotations.GenBuilder.Setter}'s value, or null
+         */
+        final String setterTemplate;
+        /**
+         * {@link com.johnsoft.annotations.GenBuilder.Enums}, names and one of values or all empty
+         */
+        final List<String> enumNames;
+        final List<Integer> enumIntValues;
+        final List<String> enumStringValues;
+        final CollectionKind collectionKind;
+        /**
+         * element type for Collection, key type and value type for Map
+         */
+        final List<TypeName> elementTypes;
+        /**
+         * erasure of Collection/Map type, e.g. java.util.List, java.util.HashMap, or null
+         */
+        final ClassName collectionRawType;
+        final boolean collectionInterface;
+        /**
+         * int, long or double if marked {@link com.johnsoft.annotations.GenBuilder.Primitive}, or null
+         */
+        final TypeName primitiveElementType;
+        final DefaultKind defaultKind;
+        /**
+         * marked {@link com.johnsoft.annotations.GenBuilder.Lazy}, see {@link #isMemoized()} and {@link #isDeferred()}
+         */
+        final boolean lazy;
+
+        Property(String name, TypeName type, String defaultValue, String javadoc,
+                 List<AnnotationSpec> fieldAnnotations, List<AnnotationSpec> methodAnnotations,
+                 List<AnnotationSpec> parameterAnnotations,
+                 String getterName, String setterName, String elementAddName,
+                 String getterTemplate, String setterTemplate,
+                 List<String> enumNames, List<Integer> enumIntValues, List<String> enumStringValues,
+                 CollectionKind collectionKind, List<TypeName> elementTypes,
+                 ClassName collectionRawType, boolean collectionInterface, TypeName primitiveElementType,
+                 DefaultKind defaultKind, boolean lazy) {
+            this.name = name;
+            this.type = type;
+            this.defaultValue = defaultValue;
+            this.javadoc = javadoc;
+            this.fieldAnnotations = immutable(fieldAnnotations);
+            this.methodAnnotations = immutable(methodAnnotations);
+            this.parameterAnnotations = immutable(parameterAnnotations);
+            this.getterName = getterName;
+            this.setterName = setterName;
+            this.elementAddName = elementAddName;
+            this.getterTemplate = getterTemplate;
+            this.setterTemplate = setterTemplate;
+            this.enumNames = immutable(enumNames);
+            this.enumIntValues = immutable(enumIntValues);
+            this.enumStringValues = immutable(enumStringValues);
+            this.collectionKind = collectionKind;
+            this.elementTypes = immutable(elementTypes);
+            this.collectionRawType = collectionRawType;
+            this.collectionInterface = collectionInterface;
+            this.primitiveElementType = primitiveElementType;
+            this.defaultKind = defaultKind;
+            this.lazy = lazy;
+        }
+
+        /**
+         * @return true if the result of {@link #getterTemplate} is computed on the first call and cached in target
+         */
+        boolean isMemoized() {
+            return lazy && getterTemplate != null;
+        }
+
+        /**
+         * @return true if {@link #defaultValue} is evaluated by target's getter on the first call, not by Builder,
+         *         so the field of target and Builder holds null until then
+         */
+        boolean isDeferred() {
+            return lazy && getterTemplate == null;
+        }
+
+        /**
+         * @return name of Builder's static final field holding the {@link DefaultKind#PURE} default value
+         */
+        String defaultConstantName() {
+            return "DEFAULT_" + constantName();
+        }
+
+        /**
+         * @return name in upper snake case, e.g. WINDOW_HEIGHT for windowHeight
+         */
+        String constantName() {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < name.length(); ++i) {
+                char c = name.charAt(i);
+                if (Character.isUpperCase(c) && i > 0) {
+                    sb.append('_');
+                }
+                sb.append(Character.toUpperCase(c));
+            }
+            return sb.toString();
+        }
+
+        boolean isEnums() {
+            return !enumNames.isEmpty();
+        }
+
+        /**
+         * @return the field's type in target, primitive array for {@link #primitiveElementType}
+         */
+        TypeName targetType() {
+            return primitiveElementType == null ? type : ArrayTypeName.of(primitiveElementType);
+        }
+
+        /**
+         * @return false for Collection, Map (unless frozen by copyOnWrite) and array, which may be changed after build,
+         *         other referenced objects are trusted as immutable,
+         *         primitive array of {@link #primitiveElementType} is never exposed, so also immutable
+         */
+        boolean isShallowImmutable(Options options) {
+            if (primitiveElementType != null) {
+                return true;
+            }
+            if (collectionKind != CollectionKind.NONE) {
+                return options.copyOnWrite && isFreezable(collectionRawType, collectionInterface);
+            }
+            return !(type instanceof ArrayTypeName);
+        }
+
+        /**
+         * @return true if copyOnWrite will freeze the type to an unmodifiable one
+         */
+        static boolean isFreezable(ClassName collectionRawType, boolean collectionInterface) {
+            return collectionInterface && FREEZABLE_TYPES.contains(collectionRawType.toString());
+        }
+    }
+}
@@ -0,0 +1,407 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.johnsoft.tools;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import javax.lang.model.element.Modifier;
+
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+
+/**
+ * Render nested class Flyweight of target, a reusable view of the record in ByteBuffer,
+ * for {@link GenBuilderRenderer}.<br/>
+ * NOTE:
+ * 1. Layout in buffer's byte order: int record length, then target's instance fields at fixed offsets
+ *    (sorted by size for alignment, packed words as long), String as int offset of chars (from record start)
+ *    + int length (-1 for null); then UTF-16 chars of Strings, and zero padding to 8 bytes.<br/>
+ * 2. Getters read from buffer at call time, String getter returns the field's reused CharSequence view,
+ *    so no allocation per record, and the values are valid until next wrap() or the buffer changed.<br/>
+ * 3. The view class "FlyweightChars" is generated once in the top-level class, nested types share it.<br/>
+ *
+ * @author John Kenrinus Lee
+ * @version 2019-05-15
+ */
+final class FlyweightRenderer {
+    private static final String BUFFER = "buffer";
+    private static final String OFFSET = "offset";
+    private static final String VALUE = "value";
+    private static final String FIXED_SIZE = "FIXED_SIZE";
+    private static final String CHARS_CLASS = "FlyweightChars";
+    private static final String CHARS_SUFFIX = "Chars";
+    private static final int HEADER_BYTES = Integer.BYTES;
+    private static final int ALIGNMENT = Long.BYTES;
+    private static final ClassName STRING = ClassName.get(String.class);
+
+    private FlyweightRenderer() {
+    }
+
+    /**
+     * @return true if the property can be decoded in place
+     */
+    static boolean isSupported(DescriptorModel.Property property) {
+        return property.getterTemplate == null && property.primitiveElementType == null
+                && (property.type.isPrimitive() || STRING.equals(property.type));
+    }
+
+    /**
+     * @param fields target's instance fields
+     * @param materialize true if the private all-fields constructor rendered, then add materialize()
+     */
+    static TypeSpec render(DescriptorModel model, PackedLayout packedLayout, List<FieldSpec> fields,
+                           boolean materialize) {
+        ClassName targetClassName = model.targetClassName;
+        ClassName charsClassName = targetClassName.topLevelClassName().nestedClass(CHARS_CLASS);
+        String simpleName = targetClassName.simpleName();
+
+        // fixed offsets, larger first, so every field is aligned if record starts at multiple of 8
+        List<FieldSpec> sorted = new ArrayList<>();
+        for (int alignment = ALIGNMENT; alignment > 0; alignment >>= 1) {
+            for (FieldSpec field : fields) {
+                if (alignment(field.type) == alignment) {
+                    sorted.add(field);
+                }
+            }
+        }
+        int[] offsets = new int[fields.size()];
+        int position = HEADER_BYTES;
+        StringBuilder layout = new StringBuilder("Layout (bytes, in buffer's byte order):\n<pre>\n")
+                .append("0: int record length\n");
+        for (FieldSpec field : sorted) {
+            int alignment = alignment(field.type);
+            position = (position + alignment - 1) & -alignment;
+            offsets[fields.indexOf(field)] = position;
+            layout.append(position).append(": ").append(field.name);
+            if (STRING.equals(field.type)) {
+                layout.append(" (int offset of chars, int length or -1 for null)");
+            } else {
+                layout.append(" (").append(field.type).append(')');
+            }
+            layout.append('\n');
+            position += size(field.type);
+        }
+        int fixedSize = (position + ALIGNMENT - 1) & -ALIGNMENT;
+        layout.append(fixedSize).append(": UTF-16 chars of String fields, then zero padding to multiple of ")
+              .append(ALIGNMENT).append("\n</pre>\n");
+
+        List<FieldSpec> flyweightFields = new ArrayList<>();
+        List<MethodSpec> flyweightMethods = new ArrayList<>();
+        flyweightFields.add(FieldSpec.builder(TypeName.INT, FIXED_SIZE,
+                Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL)
+                                     .addJavadoc("bytes before String's chars, the minimum record length\n")
+                                     .initializer("$L", fixedSize)
+                                     .build());
+        for (FieldSpec field : fields) {
+            if (STRING.equals(field.type)) {
+                flyweightFields.add(FieldSpec.builder(charsClassName, field.name + CHARS_SUFFIX,
+                        Modifier.PRIVATE, Modifier.FINAL)
+                                             .initializer("new $T()", charsClassName)
+                                             .build());
+            }
+        }
+        flyweightFields.add(FieldSpec.builder(ByteBuffer.class, BUFFER, Modifier.PRIVATE).build());
+        flyweightFields.add(FieldSpec.builder(TypeName.INT, OFFSET, Modifier.PRIVATE).build());
+
+        ClassName flyweightClassName = targetClassName.nestedClass("Flyweight");
+        flyweightMethods.add(MethodSpec.methodBuilder("wrap")
+                                       .addJavadoc("View the record at offset of buffer, "
+                                               + "which written by {@link #write(ByteBuffer, int, $N)}.\n"
+                                               + "@return this\n", simpleName)
+                                       .addModifiers(Modifier.PUBLIC)
+                                       .returns(flyweightClassName)
+                                       .addParameter(ByteBuffer.class, BUFFER)
+                                       .addParameter(TypeName.INT, OFFSET)
+                                       .addStatement("this.$N = $N", BUFFER, BUFFER)
+                                       .addStatement("this.$N = $N", OFFSET, OFFSET)
+                                       .addStatement("return this")
+                                       .build());
+        flyweightMethods.add(MethodSpec.methodBuilder(OFFSET)
+                                       .addModifiers(Modifier.PUBLIC)
+                                       .returns(TypeName.INT)
+                                       .addStatement("return $N", OFFSET)
+                                       .build());
+        flyweightMethods.add(MethodSpec.methodBuilder("recordLength")
+                                       .addJavadoc("@return bytes of the record, "
+                                               + "the next record starts at offset() + recordLength()\n")
+                                       .addModifiers(Modifier.PUBLIC)
+                                       .returns(TypeName.INT)
+                                       .addStatement("return $N.getInt($N)", BUFFER, OFFSET)
+                                       .build());
+
+        // getters, same names as target's
+        for (DescriptorModel.Property property : model.properties()) {
+            PackedLayout.Slot slot = packedLayout.slot(property);
+            MethodSpec.Builder getter = MethodSpec.methodBuilder(property.getterName)
+                                                  .addJavadoc(property.javadoc)
+                                                  .addModifiers(Modifier.PUBLIC);
+            if (slot != null) {
+                int offset = offsets[indexOf(fields, slot.word)];
+                getter.returns(property.type)
+                      .addStatement("return $L", slot.read(read(TypeName.LONG, BUFFER, OFFSET, offset)));
+            } else {
+                int offset = offsets[indexOf(fields, property.name)];
+                if (STRING.equals(property.type)) {
+                    getter.addJavadoc("@return the reused view of chars, or null\n")
+                          .returns(CharSequence.class)
+                          .addStatement("return $N.wrap($N, $N + $N.getInt($L), $N.getInt($L))",
+                                  property.name + CHARS_SUFFIX, BUFFER, OFFSET, BUFFER,
+                                  plus(OFFSET, offset), BUFFER, plus(OFFSET, offset + Integer.BYTES));
+                } else {
+                    getter.returns(property.type)
+                          .addStatement("return $L", read(property.type, BUFFER, OFFSET, offset));
+                }
+            }
+            flyweightMethods.add(getter.build());
+        }
+
+        if (materialize) {
+            List<DescriptorModel.Property> properties = model.properties();
+            MethodSpec.Builder method = MethodSpec.methodBuilder("materialize")
+                                                  .addJavadoc("@return a new $N with the values of the record\n",
+                                                          simpleName)
+                                                  .addModifiers(Modifier.PUBLIC)
+                                                  .returns(targetClassName);
+            CodeBlock.Builder arguments = CodeBlock.builder();
+            // locals are named after the fields, so the fields of Flyweight are always accessed as this.xx
+            for (int i = 0; i < fields.size(); ++i) {
+                FieldSpec field = fields.get(i);
+                if (STRING.equals(field.type)) {
+                    method.addStatement("$T $N = $T.toString($N(), null)", STRING, field.name, Objects.class,
+                            property(properties, field.name).getterName);
+                } else {
+                    method.addStatement("$T $N = $L", field.type, field.name,
+                            read(field.type, "this." + BUFFER, "this." + OFFSET, offsets[i]));
+                }
+                arguments.add(i == 0 ? "$N" : ", $N", field.name);
+            }
+            if (model.options.intern) {
+                method.addStatement("return $N.intern(new $N($L))", simpleName, simpleName, arguments.build());
+            } else {
+                method.addStatement("return new $N($L)", simpleName, arguments.build());
+            }
+            flyweightMethods.add(method.build());
+        }
+
+        // static recordLength(XXX) and write(ByteBuffer, int, XXX)
+        MethodSpec.Builder length = MethodSpec.methodBuilder("recordLength")
+                                              .addJavadoc("@return bytes of the record written by "
+                                                      + "{@link #write(ByteBuffer, int, $N)}\n", simpleName)
+                                              .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                                              .returns(TypeName.INT)
+                                              .addParameter(targetClassName, VALUE)
+                                              .addStatement("int length = $N", FIXED_SIZE);
+        MethodSpec.Builder write = MethodSpec.methodBuilder("write")
+                                             .addJavadoc("Write the record at offset of buffer (absolute, position not changed),\n"
+                                                     + "buffer should have {@link #recordLength($N)} bytes there.\n"
+                                                     + "@return bytes written\n", simpleName)
+                                             .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                                             .returns(TypeName.INT)
+                                             .addParameter(ByteBuffer.class, BUFFER)
+                                             .addParameter(TypeName.INT, OFFSET)
+                                             .addParameter(targetClassName, VALUE)
+                                             .addStatement("int length = recordLength($N)", VALUE)
+                                             .addStatement("$N.putInt($N, length)", BUFFER, OFFSET)
+                                             .addStatement("int position = $N", FIXED_SIZE);
+        for (int i = 0; i < fields.size(); ++i) {
+            FieldSpec field = fields.get(i);
+            String value = VALUE + "." + field.name;
+            if (STRING.equals(field.type)) {
+                String chars = field.name + "Length";
+                length.beginControlFlow("if ($N != null)", value)
+                      .addStatement("length += $N.length() * $T.BYTES", value, Character.class)
+                      .endControlFlow();
+                write.beginControlFlow("if ($N == null)", value)
+                     .addStatement("$N.putInt($L, 0)", BUFFER, plus(OFFSET, offsets[i]))
+                     .addStatement("$N.putInt($L, -1)", BUFFER, plus(OFFSET, offsets[i] + Integer.BYTES))
+                     .nextControlFlow("else")
+                     .addStatement("int $N = $N.length()", chars, value)
+                     .addStatement("$N.putInt($L, position)", BUFFER, plus(OFFSET, offsets[i]))
+                     .addStatement("$N.putInt($L, $N)", BUFFER, plus(OFFSET, offsets[i] + Integer.BYTES), chars)
+                     .beginControlFlow("for (int i = 0; i < $N; ++i, position += $T.BYTES)", chars, Character.class)
+                     .addStatement("$N.putChar($N + position, $N.charAt(i))", BUFFER, OFFSET, value)
+                     .endControlFlow()
+                     .endControlFlow();
+            } else {
+                write.addStatement("$L", write(field.type, plus(OFFSET, offsets[i]), value));
+            }
+        }
+        flyweightMethods.add(length.addStatement("return (length + $L) & ~$L", ALIGNMENT - 1, ALIGNMENT - 1).build());
+        flyweightMethods.add(write.beginControlFlow("for (; position < length; ++position)")
+                                  .addStatement("$N.put($N + position, (byte) 0)", BUFFER, OFFSET)
+                                  .endControlFlow()
+                                  .addStatement("return length")
+                                  .build());
+
+        return TypeSpec.classBuilder(flyweightClassName)
+                       .addJavadoc("Reusable view of one $N record in ByteBuffer (e.g. MappedByteBuffer),\n"
+                               + "re-point it by {@link #wrap(ByteBuffer, int)}.\n", simpleName)
+                       .addJavadoc(layout.toString().replace("$", "$$"))
+                       .addModifiers(Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL)
+                       .addFields(flyweightFields)
+                       .addMethods(flyweightMethods)
+                       .build();
+    }
+
+    /**
+     * CharSequence view of UTF-16 chars in ByteBuffer, in the top-level class
+     */
+    static TypeSpec renderChars(ClassName topLevelClassName) {
+        ClassName charsClassName = topLevelClassName.nestedClass(CHARS_CLASS);
+        String start = "start";
+        String end = "end";
+        String length = "length";
+        String index = "index";
+        return TypeSpec.classBuilder(charsClassName)
+                       .addJavadoc("CharSequence view of UTF-16 chars in ByteBuffer, reused by Flyweight\n")
+                       .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                       .addSuperinterface(CharSequence.class)
+                       .addField(ByteBuffer.class, BUFFER, Modifier.PRIVATE)
+                       .addField(TypeName.INT, start, Modifier.PRIVATE)
+                       .addField(TypeName.INT, length, Modifier.PRIVATE)
+                       .addMethod(MethodSpec.methodBuilder("wrap")
+                                            .addJavadoc("@return this, or null if length is negative\n")
+                                            .returns(charsClassName)
+                                            .addParameter(ByteBuffer.class, BUFFER)
+                                            .addParameter(TypeName.INT, start)
+                                            .addParameter(TypeName.INT, length)
+                                            .beginControlFlow("if ($N < 0)", length)
+                                            .addStatement("return null")
+                                            .endControlFlow()
+                                            .addStatement("this.$N = $N", BUFFER, BUFFER)
+                                            .addStatement("this.$N = $N", start, start)
+                                            .addStatement("this.$N = $N", length, length)
+                                            .addStatement("return this")
+                                            .build())
+                       .addMethod(MethodSpec.methodBuilder(length)
+                                            .addAnnotation(Override.class)
+                                            .addModifiers(Modifier.PUBLIC)
+                                            .returns(TypeName.INT)
+                                            .addStatement("return $N", length)
+                                            .build())
+                       .addMethod(MethodSpec.methodBuilder("charAt")
+                                            .addAnnotation(Override.class)
+                                            .addModifiers(Modifier.PUBLIC)
+                                            .returns(TypeName.CHAR)
+                                            .addParameter(TypeName.INT, index)
+                                            .beginControlFlow("if ($N < 0 || $N >= $N)", index, index, length)
+                                            .addStatement("throw new $T($N)", StringIndexOutOfBoundsException.class,
+                                                    index)
+                                            .endControlFlow()
+                                            .addStatement("return $N.getChar($N + $N * $T.BYTES)",
+                                                    BUFFER, start, index, Character.class)
+                                            .build())
+                       .addMethod(MethodSpec.methodBuilder("subSequence")
+                                            .addAnnotation(Override.class)
+                                            .addModifiers(Modifier.PUBLIC)
+                                            .returns(CharSequence.class)
+                                            .addParameter(TypeName.INT, start)
+                                            .addParameter(TypeName.INT, end)
+                                            .beginControlFlow("if ($N < 0 || $N > $N || $N > $N)",
+                                                    start, end, length, start, end)
+                                            .addStatement("throw new $T($N)", StringIndexOutOfBoundsException.class,
+                                                    start)
+                                            .endControlFlow()
+                                            .addStatement("return new $N().wrap($N, this.$N + $N * $T.BYTES, $N - $N)",
+                                                    CHARS_CLASS, BUFFER, start, start, Character.class, end, start)
+                                            .build())
+                       .addMethod(MethodSpec.methodBuilder("toString")
+                                            .addAnnotation(Override.class)
+                                            .addModifiers(Modifier.PUBLIC)
+                                            .returns(STRING)
+                                            .addStatement("char[] chars = new char[$N]", length)
+                                            .beginControlFlow("for (int i = 0; i < $N; ++i)", length)
+                                            .addStatement("chars[i] = $N.getChar($N + i * $T.BYTES)",
+                                                    BUFFER, start, Character.class)
+                                            .endControlFlow()
+                                            .addStatement("return new $T(chars)", STRING)
+                                            .build())
+                       .build();
+    }
+
+    private static int indexOf(List<FieldSpec> fields, String name) {
+        for (int i = 0; i < fields.size(); ++i) {
+            if (fields.get(i).name.equals(name)) {
+                return i;
+            }
+        }
+        throw new IllegalStateException("No field " + name);
+    }
+
+    private static DescriptorModel.Property property(List<DescriptorModel.Property> properties, String name) {
+        for (DescriptorModel.Property property : properties) {
+            if (property.name.equals(name)) {
+                return property;
+            }
+        }
+        throw new IllegalStateException("No property " + name);
+    }
+
+    private static String plus(String base, int offset) {
+        return offset == 0 ? base : base + " + " + offset;
+    }
+
+    private static CodeBlock read(TypeName type, String buffer, String base, int offset) {
+        String index = plus(base, offset);
+        if (TypeName.BOOLEAN.equals(type)) {
+            return CodeBlock.of("$N.get($L) != 0", buffer, index);
+        }
+        if (TypeName.BYTE.equals(type)) {
+            return CodeBlock.of("$N.get($L)", buffer, index);
+        }
+        return CodeBlock.of("$N.get$L($L)", buffer, accessorSuffix(type), index);
+    }
+
+    private static CodeBlock write(TypeName type, String index, String value) {
+        if (TypeName.BOOLEAN.equals(type)) {
+            return CodeBlock.of("$N.put($L, (byte) ($N ? 1 : 0))", BUFFER, index, value);
+        }
+        if (TypeName.BYTE.equals(type)) {
+            return CodeBlock.of("$N.put($L, $N)", BUFFER, index, value);
+        }
+        return CodeBlock.of("$N.put$L($L, $N)", BUFFER, accessorSuffix(type), index, value);
+    }
+
+    private static String accessorSuffix(TypeName type) {
+        String name = type.toString();
+        return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    }
+
+    private static int size(TypeName type) {
+        return STRING.equals(type) ? Integer.BYTES * 2 : alignment(type);
+    }
+
+    private static int alignment(TypeName type) {
+        if (TypeName.LONG.equals(type) || TypeName.DOUBLE.equals(type)) {
+            return 8;
+        }
+        if (TypeName.INT.equals(type) || TypeName.FLOAT.equals(type) || STRING.equals(type)) {
+            return 4;
+        }
+        if (TypeName.SHORT.equals(type) || TypeName.CHAR.equals(type)) {
+            return 2;
+        }
+        return 1;
+    }
+}
@@ -18,14 +18,19 @@ package com.johnsoft.tools;
 
 import com.johnsoft.annotations.GenBuilder;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.Writer;
 import java.lang.annotation.ElementType;
 import java.lang.annotation.Target;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 import javax.annotation.processing.Filer;
 import javax.annotation.processing.Messager;
@@ -41,23 +46,23 @@ import javax.lang.model.element.Modifier;
 import javax.lang.model.element.NestingKind;
 import javax.lang.model.element.TypeElement;
 import javax.lang.model.element.TypeParameterElement;
+import javax.lang.model.element.VariableElement;
 import javax.lang.model.type.DeclaredType;
 import javax.lang.model.type.TypeKind;
 import javax.lang.model.type.TypeMirror;
 import javax.lang.model.util.Elements;
 import javax.lang.model.util.Types;
 import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
 
 import com.squareup.javapoet.AnnotationSpec;
 import com.squareup.javapoet.ArrayTypeName;
 import com.squareup.javapoet.ClassName;
-import com.squareup.javapoet.CodeBlock;
 import com.squareup.javapoet.FieldSpec;
 import com.squareup.javapoet.JavaFile;
 import com.squareup.javapoet.MethodSpec;
 import com.squareup.javapoet.ParameterSpec;
 import com.squareup.javapoet.TypeName;
-import com.squareup.javapoet.TypeSpec;
 import com.squareup.javapoet.TypeVariableName;
 import com.sun.source.tree.CompilationUnitTree;
 import com.sun.source.tree.ImportTree;
@@ -74,7 +79,29 @@ import com.sun.tools.javac.tree.TreeScanner;
  * @version 2019-04-17
  */
 public class GenBuilderProcessor implements IAnnoProcessor {
+    /**
+     * Be part of generation cache's fingerprint, change it when generated code changed.
+     */
+    static final String VERSION = "1.23";
+    /**
+     * Processor option, the file path of {@link GenerationCache}, no cache if absent.
+     */
+    static final String OPTION_CACHE_FILE = "genbuilder.cacheFile";
+    /**
+     * Processor option, the file path of {@link ProcessProfiler}'s JSON report, no report if absent.
+     */
+    static final String OPTION_PROFILE_REPORT = "genbuilder.profileReport";
+    /**
+     * Processor option, the thread count for rendering sources, 1 means render on javac's thread,
+     * default is count of available processors.
+     */
+    static final String OPTION_PARALLELISM = "genbuilder.parallelism";
+
     private Trees trees;
+    private GenerationCache cache;
+    private final ProcessProfiler profiler = new ProcessProfiler();
+    private File profileReport;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
 
     @Override
     public void fillSupportedAnnotationTypes(final Set<String> types) {
@@ -83,11 +110,36 @@ public class GenBuilderProcessor implements IAnnoProcessor {
 
     @Override
     public void fillSupportedOptions(final Set<String> options) {
+        options.add(OPTION_CACHE_FILE);
+        options.add(OPTION_PROFILE_REPORT);
+        options.add(OPTION_PARALLELISM);
     }
 
     @Override
     public void init(ProcessingEnvironment processingEnvironment) {
         trees = Trees.instance(processingEnvironment);
+        String cacheFile = processingEnvironment.getOptions().get(OPTION_CACHE_FILE);
+        if (cacheFile != null && !cacheFile.isEmpty()) {
+            try {
+                cache = GenerationCache.load(cacheFile);
+            } catch (IOException e) {
+                processingEnvironment.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                        "GenBuilder cache disabled: " + e);
+            }
+        }
+        String reportFile = processingEnvironment.getOptions().get(OPTION_PROFILE_REPORT);
+        if (reportFile != null && !reportFile.isEmpty()) {
+            profileReport = new File(reportFile);
+        }
+        String threads = processingEnvironment.getOptions().get(OPTION_PARALLELISM);
+        if (threads != null && !threads.isEmpty()) {
+            try {
+                parallelism = Integer.parseInt(threads);
+            } catch (NumberFormatException e) {
+                processingEnvironment.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                        "Invalid " + OPTION_PARALLELISM + ": " + threads);
+            }
+        }
     }
 
     @Override
@@ -110,6 +162,7 @@ public class GenBuilderProcessor implements IAnnoProcessor {
         }
         messager.printMessage(Diagnostic.Kind.NOTE, "DO -> processGenBuilder");
 
+        List<Generation> generations = new ArrayList<>();
         for (Element element : roundEnvironment.getElementsAnnotatedWith(GenBuilder.class)) {
             if (element.getKind() != ElementKind.CLASS) { // interface is not ok
                 throw new IllegalArgumentException(String.format("Only class can be annotated with @%s",
@@ -120,58 +173,107 @@ public class GenBuilderProcessor implements IAnnoProcessor {
                 throw new IllegalArgumentException(String.format("Only Top-level class can be annotated with @%s",
                         GenBuilder.class.getSimpleName()));
             }
+            String cacheKey = typeElement.getQualifiedName().toString();
+            String fingerprint = null;
+            if (cache != null) {
+                fingerprint = makeFingerprint(trees, typeElement);
+                if (cache.isUpToDate(cacheKey, fingerprint)) {
+                    continue;
+                }
+            }
+
+            ProcessProfiler.Descriptor profile = profiler.newDescriptor(cacheKey);
             GenBuilder annotation = typeElement.getAnnotation(GenBuilder.class);
-            boolean useGetter = annotation.getter();
-            boolean inheritable = annotation.inheritable();
-            boolean nested = annotation.nested();
-            boolean elementAdder = annotation.elementAdder();
             Object join = extraMemberInAnnotation(typeElement, GenBuilder.class, "join");
-            final String[] joinStrings;
+            List<ClassName> joinTargets = new ArrayList<>();
             if (join instanceof List) {
-                List list = (List) join;
-                int len = list.size();
-                joinStrings = new String[len];
-                for (int i = 0; i < len; ++i) {
-                    joinStrings[i] = list.get(i).toString();
+                for (Object o : (List) join) {
+                    String s = o.toString();
+                    joinTargets.add(ClassName.bestGuess(s.substring(0, s.lastIndexOf(".class"))));
                 }
-            } else {
-                joinStrings = new String[0];
             }
+            profile.setJoinTargets(joinTargets.size());
+            DescriptorModel.Options descriptorOptions = new DescriptorModel.Options(annotation, joinTargets);
 
+            long start = profile.start();
             Map<String, String> nameResolveMap = resolveNameSymbols(trees, typeElement);
+            profile.stop(ProcessProfiler.Phase.RESOLVE_NAME_SYMBOLS, start);
             ClassName targetClassName = makeTargetName(typeElement.getQualifiedName().toString(),
                     typeElement.getSimpleName().toString(), nameResolveMap.get("package"));
-            TypeSpec typeSpec =
-                    doProcess(targetClassName, typeElement, typeUtils, elementUtils, messager, nameResolveMap,
-                            useGetter, inheritable, nested, elementAdder, joinStrings);
+            start = profile.start();
+            DescriptorModel model = doProcess(targetClassName, typeElement, typeUtils, elementUtils, messager,
+                    nameResolveMap, descriptorOptions, profile);
+            profile.stop(ProcessProfiler.Phase.DO_PROCESS, start);
+            profile.count(model);
+            generations.add(new Generation(model, profile, cacheKey, fingerprint));
+        }
+
+        render(generations);
+
+        for (Generation generation : generations) { // write to file, Filer is not thread safe
+            long start = generation.profile.start();
+            try {
+                JavaFileObject fileObject = filer.createSourceFile(generation.model.targetClassName.toString(),
+                        generation.originatingElements);
+                try (Writer writer = fileObject.openWriter()) {
+                    writer.write(generation.source);
+                }
+                if (cache != null) {
+                    cache.update(generation.cacheKey, generation.fingerprint, fileObject.toUri());
+                }
+            } catch (IOException e) {
+                messager.printMessage(Diagnostic.Kind.WARNING, e.toString());
+            }
+            generation.profile.stop(ProcessProfiler.Phase.EMIT, start);
+        }
 
-            try { // write to file
-                JavaFile.builder(targetClassName.packageName(), typeSpec).indent("    ").build()
-                        .writeTo(filer);
+        if (profileReport != null) {
+            try {
+                profiler.writeReport(profileReport);
             } catch (IOException e) {
                 messager.printMessage(Diagnostic.Kind.WARNING, e.toString());
             }
         }
+        if (cache != null) {
+            messager.printMessage(Diagnostic.Kind.NOTE, cache.roundSummary());
+            try {
+                cache.save();
+            } catch (IOException e) {
+                messager.printMessage(Diagnostic.Kind.WARNING, e.toString());
+            }
+        }
+    }
+
+    /**
+     * render all generations' source, on fork-join pool if there are more than one.
+     */
+    private void render(List<Generation> generations) {
+        if (parallelism <= 1 || generations.size() <= 1) {
+            for (Generation generation : generations) {
+                generation.run();
+            }
+            return;
+        }
+        ForkJoinPool pool = new ForkJoinPool(Math.min(parallelism, generations.size()));
+        try {
+            List<ForkJoinTask<?>> tasks = new ArrayList<>();
+            for (Generation generation : generations) {
+                tasks.add(pool.submit(generation));
+            }
+            for (ForkJoinTask<?> task : tasks) {
+                task.join();
+            }
+        } finally {
+            pool.shutdown();
+        }
     }
 
-    private TypeSpec doProcess(ClassName targetClassName, TypeElement typeElement,
-                               Types typeUtils, Elements elementUtils,
-                               Messager messager, Map<String, String> nameResolveMap,
-                               boolean useGetter, boolean inheritable, boolean nested,
-                               boolean elementAdder, String[] join) {
-        ClassName builderClassName = targetClassName.nestedClass("Builder");
-        TypeVariableName typeVariableName = TypeVariableName.get("T", builderClassName);
-        String targetParamName = makeParamName(targetClassName.simpleName());
-        String builderParamName = "builder";
-
-        List<FieldSpec> targetFields = new ArrayList<>();
-        List<FieldSpec> builderFields = new ArrayList<>();
-        List<MethodSpec> targetMethods = new ArrayList<>();
-        List<MethodSpec> builderMethods = new ArrayList<>();
-        List<TypeSpec> nestTypes = new ArrayList<>();
-        CodeBlock.Builder targetCopyCode = CodeBlock.builder();
-        CodeBlock.Builder builderDefaultCode = CodeBlock.builder();
-        CodeBlock.Builder builderCopyCode = CodeBlock.builder();
+    private DescriptorModel doProcess(ClassName targetClassName, TypeElement typeElement,
+                                      Types typeUtils, Elements elementUtils,
+                                      Messager messager, Map<String, String> nameResolveMap,
+                                      DescriptorModel.Options descriptorOptions,
+                                      ProcessProfiler.Descriptor profile) {
+        List<DescriptorModel.Member> members = new ArrayList<>();
 
         for (Tree member : trees.getTree(typeElement).getMembers()) {
             switch (member.getKind()) {
@@ -189,282 +291,180 @@ public class GenBuilderProcessor implements IAnnoProcessor {
                     }
 
                     if (modifiers.contains(Modifier.STATIC)) { // just copy
-                        targetFields.add(FieldSpec.builder(typeName, name, modifiers.toArray(EMPTY_MODIFIERS))
-                                                  .initializer(value)
-                                                  .addAnnotations(convertAnnotations(variableDecl.sym,
-                                                          ElementType.FIELD))
-                                                  .addJavadoc(javadoc)
-                                                  .build());
-                    } else {
-                        if (useGetter) {
-                            // private field
-                            targetFields.add(FieldSpec.builder(typeName, name, Modifier.PRIVATE, Modifier.FINAL)
-                                                      .addAnnotations(convertAnnotations(variableDecl.sym,
-                                                              ElementType.FIELD,
-                                                              GenBuilder.Getter.class,
-                                                              GenBuilder.Setter.class,
-                                                              GenBuilder.Enums.class))
-                                                      .build());
-                            // make getter
-                            String content = "return $N";
-                            GenBuilder.Getter getter =
-                                    variableDecl.sym.getAnnotation(GenBuilder.Getter.class);
-                            if (getter != null) {
-                                content = getter.value();
+                        members.add(DescriptorModel.Member.of(
+                                FieldSpec.builder(typeName, name, modifiers.toArray(EMPTY_MODIFIERS))
+                                         .initializer(value)
+                                         .addAnnotations(convertAnnotations(variableDecl.sym, ElementType.FIELD))
+                                         .addJavadoc(javadoc)
+                                         .build()));
+                        break;
+                    }
+
+                    GenBuilder.Getter getter = variableDecl.sym.getAnnotation(GenBuilder.Getter.class);
+                    GenBuilder.Setter setter = variableDecl.sym.getAnnotation(GenBuilder.Setter.class);
+                    List<String> enumNames = new ArrayList<>();
+                    List<Integer> enumIntValues = new ArrayList<>();
+                    List<String> enumStringValues = new ArrayList<>();
+                    GenBuilder.Enums enums = variableDecl.sym.getAnnotation(GenBuilder.Enums.class);
+                    if (enums != null) {
+                        String[] names = enums.names();
+                        int[] ints = enums.intValues();
+                        String[] strings = enums.stringValues();
+                        int length = names.length;
+                        if (ints.length > 0) {
+                            if (length != ints.length) {
+                                throw new IllegalArgumentException("GenBuilder.Enums: "
+                                        + "names().length != intValues().length");
                             }
-                            targetMethods.add(MethodSpec.methodBuilder(makeBeanName(name, true, type))
-                                            .addAnnotations(convertAnnotations(variableDecl.sym, ElementType.METHOD))
-                                            .addJavadoc(javadoc)
-                                            .addModifiers(Modifier.PUBLIC)
-                                            .returns(typeName)
-                                            .addStatement(content, name)
-                                            .build());
-                        } else {
-                            // public field
-                            targetFields.add(FieldSpec.builder(typeName, name, Modifier.PUBLIC, Modifier.FINAL)
-                                                      .addAnnotations(convertAnnotations(variableDecl.sym,
-                                                              ElementType.FIELD,
-                                                              GenBuilder.Getter.class,
-                                                              GenBuilder.Setter.class,
-                                                              GenBuilder.Enums.class))
-                                                      .addJavadoc(javadoc)
-                                                      .build());
-                        }
-                        // private field in Builder
-                        builderFields.add(FieldSpec.builder(typeName, name, Modifier.PRIVATE)
-                                                   .addAnnotations(convertAnnotations(variableDecl.sym,
-                                                           ElementType.FIELD,
-                                                           GenBuilder.Getter.class,
-                                                           GenBuilder.Setter.class,
-                                                           GenBuilder.Enums.class))
-                                                   .build());
-                        GenBuilder.Enums enums = variableDecl.sym.getAnnotation(GenBuilder.Enums.class);
-                        if (enums != null) {
-                            String[] names = enums.names();
-                            int[] ints = enums.intValues();
-                            String[] strings = enums.stringValues();
-                            int length = names.length;
-                            if (ints.length > 0) {
-                                if (length != ints.length) {
-                                    throw new IllegalArgumentException("GenBuilder.Enums: "
-                                            + "names().length != intValues().length");
-                                }
-                                for (int i = 0; i < length; ++i) {
-                                    builderMethods.add(MethodSpec.methodBuilder(makeBeanName(name, false, type)
-                                            + "To" + names[i])
-                                                    .addJavadoc(javadoc)
-                                                    .addModifiers(Modifier.PUBLIC)
-                                                    .returns(inheritable ? typeVariableName : builderClassName)
-                                                    .addStatement("this.$N = $L", name, ints[i])
-                                                    .addStatement(inheritable
-                                                                  ? "return (" + typeVariableName.name + ") this"
-                                                                  : "return this")
-                                                    .build());
-                                }
-                            } else if (strings.length > 0) {
-                                if (length != strings.length) {
-                                    throw new IllegalArgumentException("GenBuilder.Enums: "
-                                            + "names().length != stringValues().length");
-                                }
-                                for (int i = 0; i < length; ++i) {
-                                    builderMethods.add(MethodSpec.methodBuilder(makeBeanName(name, false, type)
-                                            + "To" + names[i])
-                                                    .addJavadoc(javadoc)
-                                                    .addModifiers(Modifier.PUBLIC)
-                                                    .returns(inheritable ? typeVariableName : builderClassName)
-                                                    .addStatement("this.$N = $S", name, strings[i])
-                                                    .addStatement(inheritable
-                                                                  ? "return (" + typeVariableName.name + ") this"
-                                                                  : "return this")
-                                                    .build());
-                                }
-                            } else {
+                            for (int i : ints) {
+                                enumIntValues.add(i);
+                            }
+                        } else if (strings.length > 0) {
+                            if (length != strings.length) {
                                 throw new IllegalArgumentException("GenBuilder.Enums: "
-                                        + "intValues().length <= 0 && stringValues().length <= 0");
+                                        + "names().length != stringValues().length");
                             }
+                            Collections.addAll(enumStringValues, strings);
                         } else {
-                            // make setter in Builder
-                            String statement = "this.$N = $N";
-                            GenBuilder.Setter setter = variableDecl.sym.getAnnotation(GenBuilder.Setter.class);
-                            if (setter != null) {
-                                statement = setter.value();
-                            }
-                            ParameterSpec ps = ParameterSpec.builder(typeName, name)
-                                                            .addAnnotations(convertAnnotations(variableDecl.sym,
-                                                                    ElementType.PARAMETER))
-                                                            .build();
-                            builderMethods.add(MethodSpec.methodBuilder(makeBeanName(name, false, type))
-                                            .addJavadoc(javadoc)
-                                            .addModifiers(Modifier.PUBLIC)
-                                            .returns(inheritable ? typeVariableName : builderClassName)
-                                            .addParameter(ps)
-                                            .addStatement(statement, name, name)
-                                            .addStatement(inheritable ? "return (" + typeVariableName.name + ") this"
-                                                              : "return this")
-                                            .build());
+                            throw new IllegalArgumentException("GenBuilder.Enums: "
+                                    + "intValues().length <= 0 && stringValues().length <= 0");
                         }
+                        Collections.addAll(enumNames, names);
+                    }
 
-                        // make statement will be used in constructors
-                        targetCopyCode.addStatement("this.$N = $N.$N", name, builderParamName, name);
-                        builderDefaultCode.addStatement("this.$N = $L", name, value);
-                        builderCopyCode.addStatement("this.$N = $N.$N", name, targetParamName, name);
-
-                        if (elementAdder) { // addToXXX -> List.add / Map.put
-                            TypeMirror collectionType = elementUtils
-                                    .getTypeElement("java.util.Collection").asType();
-                            TypeMirror listType = elementUtils
-                                    .getTypeElement("java.util.List").asType();
-                            TypeMirror setType = elementUtils
-                                    .getTypeElement("java.util.Set").asType();
-                            TypeMirror mapType = elementUtils
-                                    .getTypeElement("java.util.Map").asType();
-                            TypeMirror rawType = typeUtils.erasure(type);
-                            String rawTypeName = String.valueOf(rawType);
-                            if (typeUtils.isAssignable(collectionType, rawType)
-                                    || typeUtils.isAssignable(listType, rawType)
-                                    || typeUtils.isAssignable(setType, rawType)
-                                    || "java.util.ArrayList".equals(rawTypeName)
-                                    || "java.util.LinkedList".equals(rawTypeName)
-                                    || "java.util.HashSet".equals(rawTypeName)
-                                    || "java.util.TreeSet".equals(rawTypeName)) {
-                                Type valueType = type.allparams().get(0);
-                                builderMethods.add(MethodSpec.methodBuilder(makeElementAddName(name, type))
-                                                .addJavadoc(javadoc)
-                                                .addModifiers(Modifier.PUBLIC)
-                                                .returns(inheritable ? typeVariableName : builderClassName)
-                                                .addParameter(TypeName.get(valueType), "value")
-                                                .addStatement("$N.add(value)", name)
-                                                .addStatement(inheritable
-                                                              ? "return (" + typeVariableName.name + ") this"
-                                                              : "return this")
-                                                .build());
-                            } else if (typeUtils.isAssignable(mapType, rawType)
-                                    || "java.util.HashMap".equals(rawTypeName)
-                                    || "java.util.LinkedHashMap".equals(rawTypeName)
-                                    || "java.util.WeakHashMap".equals(rawTypeName)
-                                    || "java.util.ConcurrentHashMap".equals(rawTypeName)
-                                    || "java.util.TreeMap".equals(rawTypeName)) {
-                                Type keyType = type.allparams().get(0);
-                                Type valueType = type.allparams().get(1);
-                                builderMethods.add(MethodSpec.methodBuilder(makeElementAddName(name, type))
-                                                .addJavadoc(javadoc)
-                                                .addModifiers(Modifier.PUBLIC)
-                                                .returns(inheritable ? typeVariableName : builderClassName)
-                                                .addParameter(TypeName.get(keyType), "key")
-                                                .addParameter(TypeName.get(valueType), "value")
-                                                .addStatement("$N.put(key, value)", name)
-                                                .addStatement(inheritable
-                                                              ? "return (" + typeVariableName.name + ") this"
-                                                              : "return this")
-                                                .build());
-                            }
+                    DescriptorModel.CollectionKind collectionKind = DescriptorModel.CollectionKind.NONE;
+                    List<TypeName> elementTypes = new ArrayList<>();
+                    ClassName collectionRawType = null;
+                    boolean collectionInterface = false;
+                    TypeMirror rawType = typeUtils.erasure(type);
+                    // only the parameterized subtypes, e.g. List<String>, HashMap<String, Integer>
+                    if (rawType.getKind() == TypeKind.DECLARED && !type.allparams().isEmpty()) {
+                        TypeMirror collectionType = typeUtils.erasure(
+                                elementUtils.getTypeElement("java.util.Collection").asType());
+                        TypeMirror mapType = typeUtils.erasure(elementUtils.getTypeElement("java.util.Map").asType());
+                        if (typeUtils.isAssignable(rawType, collectionType)) {
+                            collectionKind = DescriptorModel.CollectionKind.COLLECTION;
+                            elementTypes.add(TypeName.get(type.allparams().get(0)));
+                        } else if (typeUtils.isAssignable(rawType, mapType) && type.allparams().size() > 1) {
+                            collectionKind = DescriptorModel.CollectionKind.MAP;
+                            elementTypes.add(TypeName.get(type.allparams().get(0)));
+                            elementTypes.add(TypeName.get(type.allparams().get(1)));
+                        }
+                        if (collectionKind != DescriptorModel.CollectionKind.NONE) {
+                            TypeElement rawElement = (TypeElement) typeUtils.asElement(rawType);
+                            collectionRawType = ClassName.get(rawElement);
+                            collectionInterface = rawElement.getKind() == ElementKind.INTERFACE;
+                        }
+                    }
+
+                    TypeName primitiveElementType = null;
+                    if (variableDecl.sym.getAnnotation(GenBuilder.Primitive.class) != null) {
+                        TypeMirror setType = typeUtils.erasure(elementUtils.getTypeElement("java.util.Set").asType());
+                        if (collectionKind == DescriptorModel.CollectionKind.COLLECTION
+                                && !typeUtils.isAssignable(rawType, setType) && elementTypes.get(0).isBoxedPrimitive()) {
+                            primitiveElementType = elementTypes.get(0).unbox();
+                        }
+                        if (!TypeName.INT.equals(primitiveElementType) && !TypeName.LONG.equals(primitiveElementType)
+                                && !TypeName.DOUBLE.equals(primitiveElementType)) {
+                            throw new IllegalArgumentException("GenBuilder.Primitive: "
+                                    + "only List or Collection of Integer, Long, Double is supported, but got " + name);
                         }
+                        if (getter != null || setter != null || enums != null) {
+                            throw new IllegalArgumentException("GenBuilder.Primitive: "
+                                    + "can't be used with GenBuilder.Getter, Setter, Enums, but got " + name);
+                        }
+                    }
+
+                    boolean pure = variableDecl.sym.getAnnotation(GenBuilder.Pure.class) != null;
+                    if (pure && descriptorOptions.elementAdder && primitiveElementType == null
+                            && collectionKind != DescriptorModel.CollectionKind.NONE) {
+                        throw new IllegalArgumentException("GenBuilder.Pure: "
+                                + "Set, List, Map field will be changed in place by elementAdder, but got " + name);
+                    }
+
+                    boolean lazy = variableDecl.sym.getAnnotation(GenBuilder.Lazy.class) != null;
+                    if (lazy) {
+                        checkLazy(name, type, initializer, getter, collectionKind, primitiveElementType, enums, pure,
+                                descriptorOptions);
+                    }
+
+                    if (descriptorOptions.copyOnWrite && primitiveElementType == null
+                            && collectionKind != DescriptorModel.CollectionKind.NONE && !collectionInterface) {
+                        throw new IllegalArgumentException("GenBuilder.copyOnWrite: "
+                                + "concrete Collection, Map type can't be frozen and would be shared with target, "
+                                + "declare it as interface (e.g. List), but got " + name);
+                    }
+
+                    if (descriptorOptions.intern && primitiveElementType == null && (type.getKind() == TypeKind.ARRAY
+                            || (collectionKind != DescriptorModel.CollectionKind.NONE
+                            && !(descriptorOptions.copyOnWrite
+                            && DescriptorModel.Property.isFreezable(collectionRawType, collectionInterface))))) {
+                        throw new IllegalArgumentException("GenBuilder.intern: "
+                                + "Set, List, Map (unless frozen by copyOnWrite) and array field is not allowed, "
+                                + "but got " + name);
+                    }
+
+                    DescriptorModel.Property property = new DescriptorModel.Property(name, typeName, value, javadoc,
+                            convertAnnotations(variableDecl.sym, ElementType.FIELD,
+                                    GenBuilder.Getter.class, GenBuilder.Setter.class, GenBuilder.Enums.class,
+                                    GenBuilder.Primitive.class, GenBuilder.Pure.class, GenBuilder.Lazy.class),
+                            convertAnnotations(variableDecl.sym, ElementType.METHOD),
+                            convertAnnotations(variableDecl.sym, ElementType.PARAMETER),
+                            makeBeanName(name, true, type), makeBeanName(name, false, type),
+                            makeElementAddName(name, type),
+                            getter == null ? null : getter.value(), setter == null ? null : setter.value(),
+                            enumNames, enumIntValues, enumStringValues,
+                            collectionKind, elementTypes, collectionRawType, collectionInterface,
+                            primitiveElementType, classifyDefault(initializer, typeElement, pure), lazy);
+                    if (descriptorOptions.binaryCodec && !BinaryCodecRenderer.isSupported(property)) {
+                        throw new IllegalArgumentException("GenBuilder.binaryCodec: "
+                                + "only primitive, boxed, String, primitive array, and Collection, Map of them "
+                                + "are supported, but got " + name);
+                    }
+                    if (descriptorOptions.flyweight && !FlyweightRenderer.isSupported(property)) {
+                        throw new IllegalArgumentException("GenBuilder.flyweight: "
+                                + "only primitive and String without GenBuilder.Getter are supported, but got " + name);
+                    }
+                    if (descriptorOptions.jsonCodec && !JsonCodecRenderer.isSupported(property)) {
+                        throw new IllegalArgumentException("GenBuilder.jsonCodec: "
+                                + "only primitive, boxed, String, and Collection, Map (with String key) of them "
+                                + "are supported, but got " + name);
                     }
+                    members.add(DescriptorModel.Member.of(property));
                 }
                     break;
                 case METHOD: { // just copy
                     JCTree.JCMethodDecl methodDecl = (JCTree.JCMethodDecl) member;
-                    copyMethod(targetMethods, methodDecl, elementUtils.getDocComment(methodDecl.sym));
+                    long start = profile.start();
+                    MethodSpec methodSpec = copyMethod(methodDecl, elementUtils.getDocComment(methodDecl.sym));
+                    profile.stop(ProcessProfiler.Phase.COPY_METHOD, start);
+                    if (methodSpec != null) {
+                        members.add(DescriptorModel.Member.of(methodSpec));
+                    }
                 }
                     break;
                 case CLASS: {
-                    if (nested) {
+                    if (descriptorOptions.nested) {
                         JCTree.JCClassDecl classDecl = (JCTree.JCClassDecl) member;
                         String simpleName = classDecl.getSimpleName().toString();
                         if (!classDecl.getModifiers().getFlags().contains(Modifier.STATIC)) {
                             messager.printMessage(Diagnostic.Kind.WARNING, "Will skip " + simpleName);
                             break;
                         }
-                        nestTypes.add(doProcess(targetClassName.nestedClass(simpleName), classDecl.sym,
-                                typeUtils, elementUtils, messager, nameResolveMap,
-                                useGetter, inheritable, nested, elementAdder, join));
+                        if (descriptorOptions.registry && RegistryRenderer.TYPE_NAMES.contains(simpleName)) {
+                            throw new IllegalArgumentException("GenBuilder.registry: nested class named "
+                                    + simpleName + " conflicts with the generated one, in "
+                                    + typeElement.getSimpleName());
+                        }
+                        members.add(DescriptorModel.Member.of(doProcess(targetClassName.nestedClass(simpleName),
+                                classDecl.sym, typeUtils, elementUtils, messager, nameResolveMap,
+                                descriptorOptions, profile)));
                     }
                 }
                     break;
             }
         }
 
-        if (!builderMethods.isEmpty()) {
-            // public static Builder builder()
-            targetMethods.add(MethodSpec.methodBuilder(builderParamName)
-                                        .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
-                                        .returns(builderClassName)
-                                        .addStatement("return new $N()", builderClassName.simpleName())
-                                        .build());
-            // public XXX()
-            targetMethods.add(MethodSpec.constructorBuilder()
-                                        .addModifiers(Modifier.PUBLIC)
-                                        .addStatement("this(new $N())", builderClassName.simpleName())
-                                        .build());
-            // private XXX(Builder)
-            targetMethods.add(MethodSpec.constructorBuilder()
-                                        .addModifiers(Modifier.PRIVATE)
-                                        .addParameter(builderClassName, builderParamName)
-                                        .addCode(targetCopyCode.build())
-                                        .build());
-            // public Builder newBuilder()
-            targetMethods.add(MethodSpec.methodBuilder("new" + builderClassName.simpleName())
-                                        .addModifiers(Modifier.PUBLIC)
-                                        .returns(builderClassName)
-                                        .addStatement("return new $N(this)", builderClassName.simpleName())
-                                        .build());
-            // public Builder()
-            builderMethods.add(MethodSpec.constructorBuilder()
-                                         .addModifiers(Modifier.PUBLIC)
-                                         .addCode(builderDefaultCode.build())
-                                         .build());
-            // private Builder(XXX)
-            builderMethods.add(MethodSpec.constructorBuilder()
-                                         .addModifiers(Modifier.PRIVATE)
-                                         .addParameter(targetClassName, targetParamName)
-                                         .addCode(builderCopyCode.build())
-                                         .build());
-            // public XXX build()
-            builderMethods.add(MethodSpec.methodBuilder("build")
-                                         .addModifiers(Modifier.PUBLIC)
-                                         .returns(targetClassName)
-                                         .addStatement("return new $N(this)", targetClassName.simpleName())
-                                         .build());
-
-            for (String s : join) {
-                s = s.substring(0, s.lastIndexOf(".class"));
-                ClassName ownerClass = ClassName.bestGuess(s);
-                String ownerParam = makeParamName(ownerClass.simpleName());
-                // private XXX xxx;
-                builderFields.add(FieldSpec.builder(ownerClass, ownerParam, Modifier.PRIVATE).build());
-                // public Builder setXXX(XXX xxx)
-                builderMethods.add(MethodSpec.methodBuilder("set" + ownerClass.simpleName())
-                                             .addModifiers(Modifier.PUBLIC)
-                                             .addParameter(ownerClass, ownerParam)
-                                             .returns(inheritable ? typeVariableName : builderClassName)
-                                             .addStatement("this.$N = $N", ownerParam, ownerParam)
-                                             .addStatement(inheritable
-                                                           ? "return (" + typeVariableName.name + ") this"
-                                                           : "return this")
-                                             .build());
-                // public XXX intoXXX()
-                builderMethods.add(MethodSpec.methodBuilder("into" + ownerClass.simpleName())
-                                             .addModifiers(Modifier.PUBLIC)
-                                             .returns(ownerClass)
-                                             .addStatement("this.$N.set$N(build())",
-                                                     ownerParam, targetClassName.simpleName())
-                                             .addStatement("return $N", ownerParam)
-                                             .build());
-            }
-
-            // create Builder type
-            TypeSpec.Builder builderBuilder = TypeSpec.classBuilder(builderClassName)
-                                                      .addJavadoc("@see $N\n", targetClassName.simpleName())
-                                                      .addModifiers(makeClassModifiers(true, !inheritable))
-                                                      .addFields(builderFields)
-                                                      .addMethods(builderMethods);
-            if (inheritable) {
-                builderBuilder.addTypeVariable(typeVariableName);
-            }
-            nestTypes.add(builderBuilder.build());
-        }
-
-        // create XXX type
         List<TypeName> interfaces = new ArrayList<>();
         for (TypeMirror typeMirror : typeElement.getInterfaces()) {
             interfaces.add(TypeName.get(typeMirror));
@@ -473,21 +473,151 @@ public class GenBuilderProcessor implements IAnnoProcessor {
         for (TypeParameterElement typeParameter : typeElement.getTypeParameters()) {
             typeParameters.add(TypeVariableName.get(typeParameter));
         }
+        if (!typeParameters.isEmpty() && !descriptorOptions.genericUnsupported.isEmpty()) {
+            throw new IllegalArgumentException("GenBuilder." + descriptorOptions.genericUnsupported.get(0)
+                    + ": generic class is not supported, but got " + typeElement.getSimpleName());
+        }
+        if (descriptorOptions.delta) {
+            int properties = 0;
+            for (DescriptorModel.Member member : members) {
+                if (member.property != null) {
+                    if ("mask".equals(member.property.name)) {
+                        throw new IllegalArgumentException("GenBuilder.delta: property named mask "
+                                + "conflicts with Delta's bitmask, in " + typeElement.getSimpleName());
+                    }
+                    ++properties;
+                }
+            }
+            if (properties > DeltaRenderer.MAX_PROPERTIES) {
+                throw new IllegalArgumentException("GenBuilder.delta: at most " + DeltaRenderer.MAX_PROPERTIES
+                        + " properties are supported, but got " + properties + " in " + typeElement.getSimpleName());
+            }
+        }
+        if (descriptorOptions.batch) {
+            for (DescriptorModel.Member member : members) {
+                if (member.property != null && BatchRenderer.SIZE.equals(member.property.name)) {
+                    throw new IllegalArgumentException("GenBuilder.batch: property named " + BatchRenderer.SIZE
+                            + " conflicts with Batch's row count, in " + typeElement.getSimpleName());
+                }
+            }
+        }
+        if (descriptorOptions.registry && typeElement.getNestingKind() == NestingKind.TOP_LEVEL) {
+            boolean hasProperty = false;
+            int groups = 0;
+            for (DescriptorModel.Member member : members) {
+                hasProperty |= member.property != null;
+                groups += member.nested != null ? 1 : 0;
+            }
+            groups += hasProperty ? 1 : 0;
+            if (groups == 0) {
+                throw new IllegalArgumentException("GenBuilder.registry: no field or nested class to register, in "
+                        + typeElement.getSimpleName());
+            }
+            if (descriptorOptions.binaryCodec && groups > RegistryRenderer.MAX_PERSISTENT_GROUPS) {
+                throw new IllegalArgumentException("GenBuilder.registry: at most "
+                        + RegistryRenderer.MAX_PERSISTENT_GROUPS + " groups are supported with binaryCodec, but got "
+                        + groups + " in " + typeElement.getSimpleName());
+            }
+        }
+        if (descriptorOptions.live && typeElement.getNestingKind() == NestingKind.TOP_LEVEL) {
+            boolean hasPrimitive = false;
+            for (DescriptorModel.Member member : members) {
+                hasPrimitive |= member.property != null && LiveRenderer.isSupported(member.property);
+                if (member.property != null && LiveRenderer.SEQUENCE.equals(member.property.name)) {
+                    throw new IllegalArgumentException("GenBuilder.live: property named " + LiveRenderer.SEQUENCE
+                            + " conflicts with Live's sequence lock, in " + typeElement.getSimpleName());
+                }
+            }
+            if (!hasPrimitive) {
+                throw new IllegalArgumentException("GenBuilder.live: no primitive field to hold, in "
+                        + typeElement.getSimpleName());
+            }
+        }
         String classDoc = elementUtils.getDocComment(typeElement);
-        return TypeSpec.classBuilder(targetClassName)
-                       .addJavadoc(classDoc == null ? "" : classDoc)
-                       .addModifiers(makeClassModifiers(
-                               typeElement.getNestingKind() != NestingKind.TOP_LEVEL,
-                               !inheritable))
-                       .addAnnotations(convertAnnotations(typeElement,
-                               ElementType.TYPE, GenBuilder.class))
-                       .superclass(TypeName.get(typeElement.getSuperclass()))
-                       .addSuperinterfaces(interfaces)
-                       .addTypeVariables(typeParameters)
-                       .addFields(targetFields)
-                       .addMethods(targetMethods)
-                       .addTypes(nestTypes)
-                       .build();
+        return new DescriptorModel(targetClassName, typeElement,
+                typeElement.getNestingKind() == NestingKind.TOP_LEVEL, descriptorOptions,
+                classDoc == null ? "" : classDoc,
+                convertAnnotations(typeElement, ElementType.TYPE, GenBuilder.class),
+                TypeName.get(typeElement.getSuperclass()), interfaces, typeParameters, members);
+    }
+
+    /**
+     * check {@link GenBuilder.Lazy}: memoized getter with {@link GenBuilder.Getter}, or deferred initializer without
+     */
+    private static void checkLazy(String name, Type type, JCTree.JCExpression initializer, GenBuilder.Getter getter,
+                                  DescriptorModel.CollectionKind collectionKind, TypeName primitiveElementType,
+                                  GenBuilder.Enums enums, boolean pure, DescriptorModel.Options descriptorOptions) {
+        if (!descriptorOptions.useGetter) {
+            throw new IllegalArgumentException("GenBuilder.Lazy: "
+                    + "needs GenBuilder.getter() to cache the value in target, but got " + name);
+        }
+        if (collectionKind != DescriptorModel.CollectionKind.NONE || primitiveElementType != null
+                || enums != null || pure) {
+            throw new IllegalArgumentException("GenBuilder.Lazy: "
+                    + "can't be used with Set, List, Map field, GenBuilder.Primitive, Enums, Pure, but got " + name);
+        }
+        if (getter != null) {
+            if (!getter.value().startsWith("return ")) {
+                throw new IllegalArgumentException("GenBuilder.Lazy: "
+                        + "only GenBuilder.Getter(\"return ...\") can be memoized, but got " + name);
+            }
+            return;
+        }
+        if (type.isPrimitive() || initializer == null) {
+            throw new IllegalArgumentException("GenBuilder.Lazy: "
+                    + "deferred initializer must be present and not primitive, but got " + name);
+        }
+        if (descriptorOptions.binaryCodec || descriptorOptions.flyweight || descriptorOptions.batch
+                || descriptorOptions.jsonCodec || descriptorOptions.delta) {
+            throw new IllegalArgumentException("GenBuilder.Lazy: "
+                    + "deferred initializer can't be used with binaryCodec, flyweight, batch, jsonCodec, delta, "
+                    + "but got " + name);
+        }
+    }
+
+    /**
+     * @return CONSTANT if initializer is absent, or only literals, operators and constants declared in descriptor,
+     *         else PURE if marked {@link GenBuilder.Pure}, else PER_INSTANCE
+     */
+    private static DescriptorModel.DefaultKind classifyDefault(JCTree.JCExpression initializer,
+                                                               final TypeElement typeElement, boolean pure) {
+        final boolean[] constant = { true };
+        if (initializer != null) {
+            initializer.accept(new TreeScanner() {
+                @Override
+                public void scan(JCTree tree) {
+                    if (tree == null || !constant[0]) {
+                        return;
+                    }
+                    if (tree instanceof JCTree.JCTypeCast) {
+                        scan(((JCTree.JCTypeCast) tree).expr);
+                    } else if (tree instanceof JCTree.JCIdent) {
+                        constant[0] = isConstantField(typeElement, ((JCTree.JCIdent) tree).getName().toString());
+                    } else if (tree instanceof JCTree.JCLiteral || tree instanceof JCTree.JCParens
+                            || tree instanceof JCTree.JCUnary || tree instanceof JCTree.JCBinary
+                            || tree instanceof JCTree.JCConditional) {
+                        super.scan(tree);
+                    } else {
+                        constant[0] = false;
+                    }
+                }
+            });
+        }
+        if (constant[0]) {
+            return DescriptorModel.DefaultKind.CONSTANT;
+        }
+        return pure ? DescriptorModel.DefaultKind.PURE : DescriptorModel.DefaultKind.PER_INSTANCE;
+    }
+
+    private static boolean isConstantField(TypeElement typeElement, String name) {
+        for (Element enclosed : typeElement.getEnclosedElements()) {
+            if (enclosed.getKind() == ElementKind.FIELD && name.equals(enclosed.getSimpleName().toString())) {
+                return enclosed.getModifiers().contains(Modifier.STATIC)
+                        && enclosed.getModifiers().contains(Modifier.FINAL)
+                        && ((VariableElement) enclosed).getConstantValue() != null;
+            }
+        }
+        return false;
     }
 
     private static Object extraMemberInAnnotation(TypeElement typeElement,
@@ -513,6 +643,27 @@ public class GenBuilderProcessor implements IAnnoProcessor {
         return null;
     }
 
+    private static String makeFingerprint(Trees trees, TypeElement typeElement) {
+        String source;
+        CompilationUnitTree compilationUnit = trees.getPath(typeElement).getCompilationUnit();
+        try { // whole unit: imports and doc comments also affect the generated code
+            source = compilationUnit.getSourceFile().getCharContent(true).toString();
+        } catch (IOException e) {
+            source = compilationUnit.toString();
+        }
+        final StringBuilder annotations = new StringBuilder();
+        appendAnnotationMirrors(annotations, typeElement);
+        return GenerationCache.fingerprint(VERSION, source, annotations.toString());
+    }
+
+    private static void appendAnnotationMirrors(StringBuilder sb, Element element) {
+        // resolved values, e.g. constants from other files in GenBuilder.Enums
+        sb.append(element.getSimpleName()).append(element.getAnnotationMirrors()).append('\n');
+        for (Element enclosed : element.getEnclosedElements()) {
+            appendAnnotationMirrors(sb, enclosed);
+        }
+    }
+
     private static Map<String, String> resolveNameSymbols(Trees trees, TypeElement typeElement) {
         Map<String, String> nameResolveMap = new HashMap<>();
         CompilationUnitTree compilationUnit = trees.getPath(typeElement).getCompilationUnit();
@@ -579,10 +730,10 @@ public class GenBuilderProcessor implements IAnnoProcessor {
         return annotationSpecs;
     }
 
-    private static void copyMethod(List<MethodSpec> targetMethods, JCTree.JCMethodDecl methodDecl, String doc) {
+    private static MethodSpec copyMethod(JCTree.JCMethodDecl methodDecl, String doc) {
         String methodName = methodDecl.getName().toString();
         if ("<init>".equals(methodName)) {
-            return;
+            return null;
         }
 
         List<ParameterSpec> parameterSpecs = new ArrayList<>();
@@ -615,17 +766,17 @@ public class GenBuilderProcessor implements IAnnoProcessor {
         }
 
         String bodyText = makeBodyBlock(methodDecl.getBody().toString());
-        targetMethods.add(MethodSpec.methodBuilder(methodName)
-                                    .addJavadoc(doc == null ? "" : doc)
-                                    .addAnnotations(convertAnnotations(methodDecl.sym, ElementType.METHOD))
-                                    .addModifiers(methodDecl.getModifiers().getFlags())
-                                    .addTypeVariables(typeVariables)
-                                    .returns(TypeName.get(methodDecl.getReturnType().type))
-                                    .addParameters(parameterSpecs)
-                                    .varargs(varargs)
-                                    .addExceptions(thrownTypeNames)
-                                    .addCode(bodyText)
-                                    .build());
+        return MethodSpec.methodBuilder(methodName)
+                         .addJavadoc(doc == null ? "" : doc)
+                         .addAnnotations(convertAnnotations(methodDecl.sym, ElementType.METHOD))
+                         .addModifiers(methodDecl.getModifiers().getFlags())
+                         .addTypeVariables(typeVariables)
+                         .returns(TypeName.get(methodDecl.getReturnType().type))
+                         .addParameters(parameterSpecs)
+                         .varargs(varargs)
+                         .addExceptions(thrownTypeNames)
+                         .addCode(bodyText)
+                         .build();
     }
 
     private static ClassName makeTargetName(String qualifiedName, String simpleName, String packageName) {
@@ -656,10 +807,6 @@ public class GenBuilderProcessor implements IAnnoProcessor {
         return "addTo" + capName;
     }
 
-    private static String makeParamName(String typeSimpleName) {
-        return Character.toLowerCase(typeSimpleName.charAt(0)) + typeSimpleName.substring(1);
-    }
-
     private static String makeBodyBlock(String body) {
         if (body == null || body.isEmpty()) {
             return "";
@@ -677,17 +824,34 @@ public class GenBuilderProcessor implements IAnnoProcessor {
         return body.substring(index, body.lastIndexOf('}'));
     }
 
-    private static Modifier[] makeClassModifiers(boolean isStatic, boolean isFinal) {
-        ArrayList<Modifier> modifiers = new ArrayList<>();
-        modifiers.add(Modifier.PUBLIC);
-        if (isStatic) {
-            modifiers.add(Modifier.STATIC);
+    private static final Modifier[] EMPTY_MODIFIERS = new Modifier[0];
+
+    /**
+     * One descriptor to generate, rendered on any thread, then written on javac's thread.
+     */
+    private static final class Generation implements Runnable {
+        final DescriptorModel model;
+        final ProcessProfiler.Descriptor profile;
+        final String cacheKey;
+        final String fingerprint;
+        Element[] originatingElements;
+        String source;
+
+        Generation(DescriptorModel model, ProcessProfiler.Descriptor profile, String cacheKey, String fingerprint) {
+            this.model = model;
+            this.profile = profile;
+            this.cacheKey = cacheKey;
+            this.fingerprint = fingerprint;
         }
-        if (isFinal) {
-            modifiers.add(Modifier.FINAL);
+
+        @Override
+        public void run() {
+            long start = profile.start();
+            JavaFile javaFile = GenBuilderRenderer.renderFile(model);
+            profile.measure(javaFile.typeSpec);
+            originatingElements = javaFile.typeSpec.originatingElements.toArray(new Element[0]);
+            source = javaFile.toString();
+            profile.stop(ProcessProfiler.Phase.RENDER, start);
         }
-        return modifiers.toArray(EMPTY_MODIFIERS);
     }
-
-    private static final Modifier[] EMPTY_MODIFIERS = new Modifier[0];
 }
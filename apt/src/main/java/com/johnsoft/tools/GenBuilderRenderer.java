@@ -0,0 +1,919 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.johnsoft.tools;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.WeakHashMap;
+
+import javax.lang.model.element.Modifier;
+
+import com.squareup.javapoet.AnnotationSpec;
+import com.squareup.javapoet.ArrayTypeName;
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.JavaFile;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+import com.squareup.javapoet.TypeVariableName;
+import com.squareup.javapoet.WildcardTypeName;
+
+/**
+ * Render {@link DescriptorModel} to JavaPoet's TypeSpec, for {@link GenBuilderProcessor}.<br/>
+ * NOTE: stateless and not touch javac, so can be called on any thread.<br/>
+ *
+ * @author John Kenrinus Lee
+ * @version 2019-05-08
+ */
+final class GenBuilderRenderer {
+    private static final String CACHED_HASH = "cachedHash";
+    private static final String INTERN_TABLE = "INTERN_TABLE";
+    private static final String DEFAULT_INSTANCE = "DEFAULT";
+    private static final String DEFAULTS_PARAM = "defaults";
+    private static final AnnotationSpec SUPPRESS_UNCHECKED = AnnotationSpec.builder(SuppressWarnings.class)
+                                                                           .addMember("value", "$S", "unchecked")
+                                                                           .build();
+    /**
+     * stripe count of intern table, power of 2
+     */
+    private static final int INTERN_STRIPES = 16;
+    /**
+     * guessed average length of field's value in toString()
+     */
+    private static final int TO_STRING_VALUE_CHARS = 8;
+    /**
+     * toString() of a deferred default not computed yet
+     */
+    private static final String DEFERRED_TO_STRING = "<default>";
+
+    private GenBuilderRenderer() {
+    }
+
+    static JavaFile renderFile(DescriptorModel model) {
+        return JavaFile.builder(model.targetClassName.packageName(), render(model)).indent("    ").build();
+    }
+
+    static TypeSpec render(DescriptorModel model) {
+        DescriptorModel.Options options = model.options;
+        boolean inheritable = options.inheritable;
+        ClassName targetClassName = model.targetClassName;
+        ClassName builderClassName = targetClassName.nestedClass("Builder");
+        TypeVariableName typeVariableName = TypeVariableName.get("T", builderClassName);
+        String targetParamName = makeParamName(targetClassName.simpleName());
+        String builderParamName = "builder";
+        String returnThis = inheritable ? "return (" + typeVariableName.name + ") this" : "return this";
+
+        List<FieldSpec> targetFields = new ArrayList<>();
+        List<FieldSpec> builderFields = new ArrayList<>();
+        List<MethodSpec> targetMethods = new ArrayList<>();
+        List<MethodSpec> builderMethods = new ArrayList<>();
+        List<TypeSpec> nestTypes = new ArrayList<>();
+        CodeBlock.Builder targetCopyCode = CodeBlock.builder();
+        CodeBlock.Builder builderDefaultCode = CodeBlock.builder();
+        CodeBlock.Builder builderCopyCode = CodeBlock.builder();
+        CodeBlock.Builder builderResetCode = CodeBlock.builder();
+        List<MethodSpec> builderHelperMethods = new ArrayList<>();
+        List<FieldSpec> builderDefaultFields = new ArrayList<>();
+        CodeBlock.Builder targetDefaultCopyCode = CodeBlock.builder();
+        // all defaults are constant or pure, no-arg constructor can copy from shared DEFAULT
+        boolean shareDefault = model.typeParameters.isEmpty();
+        for (DescriptorModel.Member member : model.members) {
+            if (member.staticField != null && DEFAULT_INSTANCE.equals(member.staticField.name)) {
+                shareDefault = false;
+            }
+        }
+
+        PackedLayout packedLayout = PackedLayout.of(model);
+        for (String word : packedLayout.wordNames()) {
+            builderDefaultCode.addStatement("this.$N = 0L", word);
+        }
+
+        FieldSpec defaultInstance = null;
+        for (DescriptorModel.Member member : model.members) {
+            if (member.staticField != null) { // just copy
+                targetFields.add(member.staticField);
+            } else if (member.method != null) { // just copy
+                targetMethods.add(member.method);
+            } else if (member.nested != null) {
+                nestTypes.add(render(member.nested));
+            } else {
+                DescriptorModel.Property property = member.property;
+                String name = property.name;
+                String defaultValue = property.defaultValue;
+                if (property.defaultKind == DescriptorModel.DefaultKind.PURE && model.typeParameters.isEmpty()) {
+                    // private static final XXX DEFAULT_XXX in Builder, evaluated once
+                    defaultValue = property.defaultConstantName();
+                    builderDefaultFields.add(FieldSpec.builder(property.type, defaultValue,
+                            Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                                                      .initializer("$L", property.defaultValue)
+                                                      .build());
+                } else if (property.isDeferred()) {
+                    // evaluated by target's getter on the first call, Builder keeps null
+                    defaultValue = "null";
+                } else if (property.defaultKind == DescriptorModel.DefaultKind.PER_INSTANCE
+                        && (property.primitiveElementType == null
+                        || PrimitiveElementsRenderer.hasDefaultElements(property))) {
+                    shareDefault = false;
+                }
+                PackedLayout.Slot slot = packedLayout.slot(property);
+                if (slot != null) {
+                    PackedLayout.render(property, slot, defaultValue, inheritable ? typeVariableName : builderClassName,
+                            returnThis, targetMethods, builderMethods, builderDefaultCode);
+                    continue;
+                }
+                targetDefaultCopyCode.addStatement("this.$N = $N.$N", name, DEFAULTS_PARAM, name);
+                if (property.primitiveElementType != null) {
+                    PrimitiveElementsRenderer.render(property, defaultValue, options.reusable,
+                            inheritable ? typeVariableName : builderClassName, returnThis,
+                            builderParamName, targetParamName, targetFields, targetMethods, builderFields,
+                            builderMethods, targetCopyCode, builderDefaultCode, builderCopyCode);
+                    continue;
+                }
+                if (property.lazy) {
+                    // private field, getter computes on the first call and caches
+                    renderLazy(property, targetFields, targetMethods);
+                } else if (options.useGetter) {
+                    // private field
+                    targetFields.add(FieldSpec.builder(property.type, name, Modifier.PRIVATE, Modifier.FINAL)
+                                              .addAnnotations(property.fieldAnnotations)
+                                              .build());
+                    // make getter
+                    String content = "return $N";
+                    if (property.getterTemplate != null) {
+                        content = property.getterTemplate;
+                    }
+                    targetMethods.add(MethodSpec.methodBuilder(property.getterName)
+                                                .addAnnotations(property.methodAnnotations)
+                                                .addJavadoc(property.javadoc)
+                                                .addModifiers(Modifier.PUBLIC)
+                                                .returns(property.type)
+                                                .addStatement(content, name)
+                                                .build());
+                } else {
+                    // public field
+                    targetFields.add(FieldSpec.builder(property.type, name, Modifier.PUBLIC, Modifier.FINAL)
+                                              .addAnnotations(property.fieldAnnotations)
+                                              .addJavadoc(property.javadoc)
+                                              .build());
+                }
+                // private field in Builder
+                builderFields.add(FieldSpec.builder(property.type, name, Modifier.PRIVATE)
+                                           .addAnnotations(property.fieldAnnotations)
+                                           .build());
+                if (property.isEnums()) {
+                    int length = property.enumNames.size();
+                    for (int i = 0; i < length; ++i) {
+                        MethodSpec.Builder enumSetter =
+                                MethodSpec.methodBuilder(property.setterName + "To" + property.enumNames.get(i))
+                                          .addJavadoc(property.javadoc)
+                                          .addModifiers(Modifier.PUBLIC)
+                                          .returns(inheritable ? typeVariableName : builderClassName);
+                        if (!property.enumIntValues.isEmpty()) {
+                            enumSetter.addStatement("this.$N = $L", name, property.enumIntValues.get(i));
+                        } else {
+                            enumSetter.addStatement("this.$N = $S", name, property.enumStringValues.get(i));
+                        }
+                        builderMethods.add(enumSetter.addStatement(returnThis).build());
+                    }
+                } else {
+                    // make setter in Builder
+                    String statement = "this.$N = $N";
+                    if (property.setterTemplate != null) {
+                        statement = property.setterTemplate;
+                    }
+                    ParameterSpec ps = ParameterSpec.builder(property.type, name)
+                                                    .addAnnotations(property.parameterAnnotations)
+                                                    .build();
+                    builderMethods.add(MethodSpec.methodBuilder(property.setterName)
+                                                 .addJavadoc(property.javadoc)
+                                                 .addModifiers(Modifier.PUBLIC)
+                                                 .returns(inheritable ? typeVariableName : builderClassName)
+                                                 .addParameter(ps)
+                                                 .addStatement(statement, name, name)
+                                                 .addStatement(returnThis)
+                                                 .build());
+                }
+
+                // make statement will be used in constructors
+                boolean copyOnWrite = options.copyOnWrite && property.collectionRawType != null
+                        && CopyOnWriteRenderer.isSupported(property);
+                if (copyOnWrite) {
+                    CopyOnWriteRenderer.render(property, builderFields, builderHelperMethods, builderResetCode);
+                    targetCopyCode.addStatement("this.$N = $N.$N()", name, builderParamName,
+                            CopyOnWriteRenderer.freezeMethodName(property));
+                    builderCopyCode.addStatement("this.$N = this.$N = $N.$N", CopyOnWriteRenderer.frozenName(property),
+                            name, targetParamName, name);
+                } else {
+                    targetCopyCode.addStatement("this.$N = $N.$N", name, builderParamName, name);
+                    builderCopyCode.addStatement("this.$N = $N.$N", name, targetParamName, name);
+                }
+                if (copyOnWrite && options.reusable && CopyOnWriteRenderer.hasEmptyDefault(property)) {
+                    // reset() clears the Builder's own instance, never the frozen one
+                    CopyOnWriteRenderer.renderBuffer(property, builderFields, builderDefaultCode);
+                } else {
+                    builderDefaultCode.addStatement("this.$N = $L", name, defaultValue);
+                }
+
+                if (options.elementAdder) { // addToXXX -> List.add / Map.put
+                    CodeBlock beforeWrite = copyOnWrite ? CopyOnWriteRenderer.copyBeforeWrite(property)
+                                                        : CodeBlock.builder().build();
+                    if (property.collectionKind == DescriptorModel.CollectionKind.COLLECTION) {
+                        builderMethods.add(MethodSpec.methodBuilder(property.elementAddName)
+                                                     .addJavadoc(property.javadoc)
+                                                     .addModifiers(Modifier.PUBLIC)
+                                                     .returns(inheritable ? typeVariableName : builderClassName)
+                                                     .addParameter(property.elementTypes.get(0), "value")
+                                                     .addCode(beforeWrite)
+                                                     .addStatement("$N.add(value)", name)
+                                                     .addStatement(returnThis)
+                                                     .build());
+                    } else if (property.collectionKind == DescriptorModel.CollectionKind.MAP) {
+                        builderMethods.add(MethodSpec.methodBuilder(property.elementAddName)
+                                                     .addJavadoc(property.javadoc)
+                                                     .addModifiers(Modifier.PUBLIC)
+                                                     .returns(inheritable ? typeVariableName : builderClassName)
+                                                     .addParameter(property.elementTypes.get(0), "key")
+                                                     .addParameter(property.elementTypes.get(1), "value")
+                                                     .addCode(beforeWrite)
+                                                     .addStatement("$N.put(key, value)", name)
+                                                     .addStatement(returnThis)
+                                                     .build());
+                    }
+                }
+            }
+        }
+
+        for (String word : packedLayout.wordNames()) {
+            targetFields.add(FieldSpec.builder(TypeName.LONG, word, Modifier.PRIVATE, Modifier.FINAL).build());
+            builderFields.add(FieldSpec.builder(TypeName.LONG, word, Modifier.PRIVATE).build());
+            targetCopyCode.addStatement("this.$N = $N.$N", word, builderParamName, word);
+            builderCopyCode.addStatement("this.$N = $N.$N", word, targetParamName, word);
+            targetDefaultCopyCode.addStatement("this.$N = $N.$N", word, DEFAULTS_PARAM, word);
+        }
+
+        if (!builderMethods.isEmpty()) {
+            // public static Builder builder()
+            targetMethods.add(MethodSpec.methodBuilder(builderParamName)
+                                        .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                                        .returns(builderClassName)
+                                        .addStatement("return new $N()", builderClassName.simpleName())
+                                        .build());
+            if (shareDefault) {
+                // private static final XXX DEFAULT, after all other static fields
+                defaultInstance = FieldSpec.builder(targetClassName, DEFAULT_INSTANCE,
+                        Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                                           .initializer("new $N(new $N())", targetClassName.simpleName(),
+                                                   builderClassName.simpleName())
+                                           .build();
+                // public XXX()
+                targetMethods.add(MethodSpec.constructorBuilder()
+                                            .addModifiers(Modifier.PUBLIC)
+                                            .addStatement("this($N)", DEFAULT_INSTANCE)
+                                            .build());
+                // private XXX(XXX)
+                targetMethods.add(MethodSpec.constructorBuilder()
+                                            .addModifiers(Modifier.PRIVATE)
+                                            .addParameter(targetClassName, DEFAULTS_PARAM)
+                                            .addCode(targetDefaultCopyCode.build())
+                                            .build());
+            } else {
+                // public XXX()
+                targetMethods.add(MethodSpec.constructorBuilder()
+                                            .addModifiers(Modifier.PUBLIC)
+                                            .addStatement("this(new $N())", builderClassName.simpleName())
+                                            .build());
+            }
+            // private XXX(Builder)
+            targetMethods.add(MethodSpec.constructorBuilder()
+                                        .addModifiers(Modifier.PRIVATE)
+                                        .addParameter(builderClassName, builderParamName)
+                                        .addCode(targetCopyCode.build())
+                                        .build());
+            // public Builder newBuilder()
+            targetMethods.add(MethodSpec.methodBuilder("new" + builderClassName.simpleName())
+                                        .addModifiers(Modifier.PUBLIC)
+                                        .returns(builderClassName)
+                                        .addStatement("return new $N(this)", builderClassName.simpleName())
+                                        .build());
+            boolean withMethods = WithMethodsRenderer.isApplicable(model);
+            if (withMethods || options.binaryCodec || options.flyweight || options.batch) {
+                List<FieldSpec> fields = renderAllFieldsConstructor(model, targetFields, targetMethods);
+                if (fields != null && withMethods) {
+                    // public XXX withXXX(value)
+                    WithMethodsRenderer.render(model, packedLayout, fields, targetMethods);
+                }
+                if (options.binaryCodec) {
+                    // serializedSize(), writeTo(ByteBuffer), static readFrom(ByteBuffer)
+                    BinaryCodecRenderer.render(model, fields == null ? new ArrayList<FieldSpec>() : fields,
+                            targetFields, targetMethods);
+                }
+                if (options.flyweight) {
+                    // nested Flyweight over ByteBuffer
+                    nestTypes.add(FlyweightRenderer.render(model, packedLayout,
+                            fields == null ? new ArrayList<FieldSpec>() : fields, fields != null));
+                }
+                if (options.batch) {
+                    // nested Batch of columns
+                    nestTypes.add(BatchRenderer.render(model, packedLayout, instanceFields(targetFields),
+                            fields != null));
+                }
+            }
+            if (options.delta) {
+                // public Delta diff(XXX), nested Delta with applyTo(XXX), applyTo(Builder)
+                DeltaRenderer.render(model, packedLayout, instanceFields(targetFields), targetMethods, nestTypes);
+            }
+            if (options.live && LiveRenderer.hasSupported(model)) {
+                // nested Live, primitive fields under a sequence lock
+                nestTypes.add(LiveRenderer.render(model, packedLayout));
+            }
+            if (options.jsonCodec) {
+                // toJson(Appendable), static fromJson(Reader), and Builder's readJson
+                JsonCodecRenderer.render(model, packedLayout, builderClassName, targetMethods, builderHelperMethods);
+            }
+            renderValueMethods(model, packedLayout, targetFields, targetMethods);
+            // public Builder()
+            builderMethods.add(MethodSpec.constructorBuilder()
+                                         .addModifiers(Modifier.PUBLIC)
+                                         .addCode(builderDefaultCode.build())
+                                         .build());
+            // private Builder(XXX)
+            builderMethods.add(MethodSpec.constructorBuilder()
+                                         .addModifiers(Modifier.PRIVATE)
+                                         .addParameter(targetClassName, targetParamName)
+                                         .addCode(builderCopyCode.build())
+                                         .build());
+            // public XXX build()
+            if (options.intern) {
+                renderIntern(model, targetFields, targetMethods, nestTypes);
+                builderMethods.add(MethodSpec.methodBuilder("build")
+                                             .addJavadoc("@return the canonical instance equals to built one\n")
+                                             .addModifiers(Modifier.PUBLIC)
+                                             .returns(targetClassName)
+                                             .addStatement("return $N.intern(new $N(this))",
+                                                     targetClassName.simpleName(), targetClassName.simpleName())
+                                             .build());
+            } else {
+                builderMethods.add(MethodSpec.methodBuilder("build")
+                                             .addModifiers(Modifier.PUBLIC)
+                                             .returns(targetClassName)
+                                             .addStatement("return new $N(this)", targetClassName.simpleName())
+                                             .build());
+            }
+
+            for (ClassName ownerClass : options.joinTargets) {
+                String ownerParam = makeParamName(ownerClass.simpleName());
+                // private XXX xxx;
+                builderFields.add(FieldSpec.builder(ownerClass, ownerParam, Modifier.PRIVATE).build());
+                // public Builder setXXX(XXX xxx)
+                builderMethods.add(MethodSpec.methodBuilder("set" + ownerClass.simpleName())
+                                             .addModifiers(Modifier.PUBLIC)
+                                             .addParameter(ownerClass, ownerParam)
+                                             .returns(inheritable ? typeVariableName : builderClassName)
+                                             .addStatement("this.$N = $N", ownerParam, ownerParam)
+                                             .addStatement(returnThis)
+                                             .build());
+                // public XXX intoXXX()
+                builderMethods.add(MethodSpec.methodBuilder("into" + ownerClass.simpleName())
+                                             .addModifiers(Modifier.PUBLIC)
+                                             .returns(ownerClass)
+                                             .addStatement("this.$N.set$N(build())",
+                                                     ownerParam, targetClassName.simpleName())
+                                             .addStatement("return $N", ownerParam)
+                                             .build());
+            }
+            if (options.registry && RegistryRenderer.isGroup(model)) {
+                // public Commit into(Commit commit)
+                builderMethods.add(RegistryRenderer.renderInto(model));
+            }
+
+            if (options.reusable) {
+                renderReusable(model, builderClassName, typeVariableName, returnThis,
+                        builderDefaultCode.add(builderResetCode.build()).build(), builderFields, builderMethods);
+            }
+            builderMethods.addAll(builderHelperMethods);
+            if (inheritable) { // "return (T) this" is unchecked
+                for (int i = 0; i < builderMethods.size(); ++i) {
+                    MethodSpec method = builderMethods.get(i);
+                    if (typeVariableName.equals(method.returnType)) {
+                        builderMethods.set(i, method.toBuilder().addAnnotation(SUPPRESS_UNCHECKED).build());
+                    }
+                }
+            }
+            builderFields.addAll(0, builderDefaultFields);
+
+            // create Builder type
+            TypeSpec.Builder builderBuilder = TypeSpec.classBuilder(builderClassName)
+                                                      .addOriginatingElement(model.originatingElement)
+                                                      .addJavadoc("@see $N\n", targetClassName.simpleName())
+                                                      .addModifiers(makeClassModifiers(true, !inheritable))
+                                                      .addFields(builderFields)
+                                                      .addMethods(builderMethods);
+            if (inheritable) {
+                builderBuilder.addTypeVariable(typeVariableName);
+            }
+            nestTypes.add(builderBuilder.build());
+        }
+
+        if (options.flyweight && model.topLevel) {
+            nestTypes.add(FlyweightRenderer.renderChars(targetClassName));
+        }
+        if (options.registry && model.topLevel) {
+            // Registry, Snapshot, Commit of groups
+            nestTypes.addAll(RegistryRenderer.render(model));
+            if (options.binaryCodec && options.delta) {
+                // Journal of changed fields, with compaction and recovery
+                nestTypes.add(JournalRenderer.render(model));
+            }
+            if (options.jsonCodec) {
+                // Reloader on WatchService, a JSON file per group
+                nestTypes.add(ReloaderRenderer.render(model));
+            }
+        }
+
+        if (defaultInstance != null) {
+            targetFields.add(defaultInstance);
+        }
+
+        // create XXX type
+        return TypeSpec.classBuilder(targetClassName)
+                       .addOriginatingElement(model.originatingElement)
+                       .addJavadoc(model.classDoc)
+                       .addModifiers(makeClassModifiers(!model.topLevel, !inheritable))
+                       .addAnnotations(model.annotations)
+                       .superclass(model.superclass)
+                       .addSuperinterfaces(model.interfaces)
+                       .addTypeVariables(model.typeParameters)
+                       .addFields(targetFields)
+                       .addMethods(targetMethods)
+                       .addTypes(nestTypes)
+                       .build();
+    }
+
+    /**
+     * private field and getter for {@link DescriptorModel.Property#lazy}:
+     * memoized result of getter's template in transient fields (racy single-check on a volatile reference,
+     * or a volatile flag for primitive), or deferred initializer into the volatile field itself (null until the first)
+     */
+    private static void renderLazy(DescriptorModel.Property property, List<FieldSpec> targetFields,
+                                   List<MethodSpec> targetMethods) {
+        String name = property.name;
+        MethodSpec.Builder getter = MethodSpec.methodBuilder(property.getterName)
+                                              .addAnnotations(property.methodAnnotations)
+                                              .addJavadoc(property.javadoc)
+                                              .addModifiers(Modifier.PUBLIC)
+                                              .returns(property.type);
+        if (property.isDeferred()) {
+            targetFields.add(FieldSpec.builder(property.type, name, Modifier.PRIVATE, Modifier.VOLATILE)
+                                      .addAnnotations(property.fieldAnnotations)
+                                      .build());
+            targetMethods.add(getter.addStatement("$T result = this.$N", property.type, name)
+                                    .beginControlFlow("if (result == null)")
+                                    .addStatement("result = $L", property.defaultValue)
+                                    .addStatement("this.$N = result", name)
+                                    .endControlFlow()
+                                    .addStatement("return result")
+                                    .build());
+            return;
+        }
+        targetFields.add(FieldSpec.builder(property.type, name, Modifier.PRIVATE, Modifier.FINAL)
+                                  .addAnnotations(property.fieldAnnotations)
+                                  .build());
+        CodeBlock compute = CodeBlock.of(property.getterTemplate.substring("return ".length()), name);
+        String cache = name + "Cache";
+        if (property.type.isPrimitive()) {
+            String cached = name + "Cached";
+            targetFields.add(FieldSpec.builder(property.type, cache, Modifier.PRIVATE, Modifier.TRANSIENT).build());
+            targetFields.add(FieldSpec.builder(TypeName.BOOLEAN, cached,
+                    Modifier.PRIVATE, Modifier.TRANSIENT, Modifier.VOLATILE).build());
+            targetMethods.add(getter.beginControlFlow("if (!$N)", cached)
+                                    .addStatement("$N = $L", cache, compute)
+                                    .addStatement("$N = true", cached)
+                                    .endControlFlow()
+                                    .addStatement("return $N", cache)
+                                    .build());
+        } else {
+            targetFields.add(FieldSpec.builder(property.type, cache,
+                    Modifier.PRIVATE, Modifier.TRANSIENT, Modifier.VOLATILE).build());
+            targetMethods.add(getter.addStatement("$T result = $N", property.type, cache)
+                                    .beginControlFlow("if (result == null)")
+                                    .addStatement("result = $L", compute)
+                                    .addStatement("$N = result", cache)
+                                    .endControlFlow()
+                                    .addStatement("return result")
+                                    .build());
+        }
+    }
+
+    /**
+     * @return Builder, or Builder&lt;?&gt; if inheritable, for generated code which just uses a Builder,
+     *         so no raw type is added
+     */
+    static TypeName builderType(DescriptorModel model) {
+        ClassName builderClassName = model.targetClassName.nestedClass("Builder");
+        if (!model.options.inheritable) {
+            return builderClassName;
+        }
+        return ParameterizedTypeName.get(builderClassName, WildcardTypeName.subtypeOf(Object.class));
+    }
+
+    /**
+     * @return instance fields of target, without transient ones (e.g. cached hash or memoized getter)
+     */
+    private static List<FieldSpec> instanceFields(List<FieldSpec> targetFields) {
+        List<FieldSpec> fields = new ArrayList<>();
+        for (FieldSpec field : targetFields) {
+            if (!field.hasModifier(Modifier.STATIC) && !field.hasModifier(Modifier.TRANSIENT)) {
+                fields.add(field);
+            }
+        }
+        return fields;
+    }
+
+    /**
+     * private XXX(all instance fields), for creating target without Builder
+     *
+     * @return instance fields as parameters, or null if not rendered (conflict with other constructors)
+     */
+    private static List<FieldSpec> renderAllFieldsConstructor(DescriptorModel model, List<FieldSpec> targetFields,
+                                                              List<MethodSpec> targetMethods) {
+        List<FieldSpec> fields = instanceFields(targetFields);
+        ClassName targetClassName = model.targetClassName;
+        if (fields.isEmpty() || (fields.size() == 1 && (targetClassName.equals(fields.get(0).type)
+                || targetClassName.nestedClass("Builder").equals(fields.get(0).type)))) {
+            return null; // conflict with XXX() or XXX(XXX) or XXX(Builder)
+        }
+        MethodSpec.Builder constructor = MethodSpec.constructorBuilder().addModifiers(Modifier.PRIVATE);
+        for (FieldSpec field : fields) {
+            constructor.addParameter(field.type, field.name)
+                       .addStatement("this.$N = $N", field.name, field.name);
+        }
+        targetMethods.add(constructor.build());
+        return fields;
+    }
+
+    /**
+     * Builder's reset() and acquire() + release() with thread-local pool of one Builder per thread
+     */
+    private static void renderReusable(DescriptorModel model, ClassName builderClassName,
+                                       TypeVariableName typeVariableName, String returnThis,
+                                       CodeBlock builderDefaultCode,
+                                       List<FieldSpec> builderFields, List<MethodSpec> builderMethods) {
+        boolean inheritable = model.options.inheritable;
+        String builderName = builderClassName.simpleName();
+        TypeName builderType = builderType(model);
+        ArrayTypeName slotType = ArrayTypeName.of(builderType);
+        ParameterizedTypeName poolType = ParameterizedTypeName.get(ClassName.get(ThreadLocal.class), slotType);
+        // private static final ThreadLocal<Builder[]> POOL
+        builderFields.add(FieldSpec.builder(poolType, "POOL", Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                                   .initializer("$L", TypeSpec.anonymousClassBuilder("")
+                                                              .superclass(poolType)
+                                                              .addMethod(MethodSpec.methodBuilder("initialValue")
+                                                                                   .addAnnotation(Override.class)
+                                                                                   .addModifiers(Modifier.PROTECTED)
+                                                                                   .returns(slotType)
+                                                                                   .addStatement("return new $T[1]",
+                                                                                           builderType)
+                                                                                   .build())
+                                                              .build())
+                                   .build());
+
+        // public Builder reset()
+        CodeBlock.Builder resetCode = CodeBlock.builder().add(builderDefaultCode);
+        for (ClassName ownerClass : model.options.joinTargets) {
+            resetCode.addStatement("this.$N = null", makeParamName(ownerClass.simpleName()));
+        }
+        builderMethods.add(MethodSpec.methodBuilder("reset")
+                                     .addJavadoc("Restore default values in place, for reuse.\n")
+                                     .addModifiers(Modifier.PUBLIC)
+                                     .returns(inheritable ? typeVariableName : builderClassName)
+                                     .addCode(resetCode.build())
+                                     .addStatement(returnThis)
+                                     .build());
+        // public static Builder acquire()
+        builderMethods.add(MethodSpec.methodBuilder("acquire")
+                                     .addJavadoc("@return pooled Builder of current thread, or new one, "
+                                             + "call {@link #release()} after build().\n")
+                                     .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                                     .returns(builderType)
+                                     .addStatement("$T slot = POOL.get()", slotType)
+                                     .addStatement("$T builder = slot[0]", builderType)
+                                     .beginControlFlow("if (builder == null)")
+                                     .addStatement(inheritable ? "return new $N<>()" : "return new $N()",
+                                             builderName)
+                                     .endControlFlow()
+                                     .addStatement("slot[0] = null")
+                                     .addStatement("return builder")
+                                     .build());
+        // public void release()
+        MethodSpec.Builder release = MethodSpec.methodBuilder("release")
+                                               .addJavadoc("Reset and give back to the pool of current thread, "
+                                                       + "never touch it after release.\n")
+                                               .addModifiers(Modifier.PUBLIC);
+        if (inheritable) { // subclass may hold more state, not pooled
+            release.beginControlFlow("if (getClass() != $N.class)", builderName)
+                   .addStatement("return")
+                   .endControlFlow();
+        }
+        builderMethods.add(release.addStatement("reset()")
+                                  .addStatement("POOL.get()[0] = this")
+                                  .build());
+    }
+
+    /**
+     * Weak intern table, lock-striped WeakHashMap (value is WeakReference of key), with hit counter per stripe
+     */
+    private static void renderIntern(DescriptorModel model, List<FieldSpec> targetFields,
+                                     List<MethodSpec> targetMethods, List<TypeSpec> nestTypes) {
+        TypeName targetType = model.targetTypeWithWildcards();
+        ClassName stripeClassName = model.targetClassName.nestedClass("InternStripe");
+        ParameterizedTypeName referenceType = ParameterizedTypeName.get(ClassName.get(WeakReference.class),
+                targetType);
+
+        // private static final class InternStripe extends WeakHashMap<XXX, WeakReference<XXX>>
+        nestTypes.add(TypeSpec.classBuilder(stripeClassName)
+                              .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                              .superclass(ParameterizedTypeName.get(ClassName.get(WeakHashMap.class),
+                                      targetType, referenceType))
+                              .addField(TypeName.LONG, "lookups")
+                              .addField(TypeName.LONG, "hits")
+                              .build());
+        // private static final InternStripe[] INTERN_TABLE
+        targetFields.add(FieldSpec.builder(ArrayTypeName.of(stripeClassName), INTERN_TABLE,
+                Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                                  .initializer("newInternTable()")
+                                  .build());
+        targetMethods.add(MethodSpec.methodBuilder("newInternTable")
+                                    .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                                    .returns(ArrayTypeName.of(stripeClassName))
+                                    .addStatement("$T[] table = new $T[$L]", stripeClassName, stripeClassName,
+                                            INTERN_STRIPES)
+                                    .beginControlFlow("for (int i = 0; i < table.length; ++i)")
+                                    .addStatement("table[i] = new $T()", stripeClassName)
+                                    .endControlFlow()
+                                    .addStatement("return table")
+                                    .build());
+        targetMethods.add(MethodSpec.methodBuilder("intern")
+                                    .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                                    .returns(targetType)
+                                    .addParameter(targetType, "value")
+                                    .addStatement("int h = value.hashCode()")
+                                    .addStatement("$T stripe = $N[(h ^ (h >>> 16)) & $L]",
+                                            stripeClassName, INTERN_TABLE, INTERN_STRIPES - 1)
+                                    .beginControlFlow("synchronized (stripe)")
+                                    .addStatement("++stripe.lookups")
+                                    .addStatement("$T reference = stripe.get(value)", referenceType)
+                                    .addStatement("$T canonical = reference == null ? null : reference.get()",
+                                            targetType)
+                                    .beginControlFlow("if (canonical != null)")
+                                    .addStatement("++stripe.hits")
+                                    .addStatement("return canonical")
+                                    .endControlFlow()
+                                    .addStatement("stripe.put(value, new $T(value))", referenceType)
+                                    .addStatement("return value")
+                                    .endControlFlow()
+                                    .build());
+        targetMethods.add(MethodSpec.methodBuilder("internHitRatio")
+                                    .addJavadoc("@return hits / lookups of build() in the intern table, "
+                                            + "0 if never built\n")
+                                    .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                                    .returns(TypeName.DOUBLE)
+                                    .addStatement("long lookups = 0")
+                                    .addStatement("long hits = 0")
+                                    .beginControlFlow("for ($T stripe : $N)", stripeClassName, INTERN_TABLE)
+                                    .beginControlFlow("synchronized (stripe)")
+                                    .addStatement("lookups += stripe.lookups")
+                                    .addStatement("hits += stripe.hits")
+                                    .endControlFlow()
+                                    .endControlFlow()
+                                    .addStatement("return lookups == 0 ? 0 : (double) hits / lookups")
+                                    .build());
+    }
+
+    /**
+     * equals() compare primitives first, hashCode() cached when no Collection/Map/array field,
+     * toString() with presized StringBuilder. Skipped if descriptor declared it (equals and hashCode as pair).
+     * None of them computes a deferred default unless equals() has to (only one side holds null).
+     */
+    private static void renderValueMethods(DescriptorModel model, PackedLayout packedLayout,
+                                           List<FieldSpec> targetFields, List<MethodSpec> targetMethods) {
+        List<DescriptorModel.Property> properties = model.properties();
+        String simpleName = model.targetClassName.simpleName();
+        boolean declaredEquals = model.declaresMethod("equals", 1) || model.declaresMethod("hashCode", 0);
+        boolean cacheHash = true;
+        for (DescriptorModel.Property property : properties) {
+            if (!property.isShallowImmutable(model.options)) {
+                cacheHash = false;
+            }
+        }
+
+        if (!declaredEquals) {
+            if (cacheHash) {
+                // private transient int cachedHash
+                targetFields.add(FieldSpec.builder(TypeName.INT, CACHED_HASH, Modifier.PRIVATE, Modifier.TRANSIENT)
+                                          .build());
+            }
+            List<DescriptorModel.Property> ordered = new ArrayList<>();
+            for (DescriptorModel.Property property : properties) { // cheap mismatch exit early
+                if (property.targetType().isPrimitive() && packedLayout.slot(property) == null) {
+                    ordered.add(property);
+                }
+            }
+            for (DescriptorModel.Property property : properties) {
+                if (!property.targetType().isPrimitive()) {
+                    ordered.add(property);
+                }
+            }
+            List<CodeBlock> comparisons = new ArrayList<>();
+            for (String word : packedLayout.wordNames()) { // all packed properties in one compare
+                comparisons.add(CodeBlock.of("this.$N == that.$N", word, word));
+            }
+            for (DescriptorModel.Property property : ordered) {
+                comparisons.add(equalsExpression(property));
+            }
+            TypeName castType = model.targetTypeWithWildcards();
+            MethodSpec.Builder equals = MethodSpec.methodBuilder("equals")
+                                                  .addAnnotation(Override.class)
+                                                  .addModifiers(Modifier.PUBLIC)
+                                                  .returns(TypeName.BOOLEAN)
+                                                  .addParameter(Object.class, "o")
+                                                  .beginControlFlow("if (this == o)")
+                                                  .addStatement("return true")
+                                                  .endControlFlow()
+                                                  .beginControlFlow("if (o == null || getClass() != o.getClass())")
+                                                  .addStatement("return false")
+                                                  .endControlFlow()
+                                                  .addStatement("$T that = ($T) o", castType, castType);
+            if (cacheHash) {
+                equals.beginControlFlow("if ($N != 0 && that.$N != 0 && $N != that.$N)",
+                        CACHED_HASH, CACHED_HASH, CACHED_HASH, CACHED_HASH)
+                      .addStatement("return false")
+                      .endControlFlow();
+            }
+            CodeBlock.Builder compare = CodeBlock.builder();
+            for (int i = 0; i < comparisons.size(); ++i) {
+                compare.add(i == 0 ? "" : "\n&& ").add(comparisons.get(i));
+            }
+            targetMethods.add(equals.addStatement("return $L", comparisons.isEmpty() ? "true" : compare.build())
+                                    .build());
+
+            MethodSpec.Builder hashCode = MethodSpec.methodBuilder("hashCode")
+                                                    .addAnnotation(Override.class)
+                                                    .addModifiers(Modifier.PUBLIC)
+                                                    .returns(TypeName.INT);
+            if (cacheHash) {
+                hashCode.addStatement("int h = $N", CACHED_HASH)
+                        .beginControlFlow("if (h == 0)")
+                        .addStatement("h = 1");
+            } else {
+                hashCode.addStatement("int h = 1");
+            }
+            for (String word : packedLayout.wordNames()) {
+                hashCode.addStatement("h = 31 * h + (int) (this.$N ^ (this.$N >>> 32))", word, word);
+            }
+            for (DescriptorModel.Property property : properties) {
+                // deferred default is not computed for hash, equal targets still got equal hashes without it
+                if (packedLayout.slot(property) == null && !property.isDeferred()) {
+                    hashCode.addStatement("h = 31 * h + $L", hashExpression(property));
+                }
+            }
+            if (cacheHash) {
+                hashCode.addStatement("$N = h", CACHED_HASH)
+                        .endControlFlow();
+            }
+            targetMethods.add(hashCode.addStatement("return h").build());
+        }
+
+        if (!model.declaresMethod("toString", 0)) {
+            int capacity = simpleName.length() + 2;
+            CodeBlock.Builder append = CodeBlock.builder();
+            for (int i = 0; i < properties.size(); ++i) {
+                DescriptorModel.Property property = properties.get(i);
+                String label = (i == 0 ? simpleName + "{" : ", ") + property.name + "=";
+                capacity += label.length() + TO_STRING_VALUE_CHARS;
+                PackedLayout.Slot slot = packedLayout.slot(property);
+                append.add("\n.append($S).append($L)", label,
+                        slot == null ? toStringExpression(property) : CodeBlock.of("$N()", property.getterName));
+            }
+            if (properties.isEmpty()) {
+                append.add("\n.append($S)", simpleName + "{");
+            }
+            targetMethods.add(MethodSpec.methodBuilder("toString")
+                                        .addAnnotation(Override.class)
+                                        .addModifiers(Modifier.PUBLIC)
+                                        .returns(String.class)
+                                        .addStatement("return new $T($L)$L\n.append('}').toString()",
+                                                StringBuilder.class, capacity, append.build())
+                                        .build());
+        }
+    }
+
+    /**
+     * @return expression, true if the property of "this" and "that" are equal
+     */
+    static CodeBlock equalsExpression(DescriptorModel.Property property) {
+        String name = property.name;
+        TypeName type = property.targetType();
+        if (property.isDeferred()) { // compute the default only if one of them holds it and other not
+            return CodeBlock.of("(this.$N != null && that.$N != null ? $L\n: this.$N == that.$N || $L)", name, name,
+                    equalsExpression(name, type), name, name, equalsExpression(property.getterName + "()", type));
+        }
+        return equalsExpression(name, type);
+    }
+
+    /**
+     * @param name field name or getter call, as the argument of $N
+     */
+    private static CodeBlock equalsExpression(String name, TypeName type) {
+        if (TypeName.FLOAT.equals(type)) {
+            return CodeBlock.of("$T.compare(this.$N, that.$N) == 0", Float.class, name, name);
+        }
+        if (TypeName.DOUBLE.equals(type)) {
+            return CodeBlock.of("$T.compare(this.$N, that.$N) == 0", Double.class, name, name);
+        }
+        if (type.isPrimitive()) {
+            return CodeBlock.of("this.$N == that.$N", name, name);
+        }
+        if (type instanceof ArrayTypeName) {
+            return CodeBlock.of("$T.$N(this.$N, that.$N)", Arrays.class,
+                    ((ArrayTypeName) type).componentType.isPrimitive() ? "equals" : "deepEquals", name, name);
+        }
+        return CodeBlock.of("$T.equals(this.$N, that.$N)", Objects.class, name, name);
+    }
+
+    private static CodeBlock hashExpression(DescriptorModel.Property property) {
+        String name = property.name;
+        TypeName type = property.targetType();
+        if (TypeName.BOOLEAN.equals(type)) {
+            return CodeBlock.of("(this.$N ? 1231 : 1237)", name);
+        }
+        if (TypeName.LONG.equals(type)) {
+            return CodeBlock.of("(int) (this.$N ^ (this.$N >>> 32))", name, name);
+        }
+        if (TypeName.FLOAT.equals(type)) {
+            return CodeBlock.of("$T.floatToIntBits(this.$N)", Float.class, name);
+        }
+        if (TypeName.DOUBLE.equals(type)) {
+            return CodeBlock.of("(int) ($T.doubleToLongBits(this.$N) ^ ($T.doubleToLongBits(this.$N) >>> 32))",
+                    Double.class, name, Double.class, name);
+        }
+        if (type.isPrimitive()) {
+            return CodeBlock.of("this.$N", name);
+        }
+        if (type instanceof ArrayTypeName) {
+            return CodeBlock.of("$T.$N(this.$N)", Arrays.class,
+                    ((ArrayTypeName) type).componentType.isPrimitive() ? "hashCode" : "deepHashCode", name);
+        }
+        return CodeBlock.of("$T.hashCode(this.$N)", Objects.class, name);
+    }
+
+    private static CodeBlock toStringExpression(DescriptorModel.Property property) {
+        String name = property.name;
+        TypeName type = property.targetType();
+        CodeBlock value = CodeBlock.of("this.$N", name);
+        if (type instanceof ArrayTypeName) {
+            value = CodeBlock.of("$T.$N(this.$N)", Arrays.class,
+                    ((ArrayTypeName) type).componentType.isPrimitive() ? "toString" : "deepToString", name);
+        }
+        if (property.isDeferred()) { // not computed for printing
+            return CodeBlock.of("this.$N == null ? $S : $L", name, DEFERRED_TO_STRING, value);
+        }
+        return value;
+    }
+
+    static String makeParamName(String typeSimpleName) {
+        return Character.toLowerCase(typeSimpleName.charAt(0)) + typeSimpleName.substring(1);
+    }
+
+    private static Modifier[] makeClassModifiers(boolean isStatic, boolean isFinal) {
+        ArrayList<Modifier> modifiers = new ArrayList<>();
+        modifiers.add(Modifier.PUBLIC);
+        if (isStatic) {
+            modifiers.add(Modifier.STATIC);
+        }
+        if (isFinal) {
+            modifiers.add(Modifier.FINAL);
+        }
+        return modifiers.toArray(new Modifier[0]);
+    }
+}
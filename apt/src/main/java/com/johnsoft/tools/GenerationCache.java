@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.johnsoft.tools;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+
+/**
+ * Persistent fingerprint cache for generated sources, for {@link GenBuilderProcessor}.<br/>
+ * NOTE:
+ * 1. Each entry maps descriptor's qualified name to "fingerprint|generated file uri".<br/>
+ * 2. A hit means the fingerprint is the same and the generated file is still there,
+ *    then the generated file will not be regenerated or touched.<br/>
+ * 3. Only useful while the generated sources directory is also a source directory (see samples/build.gradle),
+ *    else the skipped types will be missing in compilation.<br/>
+ *
+ * @author John Kenrinus Lee
+ * @version 2019-05-06
+ */
+final class GenerationCache {
+    private static final char SEPARATOR = '|';
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final File file;
+    private final Properties entries = new Properties();
+    private boolean dirty;
+    private int hits;
+    private int misses;
+
+    private GenerationCache(File file) {
+        this.file = file;
+    }
+
+    static GenerationCache load(String path) throws IOException {
+        GenerationCache cache = new GenerationCache(new File(path));
+        if (cache.file.isFile()) {
+            try (InputStream in = new FileInputStream(cache.file)) {
+                cache.entries.load(in);
+            }
+        }
+        return cache;
+    }
+
+    static String fingerprint(String... parts) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        for (String part : parts) {
+            digest.update(String.valueOf(part).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+        }
+        byte[] bytes = digest.digest();
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; ++i) {
+            chars[i * 2] = HEX[(bytes[i] >> 4) & 0xF];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0xF];
+        }
+        return new String(chars);
+    }
+
+    boolean isUpToDate(String key, String fingerprint) {
+        String entry = entries.getProperty(key);
+        if (entry != null) {
+            int index = entry.indexOf(SEPARATOR);
+            if (index > 0 && fingerprint.equals(entry.substring(0, index))) {
+                try {
+                    if (new File(URI.create(entry.substring(index + 1))).isFile()) {
+                        ++hits;
+                        return true;
+                    }
+                } catch (IllegalArgumentException ignored) {
+                    // not a file uri, regenerate it
+                }
+            }
+        }
+        ++misses;
+        return false;
+    }
+
+    void update(String key, String fingerprint, URI generated) {
+        entries.setProperty(key, fingerprint + SEPARATOR + generated);
+        dirty = true;
+    }
+
+    /**
+     * @return the summary of this round, and reset the counters for next round
+     */
+    String roundSummary() {
+        String summary = String.format("GenBuilder cache: %d hit(s), %d miss(es)", hits, misses);
+        hits = 0;
+        misses = 0;
+        return summary;
+    }
+
+    void save() throws IOException {
+        if (!dirty) {
+            return;
+        }
+        File parent = file.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Can't create directory " + parent);
+        }
+        try (OutputStream out = new FileOutputStream(file)) {
+            entries.store(out, "GenBuilder generation cache");
+        }
+        dirty = false;
+    }
+}
@@ -0,0 +1,274 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.johnsoft.tools;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.lang.model.element.Modifier;
+
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+
+/**
+ * Render nested class Journal of the top-level target, for {@link GenBuilderRenderer}.<br/>
+ * NOTE:
+ * 1. Only with registry, binaryCodec and delta, every commit through Journal appends one record per changed group:
+ *    group index, length (-1 for null), then the group's Delta (changed fields only, by property's bit),
+ *    the records of one commit are forced to disk (content only, not metadata) before commit() returns.<br/>
+ * 2. compact() saves Registry as the base snapshot then truncates the journal, it runs on the given Executor
+ *    once the journal is larger than the threshold, replaying a record twice is harmless (values, not changes),
+ *    if the Executor rejects it, the next commit tries again.<br/>
+ * 3. static recover() loads the base snapshot, replays the journal, and cuts the torn tail of a crashed append.<br/>
+ *
+ * @author John Kenrinus Lee
+ * @version 2019-05-22
+ */
+final class JournalRenderer {
+    private static final int RECORD_HEADER_BYTES = 2 * Integer.BYTES;
+
+    private JournalRenderer() {
+    }
+
+    static TypeSpec render(DescriptorModel model) {
+        ClassName topLevel = model.targetClassName;
+        ClassName journalClassName = topLevel.nestedClass("Journal");
+        ClassName registryClassName = topLevel.nestedClass("Registry");
+        ClassName snapshotClassName = topLevel.nestedClass("Snapshot");
+        ClassName commitClassName = topLevel.nestedClass("Commit");
+        List<ClassName> groups = RegistryRenderer.groups(model);
+
+        TypeSpec.Builder journal = TypeSpec.classBuilder(journalClassName)
+                                           .addJavadoc("Append-only journal of {@link $T}, "
+                                                   + "publish through it only, so every change is recorded.\n",
+                                                   registryClassName)
+                                           .addModifiers(Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL)
+                                           .addSuperinterface(Closeable.class)
+                                           .addField(registryClassName, "registry", Modifier.PRIVATE, Modifier.FINAL)
+                                           .addField(Path.class, "snapshotPath", Modifier.PRIVATE, Modifier.FINAL)
+                                           .addField(FileChannel.class, "channel", Modifier.PRIVATE, Modifier.FINAL)
+                                           .addField(TypeName.LONG, "compactBytes", Modifier.PRIVATE, Modifier.FINAL)
+                                           .addField(Executor.class, "compactor", Modifier.PRIVATE, Modifier.FINAL)
+                                           .addField(TypeName.LONG, "length", Modifier.PRIVATE)
+                                           .addField(TypeName.BOOLEAN, "compacting", Modifier.PRIVATE);
+        journal.addMethod(MethodSpec.constructorBuilder()
+                                    .addJavadoc("@param registry usually from {@link #recover(Path, Path)}\n"
+                                            + "@param compactBytes compact on compactor when journal is larger\n")
+                                    .addModifiers(Modifier.PUBLIC)
+                                    .addParameter(registryClassName, "registry")
+                                    .addParameter(Path.class, "snapshotPath")
+                                    .addParameter(Path.class, "journalPath")
+                                    .addParameter(TypeName.LONG, "compactBytes")
+                                    .addParameter(Executor.class, "compactor")
+                                    .addException(IOException.class)
+                                    .addStatement("this.registry = registry")
+                                    .addStatement("this.snapshotPath = snapshotPath")
+                                    .addStatement("this.channel = $T.open(journalPath, $T.CREATE, $T.WRITE, $T.APPEND)",
+                                            FileChannel.class, StandardOpenOption.class, StandardOpenOption.class,
+                                            StandardOpenOption.class)
+                                    .addStatement("this.compactBytes = compactBytes")
+                                    .addStatement("this.compactor = compactor")
+                                    .addStatement("this.length = channel.size()")
+                                    .build());
+        journal.addMethod(MethodSpec.methodBuilder("registry")
+                                    .addModifiers(Modifier.PUBLIC)
+                                    .returns(registryClassName)
+                                    .addStatement("return registry")
+                                    .build());
+
+        MethodSpec.Builder commit = MethodSpec.methodBuilder("commit")
+                                              .addJavadoc("Publish the commit, then append the changed fields "
+                                                      + "of the changed groups in one write, and force it to disk.\n"
+                                                      + "@return the published snapshot\n")
+                                              .addModifiers(Modifier.PUBLIC, Modifier.SYNCHRONIZED)
+                                              .returns(snapshotClassName)
+                                              .addParameter(commitClassName, "commit")
+                                              .addException(IOException.class)
+                                              .addStatement("$T previous = registry.snapshot()", snapshotClassName)
+                                              .addStatement("$T next = commit.commit()", snapshotClassName)
+                                              .addStatement("int size = 0");
+        CodeBlock.Builder write = CodeBlock.builder()
+                                           .addStatement("$T buffer = $T.allocate(size)", ByteBuffer.class,
+                                                   ByteBuffer.class);
+        MethodSpec.Builder recover = MethodSpec.methodBuilder("recover")
+                                               .addJavadoc("Load the base snapshot (if exists), replay the journal "
+                                                       + "(if exists), and cut the torn tail of it.\n"
+                                                       + "@throws IOException if not readable, corrupt, "
+                                                       + "or written by other version or schema\n")
+                                               .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                                               .returns(registryClassName)
+                                               .addParameter(Path.class, "snapshotPath")
+                                               .addParameter(Path.class, "journalPath")
+                                               .addException(IOException.class)
+                                               .addStatement("$T registry = $T.exists(snapshotPath) "
+                                                       + "? $T.load(snapshotPath) : new $T()", registryClassName,
+                                                       Files.class, registryClassName, registryClassName)
+                                               .beginControlFlow("if (!$T.exists(journalPath))", Files.class)
+                                               .addStatement("return registry")
+                                               .endControlFlow()
+                                               .beginControlFlow("try ($T channel = $T.open(journalPath, $T.READ, "
+                                                       + "$T.WRITE))", FileChannel.class, FileChannel.class,
+                                                       StandardOpenOption.class, StandardOpenOption.class)
+                                               .addStatement("$T journal = $T.allocate((int) channel.size())",
+                                                       ByteBuffer.class, ByteBuffer.class)
+                                               .beginControlFlow("while (journal.hasRemaining() "
+                                                       + "&& channel.read(journal) > 0)")
+                                               .addComment("read all, a file never shrinks while recovering")
+                                               .endControlFlow()
+                                               .addStatement("journal.flip()")
+                                               .addStatement("int valid = 0")
+                                               .beginControlFlow("while (journal.remaining() >= $L)",
+                                                       RECORD_HEADER_BYTES)
+                                               .addStatement("int group = journal.getInt()")
+                                               .addStatement("int length = journal.getInt()")
+                                               .beginControlFlow("if (length > journal.remaining())")
+                                               .addStatement("break")
+                                               .endControlFlow()
+                                               .addStatement("$T record = journal.slice()", ByteBuffer.class)
+                                               .addStatement("record.limit(Math.max(length, 0))")
+                                               .beginControlFlow("try")
+                                               .beginControlFlow("switch (group)");
+        for (int i = 0; i < groups.size(); ++i) {
+            ClassName group = groups.get(i);
+            ClassName deltaClassName = group.nestedClass("Delta");
+            String name = GenBuilderRenderer.makeParamName(group.simpleName());
+            String delta = name + "Delta";
+            String bytes = name + "Length";
+            String base = name + "Base";
+            commit.addStatement("$T $N = null", deltaClassName, delta)
+                  .addStatement("int $N = 0", bytes)
+                  .beginControlFlow("if (previous.get$N() != next.get$N())", group.simpleName(), group.simpleName())
+                  .beginControlFlow("if (next.get$N() == null)", group.simpleName())
+                  .addStatement("$N = -1", bytes)
+                  .nextControlFlow("else")
+                  .addStatement("$T $N = previous.get$N()", group, base, group.simpleName())
+                  .addStatement("$N = ($N == null ? new $T() : $N).diff(next.get$N())", delta, base, group, base,
+                          group.simpleName())
+                  .addStatement("$N = $N.isEmpty() ? 0 : $N.serializedSize()", bytes, delta, delta)
+                  .endControlFlow()
+                  .endControlFlow()
+                  .beginControlFlow("if ($N != 0)", bytes)
+                  .addStatement("size += $L + Math.max($N, 0)", RECORD_HEADER_BYTES, bytes)
+                  .endControlFlow();
+            write.beginControlFlow("if ($N != 0)", bytes)
+                 .addStatement("buffer.putInt($L).putInt($N)", i, bytes)
+                 .beginControlFlow("if ($N != null)", delta)
+                 .addStatement("$N.writeTo(buffer)", delta)
+                 .endControlFlow()
+                 .endControlFlow();
+            recover.addCode("case $L:\n$>", i)
+                   .addStatement("$T $N = registry.get$N()", group, base, group.simpleName())
+                   .addStatement("registry.set$N(length < 0 ? null : $T.readFrom(record).applyTo($N == null "
+                           + "? new $T() : $N))", group.simpleName(), deltaClassName, base, group, base)
+                   .addStatement("break")
+                   .addCode("$<");
+        }
+        recover.addCode("default:\n$>")
+               .addStatement("throw new $T($S + group + $S + journalPath)", IOException.class, "Unknown group ",
+                       " in ")
+               .addCode("$<")
+               .endControlFlow()
+               .nextControlFlow("catch ($T | $T e)", IllegalArgumentException.class,
+                       BufferUnderflowException.class) // corrupt or truncated record
+               .addStatement("throw new $T(journalPath.toString(), e)", IOException.class)
+               .endControlFlow()
+               .addStatement("journal.position(journal.position() + Math.max(length, 0))")
+               .addStatement("valid = journal.position()")
+               .endControlFlow()
+               .addStatement("channel.truncate(valid)")
+               .endControlFlow()
+               .addStatement("return registry");
+        commit.beginControlFlow("if (size == 0)")
+              .addStatement("return next")
+              .endControlFlow()
+              .addCode(write.build())
+              .addStatement("buffer.flip()")
+              .beginControlFlow("while (buffer.hasRemaining())")
+              .addStatement("channel.write(buffer)")
+              .endControlFlow()
+              .addStatement("channel.force(false)")
+              .addStatement("length += size")
+              .beginControlFlow("if (length >= compactBytes && compactor != null && !compacting)")
+              .addStatement("compacting = true")
+              .beginControlFlow("try")
+              .addStatement("compactor.execute($L)", TypeSpec.anonymousClassBuilder("")
+                                                             .addSuperinterface(Runnable.class)
+                                                             .addMethod(MethodSpec.methodBuilder("run")
+                                                                                  .addAnnotation(Override.class)
+                                                                                  .addModifiers(Modifier.PUBLIC)
+                                                                                  .beginControlFlow("try")
+                                                                                  .addStatement("compact()")
+                                                                                  .nextControlFlow("catch ($T e)",
+                                                                                          IOException.class)
+                                                                                  .addStatement("throw new $T(e)",
+                                                                                          UncheckedIOException.class)
+                                                                                  .endControlFlow()
+                                                                                  .build())
+                                                             .build())
+              .nextControlFlow("catch ($T e)", RejectedExecutionException.class)
+              .addComment("the record is durable anyway, try again on the next commit")
+              .addStatement("compacting = false")
+              .endControlFlow()
+              .endControlFlow()
+              .addStatement("return next");
+        journal.addMethod(commit.build());
+        for (ClassName group : groups) {
+            String name = GenBuilderRenderer.makeParamName(group.simpleName());
+            journal.addMethod(MethodSpec.methodBuilder("set" + group.simpleName())
+                                        .addModifiers(Modifier.PUBLIC)
+                                        .returns(snapshotClassName)
+                                        .addParameter(group, name)
+                                        .addException(IOException.class)
+                                        .addStatement("return commit(registry.begin().set$N($N))",
+                                                group.simpleName(), name)
+                                        .build());
+        }
+        journal.addMethod(MethodSpec.methodBuilder("compact")
+                                    .addJavadoc("Save the registry as the base snapshot, then empty the journal.\n")
+                                    .addModifiers(Modifier.PUBLIC, Modifier.SYNCHRONIZED)
+                                    .addException(IOException.class)
+                                    .beginControlFlow("try")
+                                    .addStatement("registry.save(snapshotPath)")
+                                    .addStatement("channel.truncate(0)")
+                                    .addStatement("length = 0")
+                                    .nextControlFlow("finally")
+                                    .addStatement("compacting = false")
+                                    .endControlFlow()
+                                    .build());
+        journal.addMethod(MethodSpec.methodBuilder("close")
+                                    .addAnnotation(Override.class)
+                                    .addModifiers(Modifier.PUBLIC, Modifier.SYNCHRONIZED)
+                                    .addException(IOException.class)
+                                    .addStatement("channel.close()")
+                                    .build());
+        journal.addMethod(recover.build());
+        return journal.build();
+    }
+}
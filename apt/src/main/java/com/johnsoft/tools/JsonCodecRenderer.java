@@ -0,0 +1,305 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.johnsoft.tools;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.List;
+import java.util.Map;
+
+import javax.lang.model.element.Modifier;
+
+import com.johnsoft.annotations.runtime.Json;
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+
+/**
+ * Render toJson(Appendable) and static fromJson(Reader) of target, and Builder's readJson(Json),
+ * for {@link GenBuilderRenderer}.<br/>
+ * NOTE:
+ * 1. Keys are property names, packed properties are written as boolean or int, primitive elements as array,
+ *    non-finite float and double are written as String, e.g. "NaN".<br/>
+ * 2. fromJson starts from new Builder(), so missing keys keep the defaults, unknown keys are skipped,
+ *    and values go through Builder's setters (enum's and packed ones are written into the fields).<br/>
+ * 4. Malformed input throws IllegalArgumentException, including an enum value not in its values,
+ *    and a number out of the property type's range.<br/>
+ * 3. The streaming reader (with writer helpers) is {@link Json} of the annotations module, not generated.<br/>
+ *
+ * @author John Kenrinus Lee
+ * @version 2019-05-17
+ */
+final class JsonCodecRenderer {
+    private static final String OUT = "out";
+    private static final String READER = "reader";
+    private static final ClassName STRING = ClassName.get(String.class);
+    private static final ClassName JSON = ClassName.get(Json.class);
+
+    private JsonCodecRenderer() {
+    }
+
+    /**
+     * @return true if the property's type can be encoded
+     */
+    static boolean isSupported(DescriptorModel.Property property) {
+        if (property.primitiveElementType != null || isScalar(property.type)) {
+            return true;
+        }
+        if (property.collectionKind == DescriptorModel.CollectionKind.NONE
+                || (property.collectionInterface && CopyOnWriteRenderer.mutableType(property) == null)) {
+            return false;
+        }
+        if (property.collectionKind == DescriptorModel.CollectionKind.MAP
+                && !STRING.equals(property.elementTypes.get(0))) {
+            return false;
+        }
+        for (TypeName elementType : property.elementTypes) {
+            if (!isScalar(elementType)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static void render(DescriptorModel model, PackedLayout packedLayout, ClassName builderClassName,
+                       List<MethodSpec> targetMethods, List<MethodSpec> builderMethods) {
+        ClassName targetClassName = model.targetClassName;
+        String builderName = builderClassName.simpleName();
+
+        MethodSpec.Builder write = MethodSpec.methodBuilder("toJson")
+                                             .addJavadoc("Write as JSON object, which can be read by "
+                                                     + "{@link #fromJson(Reader)}.\n")
+                                             .addModifiers(Modifier.PUBLIC)
+                                             .addParameter(Appendable.class, OUT)
+                                             .addException(IOException.class);
+        MethodSpec.Builder read = MethodSpec.methodBuilder("readJson")
+                                            .addModifiers(Modifier.PRIVATE)
+                                            .addParameter(JSON, READER)
+                                            .addException(IOException.class)
+                                            .addStatement("$N.expect('{')", READER)
+                                            .beginControlFlow("while ($N.hasNext('}'))", READER)
+                                            .beginControlFlow("switch ($N.nextName())", READER);
+        List<DescriptorModel.Property> properties = model.properties();
+        if (properties.isEmpty()) {
+            write.addStatement("$N.append($S)", OUT, "{}");
+        }
+        for (int i = 0; i < properties.size(); ++i) {
+            DescriptorModel.Property property = properties.get(i);
+            String name = property.name;
+            write.addStatement("$N.append($S)", OUT, (i == 0 ? "{\"" : ",\"") + name + "\":");
+            read.addCode("case $S:\n", name).addCode("$>");
+            PackedLayout.Slot slot = packedLayout.slot(property);
+            if (slot != null && slot.bool) {
+                write.addStatement("$N.append($T.valueOf($L))", OUT, STRING, slot.read("this"));
+                read.addStatement("$L", slot.write(readScalar(TypeName.BOOLEAN).toString()));
+            } else if (slot != null) {
+                write.addStatement("$N.append($T.valueOf($L))", OUT, STRING, slot.read("this"));
+                read.addCode(readEnum(property))
+                    .addStatement("$L", slot.write(name));
+            } else if (property.primitiveElementType != null) {
+                TypeName type = property.primitiveElementType;
+                write.addStatement("$N.append('[')", OUT)
+                     .beginControlFlow("for (int i = 0; i < $N.length; ++i)", name)
+                     .beginControlFlow("if (i > 0)")
+                     .addStatement("$N.append(',')", OUT)
+                     .endControlFlow()
+                     .addCode(writeScalar(type, name + "[i]"))
+                     .endControlFlow()
+                     .addStatement("$N.append(']')", OUT);
+                read.addStatement("$N()", property.setterName)
+                    .beginControlFlow("if (!$N.nextNull())", READER)
+                    .addStatement("$N.expect('[')", READER)
+                    .beginControlFlow("while ($N.hasNext(']'))", READER)
+                    .addStatement("$N($L)", property.elementAddName, readScalar(type))
+                    .endControlFlow()
+                    .endControlFlow();
+            } else if (property.collectionKind != DescriptorModel.CollectionKind.NONE) {
+                renderCollection(property, write, read);
+            } else {
+                write.addCode(writeScalar(property.type, name));
+                if (property.isEnums()) {
+                    read.addCode(readEnum(property))
+                        .addStatement("this.$N = $N", name, name);
+                } else {
+                    read.addStatement("$N($L)", property.setterName, readScalar(property.type));
+                }
+            }
+            read.addStatement("break").addCode("$<");
+        }
+        if (!properties.isEmpty()) {
+            write.addStatement("$N.append('}')", OUT);
+        }
+        read.addCode("default:\n$>")
+            .addStatement("$N.skipValue()", READER)
+            .addCode("$<")
+            .endControlFlow()
+            .endControlFlow();
+        targetMethods.add(write.build());
+        targetMethods.add(MethodSpec.methodBuilder("fromJson")
+                                    .addJavadoc("Read one JSON object, missing keys keep the defaults of "
+                                            + "{@link $N}, unknown keys are skipped.\n"
+                                            + "@throws IllegalArgumentException if malformed\n", builderName)
+                                    .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                                    .returns(targetClassName)
+                                    .addParameter(Reader.class, "in")
+                                    .addException(IOException.class)
+                                    .addStatement("$T $N = new $T(in)", JSON, READER, JSON)
+                                    .addStatement(model.options.inheritable ? "$T builder = new $N<>()"
+                                                                            : "$T builder = new $N()",
+                                            GenBuilderRenderer.builderType(model), builderName)
+                                    .addStatement("builder.readJson($N)", READER)
+                                    .addStatement("$N.expectEnd()", READER)
+                                    .addStatement("return builder.build()")
+                                    .build());
+        builderMethods.add(read.build());
+    }
+
+    private static void renderCollection(DescriptorModel.Property property,
+                                         MethodSpec.Builder write, MethodSpec.Builder read) {
+        String name = property.name;
+        boolean map = property.collectionKind == DescriptorModel.CollectionKind.MAP;
+        TypeName first = property.elementTypes.get(0);
+        TypeName second = map ? property.elementTypes.get(1) : null;
+        ClassName mutableType = property.collectionInterface ? CopyOnWriteRenderer.mutableType(property)
+                                                             : property.collectionRawType;
+        TypeName entryType = map ? ParameterizedTypeName.get(ClassName.get(Map.Entry.class), first, second) : first;
+        String element = map ? "entry" : "value";
+
+        write.beginControlFlow("if ($N == null)", name)
+             .addStatement("$N.append($S)", OUT, "null")
+             .nextControlFlow("else")
+             .addStatement("$N.append($L)", OUT, map ? "'{'" : "'['")
+             .addStatement("boolean first = true")
+             .beginControlFlow("for ($T $N : $N$L)", entryType, element, name, map ? ".entrySet()" : "")
+             .beginControlFlow("if (!first)")
+             .addStatement("$N.append(',')", OUT)
+             .endControlFlow()
+             .addStatement("first = false");
+        if (map) {
+            write.addStatement("$T.writeString($N, entry.getKey())", JSON, OUT)
+                 .addStatement("$N.append(':')", OUT)
+                 .addCode(writeScalar(second, "entry.getValue()"));
+        } else {
+            write.addCode(writeScalar(first, element));
+        }
+        write.endControlFlow()
+             .addStatement("$N.append($L)", OUT, map ? "'}'" : "']'")
+             .endControlFlow();
+
+        read.beginControlFlow("if ($N.nextNull())", READER)
+            .addStatement("$N(null)", property.setterName)
+            .addStatement("break")
+            .endControlFlow()
+            .addStatement("$T $N = new $T<>()", property.type, name, mutableType)
+            .addStatement("$N.expect($L)", READER, map ? "'{'" : "'['")
+            .beginControlFlow("while ($N.hasNext($L))", READER, map ? "'}'" : "']'");
+        if (map) {
+            read.addStatement("$N.put($N.nextName(), $L)", name, READER, readScalar(second));
+        } else {
+            read.addStatement("$N.add($L)", name, readScalar(first));
+        }
+        read.endControlFlow()
+            .addStatement("$N($N)", property.setterName, name);
+    }
+
+    /**
+     * read enum's int or String value into the local named as property, which must be one of the values
+     */
+    private static CodeBlock readEnum(DescriptorModel.Property property) {
+        String name = property.name;
+        CodeBlock.Builder code = CodeBlock.builder()
+                                          .addStatement("$T $N = $L", property.type, name, readScalar(property.type));
+        CodeBlock.Builder condition = CodeBlock.builder();
+        if (!property.type.isPrimitive()) { // null is written for null field, so it is read back
+            condition.add("$N != null && ", name);
+        }
+        for (Integer value : property.enumIntValues) {
+            condition.add("$N != $L && ", name, value);
+        }
+        for (String value : property.enumStringValues) {
+            condition.add("!$S.equals($N) && ", value, name);
+        }
+        String conditions = condition.build().toString();
+        return code.beginControlFlow("if ($L)", conditions.substring(0, conditions.length() - " && ".length()))
+                   .addStatement("throw new $T($S + $N)", IllegalArgumentException.class,
+                           "Unknown value of " + name + ": ", name)
+                   .endControlFlow()
+                   .build();
+    }
+
+    private static boolean isScalar(TypeName type) {
+        return type.isPrimitive() || type.isBoxedPrimitive() || STRING.equals(type);
+    }
+
+    private static CodeBlock writeScalar(TypeName type, String value) {
+        if (STRING.equals(type)) {
+            return CodeBlock.of("$T.writeString($N, $N);\n", JSON, OUT, value);
+        }
+        CodeBlock statement;
+        TypeName primitive = type.isBoxedPrimitive() ? type.unbox() : type;
+        if (TypeName.CHAR.equals(primitive)) {
+            statement = CodeBlock.of("$T.writeString($N, $T.valueOf($N));\n", JSON, OUT, STRING, value);
+        } else if (TypeName.FLOAT.equals(primitive) || TypeName.DOUBLE.equals(primitive)) {
+            statement = CodeBlock.of("$T.writeNumber($N, $N);\n", JSON, OUT, value);
+        } else {
+            statement = CodeBlock.of("$N.append($T.valueOf($N));\n", OUT, STRING, value);
+        }
+        if (!type.isBoxedPrimitive()) {
+            return statement;
+        }
+        return CodeBlock.builder()
+                        .beginControlFlow("if ($N == null)", value)
+                        .addStatement("$N.append($S)", OUT, "null")
+                        .nextControlFlow("else")
+                        .add(statement)
+                        .endControlFlow()
+                        .build();
+    }
+
+    private static CodeBlock readScalar(TypeName type) {
+        if (STRING.equals(type)) {
+            return CodeBlock.of("$N.nextString()", READER);
+        }
+        if (type.isBoxedPrimitive()) {
+            return CodeBlock.of("$N.nextNull() ? null : $T.valueOf($L)", READER, type, readScalar(type.unbox()));
+        }
+        if (TypeName.BOOLEAN.equals(type)) {
+            return CodeBlock.of("$N.nextBoolean()", READER);
+        }
+        if (TypeName.CHAR.equals(type)) {
+            return CodeBlock.of("$N.nextChar()", READER);
+        }
+        if (TypeName.LONG.equals(type)) {
+            return CodeBlock.of("$N.nextLong()", READER);
+        }
+        if (TypeName.DOUBLE.equals(type)) {
+            return CodeBlock.of("$N.nextDouble()", READER);
+        }
+        if (TypeName.FLOAT.equals(type)) {
+            return CodeBlock.of("$N.nextFloat()", READER);
+        }
+        if (TypeName.SHORT.equals(type)) {
+            return CodeBlock.of("$N.nextShort()", READER);
+        }
+        if (TypeName.BYTE.equals(type)) {
+            return CodeBlock.of("$N.nextByte()", READER);
+        }
+        return CodeBlock.of("$N.nextInt()", READER);
+    }
+}
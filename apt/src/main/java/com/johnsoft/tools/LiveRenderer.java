@@ -0,0 +1,175 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.johnsoft.tools;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.lang.model.element.Modifier;
+
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+
+/**
+ * Render nested class Live of target, for {@link GenBuilderRenderer}.<br/>
+ * NOTE:
+ * 1. Live stores the primitive fields (and packed words) of target inline, written by set(target) under a sequence
+ *    lock: odd sequence while writing, readers retry until they read the same even sequence around the copy.<br/>
+ * 2. read(Values) copies a consistent snapshot into a caller-owned Values (no lock, no allocation),
+ *    getXXX() reads one field, Set, List, Map, String and other references are not held.<br/>
+ * 3. Java 8 has no load fence without Unsafe, so the fields are volatile (plain loads on x86),
+ *    which keeps the copy between the two reads of the sequence.<br/>
+ * 4. Fields are always accessed as this.xx, so they never clash with parameters and locals,
+ *    but a property named {@link #SEQUENCE} clashes with the lock, rejected by {@link GenBuilderProcessor}.<br/>
+ *
+ * @author John Kenrinus Lee
+ * @version 2019-05-20
+ */
+final class LiveRenderer {
+    static final String SEQUENCE = "sequence";
+    private static final String VALUE = "value";
+    private static final String INTO = "into";
+
+    private LiveRenderer() {
+    }
+
+    /**
+     * @return true if Live stores the property inline
+     */
+    static boolean isSupported(DescriptorModel.Property property) {
+        return property.type.isPrimitive() && property.primitiveElementType == null;
+    }
+
+    /**
+     * @return true if Live has any field to hold
+     */
+    static boolean hasSupported(DescriptorModel model) {
+        for (DescriptorModel.Property property : model.properties()) {
+            if (isSupported(property)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static TypeSpec render(DescriptorModel model, PackedLayout packedLayout) {
+        ClassName targetClassName = model.targetClassName;
+        ClassName liveClassName = targetClassName.nestedClass("Live");
+        ClassName valuesClassName = liveClassName.nestedClass("Values");
+        String simpleName = targetClassName.simpleName();
+
+        // inline fields: packed words, then the other primitive properties
+        List<String> names = new ArrayList<>(packedLayout.wordNames());
+        List<TypeName> types = new ArrayList<>();
+        for (int i = 0; i < names.size(); ++i) {
+            types.add(TypeName.LONG);
+        }
+        List<DescriptorModel.Property> properties = new ArrayList<>();
+        for (DescriptorModel.Property property : model.properties()) {
+            if (!isSupported(property)) {
+                continue;
+            }
+            properties.add(property);
+            if (packedLayout.slot(property) == null) {
+                names.add(property.name);
+                types.add(property.type);
+            }
+        }
+
+        TypeSpec.Builder live = TypeSpec.classBuilder(liveClassName)
+                                        .addJavadoc("Primitive fields of $N inline, written under a sequence lock, "
+                                                + "read without lock or allocation.\n", simpleName)
+                                        .addModifiers(Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL)
+                                        .addField(TypeName.INT, SEQUENCE, Modifier.PRIVATE, Modifier.VOLATILE);
+        TypeSpec.Builder values = TypeSpec.classBuilder(valuesClassName)
+                                          .addJavadoc("Caller-owned copy of {@link $T}, reuse it for every read.\n",
+                                                  liveClassName)
+                                          .addModifiers(Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL);
+        MethodSpec.Builder set = MethodSpec.methodBuilder("set")
+                                           .addJavadoc("Publish the primitive fields of value, "
+                                                   + "writers are serialized, readers never block.\n")
+                                           .addModifiers(Modifier.PUBLIC, Modifier.SYNCHRONIZED)
+                                           .addParameter(targetClassName, VALUE)
+                                           .addStatement("$N++", SEQUENCE);
+        CodeBlock.Builder copy = CodeBlock.builder();
+        for (int i = 0; i < names.size(); ++i) {
+            String name = names.get(i);
+            live.addField(types.get(i), name, Modifier.PRIVATE, Modifier.VOLATILE);
+            values.addField(types.get(i), name, Modifier.PRIVATE);
+            set.addStatement("this.$N = $N.$N", name, VALUE, name);
+            copy.addStatement("$N.$N = this.$N", INTO, name, name);
+        }
+        set.addStatement("$N++", SEQUENCE);
+
+        live.addMethod(MethodSpec.constructorBuilder()
+                                 .addModifiers(Modifier.PUBLIC)
+                                 .addParameter(targetClassName, VALUE)
+                                 .addStatement("set($N)", VALUE)
+                                 .build());
+        live.addMethod(set.build());
+        live.addMethod(MethodSpec.methodBuilder("read")
+                                 .addJavadoc("Copy a consistent snapshot, retry while a writer is in progress.\n"
+                                         + "@return into\n")
+                                 .addModifiers(Modifier.PUBLIC)
+                                 .returns(valuesClassName)
+                                 .addParameter(valuesClassName, INTO)
+                                 .addStatement("int start")
+                                 .beginControlFlow("do")
+                                 .addStatement("start = this.$N", SEQUENCE)
+                                 .addCode(copy.build())
+                                 .endControlFlow("while ((start & 1) != 0 || start != this.$N)", SEQUENCE)
+                                 .addStatement("return $N", INTO)
+                                 .build());
+        live.addMethod(MethodSpec.methodBuilder(SEQUENCE)
+                                 .addJavadoc("@return even number changed by every set(), "
+                                         + "readers can skip read(Values) if it is the same as last time\n")
+                                 .addModifiers(Modifier.PUBLIC)
+                                 .returns(TypeName.INT)
+                                 .addStatement("int current")
+                                 .beginControlFlow("do")
+                                 .addStatement("current = $N", SEQUENCE)
+                                 .endControlFlow("while ((current & 1) != 0)")
+                                 .addStatement("return current")
+                                 .build());
+        for (DescriptorModel.Property property : properties) {
+            String content = "return $L";
+            if (model.options.useGetter && property.getterTemplate != null) {
+                content = property.getterTemplate.replace("$N", "$L");
+            }
+            PackedLayout.Slot slot = packedLayout.slot(property);
+            CodeBlock value = slot == null ? CodeBlock.of("this.$N", property.name) : slot.read("this");
+            live.addMethod(MethodSpec.methodBuilder(property.getterName)
+                                     .addAnnotations(property.methodAnnotations)
+                                     .addJavadoc(property.javadoc)
+                                     .addModifiers(Modifier.PUBLIC)
+                                     .returns(property.type)
+                                     .addStatement(content, value)
+                                     .build());
+            values.addMethod(MethodSpec.methodBuilder(property.getterName)
+                                       .addAnnotations(property.methodAnnotations)
+                                       .addJavadoc(property.javadoc)
+                                       .addModifiers(Modifier.PUBLIC)
+                                       .returns(property.type)
+                                       .addStatement(content, value)
+                                       .build());
+        }
+        return live.addType(values.build()).build();
+    }
+}
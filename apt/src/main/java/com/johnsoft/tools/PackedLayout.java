@@ -0,0 +1,253 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.johnsoft.tools;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.lang.model.element.Modifier;
+
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterSpec;
+import com.squareup.javapoet.TypeName;
+
+/**
+ * Bit layout of boolean and int {@link com.johnsoft.annotations.GenBuilder.Enums} properties
+ * packed into long words ("packed0", "packed1", ...), for {@link GenBuilderRenderer}.<br/>
+ * NOTE:
+ * 1. Boolean takes 1 bit, enum int takes bits of (max - min) and stores (value - min),
+ *    a slot never crosses two words.<br/>
+ * 2. Value out of intValues()'s range (e.g. set by initializer) will be truncated.<br/>
+ *
+ * @author John Kenrinus Lee
+ * @version 2019-05-12
+ */
+final class PackedLayout {
+    private static final String WORD_PREFIX = "packed";
+
+    private final Map<DescriptorModel.Property, Slot> slots = new IdentityHashMap<>();
+    private final int words;
+
+    private PackedLayout(List<DescriptorModel.Property> properties) {
+        int word = 0;
+        int shift = 0;
+        for (DescriptorModel.Property property : properties) {
+            int bits;
+            int min = 0;
+            boolean bool = TypeName.BOOLEAN.equals(property.type);
+            if (property.getterTemplate != null || property.setterTemplate != null) {
+                continue;
+            }
+            if (bool && !property.isEnums()) {
+                bits = 1;
+            } else if (TypeName.INT.equals(property.type) && !property.enumIntValues.isEmpty()) {
+                min = Collections.min(property.enumIntValues);
+                long range = (long) Collections.max(property.enumIntValues) - min;
+                bits = Math.max(1, Long.SIZE - Long.numberOfLeadingZeros(range));
+            } else {
+                continue;
+            }
+            if (shift + bits > Long.SIZE) {
+                ++word;
+                shift = 0;
+            }
+            slots.put(property, new Slot(wordName(word), shift, bits, min, bool));
+            shift += bits;
+        }
+        words = slots.isEmpty() ? 0 : word + 1;
+    }
+
+    static PackedLayout of(DescriptorModel model) {
+        return new PackedLayout(model.options.packed ? model.properties() : new ArrayList<>());
+    }
+
+    /**
+     * @return the slot, or null if not packed
+     */
+    Slot slot(DescriptorModel.Property property) {
+        return slots.get(property);
+    }
+
+    List<String> wordNames() {
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < words; ++i) {
+            names.add(wordName(i));
+        }
+        return names;
+    }
+
+    /**
+     * target's getter, Builder's setter (or setXXToName for enum), and the default value written into word
+     */
+    static void render(DescriptorModel.Property property, Slot slot, String defaultValue,
+                       TypeName builderReturnType, String returnThis,
+                       List<MethodSpec> targetMethods, List<MethodSpec> builderMethods,
+                       CodeBlock.Builder builderDefaultCode) {
+        String name = property.name;
+        targetMethods.add(MethodSpec.methodBuilder(property.getterName)
+                                    .addAnnotations(property.methodAnnotations)
+                                    .addJavadoc(property.javadoc)
+                                    .addModifiers(Modifier.PUBLIC)
+                                    .returns(property.type)
+                                    .addStatement("return $L", slot.read("this"))
+                                    .build());
+        if (slot.bool) {
+            builderMethods.add(MethodSpec.methodBuilder(property.setterName)
+                                         .addJavadoc(property.javadoc)
+                                         .addModifiers(Modifier.PUBLIC)
+                                         .returns(builderReturnType)
+                                         .addParameter(ParameterSpec.builder(property.type, name)
+                                                                    .addAnnotations(property.parameterAnnotations)
+                                                                    .build())
+                                         .addStatement("$L", slot.write(name))
+                                         .addStatement(returnThis)
+                                         .build());
+        } else {
+            for (int i = 0; i < property.enumNames.size(); ++i) {
+                builderMethods.add(MethodSpec.methodBuilder(property.setterName + "To" + property.enumNames.get(i))
+                                             .addJavadoc(property.javadoc)
+                                             .addModifiers(Modifier.PUBLIC)
+                                             .returns(builderReturnType)
+                                             .addStatement("$L", slot.writeConstant(property.enumIntValues.get(i)))
+                                             .addStatement(returnThis)
+                                             .build());
+            }
+        }
+        // words are zero before, so false (and the absent one of boolean) need not write
+        if ("null".equals(defaultValue)) {
+            if (!slot.bool && slot.min != 0) {
+                builderDefaultCode.addStatement("$L", slot.writeConstant(0));
+            }
+        } else if (!"false".equals(defaultValue)) {
+            builderDefaultCode.addStatement("$L", slot.write(defaultValue));
+        }
+    }
+
+    private static String wordName(int index) {
+        return WORD_PREFIX + index;
+    }
+
+    static final class Slot {
+        final String word;
+        final int shift;
+        final int bits;
+        final int min;
+        final boolean bool;
+
+        private Slot(String word, int shift, int bits, int min, boolean bool) {
+            this.word = word;
+            this.shift = shift;
+            this.bits = bits;
+            this.min = min;
+            this.bool = bool;
+        }
+
+        private long mask() {
+            return bits == Long.SIZE ? -1L : (1L << bits) - 1;
+        }
+
+        /**
+         * @return expression reads the value from the word of owner, e.g. "this"
+         */
+        CodeBlock read(String owner) {
+            return read(CodeBlock.of("$N.$N", owner, word));
+        }
+
+        /**
+         * @return expression reads the value from the word's value, e.g. "buffer.getLong(offset)"
+         */
+        CodeBlock read(CodeBlock wordValue) {
+            if (bool) {
+                return CodeBlock.of("($L & $L) != 0", wordValue, hex(1L << shift));
+            }
+            CodeBlock value = shift == 0 ? CodeBlock.of("(int) ($L & $L)", wordValue, hex(mask()))
+                                         : CodeBlock.of("(int) (($L >>> $L) & $L)", wordValue, shift, hex(mask()));
+            return min == 0 ? value : CodeBlock.of("$L + $L", value, min);
+        }
+
+        /**
+         * @return statement (without ';') writes boolean or int expression into the word of this
+         */
+        CodeBlock write(String value) {
+            if (bool && "true".equals(value)) {
+                return CodeBlock.of("this.$N |= $L", word, hex(1L << shift));
+            }
+            return CodeBlock.of("this.$N = $L", word, updated(value));
+        }
+
+        /**
+         * @return statement (without ';') writes the constant value known at generation
+         */
+        CodeBlock writeConstant(int value) {
+            if ((((long) value - min) & mask()) == 0) {
+                return CodeBlock.of("this.$N &= ~$L", word, hex(mask() << shift));
+            }
+            return CodeBlock.of("this.$N = $L", word, updatedConstant(value));
+        }
+
+        /**
+         * @return expression of this's word with boolean or int expression written
+         */
+        CodeBlock updated(String value) {
+            if (bool) {
+                String bit = hex(1L << shift);
+                return CodeBlock.of("$L ? this.$N | $L : this.$N & ~$L", value, word, bit, word, bit);
+            }
+            String offset = min == 0 ? value : "(" + value + ") - " + (min < 0 ? "(" + min + ")" : min);
+            if (shift == 0) {
+                return CodeBlock.of("(this.$N & ~$L) | ((long) ($L) & $L)", word, hex(mask()), offset, hex(mask()));
+            }
+            return CodeBlock.of("(this.$N & ~$L) | (((long) ($L) & $L) << $L)",
+                    word, hex(mask() << shift), offset, hex(mask()), shift);
+        }
+
+        /**
+         * @return statement (without ';') copies this slot from the word of source into the word of target
+         */
+        CodeBlock copy(String source, String target) {
+            String bits = hex(mask() << shift);
+            return CodeBlock.of("$N.$N = ($N.$N & ~$L) | ($N.$N & $L)", target, word, target, word, bits,
+                    source, word, bits);
+        }
+
+        /**
+         * @return expression, true if this slot differs between the words of the two owners
+         */
+        CodeBlock differs(String owner, String other) {
+            return CodeBlock.of("(($N.$N ^ $N.$N) & $L) != 0", owner, word, other, word, hex(mask() << shift));
+        }
+
+        /**
+         * @return expression of this's word with the constant value known at generation written
+         */
+        CodeBlock updatedConstant(int value) {
+            long bits = ((long) value - min) & mask();
+            if (bits == 0) {
+                return CodeBlock.of("this.$N & ~$L", word, hex(mask() << shift));
+            }
+            return CodeBlock.of("(this.$N & ~$L) | $L", word, hex(mask() << shift), hex(bits << shift));
+        }
+
+        private static String hex(long value) {
+            return "0x" + Long.toHexString(value) + "L";
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.johnsoft.tools;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.DoubleConsumer;
+import java.util.function.IntConsumer;
+import java.util.function.LongConsumer;
+import java.util.regex.Pattern;
+
+import javax.lang.model.element.Modifier;
+
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterSpec;
+import com.squareup.javapoet.TypeName;
+
+/**
+ * Render property marked {@link com.johnsoft.annotations.GenBuilder.Primitive}, for {@link GenBuilderRenderer}.<br/>
+ * NOTE:
+ * 1. Builder accumulates into a growable primitive array with size, target keeps the trimmed copy (private),
+ *    so no boxed element is created.<br/>
+ * 2. Builder from newBuilder() shares target's array, it is safe because the array is full (length == size),
+ *    the first addToXX will grow it to a new one before write.<br/>
+ * 3. With {@link com.johnsoft.annotations.GenBuilder#reusable()}, Builder remembers the array grown by itself
+ *    as "xxxBuffer", which is never shared, reset() restarts from it instead of a new one.<br/>
+ *
+ * @author John Kenrinus Lee
+ * @version 2019-05-11
+ */
+final class PrimitiveElementsRenderer {
+    private static final int MIN_CAPACITY = 8;
+    /**
+     * initializer like "new ArrayList<>()", nothing to add
+     */
+    private static final Pattern EMPTY_INITIALIZER = Pattern.compile("new [\\w.]+(<[^()]*>)?\\(\\)");
+
+    private PrimitiveElementsRenderer() {
+    }
+
+    /**
+     * @return false if initializer is absent or like "new ArrayList<>()"
+     */
+    static boolean hasDefaultElements(DescriptorModel.Property property) {
+        return !"null".equals(property.defaultValue) && !EMPTY_INITIALIZER.matcher(property.defaultValue).matches();
+    }
+
+    /**
+     * @param defaultValue initializer, or name of Builder's static final field holding it
+     * @param reusable     keep the Builder's own array for reset()
+     */
+    static void render(DescriptorModel.Property property, String defaultValue, boolean reusable,
+                       TypeName builderReturnType, String returnThis,
+                       String builderParamName, String targetParamName,
+                       List<FieldSpec> targetFields, List<MethodSpec> targetMethods,
+                       List<FieldSpec> builderFields, List<MethodSpec> builderMethods,
+                       CodeBlock.Builder targetCopyCode, CodeBlock.Builder builderDefaultCode,
+                       CodeBlock.Builder builderCopyCode) {
+        String name = property.name;
+        String capName = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+        String sizeName = name + "Size";
+        String growName = "grow" + capName;
+        String bufferName = name + "Buffer";
+        TypeName elementType = property.primitiveElementType;
+        TypeName arrayType = property.targetType();
+
+        // target: private final int[] xxx, getXxx(int index), xxxSize(), forEachXxx(IntConsumer), xxxToArray()
+        targetFields.add(FieldSpec.builder(arrayType, name, Modifier.PRIVATE, Modifier.FINAL).build());
+        targetMethods.add(MethodSpec.methodBuilder(property.getterName)
+                                    .addJavadoc(property.javadoc)
+                                    .addModifiers(Modifier.PUBLIC)
+                                    .returns(elementType)
+                                    .addParameter(TypeName.INT, "index")
+                                    .addStatement("return $N[index]", name)
+                                    .build());
+        targetMethods.add(MethodSpec.methodBuilder(sizeName)
+                                    .addModifiers(Modifier.PUBLIC)
+                                    .returns(TypeName.INT)
+                                    .addStatement("return $N.length", name)
+                                    .build());
+        targetMethods.add(MethodSpec.methodBuilder("forEach" + capName)
+                                    .addModifiers(Modifier.PUBLIC)
+                                    .addParameter(consumerType(elementType), "action")
+                                    .beginControlFlow("for ($T value : $N)", elementType, name)
+                                    .addStatement("action.accept(value)")
+                                    .endControlFlow()
+                                    .build());
+        targetMethods.add(MethodSpec.methodBuilder(name + "ToArray")
+                                    .addJavadoc("@return a copy of $N\n", name)
+                                    .addModifiers(Modifier.PUBLIC)
+                                    .returns(arrayType)
+                                    .addStatement("return $N.clone()", name)
+                                    .build());
+
+        // Builder: private int[] xxx, private int xxxSize
+        builderFields.add(FieldSpec.builder(arrayType, name, Modifier.PRIVATE).build());
+        builderFields.add(FieldSpec.builder(TypeName.INT, sizeName, Modifier.PRIVATE).build());
+        if (reusable) {
+            builderFields.add(FieldSpec.builder(arrayType, bufferName, Modifier.PRIVATE).build());
+        }
+        builderMethods.add(MethodSpec.methodBuilder(property.setterName)
+                                     .addJavadoc(property.javadoc)
+                                     .addModifiers(Modifier.PUBLIC)
+                                     .returns(builderReturnType)
+                                     .addParameter(ParameterSpec.builder(arrayType, "values").build())
+                                     .varargs()
+                                     .addStatement("this.$N = values.clone()", name)
+                                     .addStatement("this.$N = values.length", sizeName)
+                                     .addStatement(returnThis)
+                                     .build());
+        builderMethods.add(MethodSpec.methodBuilder(property.elementAddName)
+                                     .addJavadoc(property.javadoc)
+                                     .addModifiers(Modifier.PUBLIC)
+                                     .returns(builderReturnType)
+                                     .addParameter(elementType, "value")
+                                     .beginControlFlow("if ($N == $N.length)", sizeName, name)
+                                     .addStatement("$N()", growName)
+                                     .endControlFlow()
+                                     .addStatement("$N[$N++] = value", name, sizeName)
+                                     .addStatement(returnThis)
+                                     .build());
+        CodeBlock grown = CodeBlock.of("$T.copyOf($N, Math.max($L, $N.length + ($N.length >> 1)))",
+                Arrays.class, name, MIN_CAPACITY, name, name);
+        MethodSpec.Builder grow = MethodSpec.methodBuilder(growName).addModifiers(Modifier.PRIVATE);
+        if (reusable) {
+            grow.addStatement("$N = $N = $L", name, bufferName, grown);
+        } else {
+            grow.addStatement("$N = $L", name, grown);
+        }
+        builderMethods.add(grow.build());
+
+        // constructors
+        targetCopyCode.addStatement("this.$N = $T.copyOf($N.$N, $N.$N)", name, Arrays.class,
+                builderParamName, name, builderParamName, sizeName);
+        builderCopyCode.addStatement("this.$N = $N.$N", name, targetParamName, name)
+                       .addStatement("this.$N = $N.length", sizeName, name);
+        if (reusable) {
+            builderDefaultCode.addStatement("this.$N = $N == null ? new $T[0] : $N",
+                    name, bufferName, elementType, bufferName);
+        } else {
+            builderDefaultCode.addStatement("this.$N = new $T[0]", name, elementType);
+        }
+        builderDefaultCode.addStatement("this.$N = 0", sizeName);
+        if (hasDefaultElements(property)) {
+            builderDefaultCode.beginControlFlow("for ($T value : $L)", elementType, defaultValue)
+                              .beginControlFlow("if ($N == $N.length)", sizeName, name)
+                              .addStatement("$N()", growName)
+                              .endControlFlow()
+                              .addStatement("$N[$N++] = value", name, sizeName)
+                              .endControlFlow();
+        }
+    }
+
+    private static Class<?> consumerType(TypeName elementType) {
+        if (TypeName.LONG.equals(elementType)) {
+            return LongConsumer.class;
+        }
+        if (TypeName.DOUBLE.equals(elementType)) {
+            return DoubleConsumer.class;
+        }
+        return IntConsumer.class;
+    }
+}
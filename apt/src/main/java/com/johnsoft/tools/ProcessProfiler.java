@@ -0,0 +1,260 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.johnsoft.tools;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import javax.lang.model.element.Modifier;
+
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+
+/**
+ * Collect processing timings and generated code size of {@link GenBuilderProcessor}, report as JSON.<br/>
+ * NOTE:
+ * 1. Time of "doProcess" (extract model from javac tree) contains the nested types and "copyMethod",
+ *    "render" (TypeSpec and source text) may run on other threads.<br/>
+ * 2. Sizes are estimated (64-bit JVM with compressed oops, rough bytes per statement),
+ *    just for finding the heavy descriptors, not exact.<br/>
+ *
+ * @author John Kenrinus Lee
+ * @version 2019-05-06
+ */
+final class ProcessProfiler {
+    enum Phase {
+        RESOLVE_NAME_SYMBOLS("resolveNameSymbols"),
+        DO_PROCESS("doProcess"),
+        COPY_METHOD("copyMethod"),
+        RENDER("render"),
+        EMIT("emit");
+
+        final String jsonName;
+
+        Phase(String jsonName) {
+            this.jsonName = jsonName;
+        }
+    }
+
+    private static final int OBJECT_HEADER_BYTES = 12;
+    private static final int REFERENCE_BYTES = 4;
+    private static final int CLASS_BASE_BYTES = 256;
+    private static final int FIELD_BYTES = 16;
+    private static final int METHOD_BASE_BYTES = 48;
+    private static final int STATEMENT_BYTES = 8;
+
+    private final List<Descriptor> descriptors = new ArrayList<>();
+
+    synchronized Descriptor newDescriptor(String name) {
+        Descriptor descriptor = new Descriptor(name);
+        descriptors.add(descriptor);
+        return descriptor;
+    }
+
+    synchronized void writeReport(File file) throws IOException {
+        long[] totals = new long[Phase.values().length];
+        for (Descriptor descriptor : descriptors) {
+            for (int i = 0; i < totals.length; ++i) {
+                totals[i] += descriptor.nanos[i];
+            }
+        }
+        StringBuilder sb = new StringBuilder(256 + descriptors.size() * 512);
+        sb.append("{\n  \"totalMillis\": ");
+        appendPhases(sb, totals);
+        sb.append(",\n  \"descriptors\": [");
+        for (int i = 0; i < descriptors.size(); ++i) {
+            sb.append(i == 0 ? "\n" : ",\n");
+            descriptors.get(i).appendJson(sb);
+        }
+        sb.append("\n  ]\n}\n");
+
+        File parent = file.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Can't create directory " + parent);
+        }
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            writer.write(sb.toString());
+        }
+    }
+
+    private static void appendPhases(StringBuilder sb, long[] nanos) {
+        sb.append('{');
+        for (Phase phase : Phase.values()) {
+            if (phase.ordinal() > 0) {
+                sb.append(", ");
+            }
+            sb.append('"').append(phase.jsonName).append("\": ")
+              .append(String.format(Locale.ROOT, "%.3f", nanos[phase.ordinal()] / 1e6));
+        }
+        sb.append('}');
+    }
+
+    private static void appendString(StringBuilder sb, String value) {
+        sb.append('"');
+        for (int i = 0; i < value.length(); ++i) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        sb.append('"');
+    }
+
+    static int estimateInstanceBytes(TypeSpec typeSpec) {
+        int bytes = OBJECT_HEADER_BYTES;
+        for (FieldSpec fieldSpec : typeSpec.fieldSpecs) {
+            if (!fieldSpec.modifiers.contains(Modifier.STATIC)) {
+                bytes += fieldBytes(fieldSpec.type);
+            }
+        }
+        return (bytes + 7) & ~7;
+    }
+
+    static int estimateBytecodeBytes(TypeSpec typeSpec) {
+        int bytes = CLASS_BASE_BYTES + typeSpec.fieldSpecs.size() * FIELD_BYTES;
+        for (MethodSpec methodSpec : typeSpec.methodSpecs) {
+            bytes += METHOD_BASE_BYTES;
+            String code = methodSpec.code.toString();
+            for (int i = 0; i < code.length(); ++i) {
+                if (code.charAt(i) == ';') {
+                    bytes += STATEMENT_BYTES;
+                }
+            }
+        }
+        return bytes;
+    }
+
+    private static int fieldBytes(TypeName typeName) {
+        if (TypeName.LONG.equals(typeName) || TypeName.DOUBLE.equals(typeName)) {
+            return 8;
+        }
+        if (TypeName.INT.equals(typeName) || TypeName.FLOAT.equals(typeName)) {
+            return 4;
+        }
+        if (TypeName.SHORT.equals(typeName) || TypeName.CHAR.equals(typeName)) {
+            return 2;
+        }
+        if (TypeName.BYTE.equals(typeName) || TypeName.BOOLEAN.equals(typeName)) {
+            return 1;
+        }
+        return REFERENCE_BYTES;
+    }
+
+    /**
+     * Profile of one annotated descriptor, only touched by one thread at a time.
+     */
+    static final class Descriptor {
+        private final String name;
+        private final long[] nanos = new long[Phase.values().length];
+        private final List<String> typeEntries = new ArrayList<>();
+        private int fields;
+        private int nestedTypes;
+        private int joinTargets;
+        private int generatedMethods;
+        private int bytecodeBytes;
+        private int instanceBytes;
+
+        private Descriptor(String name) {
+            this.name = name;
+        }
+
+        long start() {
+            return System.nanoTime();
+        }
+
+        void stop(Phase phase, long start) {
+            nanos[phase.ordinal()] += System.nanoTime() - start;
+        }
+
+        void setJoinTargets(int joinTargets) {
+            this.joinTargets = joinTargets;
+        }
+
+        /**
+         * count the fields (static and instance) and nested types of the descriptor, and its nested descriptors,
+         * not of the generated types, which depend on the options
+         */
+        void count(DescriptorModel model) {
+            for (DescriptorModel.Member member : model.members) {
+                if (member.staticField != null || member.property != null) {
+                    ++fields;
+                } else if (member.nested != null) {
+                    ++nestedTypes;
+                    count(member.nested);
+                }
+            }
+        }
+
+        /**
+         * count the methods, sizes of the generated type and its nested types
+         */
+        void measure(TypeSpec typeSpec) {
+            measure(typeSpec, typeSpec.name);
+        }
+
+        private void measure(TypeSpec typeSpec, String typeName) {
+            int typeInstanceBytes = estimateInstanceBytes(typeSpec);
+            int typeBytecodeBytes = estimateBytecodeBytes(typeSpec);
+            generatedMethods += typeSpec.methodSpecs.size();
+            bytecodeBytes += typeBytecodeBytes;
+            instanceBytes += typeInstanceBytes;
+            StringBuilder sb = new StringBuilder();
+            sb.append("{\"name\": ");
+            appendString(sb, typeName);
+            sb.append(", \"instanceBytes\": ").append(typeInstanceBytes)
+              .append(", \"bytecodeBytes\": ").append(typeBytecodeBytes).append('}');
+            typeEntries.add(sb.toString());
+            for (TypeSpec nested : typeSpec.typeSpecs) {
+                measure(nested, typeName + "." + nested.name);
+            }
+        }
+
+        private void appendJson(StringBuilder sb) {
+            sb.append("    {\"name\": ");
+            appendString(sb, name);
+            sb.append(", \"millis\": ");
+            appendPhases(sb, nanos);
+            sb.append(", \"fields\": ").append(fields)
+              .append(", \"nestedTypes\": ").append(nestedTypes)
+              .append(", \"joinTargets\": ").append(joinTargets)
+              .append(", \"generatedMethods\": ").append(generatedMethods)
+              .append(", \"estimatedBytecodeBytes\": ").append(bytecodeBytes)
+              .append(", \"estimatedInstanceBytes\": ").append(instanceBytes)
+              .append(", \"types\": [");
+            for (int i = 0; i < typeEntries.size(); ++i) {
+                if (i > 0) {
+                    sb.append(", ");
+                }
+                sb.append(typeEntries.get(i));
+            }
+            sb.append("]}");
+        }
+    }
+}
@@ -0,0 +1,441 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.johnsoft.tools;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.lang.model.element.Modifier;
+
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+
+/**
+ * Render nested class Registry, Snapshot and Commit of the top-level target, for {@link GenBuilderRenderer}.<br/>
+ * NOTE:
+ * 1. Groups are the top-level target (if it has properties) and its direct nested targets,
+ *    all of them live in one immutable Snapshot behind an AtomicReference.<br/>
+ * 2. Readers get the Snapshot (or one group) wait-free, setXXX publishes by CAS of a copied Snapshot,
+ *    Commit publishes several groups in one CAS, so readers never see half of them.<br/>
+ * 3. Builder of the group got into(Commit), join target (e.g. SettingManager) can delegate to Registry,
+ *    then intoXXX() is also a CAS publish.<br/>
+ * 4. With binaryCodec, Registry got save(Path) and static load(Path), which maps the file and leaves the groups
+ *    pending in Snapshot, every group is decoded on its first get (or snapshot()) and never pending again,
+ *    the mapping is kept (until GC), so on Windows save(Path) can't replace the file loaded from.<br/>
+ * 5. With delta, Registry got nested class Journal ({@link JournalRenderer}), which appends the changed fields
+ *    of every commit, compacts into the snapshot on an Executor, and recovers from both.<br/>
+ * 6. With jsonCodec, Registry got nested class Reloader ({@link ReloaderRenderer}), which watches a directory
+ *    of JSON files (one per group, e.g. Fonts.json), and publishes only the groups whose files changed.<br/>
+ *
+ * @author John Kenrinus Lee
+ * @version 2019-05-21
+ */
+final class RegistryRenderer {
+    static final List<String> TYPE_NAMES = Arrays.asList("Registry", "Snapshot", "Commit", "Journal",
+            "Reloader");
+    /**
+     * at most groups of Registry with binaryCodec, one bit of pending mask per group
+     */
+    static final int MAX_PERSISTENT_GROUPS = Long.SIZE;
+
+    private static final String PENDING = "pending";
+    private static final String MAPPED = "mapped";
+    /**
+     * "DSRT", then format version and group count, then table of offset and length
+     */
+    private static final int MAGIC = 0x44535254;
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_BYTES = 3 * Integer.BYTES;
+    private static final int TABLE_ENTRY_BYTES = 2 * Integer.BYTES;
+
+    private RegistryRenderer() {
+    }
+
+    /**
+     * @return true if model's target is one group of the Registry
+     */
+    static boolean isGroup(DescriptorModel model) {
+        if (model.topLevel) {
+            return !model.properties().isEmpty();
+        }
+        ClassName enclosing = model.targetClassName.enclosingClassName();
+        return enclosing != null && enclosing.enclosingClassName() == null;
+    }
+
+    /**
+     * Builder's public Commit into(Commit commit)
+     */
+    static MethodSpec renderInto(DescriptorModel model) {
+        ClassName commitClassName = model.targetClassName.topLevelClassName().nestedClass("Commit");
+        return MethodSpec.methodBuilder("into")
+                         .addJavadoc("Build and add to the commit, publish by {@link $T#commit()}.\n"
+                                 + "@return the commit\n", commitClassName)
+                         .addModifiers(Modifier.PUBLIC)
+                         .returns(commitClassName)
+                         .addParameter(commitClassName, "commit")
+                         .addStatement("return commit.set$N(build())", model.targetClassName.simpleName())
+                         .build();
+    }
+
+    static List<TypeSpec> render(DescriptorModel model) {
+        ClassName topLevel = model.targetClassName;
+        ClassName registryClassName = topLevel.nestedClass("Registry");
+        ClassName snapshotClassName = topLevel.nestedClass("Snapshot");
+        ClassName commitClassName = topLevel.nestedClass("Commit");
+        List<ClassName> groups = groups(model);
+        boolean persistent = model.options.binaryCodec;
+
+        TypeSpec.Builder snapshot = TypeSpec.classBuilder(snapshotClassName)
+                                            .addJavadoc("Immutable groups of $N, published together.\n",
+                                                    topLevel.simpleName())
+                                            .addModifiers(Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL);
+        MethodSpec.Builder snapshotConstructor = MethodSpec.constructorBuilder().addModifiers(Modifier.PRIVATE);
+        TypeName referenceType = ParameterizedTypeName.get(ClassName.get(AtomicReference.class), snapshotClassName);
+        TypeSpec.Builder registry = TypeSpec.classBuilder(registryClassName)
+                                            .addJavadoc("Lock-free holder of {@link $T}, "
+                                                    + "readers are wait-free and always see a consistent one.\n",
+                                                    snapshotClassName)
+                                            .addModifiers(Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL)
+                                            .addField(FieldSpec.builder(referenceType, "snapshot",
+                                                    Modifier.PRIVATE, Modifier.FINAL).build());
+        TypeSpec.Builder commit = TypeSpec.classBuilder(commitClassName)
+                                          .addJavadoc("Pending groups, published in one CAS by {@link #commit()}.\n")
+                                          .addModifiers(Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL)
+                                          .addField(registryClassName, "registry", Modifier.PRIVATE, Modifier.FINAL)
+                                          .addMethod(MethodSpec.constructorBuilder()
+                                                               .addModifiers(Modifier.PRIVATE)
+                                                               .addParameter(registryClassName, "registry")
+                                                               .addStatement("this.registry = registry")
+                                                               .build());
+        CodeBlock.Builder emptyArguments = CodeBlock.builder();
+        CodeBlock.Builder commitArguments = CodeBlock.builder();
+        CodeBlock.Builder commitDone = CodeBlock.builder();
+        for (int i = 0; i < groups.size(); ++i) {
+            ClassName group = groups.get(i);
+            String name = GenBuilderRenderer.makeParamName(group.simpleName());
+            String changed = name + "Changed";
+            String separator = i == 0 ? "" : ", ";
+            emptyArguments.add("$Lnull", separator);
+            commitArguments.add("$L$N ? $N : current.$N", separator, changed, name, name);
+            commitDone.add(i == 0 ? "($N ? $L : 0)" : " | ($N ? $L : 0)", changed, bit(i));
+
+            snapshot.addField(group, name, Modifier.PRIVATE, Modifier.FINAL);
+            snapshotConstructor.addParameter(group, name)
+                               .addStatement("this.$N = $N", name, name);
+            snapshot.addMethod(MethodSpec.methodBuilder("get" + group.simpleName())
+                                         .addModifiers(Modifier.PUBLIC)
+                                         .returns(group)
+                                         .addStatement("return $N", name)
+                                         .build());
+
+            MethodSpec.Builder getter = MethodSpec.methodBuilder("get" + group.simpleName())
+                                                  .addModifiers(Modifier.PUBLIC)
+                                                  .returns(group);
+            if (persistent) {
+                getter.addStatement("$T current = snapshot.get()", snapshotClassName)
+                      .addStatement("return (current.$N & $L) == 0 ? current.$N : load$N()", PENDING, bit(i),
+                              name, group.simpleName());
+                registry.addMethod(getter.build());
+                registry.addMethod(renderLoad(groups, i, snapshotClassName));
+            } else {
+                registry.addMethod(getter.addStatement("return snapshot.get().$N", name).build());
+            }
+            registry.addMethod(MethodSpec.methodBuilder("set" + group.simpleName())
+                                         .addJavadoc("Publish by CAS, other groups are kept.\n")
+                                         .addModifiers(Modifier.PUBLIC)
+                                         .returns(registryClassName)
+                                         .addParameter(group, name)
+                                         .addStatement("$T current", snapshotClassName)
+                                         .beginControlFlow("do")
+                                         .addStatement("current = snapshot.get()")
+                                         .endControlFlow("while (!snapshot.compareAndSet(current, new $T($L)))",
+                                                 snapshotClassName, replaced(groups, i, CodeBlock.of("$N", name),
+                                                         persistent))
+                                         .addStatement("return this")
+                                         .build());
+
+            commit.addField(group, name, Modifier.PRIVATE)
+                  .addField(TypeName.BOOLEAN, changed, Modifier.PRIVATE)
+                  .addMethod(MethodSpec.methodBuilder("set" + group.simpleName())
+                                       .addModifiers(Modifier.PUBLIC)
+                                       .returns(commitClassName)
+                                       .addParameter(group, name)
+                                       .addStatement("this.$N = $N", name, name)
+                                       .addStatement("this.$N = true", changed)
+                                       .addStatement("return this")
+                                       .build());
+        }
+
+        MethodSpec.Builder snapshotMethod = MethodSpec.methodBuilder("snapshot")
+                                                      .addJavadoc("@return current groups, never changed, "
+                                                              + "wait-free\n")
+                                                      .addModifiers(Modifier.PUBLIC)
+                                                      .returns(snapshotClassName);
+        MethodSpec.Builder commitMethod = MethodSpec.methodBuilder("commit")
+                                                    .addJavadoc("Publish the groups set in one CAS, "
+                                                            + "other groups are kept.\n"
+                                                            + "@return the published snapshot\n")
+                                                    .addModifiers(Modifier.PUBLIC)
+                                                    .returns(snapshotClassName);
+        if (persistent) {
+            snapshot.addField(TypeName.LONG, PENDING, Modifier.PRIVATE, Modifier.FINAL);
+            snapshotConstructor.addParameter(TypeName.LONG, PENDING)
+                               .addStatement("this.$N = $N", PENDING, PENDING);
+            emptyArguments.add(", $N", PENDING);
+            commitArguments.add(", current.$N & ~done", PENDING);
+            registry.addField(ByteBuffer.class, MAPPED, Modifier.PRIVATE, Modifier.FINAL);
+            registry.addMethod(MethodSpec.constructorBuilder()
+                                         .addModifiers(Modifier.PUBLIC)
+                                         .addStatement("this(null, 0)")
+                                         .build());
+            registry.addMethod(MethodSpec.constructorBuilder()
+                                         .addModifiers(Modifier.PRIVATE)
+                                         .addParameter(ByteBuffer.class, MAPPED)
+                                         .addParameter(TypeName.LONG, PENDING)
+                                         .addStatement("this.$N = $N", MAPPED, MAPPED)
+                                         .addStatement("this.snapshot = new $T<>(new $T($L))",
+                                                 AtomicReference.class, snapshotClassName, emptyArguments.build())
+                                         .build());
+            snapshotMethod.addStatement("$T current = snapshot.get()", snapshotClassName)
+                          .beginControlFlow("if (current.$N == 0)", PENDING)
+                          .addStatement("return current")
+                          .endControlFlow()
+                          .addComment("load the groups still in the mapping, they are never pending again");
+            for (ClassName group : groups) {
+                snapshotMethod.addStatement("get$N()", group.simpleName());
+            }
+            snapshotMethod.addStatement("return snapshot.get()");
+            commitMethod.addStatement("long done = $L", commitDone.build());
+            renderPersistence(topLevel, groups, registryClassName, snapshotClassName, registry);
+        } else {
+            registry.addMethod(MethodSpec.constructorBuilder()
+                                         .addModifiers(Modifier.PUBLIC)
+                                         .addStatement("this.snapshot = new $T<>(new $T($L))",
+                                                 AtomicReference.class, snapshotClassName, emptyArguments.build())
+                                         .build());
+            snapshotMethod.addStatement("return snapshot.get()");
+        }
+        snapshot.addMethod(snapshotConstructor.build());
+        registry.addMethod(snapshotMethod.build());
+        registry.addMethod(MethodSpec.methodBuilder("begin")
+                                     .addJavadoc("@return new commit for publishing several groups atomically\n")
+                                     .addModifiers(Modifier.PUBLIC)
+                                     .returns(commitClassName)
+                                     .addStatement("return new $T(this)", commitClassName)
+                                     .build());
+        commitMethod.addStatement("$T current", snapshotClassName)
+                    .addStatement("$T next", snapshotClassName)
+                    .beginControlFlow("do")
+                    .addStatement("current = registry.snapshot.get()")
+                    .addStatement("next = new $T($L)", snapshotClassName, commitArguments.build())
+                    .endControlFlow("while (!registry.snapshot.compareAndSet(current, next))");
+        if (persistent) {
+            commitMethod.addStatement("return next.$N == 0 ? next : registry.snapshot()", PENDING);
+        } else {
+            commitMethod.addStatement("return next");
+        }
+        commit.addMethod(commitMethod.build());
+        List<TypeSpec> types = new ArrayList<>();
+        types.add(registry.build());
+        types.add(snapshot.build());
+        types.add(commit.build());
+        return types;
+    }
+
+    /**
+     * @return the top-level target (if it has properties) and its direct nested targets
+     */
+    static List<ClassName> groups(DescriptorModel model) {
+        List<ClassName> groups = new ArrayList<>();
+        if (isGroup(model)) {
+            groups.add(model.targetClassName);
+        }
+        for (DescriptorModel nested : model.nestedTypes()) {
+            groups.add(nested.targetClassName);
+        }
+        return groups;
+    }
+
+    /**
+     * @return arguments of Snapshot's constructor, the group at index replaced by value, others from "current"
+     */
+    private static CodeBlock replaced(List<ClassName> groups, int index, CodeBlock value, boolean persistent) {
+        CodeBlock.Builder arguments = CodeBlock.builder();
+        for (int j = 0; j < groups.size(); ++j) {
+            arguments.add(j == 0 ? "" : ", ");
+            if (j == index) {
+                arguments.add(value);
+            } else {
+                arguments.add("current.$N", GenBuilderRenderer.makeParamName(groups.get(j).simpleName()));
+            }
+        }
+        if (persistent) {
+            arguments.add(", current.$N & ~$L", PENDING, bit(index));
+        }
+        return arguments.build();
+    }
+
+    private static String bit(int index) {
+        return "0x" + Long.toHexString(1L << index) + "L";
+    }
+
+    private static int tableOffset(int index) {
+        return HEADER_BYTES + index * TABLE_ENTRY_BYTES;
+    }
+
+    /**
+     * private XXX loadXXX(), decode the group from the mapping, publish it unless set or loaded by others
+     */
+    private static MethodSpec renderLoad(List<ClassName> groups, int index, ClassName snapshotClassName) {
+        ClassName group = groups.get(index);
+        String name = GenBuilderRenderer.makeParamName(group.simpleName());
+        return MethodSpec.methodBuilder("load" + group.simpleName())
+                         .addModifiers(Modifier.PRIVATE)
+                         .returns(group)
+                         .addStatement("$T buffer = $N.duplicate()", ByteBuffer.class, MAPPED)
+                         .addStatement("int offset = $N.getInt($L)", MAPPED, tableOffset(index))
+                         .addComment("decoding never reads other groups, even if corrupt")
+                         .addStatement("buffer.limit(offset + $N.getInt($L)).position(offset)", MAPPED,
+                                 tableOffset(index) + Integer.BYTES)
+                         .addStatement("$T $N = $T.readFrom(buffer)", group, name, group)
+                         .addStatement("$T current", snapshotClassName)
+                         .beginControlFlow("do")
+                         .addStatement("current = snapshot.get()")
+                         .beginControlFlow("if ((current.$N & $L) == 0)", PENDING, bit(index))
+                         .addStatement("return current.$N", name)
+                         .endControlFlow()
+                         .endControlFlow("while (!snapshot.compareAndSet(current, new $T($L)))",
+                                 snapshotClassName, replaced(groups, index, CodeBlock.of("$N", name), true))
+                         .addStatement("return $N", name)
+                         .build();
+    }
+
+    /**
+     * save(Path) and static load(Path), file layout: magic, format version, group count,
+     * then offset and length (-1 for null) of every group, then the groups by their binary codec.
+     */
+    private static void renderPersistence(ClassName topLevel, List<ClassName> groups, ClassName registryClassName,
+                                          ClassName snapshotClassName, TypeSpec.Builder registry) {
+        int tableEnd = tableOffset(groups.size());
+        registry.addField(FieldSpec.builder(TypeName.INT, "MAGIC", Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                                   .initializer("0x$L", Integer.toHexString(MAGIC))
+                                   .build());
+        registry.addField(FieldSpec.builder(TypeName.INT, "FORMAT_VERSION",
+                Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                                   .initializer("$L", FORMAT_VERSION)
+                                   .build());
+
+        MethodSpec.Builder save = MethodSpec.methodBuilder("save")
+                                            .addJavadoc("Write all groups to file (replaced atomically), "
+                                                    + "which can be mapped by {@link #load(Path)}.\n"
+                                                    + "On Windows, a file still mapped by a loaded Registry "
+                                                    + "can't be replaced, save to other path.\n")
+                                            .addModifiers(Modifier.PUBLIC)
+                                            .addParameter(Path.class, "path")
+                                            .addException(IOException.class)
+                                            .addStatement("$T current = snapshot()", snapshotClassName)
+                                            .addStatement("int size = $L", tableEnd);
+        CodeBlock.Builder table = CodeBlock.builder()
+                                           .addStatement("$T buffer = $T.allocate(size)", ByteBuffer.class,
+                                                   ByteBuffer.class)
+                                           .addStatement("buffer.putInt(MAGIC).putInt(FORMAT_VERSION).putInt($L)",
+                                                   groups.size())
+                                           .addStatement("int offset = $L", tableEnd);
+        CodeBlock.Builder write = CodeBlock.builder();
+        MethodSpec.Builder load = MethodSpec.methodBuilder("load")
+                                            .addJavadoc("Map the file written by {@link #save(Path)}, "
+                                                    + "every group is decoded from the mapping on its first get.\n"
+                                                    + "@throws IOException if not readable, corrupt, or written by other "
+                                                    + "version or schema, then build the groups as usual\n")
+                                            .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                                            .returns(registryClassName)
+                                            .addParameter(Path.class, "path")
+                                            .addException(IOException.class)
+                                            .addStatement("$T mapped", ByteBuffer.class)
+                                            .beginControlFlow("try ($T channel = $T.open(path, $T.READ))",
+                                                    FileChannel.class, FileChannel.class, StandardOpenOption.class)
+                                            .addStatement("mapped = channel.map($T.MapMode.READ_ONLY, 0, "
+                                                    + "channel.size())", FileChannel.class)
+                                            .endControlFlow()
+                                            .beginControlFlow("if (mapped.limit() < $L || mapped.getInt(0) != MAGIC"
+                                                    + " || mapped.getInt(4) != FORMAT_VERSION"
+                                                    + " || mapped.getInt(8) != $L)",
+                                                    tableEnd, groups.size())
+                                            .addStatement("throw new $T($S + path)", IOException.class,
+                                                    "Not a snapshot of " + topLevel.simpleName() + ": ")
+                                            .endControlFlow()
+                                            .addStatement("long pending = 0");
+        for (int i = 0; i < groups.size(); ++i) {
+            ClassName group = groups.get(i);
+            String name = GenBuilderRenderer.makeParamName(group.simpleName());
+            String length = name + "Length";
+            save.addStatement("int $N = current.$N == null ? -1 : current.$N.serializedSize()", length, name, name)
+                .addStatement("size += Math.max($N, 0)", length);
+            table.addStatement("buffer.putInt(offset).putInt($N)", length)
+                 .addStatement("offset += Math.max($N, 0)", length);
+            write.beginControlFlow("if (current.$N != null)", name)
+                 .addStatement("current.$N.writeTo(buffer)", name)
+                 .endControlFlow();
+            String offset = name + "Offset";
+            load.addStatement("int $N = mapped.getInt($L)", offset, tableOffset(i))
+                .addStatement("int $N = mapped.getInt($L)", length, tableOffset(i) + Integer.BYTES)
+                .beginControlFlow("if ($N != -1)", length)
+                // at least the fingerprint, inside the file after the table, no int overflow
+                .beginControlFlow("if ($N < $L || $N < $L || $N > mapped.limit() - $N)",
+                        offset, tableEnd, length, Long.BYTES, offset, length)
+                .addStatement("throw new $T($S + path)", IOException.class,
+                        "Not a snapshot of " + topLevel.simpleName() + ": ")
+                .endControlFlow()
+                .beginControlFlow("if (mapped.getLong($N) != $T.SCHEMA_FINGERPRINT)", offset, group)
+                .addStatement("throw new $T($S + path)", IOException.class,
+                        "Schema of " + group.simpleName() + " changed: ")
+                .endControlFlow()
+                .addStatement("pending |= $L", bit(i))
+                .endControlFlow();
+        }
+        save.addCode(table.build())
+            .addCode(write.build())
+            .addStatement("buffer.flip()")
+            .addStatement("$T temp = path.resolveSibling(path.getFileName() + $S)", Path.class, ".tmp")
+            .beginControlFlow("try ($T channel = $T.open(temp, $T.CREATE, $T.WRITE, $T.TRUNCATE_EXISTING))",
+                    FileChannel.class, FileChannel.class, StandardOpenOption.class, StandardOpenOption.class,
+                    StandardOpenOption.class)
+            .beginControlFlow("while (buffer.hasRemaining())")
+            .addStatement("channel.write(buffer)")
+            .endControlFlow()
+            .addStatement("channel.force(true)")
+            .endControlFlow()
+            .addStatement("$T.move(temp, path, $T.REPLACE_EXISTING, $T.ATOMIC_MOVE)", Files.class,
+                    StandardCopyOption.class, StandardCopyOption.class);
+        registry.addMethod(save.build());
+        registry.addMethod(load.addStatement("return new $T(mapped, pending)", registryClassName).build());
+    }
+}
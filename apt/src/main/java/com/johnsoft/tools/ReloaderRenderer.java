@@ -0,0 +1,206 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.johnsoft.tools;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import javax.lang.model.element.Modifier;
+
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+import com.squareup.javapoet.WildcardTypeName;
+
+/**
+ * Render nested class Reloader of the top-level target, for {@link GenBuilderRenderer}.<br/>
+ * NOTE:
+ * 1. Only with registry and jsonCodec, every group maps to one file in the watched directory, e.g. "Window.json",
+ *    instead of one section per group in a single config file, so WatchService tells which groups changed
+ *    and only their files are parsed, run() collects the changed file names until no event for debounceMillis.<br/>
+ * 2. reload() parses only the changed files by fromJson, and publishes the groups not equal to current ones
+ *    in one Commit, so unchanged groups keep the same instances (and entries of caches keyed on them).<br/>
+ * 3. A missing file keeps its group, a malformed one keeps its group and is reported after others published.<br/>
+ * 4. run() returns when the directory can't be watched any more (e.g. deleted), and reports it by lastError().<br/>
+ *
+ * @author John Kenrinus Lee
+ * @version 2019-05-23
+ */
+final class ReloaderRenderer {
+    static final String FILE_EXTENSION = ".json";
+    /**
+     * in changed names, means OVERFLOW, events are lost, reload all
+     */
+    private static final String ALL = "";
+
+    private ReloaderRenderer() {
+    }
+
+    static TypeSpec render(DescriptorModel model) {
+        ClassName topLevel = model.targetClassName;
+        ClassName reloaderClassName = topLevel.nestedClass("Reloader");
+        ClassName registryClassName = topLevel.nestedClass("Registry");
+        ClassName snapshotClassName = topLevel.nestedClass("Snapshot");
+        ClassName commitClassName = topLevel.nestedClass("Commit");
+        List<ClassName> groups = RegistryRenderer.groups(model);
+        TypeName names = ParameterizedTypeName.get(Set.class, String.class);
+
+        TypeSpec.Builder reloader = TypeSpec.classBuilder(reloaderClassName)
+                                            .addJavadoc("Reload the groups of {@link $T} from JSON files "
+                                                    + "in a directory, only the changed ones.\n", registryClassName)
+                                            .addModifiers(Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL)
+                                            .addSuperinterface(Runnable.class)
+                                            .addSuperinterface(Closeable.class)
+                                            .addField(registryClassName, "registry", Modifier.PRIVATE, Modifier.FINAL)
+                                            .addField(Path.class, "directory", Modifier.PRIVATE, Modifier.FINAL)
+                                            .addField(TypeName.LONG, "debounceMillis", Modifier.PRIVATE,
+                                                    Modifier.FINAL)
+                                            .addField(WatchService.class, "watcher", Modifier.PRIVATE, Modifier.FINAL)
+                                            .addField(IOException.class, "lastError", Modifier.PRIVATE,
+                                                    Modifier.VOLATILE)
+                                            .addField(TypeName.BOOLEAN, "closed", Modifier.PRIVATE,
+                                                    Modifier.VOLATILE);
+        reloader.addMethod(MethodSpec.constructorBuilder()
+                                     .addJavadoc("@param directory holds a file per group, e.g. $S\n",
+                                             groups.isEmpty() ? "" : groups.get(0).simpleName() + FILE_EXTENSION)
+                                     .addModifiers(Modifier.PUBLIC)
+                                     .addParameter(registryClassName, "registry")
+                                     .addParameter(Path.class, "directory")
+                                     .addParameter(TypeName.LONG, "debounceMillis")
+                                     .addException(IOException.class)
+                                     .addStatement("this.registry = registry")
+                                     .addStatement("this.directory = directory")
+                                     .addStatement("this.debounceMillis = debounceMillis")
+                                     .addStatement("this.watcher = directory.getFileSystem().newWatchService()")
+                                     .addStatement("directory.register(watcher, $T.ENTRY_CREATE, $T.ENTRY_MODIFY)",
+                                             StandardWatchEventKinds.class, StandardWatchEventKinds.class)
+                                     .build());
+        reloader.addMethod(MethodSpec.methodBuilder("run")
+                                     .addJavadoc("Watch until closed (or interrupted, or the directory is not "
+                                             + "watchable), reload the changed groups after a burst of events.\n")
+                                     .addAnnotation(Override.class)
+                                     .addModifiers(Modifier.PUBLIC)
+                                     .beginControlFlow("try")
+                                     .beginControlFlow("while (true)")
+                                     .addStatement("$T changed = new $T<>()", names, HashSet.class)
+                                     .addStatement("$T key = watcher.take()", WatchKey.class)
+                                     .addStatement("boolean valid")
+                                     .beginControlFlow("do")
+                                     .beginControlFlow("for ($T event : key.pollEvents())",
+                                             ParameterizedTypeName.get(ClassName.get(WatchEvent.class),
+                                                     WildcardTypeName.subtypeOf(Object.class)))
+                                     .addStatement("changed.add(event.kind() == $T.OVERFLOW ? $S "
+                                             + ": event.context().toString())", StandardWatchEventKinds.class, ALL)
+                                     .endControlFlow()
+                                     .addStatement("valid = key.reset()")
+                                     .addStatement("key = valid ? watcher.poll(debounceMillis, $T.MILLISECONDS) "
+                                             + ": null", TimeUnit.class)
+                                     .endControlFlow("while (key != null)")
+                                     .beginControlFlow("try")
+                                     .addStatement("reload(changed.contains($S) ? null : changed)", ALL)
+                                     .nextControlFlow("catch ($T e)", IOException.class)
+                                     .addStatement("lastError = e")
+                                     .endControlFlow()
+                                     .beginControlFlow("if (!valid)")
+                                     .beginControlFlow("if (!closed)")
+                                     .addStatement("lastError = new $T($S + directory)", IOException.class,
+                                             "Not watchable any more: ")
+                                     .endControlFlow()
+                                     .addStatement("return")
+                                     .endControlFlow()
+                                     .endControlFlow()
+                                     .nextControlFlow("catch ($T e)", InterruptedException.class)
+                                     .addStatement("$T.currentThread().interrupt()", Thread.class)
+                                     .nextControlFlow("catch ($T e)", ClosedWatchServiceException.class)
+                                     .addComment("closed")
+                                     .endControlFlow()
+                                     .build());
+
+        MethodSpec.Builder reload = MethodSpec.methodBuilder("reload")
+                                              .addJavadoc("Parse the files (all if fileNames is null), "
+                                                      + "publish the groups changed in one commit.\n"
+                                                      + "@param fileNames e.g. $S\n"
+                                                      + "@return the published snapshot\n"
+                                                      + "@throws IOException the first malformed or unreadable "
+                                                      + "file, its group is kept, others are still published\n",
+                                                      groups.isEmpty() ? "" : groups.get(0).simpleName()
+                                                              + FILE_EXTENSION)
+                                              .addModifiers(Modifier.PUBLIC)
+                                              .returns(snapshotClassName)
+                                              .addParameter(names, "fileNames")
+                                              .addException(IOException.class)
+                                              .addStatement("$T commit = registry.begin()", commitClassName)
+                                              .addStatement("boolean changed = false")
+                                              .addStatement("$T failure = null", IOException.class);
+        for (ClassName group : groups) {
+            String name = GenBuilderRenderer.makeParamName(group.simpleName());
+            String fileName = group.simpleName() + FILE_EXTENSION;
+            reload.beginControlFlow("if (fileNames == null || fileNames.contains($S))", fileName)
+                  .beginControlFlow("try ($T reader = $T.newBufferedReader(directory.resolve($S), $T.UTF_8))",
+                          Reader.class, Files.class, fileName, StandardCharsets.class)
+                  .addStatement("$T $N = $T.fromJson(reader)", group, name, group)
+                  .beginControlFlow("if (!$N.equals(registry.get$N()))", name, group.simpleName())
+                  .addStatement("commit.set$N($N)", group.simpleName(), name)
+                  .addStatement("changed = true")
+                  .endControlFlow()
+                  .nextControlFlow("catch ($T e)", NoSuchFileException.class)
+                  .addComment("keep the current one")
+                  .nextControlFlow("catch ($T | $T e)", IOException.class, IllegalArgumentException.class)
+                  .addStatement("failure = failure != null ? failure : new $T($S, e)", IOException.class, fileName)
+                  .endControlFlow()
+                  .endControlFlow();
+        }
+        reload.addStatement("$T snapshot = changed ? commit.commit() : registry.snapshot()", snapshotClassName)
+              .beginControlFlow("if (failure != null)")
+              .addStatement("throw failure")
+              .endControlFlow()
+              .addStatement("return snapshot");
+        reloader.addMethod(reload.build());
+        reloader.addMethod(MethodSpec.methodBuilder("lastError")
+                                     .addJavadoc("@return the last failure of reload in run(), "
+                                             + "or why run() stopped watching, or null\n")
+                                     .addModifiers(Modifier.PUBLIC)
+                                     .returns(IOException.class)
+                                     .addStatement("return lastError")
+                                     .build());
+        reloader.addMethod(MethodSpec.methodBuilder("close")
+                                     .addJavadoc("Stop watching, run() returns.\n")
+                                     .addAnnotation(Override.class)
+                                     .addModifiers(Modifier.PUBLIC)
+                                     .addException(IOException.class)
+                                     .addStatement("closed = true")
+                                     .addStatement("watcher.close()")
+                                     .build());
+        return reloader.build();
+    }
+}
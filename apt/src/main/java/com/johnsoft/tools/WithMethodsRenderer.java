@@ -0,0 +1,172 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.johnsoft.tools;
+
+import java.util.List;
+import java.util.Objects;
+
+import javax.lang.model.element.Modifier;
+
+import com.squareup.javapoet.ArrayTypeName;
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeVariableName;
+
+/**
+ * Render target's withXXX(value) and the private all-fields constructor, for {@link GenBuilderRenderer}.<br/>
+ * NOTE:
+ * 1. withXXX returns this if the value equals to current one, else new instance shares all other fields,
+ *    by the private all-fields constructor, no Builder involved.<br/>
+ * 2. Not for inheritable target (subclass would be lost), field with {@link com.johnsoft.annotations.GenBuilder.Setter}
+ *    (the template can't be applied to final field) or {@link com.johnsoft.annotations.GenBuilder.Primitive}.<br/>
+ *
+ * @author John Kenrinus Lee
+ * @version 2019-05-13
+ */
+final class WithMethodsRenderer {
+    private WithMethodsRenderer() {
+    }
+
+    /**
+     * @return true if target can have withXXX
+     */
+    static boolean isApplicable(DescriptorModel model) {
+        return !model.options.inheritable && !(model.options.intern && !model.typeParameters.isEmpty());
+    }
+
+    /**
+     * @param fields target's instance fields, in order of the private all-fields constructor
+     */
+    static void render(DescriptorModel model, PackedLayout packedLayout, List<FieldSpec> fields,
+                       List<MethodSpec> targetMethods) {
+        DescriptorModel.Options options = model.options;
+        ClassName targetClassName = model.targetClassName;
+        TypeName targetType = targetClassName;
+        String diamond = "";
+        if (!model.typeParameters.isEmpty()) {
+            targetType = ParameterizedTypeName.get(targetClassName,
+                    model.typeParameters.toArray(new TypeVariableName[0]));
+            diamond = "<>";
+        }
+
+        for (DescriptorModel.Property property : model.properties()) {
+            if (property.setterTemplate != null || property.primitiveElementType != null) {
+                continue;
+            }
+            String name = property.name;
+            String capName = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+            PackedLayout.Slot slot = packedLayout.slot(property);
+            String field = slot == null ? name : slot.word;
+            if (property.isEnums()) {
+                for (int i = 0; i < property.enumNames.size(); ++i) {
+                    MethodSpec.Builder with = MethodSpec.methodBuilder("with" + capName + "To"
+                            + property.enumNames.get(i))
+                                                        .addJavadoc(property.javadoc)
+                                                        .addModifiers(Modifier.PUBLIC)
+                                                        .returns(targetType);
+                    CodeBlock value;
+                    if (slot != null) {
+                        value = slot.updatedConstant(property.enumIntValues.get(i));
+                    } else if (!property.enumIntValues.isEmpty()) {
+                        value = CodeBlock.of("$L", property.enumIntValues.get(i));
+                    } else {
+                        value = CodeBlock.of("$S", property.enumStringValues.get(i));
+                    }
+                    targetMethods.add(renderBody(with, model, targetClassName, diamond, fields, property, slot,
+                            field, value, value).build());
+                }
+                continue;
+            }
+            CodeBlock value;
+            if (slot != null) {
+                value = slot.updated(name);
+            } else if (options.copyOnWrite && property.collectionRawType != null
+                    && CopyOnWriteRenderer.isSupported(property)) {
+                value = CopyOnWriteRenderer.frozen(property, name,
+                        targetClassName.nestedClass("Builder").simpleName());
+            } else {
+                value = CodeBlock.of("$N", name);
+            }
+            MethodSpec.Builder with = MethodSpec.methodBuilder("with" + capName)
+                                                .addJavadoc(property.javadoc)
+                                                .addModifiers(Modifier.PUBLIC)
+                                                .returns(targetType)
+                                                .addParameter(ParameterSpec.builder(property.type, name)
+                                                                           .addAnnotations(
+                                                                                   property.parameterAnnotations)
+                                                                           .build());
+            targetMethods.add(renderBody(with, model, targetClassName, diamond, fields, property, slot,
+                    field, CodeBlock.of("$N", name), value).build());
+        }
+    }
+
+    /**
+     * @param compared value compared with current field, ignored for packed one
+     * @param value    value of the field (or the word for packed one) for new instance
+     */
+    private static MethodSpec.Builder renderBody(MethodSpec.Builder with, DescriptorModel model,
+                                                 ClassName targetClassName, String diamond,
+                                                 List<FieldSpec> fields, DescriptorModel.Property property,
+                                                 PackedLayout.Slot slot, String field,
+                                                 CodeBlock compared, CodeBlock value) {
+        if (slot != null) { // compare the whole word
+            with.addStatement("long $N = $L", field, value)
+                .beginControlFlow("if ($N == this.$N)", field, field);
+            value = CodeBlock.of("$N", field);
+        } else {
+            with.beginControlFlow("if ($L)", sameValue(property, compared));
+        }
+        with.addStatement("return this")
+            .endControlFlow();
+        CodeBlock.Builder arguments = CodeBlock.builder();
+        for (int i = 0; i < fields.size(); ++i) {
+            String name = fields.get(i).name;
+            arguments.add(i == 0 ? "" : ", ");
+            if (name.equals(field)) {
+                arguments.add(value);
+            } else {
+                arguments.add("this.$N", name);
+            }
+        }
+        String simpleName = targetClassName.simpleName();
+        if (model.options.intern) {
+            return with.addStatement("return $N.intern(new $N$L($L))", simpleName, simpleName, diamond,
+                    arguments.build());
+        }
+        return with.addStatement("return new $N$L($L)", simpleName, diamond, arguments.build());
+    }
+
+    private static CodeBlock sameValue(DescriptorModel.Property property, CodeBlock value) {
+        TypeName type = property.type;
+        String name = property.name;
+        if (TypeName.FLOAT.equals(type)) {
+            return CodeBlock.of("$T.compare(this.$N, $L) == 0", Float.class, name, value);
+        }
+        if (TypeName.DOUBLE.equals(type)) {
+            return CodeBlock.of("$T.compare(this.$N, $L) == 0", Double.class, name, value);
+        }
+        if (type.isPrimitive() || type instanceof ArrayTypeName) {
+            return CodeBlock.of("this.$N == $L", name, value);
+        }
+        return CodeBlock.of("$T.equals(this.$N, $L)", Objects.class, name, value);
+    }
+}
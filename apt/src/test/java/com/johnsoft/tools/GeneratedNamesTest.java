@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.johnsoft.tools;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Property names same as the parameters, locals and fields of generated code compile,
+ * or are rejected by the processor with a message.
+ *
+ * @author John Kenrinus Lee
+ * @version 2019-05-27
+ */
+public class GeneratedNamesTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Processing compile(String options, String fields) throws IOException {
+        String source = "package test;\n"
+                + "import com.johnsoft.annotations.GenBuilder;\n"
+                + "@GenBuilder(" + options + ")\n"
+                + "public class Settings {\n"
+                + fields
+                + "}\n";
+        return Processing.run(folder.newFolder().toPath(), "Settings", source, true);
+    }
+
+    private static void assertRejected(Processing processing, String message) {
+        assertFalse("compiled", processing.succeeded());
+        assertTrue(processing.errors, processing.errors.contains(message));
+    }
+
+    @Test
+    public void batchLocalsAndParameters() throws IOException {
+        Processing processing = compile("batch = true, packed = true",
+                "    public int i = 1;\n    public String value;\n    public long capacity = 2L;\n    public boolean index;\n");
+        assertTrue(processing.errors, processing.succeeded());
+    }
+
+    @Test
+    public void batchRowCount() throws IOException {
+        assertRejected(compile("batch = true", "    public int size = 0;\n"), "conflicts with Batch's row count");
+    }
+
+    @Test
+    public void flyweightLocalsAndParameters() throws IOException {
+        Processing processing = compile("flyweight = true",
+                "    public int offset = 1;\n    public long buffer = 2L;\n    public String value;\n"
+                        + "    public String valueView;\n    public int valueLength = 3;\n    public short length = 4;\n"
+                        + "    public byte position = 5;\n    public char i = 'i';\n");
+        assertTrue(processing.errors, processing.succeeded());
+    }
+
+    @Test
+    public void liveLocalsAndParameters() throws IOException {
+        Processing processing = compile("live = true",
+                "    public int start = 1;\n    public long into = 2L;\n    public double value = 3;\n"
+                        + "    public short current = 4;\n");
+        assertTrue(processing.errors, processing.succeeded());
+        // the field, not the local of read(Values)
+        assertTrue(processing.generated, processing.generated.contains("into.start = this.start;"));
+    }
+
+    @Test
+    public void liveSequence() throws IOException {
+        assertRejected(compile("live = true", "    public int sequence = 0;\n"), "conflicts with Live's sequence lock");
+    }
+
+    @Test
+    public void codecLocalsAndParameters() throws IOException {
+        Processing processing = compile("binaryCodec = true, delta = true",
+                "    public int buffer = 1;\n    public long i = 2L;\n    public int[] values = new int[0];\n"
+                        + "    public int valuesLength = 3;\n    public java.util.ArrayList<String> delta"
+                        + " = new java.util.ArrayList<>();\n    public int size = 4;\n    public String buffer1;\n");
+        assertTrue(processing.errors, processing.succeeded());
+    }
+}
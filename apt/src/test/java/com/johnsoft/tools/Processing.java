@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.johnsoft.tools;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+
+/**
+ * Run {@link AnnoProcTool} in javac on one descriptor of package test, for tests.
+ *
+ * @author John Kenrinus Lee
+ * @version 2019-05-27
+ */
+final class Processing {
+    /**
+     * sources generated into test package, concatenated
+     */
+    final String generated;
+    /**
+     * errors of javac, and the exception printed by processor
+     */
+    final String errors;
+
+    private Processing(String generated, String errors) {
+        this.generated = generated;
+        this.errors = errors;
+    }
+
+    boolean succeeded() {
+        return errors.isEmpty();
+    }
+
+    /**
+     * @param output empty directory for generated sources and classes
+     * @param compile false to run the processor only
+     */
+    static Processing run(Path output, String simpleName, final String source, boolean compile)
+            throws IOException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        JavaFileObject file = new SimpleJavaFileObject(URI.create("string:///test/" + simpleName + ".java"),
+                JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return source;
+            }
+        };
+        List<String> options = new ArrayList<>(Arrays.asList("-s", output.toString(), "-d", output.toString(),
+                "-classpath", System.getProperty("java.class.path")));
+        if (!compile) {
+            options.add("-proc:only");
+        }
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        JavaCompiler.CompilationTask task = compiler.getTask(null, null, diagnostics, options, null,
+                Collections.singletonList(file));
+        task.setProcessors(Collections.singletonList(new AnnoProcTool()));
+        // AnnoProcTool prints the exception of processor, e.g. rejected descriptor, and goes on
+        ByteArrayOutputStream printed = new ByteArrayOutputStream();
+        PrintStream err = System.err;
+        System.setErr(new PrintStream(printed, true, "UTF-8"));
+        try {
+            task.call();
+        } finally {
+            System.setErr(err);
+        }
+        StringBuilder errors = new StringBuilder(printed.toString("UTF-8"));
+        for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+            if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+                errors.append(diagnostic.getMessage(null)).append('\n');
+            }
+        }
+        StringBuilder generated = new StringBuilder();
+        Path directory = output.resolve("test");
+        if (Files.isDirectory(directory)) {
+            try (DirectoryStream<Path> paths = Files.newDirectoryStream(directory, "*.java")) {
+                for (Path path : paths) {
+                    generated.append(new String(Files.readAllBytes(path), StandardCharsets.UTF_8));
+                }
+            }
+        }
+        return new Processing(generated.toString(), errors.toString());
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.johnsoft.tools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * The schema fingerprint of binaryCodec changes with the layout of the bytes, not only with the field names.
+ *
+ * @author John Kenrinus Lee
+ * @version 2019-05-26
+ */
+public class SchemaFingerprintTest {
+    private static final Pattern FINGERPRINT = Pattern.compile("SCHEMA_FINGERPRINT = (0x[0-9a-f]+L)");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static String descriptor(String fields) {
+        return "package test;\n"
+                + "import com.johnsoft.annotations.GenBuilder;\n"
+                + "@GenBuilder(packed = true, binaryCodec = true)\n"
+                + "public class Settings {\n"
+                + fields
+                + "}\n";
+    }
+
+    private static String enumField(int fly, int run) {
+        return "    @GenBuilder.Enums(names = { \"ToFly\", \"ToRun\" }, intValues = { " + fly + ", " + run + " })\n"
+                + "    public int mode = " + fly + ";\n";
+    }
+
+    /**
+     * Run the processor only, and read the fingerprint from the generated source
+     */
+    private String fingerprint(String source) throws IOException {
+        Processing processing = Processing.run(folder.newFolder().toPath(), "Settings", source, false);
+        assertTrue(processing.errors, processing.succeeded());
+        Matcher matcher = FINGERPRINT.matcher(processing.generated);
+        assertTrue("no fingerprint generated", matcher.find());
+        return matcher.group(1);
+    }
+
+    @Test
+    public void stableForSameSchema() throws IOException {
+        String source = descriptor("    public boolean fullScreen;\n    public boolean resizable;\n");
+        assertEquals(fingerprint(source), fingerprint(source));
+    }
+
+    @Test
+    public void changedBySwappedPackedSlots() throws IOException {
+        assertNotEquals(fingerprint(descriptor("    public boolean fullScreen;\n    public boolean resizable;\n")),
+                fingerprint(descriptor("    public boolean resizable;\n    public boolean fullScreen;\n")));
+    }
+
+    @Test
+    public void changedByEnumValues() throws IOException {
+        assertNotEquals(fingerprint(descriptor(enumField(1, 2))), fingerprint(descriptor(enumField(2, 1))));
+    }
+}
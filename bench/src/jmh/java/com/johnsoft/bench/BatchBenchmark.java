@@ -0,0 +1,71 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.johnsoft.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.johnsoft.samples.Settings5;
+
+/**
+ * Aggregate over one field of many rows, columns of Batch against a list of targets.
+ *
+ * @author John Kenrinus Lee
+ * @version 2019-05-16
+ */
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BatchBenchmark {
+    private static final int ROWS = 100_000;
+
+    private final List<Settings5> list = new ArrayList<>(ROWS);
+    private final Settings5.Batch batch = new Settings5.Batch(ROWS);
+
+    @Setup
+    public void setup() {
+        for (int i = 0; i < ROWS; ++i) {
+            Settings5 settings5 = Settings5.builder().setAge(i + 1).setXs(i).build();
+            list.add(settings5);
+            batch.add(settings5);
+        }
+    }
+
+    @Benchmark
+    public long listSumOfAge() {
+        long sum = 0;
+        for (Settings5 settings5 : list) {
+            sum += settings5.age;
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long batchSumOfAge() {
+        long sum = 0;
+        for (int i = 0, size = batch.size(); i < size; ++i) {
+            sum += batch.getAge(i);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.johnsoft.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.johnsoft.samples.Settings1Impl;
+import com.johnsoft.samples.Settings2Impl;
+import com.johnsoft.samples.Settings3Impl;
+import com.johnsoft.samples.Settings4;
+import com.johnsoft.samples.Settings5;
+
+/**
+ * Construction cost of generated Builder and target, run with gc profiler for allocation rate.
+ *
+ * @author John Kenrinus Lee
+ * @version 2019-05-10
+ */
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BuilderBenchmark {
+    private Settings1Impl settings1;
+    private Settings5 settings5;
+    private int height;
+
+    @Setup
+    public void setup() {
+        settings1 = Settings1Impl.builder().build();
+        settings5 = Settings5.builder().build();
+    }
+
+    @Benchmark
+    public Settings1Impl settings1BuilderBuild() {
+        return Settings1Impl.builder().build();
+    }
+
+    @Benchmark
+    public Settings1Impl settings1NewBuilderSetBuild() {
+        return settings1.newBuilder().setWindowHeight(++height).build();
+    }
+
+    @Benchmark
+    public Settings1Impl settings1With() {
+        return settings1.withWindowHeight(++height);
+    }
+
+    @Benchmark
+    public Settings2Impl.Fonts settings2FontsBuilderBuild() {
+        return Settings2Impl.Fonts.builder().build();
+    }
+
+    @Benchmark
+    public Settings3Impl settings3EnumsSetterBuild() {
+        return Settings3Impl.builder().setModeToToRun().build();
+    }
+
+    @Benchmark
+    public Settings4.Colors settings4ColorsBuilderBuild() {
+        return Settings4.Colors.builder().build();
+    }
+
+    @Benchmark
+    public Settings5 settings5BuilderBuild() {
+        return Settings5.builder().build();
+    }
+
+    @Benchmark
+    public Settings5 settings5AcquireRelease() {
+        Settings5.Builder<?> builder = Settings5.Builder.acquire();
+        Settings5 result = builder.setAge(7).build();
+        builder.release();
+        return result;
+    }
+
+    @Benchmark
+    public Settings5 settings5NoArgConstructor() {
+        return new Settings5();
+    }
+
+    @Benchmark
+    public Settings5 settings5NewBuilderSetBuild() {
+        return settings5.newBuilder().setAge(7).setXs(11L).build();
+    }
+
+    @Benchmark
+    public Settings5 settings5AddToKeys() {
+        return Settings5.builder().addToKeys("a").addToKeys("b").addToValues("c").build();
+    }
+}
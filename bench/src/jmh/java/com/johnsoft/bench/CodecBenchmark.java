@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.johnsoft.bench;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.johnsoft.samples.Settings1Impl;
+import com.johnsoft.samples.Settings3Impl;
+
+/**
+ * Cost of generated binary codec, round trip through a reused direct buffer,
+ * and of generated JSON codec, round trip through a reused StringBuilder,
+ * and of generated Delta, diff + binary round trip + applyTo for one changed flag.
+ *
+ * @author John Kenrinus Lee
+ * @version 2019-05-14
+ */
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CodecBenchmark {
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(4096);
+    private final StringBuilder json = new StringBuilder(4096);
+    private Settings1Impl settings1;
+    private Settings3Impl settings3;
+    private Settings3Impl settings3Changed;
+
+    @Setup
+    public void setup() {
+        settings1 = Settings1Impl.builder().setBackground("Dark Slate Gray").setWindowHeight(1080).build();
+        settings3 = Settings3Impl.builder().addToFontMap("title", "Arial").addToFontMap("body", "Courier")
+                                 .setModeToToClimb().setFullScreen(true).build();
+        settings3Changed = settings3.newBuilder().setResizable(false).build();
+    }
+
+    @Benchmark
+    public Settings1Impl settings1RoundTrip() {
+        buffer.clear();
+        settings1.writeTo(buffer).flip();
+        return Settings1Impl.readFrom(buffer);
+    }
+
+    @Benchmark
+    public Settings3Impl settings3RoundTrip() {
+        buffer.clear();
+        settings3.writeTo(buffer).flip();
+        return Settings3Impl.readFrom(buffer);
+    }
+
+    @Benchmark
+    public int settings3SerializedSize() {
+        return settings3.serializedSize();
+    }
+
+    @Benchmark
+    public Settings3Impl settings3JsonRoundTrip() throws IOException {
+        json.setLength(0);
+        settings3.toJson(json);
+        return Settings3Impl.fromJson(new StringReader(json.toString()));
+    }
+
+    @Benchmark
+    public Settings3Impl settings3DeltaRoundTrip() {
+        buffer.clear();
+        settings3.diff(settings3Changed).writeTo(buffer).flip();
+        return Settings3Impl.Delta.readFrom(buffer).applyTo(settings3);
+    }
+}
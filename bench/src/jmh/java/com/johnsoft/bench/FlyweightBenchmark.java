@@ -0,0 +1,78 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.johnsoft.bench;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.johnsoft.samples.Settings1Impl;
+
+/**
+ * Scan of records in a direct buffer, flyweight decodes in place, binary codec materializes every record.
+ *
+ * @author John Kenrinus Lee
+ * @version 2019-05-15
+ */
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FlyweightBenchmark {
+    private static final int RECORDS = 1024;
+
+    private final Settings1Impl.Flyweight flyweight = new Settings1Impl.Flyweight();
+    private ByteBuffer records;
+    private ByteBuffer encoded;
+    private int recordsEnd;
+
+    @Setup
+    public void setup() {
+        records = ByteBuffer.allocateDirect(RECORDS * 64);
+        encoded = ByteBuffer.allocateDirect(RECORDS * 64);
+        for (int i = 0; i < RECORDS; ++i) {
+            Settings1Impl settings1 = Settings1Impl.builder().setBackground("Gray " + i).setWindowHeight(i).build();
+            recordsEnd += Settings1Impl.Flyweight.write(records, recordsEnd, settings1);
+            settings1.writeTo(encoded);
+        }
+        encoded.flip();
+    }
+
+    @Benchmark
+    public long flyweightScan() {
+        long sum = 0;
+        for (int offset = 0; offset < recordsEnd; offset += flyweight.recordLength()) {
+            flyweight.wrap(records, offset);
+            sum += flyweight.getWindowHeight() + flyweight.getBackground().length();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long readFromScan() {
+        long sum = 0;
+        ByteBuffer buffer = encoded.duplicate();
+        while (buffer.hasRemaining()) {
+            Settings1Impl settings1 = Settings1Impl.readFrom(buffer);
+            sum += settings1.windowHeight + settings1.background.length();
+        }
+        return sum;
+    }
+}
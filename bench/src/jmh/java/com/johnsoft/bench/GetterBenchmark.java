@@ -0,0 +1,70 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.johnsoft.bench;
+
+import java.awt.Font;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.johnsoft.samples.Settings2Impl;
+import com.johnsoft.samples.Settings5;
+
+/**
+ * Read cost of generated public field, getter, and getter with template ("return $N + 33").
+ *
+ * @author John Kenrinus Lee
+ * @version 2019-05-10
+ */
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class GetterBenchmark {
+    private Settings5 settings5;
+    private Settings2Impl.Fonts fonts;
+    private GetterSettings getterSettings;
+
+    @Setup
+    public void setup() {
+        settings5 = Settings5.builder().setAge(7).build();
+        fonts = Settings2Impl.Fonts.builder().build();
+        getterSettings = GetterSettings.builder().build();
+    }
+
+    @Benchmark
+    public long settings5FieldRead() {
+        return settings5.age + settings5.xs;
+    }
+
+    @Benchmark
+    public Font settings2Getter() {
+        return fonts.getNormal();
+    }
+
+    @Benchmark
+    public int plainGetter() {
+        return getterSettings.getAge();
+    }
+
+    @Benchmark
+    public String templateGetter() {
+        return getterSettings.getName();
+    }
+}
@@ -0,0 +1,33 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.johnsoft.bench;
+
+import com.johnsoft.annotations.GenBuilder;
+
+/**
+ * Only for {@link GetterBenchmark}, the samples have no getter template which is really applied.
+ *
+ * @author John Kenrinus Lee
+ * @version 2019-05-10
+ */
+@GenBuilder(getter = true)
+public class GetterSettingsDesc {
+    @GenBuilder.Getter("return $N + 33")
+    public String name = "dark";
+
+    public int age = 3;
+}
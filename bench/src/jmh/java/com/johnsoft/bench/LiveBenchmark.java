@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.johnsoft.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import com.johnsoft.samples.Settings5;
+
+/**
+ * Tick loop reading age and xs together while another thread keeps publishing,
+ * Live under sequence lock against a volatile reference to immutable target.
+ *
+ * @author John Kenrinus Lee
+ * @version 2019-05-20
+ */
+@State(Scope.Group)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class LiveBenchmark {
+    private final Settings5[] published = {
+            Settings5.builder().setAge(1).setXs(1).build(),
+            Settings5.builder().setAge(2).setXs(2).build()
+    };
+    private final Settings5.Live live = new Settings5.Live(published[0]);
+    private volatile Settings5 reference = published[0];
+    private int writes;
+
+    @State(Scope.Thread)
+    public static class Reader {
+        final Settings5.Live.Values values = new Settings5.Live.Values();
+    }
+
+    @Benchmark
+    @Group("live")
+    @GroupThreads(3)
+    public long liveRead(Reader reader) {
+        Settings5.Live.Values values = live.read(reader.values);
+        return values.getAge() + values.getXs();
+    }
+
+    @Benchmark
+    @Group("live")
+    @GroupThreads(1)
+    public void liveWrite() {
+        live.set(published[++writes & 1]);
+    }
+
+    @Benchmark
+    @Group("reference")
+    @GroupThreads(3)
+    public long referenceRead() {
+        Settings5 settings5 = reference;
+        return settings5.age + settings5.xs;
+    }
+
+    @Benchmark
+    @Group("reference")
+    @GroupThreads(1)
+    public void referenceWrite() {
+        reference = published[++writes & 1];
+    }
+}
@@ -0,0 +1,317 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.johnsoft.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import javax.annotation.processing.Completion;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.Processor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import com.johnsoft.tools.AnnoProcTool;
+
+/**
+ * Generate synthetic @GenBuilder descriptors, run {@link AnnoProcTool} on them by in-process javac,
+ * report processing time per descriptor and peak heap.<br/>
+ * NOTE:
+ * 1. Sweep one dimension at a time (class count, field count, nesting depth, join arity, flags)
+ *    around a small baseline, every case run in fresh javac with "-proc:only".<br/>
+ * 2. Program arguments are passed to javac, e.g. "-Agenbuilder.parallelism=1".<br/>
+ * 3. Run by "./gradlew :bench:processorScale".<br/>
+ *
+ * @author John Kenrinus Lee
+ * @version 2019-05-12
+ */
+public class ProcessorScaleBenchmark {
+    private static final String PACKAGE = "scale";
+    private static final String[] FIELD_TYPES = {
+            "int", "long", "boolean", "String", "java.util.List<String>", "java.util.Map<String, Integer>"
+    };
+    private static final String[] FIELD_VALUES = {
+            "1", "2L", "true", "\"s\"", "new java.util.ArrayList<>()", "new java.util.HashMap<>()"
+    };
+
+    public static void main(String[] args) throws IOException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            throw new IllegalStateException("Need run on JDK, not JRE");
+        }
+        List<String> javacOptions = Arrays.asList(args);
+        Case base = new Case(100, 5, 0, 0, false, false, false);
+
+        List<Case> cases = new ArrayList<>();
+        for (int classes : new int[] { 10, 100, 1000, 10000 }) {
+            cases.add(base.classes(classes));
+        }
+        for (int fields : new int[] { 5, 50, 500 }) {
+            cases.add(base.fields(fields));
+        }
+        for (int depth : new int[] { 1, 2, 4 }) {
+            cases.add(base.depth(depth));
+        }
+        for (int join : new int[] { 1, 4 }) {
+            cases.add(base.join(join));
+        }
+        cases.add(new Case(base.classes, base.fields, 0, 0, true, false, false));
+        cases.add(new Case(base.classes, base.fields, 0, 0, false, true, false));
+        cases.add(new Case(base.classes, base.fields, 0, 0, false, false, true));
+
+        run(compiler, base, javacOptions); // warm up javac and processor
+        System.out.println(String.format(Locale.ROOT, "%-58s %10s %10s %12s %10s",
+                "case", "javac(ms)", "apt(ms)", "apt/desc(us)", "peak(MB)"));
+        for (Case c : cases) {
+            Result result = run(compiler, c, javacOptions);
+            System.out.println(String.format(Locale.ROOT, "%-58s %10.1f %10.1f %12.1f %10.1f",
+                    c, result.javacNanos / 1e6, result.processorNanos / 1e6,
+                    result.processorNanos / 1e3 / c.classes, result.peakHeapBytes / 1024.0 / 1024.0));
+        }
+    }
+
+    private static Result run(JavaCompiler compiler, Case c, List<String> javacOptions) throws IOException {
+        File root = Files.createTempDirectory("genbuilder-scale").toFile();
+        try {
+            File sourceDir = new File(root, "src");
+            File generatedDir = new File(root, "generated");
+            File classesDir = new File(root, "classes");
+            if (!generatedDir.mkdirs() || !classesDir.mkdirs()) {
+                throw new IOException("Can't create directory in " + root);
+            }
+            List<File> sources = generateSources(sourceDir, c);
+
+            List<String> options = new ArrayList<>(Arrays.asList(
+                    "-proc:only", "-nowarn",
+                    "-classpath", System.getProperty("java.class.path"),
+                    "-s", generatedDir.getPath(),
+                    "-d", classesDir.getPath()));
+            options.addAll(javacOptions);
+
+            TimedProcessor processor = new TimedProcessor(new AnnoProcTool());
+            try (StandardJavaFileManager fileManager =
+                         compiler.getStandardFileManager(null, Locale.ROOT, StandardCharsets.UTF_8)) {
+                Iterable<? extends JavaFileObject> units = fileManager.getJavaFileObjectsFromFiles(sources);
+                JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, null, options, null, units);
+                task.setProcessors(Arrays.asList(processor));
+
+                System.gc();
+                List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+                for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                    if (pool.getType() == MemoryType.HEAP) {
+                        pool.resetPeakUsage();
+                        heapPools.add(pool);
+                    }
+                }
+                long start = System.nanoTime();
+                if (!task.call()) {
+                    throw new IllegalStateException("Compilation failed: " + c);
+                }
+                Result result = new Result();
+                result.javacNanos = System.nanoTime() - start;
+                result.processorNanos = processor.nanos;
+                for (MemoryPoolMXBean pool : heapPools) {
+                    result.peakHeapBytes += pool.getPeakUsage().getUsed();
+                }
+                return result;
+            }
+        } finally {
+            delete(root);
+        }
+    }
+
+    private static List<File> generateSources(File sourceDir, Case c) throws IOException {
+        File packageDir = new File(sourceDir, PACKAGE);
+        if (!packageDir.mkdirs()) {
+            throw new IOException("Can't create directory " + packageDir);
+        }
+        List<File> sources = new ArrayList<>();
+        StringBuilder join = new StringBuilder();
+        for (int i = 0; i < c.join; ++i) {
+            String name = "JoinTarget" + i;
+            join.append(i == 0 ? "" : ", ").append(name).append(".class");
+            sources.add(write(packageDir, name, "package " + PACKAGE + ";\n\npublic class " + name + " {\n}\n"));
+        }
+        for (int i = 0; i < c.classes; ++i) {
+            String name = "Scale" + i + "Desc";
+            StringBuilder sb = new StringBuilder(256 + c.fields * 64 * (c.depth + 1));
+            sb.append("package ").append(PACKAGE).append(";\n\n")
+              .append("import com.johnsoft.annotations.GenBuilder;\n\n")
+              .append("@GenBuilder(nested = true")
+              .append(", getter = ").append(c.getter)
+              .append(", inheritable = ").append(c.inheritable)
+              .append(", elementAdder = ").append(c.elementAdder)
+              .append(", join = { ").append(join).append(" })\n")
+              .append("public class ").append(name).append(" {\n");
+            appendBody(sb, c, c.depth, "    ");
+            sb.append("}\n");
+            sources.add(write(packageDir, name, sb.toString()));
+        }
+        return sources;
+    }
+
+    private static void appendBody(StringBuilder sb, Case c, int depth, String indent) {
+        for (int i = 0; i < c.fields; ++i) {
+            int kind = i % FIELD_TYPES.length;
+            sb.append(indent).append("public ").append(FIELD_TYPES[kind]).append(" field").append(i)
+              .append(" = ").append(FIELD_VALUES[kind]).append(";\n");
+        }
+        if (depth > 0) {
+            sb.append(indent).append("public static class Nested").append(depth).append(" {\n");
+            appendBody(sb, c, depth - 1, indent + "    ");
+            sb.append(indent).append("}\n");
+        }
+    }
+
+    private static File write(File dir, String simpleName, String content) throws IOException {
+        File file = new File(dir, simpleName + ".java");
+        try (Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            writer.write(content);
+        }
+        return file;
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+    }
+
+    private static final class Case {
+        final int classes;
+        final int fields;
+        final int depth;
+        final int join;
+        final boolean elementAdder;
+        final boolean getter;
+        final boolean inheritable;
+
+        Case(int classes, int fields, int depth, int join,
+             boolean elementAdder, boolean getter, boolean inheritable) {
+            this.classes = classes;
+            this.fields = fields;
+            this.depth = depth;
+            this.join = join;
+            this.elementAdder = elementAdder;
+            this.getter = getter;
+            this.inheritable = inheritable;
+        }
+
+        Case classes(int classes) {
+            return new Case(classes, fields, depth, join, elementAdder, getter, inheritable);
+        }
+
+        Case fields(int fields) {
+            return new Case(classes, fields, depth, join, elementAdder, getter, inheritable);
+        }
+
+        Case depth(int depth) {
+            return new Case(classes, fields, depth, join, elementAdder, getter, inheritable);
+        }
+
+        Case join(int join) {
+            return new Case(classes, fields, depth, join, elementAdder, getter, inheritable);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "classes=%d fields=%d depth=%d join=%d%s%s%s",
+                    classes, fields, depth, join,
+                    elementAdder ? " elementAdder" : "", getter ? " getter" : "", inheritable ? " inheritable" : "");
+        }
+    }
+
+    private static final class Result {
+        long javacNanos;
+        long processorNanos;
+        long peakHeapBytes;
+    }
+
+    /**
+     * Delegate to real processor, accumulate the time of init and process.
+     */
+    private static final class TimedProcessor implements Processor {
+        private final Processor delegate;
+        long nanos;
+
+        TimedProcessor(Processor delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Set<String> getSupportedOptions() {
+            return delegate.getSupportedOptions();
+        }
+
+        @Override
+        public Set<String> getSupportedAnnotationTypes() {
+            return delegate.getSupportedAnnotationTypes();
+        }
+
+        @Override
+        public SourceVersion getSupportedSourceVersion() {
+            return delegate.getSupportedSourceVersion();
+        }
+
+        @Override
+        public void init(ProcessingEnvironment processingEnv) {
+            long start = System.nanoTime();
+            delegate.init(processingEnv);
+            nanos += System.nanoTime() - start;
+        }
+
+        @Override
+        public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+            long start = System.nanoTime();
+            try {
+                return delegate.process(annotations, roundEnv);
+            } finally {
+                nanos += System.nanoTime() - start;
+            }
+        }
+
+        @Override
+        public Iterable<? extends Completion> getCompletions(Element element, AnnotationMirror annotation,
+                                                             ExecutableElement member, String userText) {
+            return delegate.getCompletions(element, annotation, member, userText);
+        }
+    }
+}
@@ -1,18 +1,39 @@
 package com.johnsoft.samples;
 
+import com.johnsoft.annotations.runtime.Codec;
+import java.lang.CharSequence;
+import java.lang.Character;
+import java.lang.IllegalArgumentException;
+import java.lang.Object;
+import java.lang.Override;
 import java.lang.String;
+import java.lang.StringBuilder;
+import java.lang.StringIndexOutOfBoundsException;
+import java.nio.ByteBuffer;
+import java.util.Objects;
 
 /**
  *  @author John Kenrinus Lee
  *  @version 2019-04-29
  */
 public final class Settings1Impl {
+    private static final long SCHEMA_FINGERPRINT = 0xb5884d259bcf18e0L;
+
+    private static final Settings1Impl DEFAULT = new Settings1Impl(new Builder());
+
     public final String background;
 
     public final int windowHeight;
 
+    private transient int cachedHash;
+
     public Settings1Impl() {
-        this(new Builder());
+        this(DEFAULT);
+    }
+
+    private Settings1Impl(Settings1Impl defaults) {
+        this.background = defaults.background;
+        this.windowHeight = defaults.windowHeight;
     }
 
     private Settings1Impl(Builder builder) {
@@ -20,6 +41,11 @@ public final class Settings1Impl {
         this.windowHeight = builder.windowHeight;
     }
 
+    private Settings1Impl(String background, int windowHeight) {
+        this.background = background;
+        this.windowHeight = windowHeight;
+    }
+
     public static Builder builder() {
         return new Builder();
     }
@@ -28,6 +54,194 @@ public final class Settings1Impl {
         return new Builder(this);
     }
 
+    public Settings1Impl withBackground(String background) {
+        if (Objects.equals(this.background, background)) {
+            return this;
+        }
+        return new Settings1Impl(background, this.windowHeight);
+    }
+
+    public Settings1Impl withWindowHeight(int windowHeight) {
+        if (this.windowHeight == windowHeight) {
+            return this;
+        }
+        return new Settings1Impl(this.background, windowHeight);
+    }
+
+    /**
+     * @return bytes written by {@link #writeTo(ByteBuffer)}
+     */
+    public int serializedSize() {
+        int size = 8;
+        size += Codec.stringSize(this.background);
+        size += Codec.varintSize(Codec.zigzag(this.windowHeight));
+        return size;
+    }
+
+    /**
+     * Write at buffer's position, buffer should have {@link #serializedSize()} remaining.
+     * @return the buffer
+     */
+    public ByteBuffer writeTo(ByteBuffer buffer) {
+        buffer.putLong(SCHEMA_FINGERPRINT);
+        Codec.putString(buffer, this.background);
+        Codec.putVarint(buffer, Codec.zigzag(this.windowHeight));
+        return buffer;
+    }
+
+    /**
+     * Read from buffer's position, which written by {@link #writeTo(ByteBuffer)}.
+     * @throws IllegalArgumentException if schema mismatch or corrupt
+     * @throws java.nio.BufferUnderflowException if truncated
+     */
+    public static Settings1Impl readFrom(ByteBuffer buffer) {
+        if (buffer.getLong() != SCHEMA_FINGERPRINT) {
+            throw new IllegalArgumentException("Schema mismatch of Settings1Impl");
+        }
+        String background = Codec.getString(buffer);
+        int windowHeight = (int) Codec.unZigzag(Codec.getVarint(buffer));
+        return new Settings1Impl(background, windowHeight);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        Settings1Impl that = (Settings1Impl) o;
+        if (cachedHash != 0 && that.cachedHash != 0 && cachedHash != that.cachedHash) {
+            return false;
+        }
+        return this.windowHeight == that.windowHeight
+                && Objects.equals(this.background, that.background);
+    }
+
+    @Override
+    public int hashCode() {
+        int h = cachedHash;
+        if (h == 0) {
+            h = 1;
+            h = 31 * h + Objects.hashCode(this.background);
+            h = 31 * h + this.windowHeight;
+            cachedHash = h;
+        }
+        return h;
+    }
+
+    @Override
+    public String toString() {
+        return new StringBuilder(71)
+                .append("Settings1Impl{background=").append(this.background)
+                .append(", windowHeight=").append(this.windowHeight)
+                .append('}').toString();
+    }
+
+    /**
+     * Reusable view of one Settings1Impl record in ByteBuffer (e.g. MappedByteBuffer),
+     * re-point it by {@link #wrap(ByteBuffer, int)}.
+     * Layout (bytes, in buffer's byte order):
+     * <pre>
+     * 0: int record length
+     * 4: background (int offset of chars, int length or -1 for null)
+     * 12: windowHeight (int)
+     * 16: UTF-16 chars of String fields, then zero padding to multiple of 8
+     * </pre>
+     */
+    public static final class Flyweight {
+        /**
+         * bytes before String's chars, the minimum record length
+         */
+        public static final int FIXED_SIZE = 16;
+
+        private final FlyweightChars backgroundChars = new FlyweightChars();
+
+        private ByteBuffer buffer;
+
+        private int offset;
+
+        /**
+         * View the record at offset of buffer, which written by {@link #write(ByteBuffer, int, Settings1Impl)}.
+         * @return this
+         */
+        public Flyweight wrap(ByteBuffer buffer, int offset) {
+            this.buffer = buffer;
+            this.offset = offset;
+            return this;
+        }
+
+        public int offset() {
+            return offset;
+        }
+
+        /**
+         * @return bytes of the record, the next record starts at offset() + recordLength()
+         */
+        public int recordLength() {
+            return buffer.getInt(offset);
+        }
+
+        /**
+         * @return the reused view of chars, or null
+         */
+        public CharSequence getBackground() {
+            return backgroundChars.wrap(buffer, offset + buffer.getInt(offset + 4), buffer.getInt(offset + 8));
+        }
+
+        public int getWindowHeight() {
+            return buffer.getInt(offset + 12);
+        }
+
+        /**
+         * @return a new Settings1Impl with the values of the record
+         */
+        public Settings1Impl materialize() {
+            String background = Objects.toString(getBackground(), null);
+            int windowHeight = this.buffer.getInt(this.offset + 12);
+            return new Settings1Impl(background, windowHeight);
+        }
+
+        /**
+         * @return bytes of the record written by {@link #write(ByteBuffer, int, Settings1Impl)}
+         */
+        public static int recordLength(Settings1Impl value) {
+            int length = FIXED_SIZE;
+            if (value.background != null) {
+                length += value.background.length() * Character.BYTES;
+            }
+            return (length + 7) & ~7;
+        }
+
+        /**
+         * Write the record at offset of buffer (absolute, position not changed),
+         * buffer should have {@link #recordLength(Settings1Impl)} bytes there.
+         * @return bytes written
+         */
+        public static int write(ByteBuffer buffer, int offset, Settings1Impl value) {
+            int length = recordLength(value);
+            buffer.putInt(offset, length);
+            int position = FIXED_SIZE;
+            if (value.background == null) {
+                buffer.putInt(offset + 4, 0);
+                buffer.putInt(offset + 8, -1);
+            } else {
+                int backgroundLength = value.background.length();
+                buffer.putInt(offset + 4, position);
+                buffer.putInt(offset + 8, backgroundLength);
+                for (int i = 0; i < backgroundLength; ++i, position += Character.BYTES) {
+                    buffer.putChar(offset + position, value.background.charAt(i));
+                }
+            }
+            buffer.putInt(offset + 12, value.windowHeight);
+            for (; position < length; ++position) {
+                buffer.put(offset + position, (byte) 0);
+            }
+            return length;
+        }
+    }
+
     /**
      * @see Settings1Impl
      */
@@ -60,4 +274,58 @@ public final class Settings1Impl {
             return new Settings1Impl(this);
         }
     }
+
+    /**
+     * CharSequence view of UTF-16 chars in ByteBuffer, reused by Flyweight
+     */
+    private static final class FlyweightChars implements CharSequence {
+        private ByteBuffer buffer;
+
+        private int start;
+
+        private int length;
+
+        /**
+         * @return this, or null if length is negative
+         */
+        FlyweightChars wrap(ByteBuffer buffer, int start, int length) {
+            if (length < 0) {
+                return null;
+            }
+            this.buffer = buffer;
+            this.start = start;
+            this.length = length;
+            return this;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= length) {
+                throw new StringIndexOutOfBoundsException(index);
+            }
+            return buffer.getChar(start + index * Character.BYTES);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            if (start < 0 || end > length || start > end) {
+                throw new StringIndexOutOfBoundsException(start);
+            }
+            return new FlyweightChars().wrap(buffer, this.start + start * Character.BYTES, end - start);
+        }
+
+        @Override
+        public String toString() {
+            char[] chars = new char[length];
+            for (int i = 0; i < length; ++i) {
+                chars[i] = buffer.getChar(start + i * Character.BYTES);
+            }
+            return new String(chars);
+        }
+    }
 }
@@ -2,6 +2,11 @@ package com.johnsoft.samples;
 
 import java.awt.Color;
 import java.awt.Font;
+import java.lang.Object;
+import java.lang.Override;
+import java.lang.String;
+import java.lang.StringBuilder;
+import java.util.Objects;
 
 /**
  *  @author John Kenrinus Lee
@@ -9,16 +14,28 @@ import java.awt.Font;
  */
 public final class Settings2Impl {
     public static final class Fonts {
+        private static final Fonts DEFAULT = new Fonts(new Builder());
+
         private final Font normal;
 
+        private transient int cachedHash;
+
         public Fonts() {
-            this(new Builder());
+            this(DEFAULT);
+        }
+
+        private Fonts(Fonts defaults) {
+            this.normal = defaults.normal;
         }
 
         private Fonts(Builder builder) {
             this.normal = builder.normal;
         }
 
+        private Fonts(Font normal) {
+            this.normal = normal;
+        }
+
         public Font getNormal() {
             return normal;
         }
@@ -31,14 +48,56 @@ public final class Settings2Impl {
             return new Builder(this);
         }
 
+        public Fonts withNormal(Font normal) {
+            if (Objects.equals(this.normal, normal)) {
+                return this;
+            }
+            return new Fonts(normal);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Fonts that = (Fonts) o;
+            if (cachedHash != 0 && that.cachedHash != 0 && cachedHash != that.cachedHash) {
+                return false;
+            }
+            return Objects.equals(this.normal, that.normal);
+        }
+
+        @Override
+        public int hashCode() {
+            int h = cachedHash;
+            if (h == 0) {
+                h = 1;
+                h = 31 * h + Objects.hashCode(this.normal);
+                cachedHash = h;
+            }
+            return h;
+        }
+
+        @Override
+        public String toString() {
+            return new StringBuilder(28)
+                    .append("Fonts{normal=").append(this.normal)
+                    .append('}').toString();
+        }
+
         /**
          * @see Fonts
          */
         public static final class Builder {
+            private static final Font DEFAULT_NORMAL = new java.awt.Font("Arial", java.awt.Font.BOLD, 32);
+
             private Font normal;
 
             public Builder() {
-                this.normal = new java.awt.Font("Arial", java.awt.Font.BOLD, 32);
+                this.normal = DEFAULT_NORMAL;
             }
 
             private Builder(Fonts fonts) {
@@ -57,7 +116,13 @@ public final class Settings2Impl {
     }
 
     public static final class Colors {
-        private final Color foreground;
+        private volatile Color foreground;
+
+        private final Color shadow;
+
+        private transient volatile Color shadowCache;
+
+        private transient int cachedHash;
 
         public Colors() {
             this(new Builder());
@@ -65,10 +130,30 @@ public final class Settings2Impl {
 
         private Colors(Builder builder) {
             this.foreground = builder.foreground;
+            this.shadow = builder.shadow;
+        }
+
+        private Colors(Color foreground, Color shadow) {
+            this.foreground = foreground;
+            this.shadow = shadow;
         }
 
         public Color getForeground() {
-            return foreground;
+            Color result = this.foreground;
+            if (result == null) {
+                result = com.johnsoft.samples.utils.Util.getDefaultColor();
+                this.foreground = result;
+            }
+            return result;
+        }
+
+        public Color getShadow() {
+            Color result = shadowCache;
+            if (result == null) {
+                result = shadow.darker();
+                shadowCache = result;
+            }
+            return result;
         }
 
         public static Builder builder() {
@@ -79,18 +164,72 @@ public final class Settings2Impl {
             return new Builder(this);
         }
 
+        public Colors withForeground(Color foreground) {
+            if (Objects.equals(this.foreground, foreground)) {
+                return this;
+            }
+            return new Colors(foreground, this.shadow);
+        }
+
+        public Colors withShadow(Color shadow) {
+            if (Objects.equals(this.shadow, shadow)) {
+                return this;
+            }
+            return new Colors(this.foreground, shadow);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Colors that = (Colors) o;
+            if (cachedHash != 0 && that.cachedHash != 0 && cachedHash != that.cachedHash) {
+                return false;
+            }
+            return (this.foreground != null && that.foreground != null ? Objects.equals(this.foreground, that.foreground)
+                    : this.foreground == that.foreground || Objects.equals(this.getForeground(), that.getForeground()))
+                    && Objects.equals(this.shadow, that.shadow);
+        }
+
+        @Override
+        public int hashCode() {
+            int h = cachedHash;
+            if (h == 0) {
+                h = 1;
+                h = 31 * h + Objects.hashCode(this.shadow);
+                cachedHash = h;
+            }
+            return h;
+        }
+
+        @Override
+        public String toString() {
+            return new StringBuilder(51)
+                    .append("Colors{foreground=").append(this.foreground == null ? "<default>" : this.foreground)
+                    .append(", shadow=").append(this.shadow)
+                    .append('}').toString();
+        }
+
         /**
          * @see Colors
          */
         public static final class Builder {
             private Color foreground;
 
+            private Color shadow;
+
             public Builder() {
-                this.foreground = com.johnsoft.samples.utils.Util.getDefaultColor();
+                this.foreground = null;
+                this.shadow = java.awt.Color.GRAY;
             }
 
             private Builder(Colors colors) {
                 this.foreground = colors.foreground;
+                this.shadow = colors.shadow;
             }
 
             public Builder setForeground(Color foreground) {
@@ -98,6 +237,11 @@ public final class Settings2Impl {
                 return this;
             }
 
+            public Builder setShadow(Color shadow) {
+                this.shadow = shadow;
+                return this;
+            }
+
             public Colors build() {
                 return new Colors(this);
             }
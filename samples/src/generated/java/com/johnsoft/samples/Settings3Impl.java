@@ -1,7 +1,20 @@
 package com.johnsoft.samples;
 
+import com.johnsoft.annotations.runtime.Codec;
+import com.johnsoft.annotations.runtime.Json;
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.Appendable;
+import java.lang.IllegalArgumentException;
+import java.lang.Object;
+import java.lang.Override;
 import java.lang.String;
+import java.lang.StringBuilder;
+import java.lang.SuppressWarnings;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Objects;
 
 /**
  *  @author John Kenrinus Lee
@@ -14,9 +27,11 @@ public class Settings3Impl {
 
     public static final int MODE_CLIMB = 3;
 
+    private static final long SCHEMA_FINGERPRINT = 0x7a1d66b8626deacaL;
+
     public final Map<String, String> fontMap;
 
-    public final int mode;
+    private final long packed0;
 
     public Settings3Impl() {
         this(new Builder());
@@ -24,7 +39,24 @@ public class Settings3Impl {
 
     private Settings3Impl(Builder builder) {
         this.fontMap = builder.fontMap;
-        this.mode = builder.mode;
+        this.packed0 = builder.packed0;
+    }
+
+    private Settings3Impl(Map<String, String> fontMap, long packed0) {
+        this.fontMap = fontMap;
+        this.packed0 = packed0;
+    }
+
+    public int getMode() {
+        return (int) (this.packed0 & 0x3L) + 1;
+    }
+
+    public boolean getFullScreen() {
+        return (this.packed0 & 0x4L) != 0;
+    }
+
+    public boolean getResizable() {
+        return (this.packed0 & 0x8L) != 0;
     }
 
     public static Builder builder() {
@@ -35,51 +67,405 @@ public class Settings3Impl {
         return new Builder(this);
     }
 
+    /**
+     * @return bytes written by {@link #writeTo(ByteBuffer)}
+     */
+    public int serializedSize() {
+        int size = 8;
+        if (this.fontMap == null) {
+            size += 1;
+        } else {
+            size += Codec.varintSize(this.fontMap.size() + 1);
+            for (Map.Entry<String, String> entry : this.fontMap.entrySet()) {
+                size += Codec.stringSize(entry.getKey());
+                size += Codec.stringSize(entry.getValue());
+            }
+        }
+        size += Codec.varintSize(Codec.zigzag(this.packed0));
+        return size;
+    }
+
+    /**
+     * Write at buffer's position, buffer should have {@link #serializedSize()} remaining.
+     * @return the buffer
+     */
+    public ByteBuffer writeTo(ByteBuffer buffer) {
+        buffer.putLong(SCHEMA_FINGERPRINT);
+        if (this.fontMap == null) {
+            Codec.putVarint(buffer, 0);
+        } else {
+            Codec.putVarint(buffer, this.fontMap.size() + 1);
+            for (Map.Entry<String, String> entry : this.fontMap.entrySet()) {
+                Codec.putString(buffer, entry.getKey());
+                Codec.putString(buffer, entry.getValue());
+            }
+        }
+        Codec.putVarint(buffer, Codec.zigzag(this.packed0));
+        return buffer;
+    }
+
+    /**
+     * Read from buffer's position, which written by {@link #writeTo(ByteBuffer)}.
+     * @throws IllegalArgumentException if schema mismatch or corrupt
+     * @throws java.nio.BufferUnderflowException if truncated
+     */
+    public static Settings3Impl readFrom(ByteBuffer buffer) {
+        if (buffer.getLong() != SCHEMA_FINGERPRINT) {
+            throw new IllegalArgumentException("Schema mismatch of Settings3Impl");
+        }
+        int fontMapLength = Codec.getLength(buffer);
+        Map<String, String> fontMap = null;
+        if (fontMapLength >= 0) {
+            fontMap = new LinkedHashMap<>();
+            for (int i = 0; i < fontMapLength; ++i) {
+                fontMap.put(Codec.getString(buffer), Codec.getString(buffer));
+            }
+        }
+        long packed0 = Codec.unZigzag(Codec.getVarint(buffer));
+        return new Settings3Impl(fontMap, packed0);
+    }
+
+    /**
+     * @return changes from this to that, so diff(that).applyTo(this) equals that
+     */
+    public Delta diff(Settings3Impl that) {
+        Delta delta = new Delta();
+        if (!(Objects.equals(this.fontMap, that.fontMap))) {
+            delta.mask |= Delta.FONT_MAP;
+            delta.fontMap = that.fontMap;
+        }
+        if (((this.packed0 ^ that.packed0) & 0x3L) != 0) {
+            delta.mask |= Delta.MODE;
+            delta.packed0 = that.packed0;
+        }
+        if (((this.packed0 ^ that.packed0) & 0x4L) != 0) {
+            delta.mask |= Delta.FULL_SCREEN;
+            delta.packed0 = that.packed0;
+        }
+        if (((this.packed0 ^ that.packed0) & 0x8L) != 0) {
+            delta.mask |= Delta.RESIZABLE;
+            delta.packed0 = that.packed0;
+        }
+        return delta;
+    }
+
+    /**
+     * Write as JSON object, which can be read by {@link #fromJson(Reader)}.
+     */
+    public void toJson(Appendable out) throws IOException {
+        out.append("{\"fontMap\":");
+        if (fontMap == null) {
+            out.append("null");
+        } else {
+            out.append('{');
+            boolean first = true;
+            for (Map.Entry<String, String> entry : fontMap.entrySet()) {
+                if (!first) {
+                    out.append(',');
+                }
+                first = false;
+                Json.writeString(out, entry.getKey());
+                out.append(':');
+                Json.writeString(out, entry.getValue());
+            }
+            out.append('}');
+        }
+        out.append(",\"mode\":");
+        out.append(String.valueOf((int) (this.packed0 & 0x3L) + 1));
+        out.append(",\"fullScreen\":");
+        out.append(String.valueOf((this.packed0 & 0x4L) != 0));
+        out.append(",\"resizable\":");
+        out.append(String.valueOf((this.packed0 & 0x8L) != 0));
+        out.append('}');
+    }
+
+    /**
+     * Read one JSON object, missing keys keep the defaults of {@link Builder}, unknown keys are skipped.
+     * @throws IllegalArgumentException if malformed
+     */
+    public static Settings3Impl fromJson(Reader in) throws IOException {
+        Json reader = new Json(in);
+        Builder<?> builder = new Builder<>();
+        builder.readJson(reader);
+        reader.expectEnd();
+        return builder.build();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        Settings3Impl that = (Settings3Impl) o;
+        return this.packed0 == that.packed0
+                && Objects.equals(this.fontMap, that.fontMap);
+    }
+
+    @Override
+    public int hashCode() {
+        int h = 1;
+        h = 31 * h + (int) (this.packed0 ^ (this.packed0 >>> 32));
+        h = 31 * h + Objects.hashCode(this.fontMap);
+        return h;
+    }
+
+    @Override
+    public String toString() {
+        return new StringBuilder(101)
+                .append("Settings3Impl{fontMap=").append(this.fontMap)
+                .append(", mode=").append(getMode())
+                .append(", fullScreen=").append(getFullScreen())
+                .append(", resizable=").append(getResizable())
+                .append('}').toString();
+    }
+
+    /**
+     * Changed properties from one Settings3Impl to another, see {@link Settings3Impl#diff(Settings3Impl)}.
+     */
+    public static final class Delta {
+        public static final long FONT_MAP = 1L << 0;
+
+        public static final long MODE = 1L << 1;
+
+        public static final long FULL_SCREEN = 1L << 2;
+
+        public static final long RESIZABLE = 1L << 3;
+
+        private long mask;
+
+        private Map<String, String> fontMap;
+
+        private long packed0;
+
+        private Delta() {
+        }
+
+        /**
+         * @return bits of changed properties, e.g. FONT_MAP
+         */
+        public long mask() {
+            return mask;
+        }
+
+        public boolean isEmpty() {
+            return mask == 0;
+        }
+
+        /**
+         * @return true if any of the properties changed
+         */
+        public boolean isChanged(long properties) {
+            return (mask & properties) != 0;
+        }
+
+        /**
+         * @return the target with changed values, or itself if nothing changed
+         */
+        public Settings3Impl applyTo(Settings3Impl target) {
+            if (mask == 0) {
+                return target;
+            }
+            Builder<?> builder = target.newBuilder();
+            applyTo(builder);
+            return builder.build();
+        }
+
+        /**
+         * Write the changed values into builder
+         */
+        public void applyTo(Builder<?> builder) {
+            if ((mask & FONT_MAP) != 0) {
+                builder.fontMap = this.fontMap;
+            }
+            if ((mask & MODE) != 0) {
+                builder.packed0 = (builder.packed0 & ~0x3L) | (this.packed0 & 0x3L);
+            }
+            if ((mask & FULL_SCREEN) != 0) {
+                builder.packed0 = (builder.packed0 & ~0x4L) | (this.packed0 & 0x4L);
+            }
+            if ((mask & RESIZABLE) != 0) {
+                builder.packed0 = (builder.packed0 & ~0x8L) | (this.packed0 & 0x8L);
+            }
+        }
+
+        /**
+         * @return bytes written by {@link #writeTo(ByteBuffer)}
+         */
+        public int serializedSize() {
+            int size = 8 + Codec.varintSize(mask);
+            if ((mask & FONT_MAP) != 0) {
+                if (this.fontMap == null) {
+                    size += 1;
+                } else {
+                    size += Codec.varintSize(this.fontMap.size() + 1);
+                    for (Map.Entry<String, String> entry : this.fontMap.entrySet()) {
+                        size += Codec.stringSize(entry.getKey());
+                        size += Codec.stringSize(entry.getValue());
+                    }
+                }
+            }
+            if ((mask & (MODE | FULL_SCREEN | RESIZABLE)) != 0) {
+                size += Codec.varintSize(Codec.zigzag(this.packed0));
+            }
+            return size;
+        }
+
+        /**
+         * Write at buffer's position, the changed values only.
+         * @return the buffer
+         */
+        public ByteBuffer writeTo(ByteBuffer buffer) {
+            buffer.putLong(SCHEMA_FINGERPRINT);
+            Codec.putVarint(buffer, mask);
+            if ((mask & FONT_MAP) != 0) {
+                if (this.fontMap == null) {
+                    Codec.putVarint(buffer, 0);
+                } else {
+                    Codec.putVarint(buffer, this.fontMap.size() + 1);
+                    for (Map.Entry<String, String> entry : this.fontMap.entrySet()) {
+                        Codec.putString(buffer, entry.getKey());
+                        Codec.putString(buffer, entry.getValue());
+                    }
+                }
+            }
+            if ((mask & (MODE | FULL_SCREEN | RESIZABLE)) != 0) {
+                Codec.putVarint(buffer, Codec.zigzag(this.packed0));
+            }
+            return buffer;
+        }
+
+        /**
+         * Read from buffer's position, which written by {@link #writeTo(ByteBuffer)}.
+         * @throws IllegalArgumentException if schema mismatch or corrupt
+         * @throws java.nio.BufferUnderflowException if truncated
+         */
+        public static Delta readFrom(ByteBuffer buffer) {
+            if (buffer.getLong() != SCHEMA_FINGERPRINT) {
+                throw new IllegalArgumentException("Schema mismatch of Settings3Impl");
+            }
+            Delta delta = new Delta();
+            delta.mask = Codec.getVarint(buffer);
+            if ((delta.mask & FONT_MAP) != 0) {
+                int fontMapLength = Codec.getLength(buffer);
+                Map<String, String> fontMap = null;
+                if (fontMapLength >= 0) {
+                    fontMap = new LinkedHashMap<>();
+                    for (int i = 0; i < fontMapLength; ++i) {
+                        fontMap.put(Codec.getString(buffer), Codec.getString(buffer));
+                    }
+                }
+                delta.fontMap = fontMap;
+            }
+            if ((delta.mask & (MODE | FULL_SCREEN | RESIZABLE)) != 0) {
+                long packed0 = Codec.unZigzag(Codec.getVarint(buffer));
+                delta.packed0 = packed0;
+            }
+            return delta;
+        }
+    }
+
     /**
      * @see Settings3Impl
      */
     public static class Builder<T extends Builder> {
         private Map<String, String> fontMap;
 
-        private int mode;
+        private long packed0;
 
         public Builder() {
+            this.packed0 = 0L;
             this.fontMap = new java.util.HashMap<>();
-            this.mode = MODE_FLY;
+            this.packed0 = (this.packed0 & ~0x3L) | ((long) ((MODE_FLY) - 1) & 0x3L);
+            this.packed0 |= 0x8L;
         }
 
         private Builder(Settings3Impl settings3Impl) {
             this.fontMap = settings3Impl.fontMap;
-            this.mode = settings3Impl.mode;
+            this.packed0 = settings3Impl.packed0;
         }
 
+        @SuppressWarnings("unchecked")
         public T setFontMap(Map<String, String> fontMap) {
             this.fontMap = fontMap;
             return (T) this;
         }
 
+        @SuppressWarnings("unchecked")
         public T addToFontMap(String key, String value) {
             fontMap.put(key, value);
             return (T) this;
         }
 
+        @SuppressWarnings("unchecked")
         public T setModeToToFly() {
-            this.mode = 1;
+            this.packed0 &= ~0x3L;
             return (T) this;
         }
 
+        @SuppressWarnings("unchecked")
         public T setModeToToRun() {
-            this.mode = 2;
+            this.packed0 = (this.packed0 & ~0x3L) | 0x1L;
             return (T) this;
         }
 
+        @SuppressWarnings("unchecked")
         public T setModeToToClimb() {
-            this.mode = 3;
+            this.packed0 = (this.packed0 & ~0x3L) | 0x2L;
+            return (T) this;
+        }
+
+        @SuppressWarnings("unchecked")
+        public T setFullScreen(boolean fullScreen) {
+            this.packed0 = fullScreen ? this.packed0 | 0x4L : this.packed0 & ~0x4L;
+            return (T) this;
+        }
+
+        @SuppressWarnings("unchecked")
+        public T setResizable(boolean resizable) {
+            this.packed0 = resizable ? this.packed0 | 0x8L : this.packed0 & ~0x8L;
             return (T) this;
         }
 
         public Settings3Impl build() {
             return new Settings3Impl(this);
         }
+
+        private void readJson(Json reader) throws IOException {
+            reader.expect('{');
+            while (reader.hasNext('}')) {
+                switch (reader.nextName()) {
+                    case "fontMap":
+                        if (reader.nextNull()) {
+                            setFontMap(null);
+                            break;
+                        }
+                        Map<String, String> fontMap = new LinkedHashMap<>();
+                        reader.expect('{');
+                        while (reader.hasNext('}')) {
+                            fontMap.put(reader.nextName(), reader.nextString());
+                        }
+                        setFontMap(fontMap);
+                        break;
+                    case "mode":
+                        int mode = reader.nextInt();
+                        if (mode != 1 && mode != 2 && mode != 3) {
+                            throw new IllegalArgumentException("Unknown value of mode: " + mode);
+                        }
+                        this.packed0 = (this.packed0 & ~0x3L) | ((long) ((mode) - 1) & 0x3L);
+                        break;
+                    case "fullScreen":
+                        this.packed0 = reader.nextBoolean() ? this.packed0 | 0x4L : this.packed0 & ~0x4L;
+                        break;
+                    case "resizable":
+                        this.packed0 = reader.nextBoolean() ? this.packed0 | 0x8L : this.packed0 & ~0x8L;
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+        }
     }
 }
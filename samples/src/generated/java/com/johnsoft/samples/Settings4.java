@@ -3,6 +3,14 @@ package com.johnsoft.samples;
 import com.johnsoft.samples.utils.SettingManager;
 import java.awt.Color;
 import java.awt.Font;
+import java.lang.Object;
+import java.lang.Override;
+import java.lang.String;
+import java.lang.StringBuilder;
+import java.lang.ref.WeakReference;
+import java.util.Objects;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  *  @author John Kenrinus Lee
@@ -10,8 +18,12 @@ import java.awt.Font;
  */
 public final class Settings4 {
     public static final class Fonts {
+        private static final InternStripe[] INTERN_TABLE = newInternTable();
+
         public final Font normal;
 
+        private transient int cachedHash;
+
         public Fonts() {
             this(new Builder());
         }
@@ -20,6 +32,10 @@ public final class Settings4 {
             this.normal = builder.normal;
         }
 
+        private Fonts(Font normal) {
+            this.normal = normal;
+        }
+
         public static Builder builder() {
             return new Builder();
         }
@@ -28,6 +44,91 @@ public final class Settings4 {
             return new Builder(this);
         }
 
+        public Fonts withNormal(Font normal) {
+            if (Objects.equals(this.normal, normal)) {
+                return this;
+            }
+            return Fonts.intern(new Fonts(normal));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Fonts that = (Fonts) o;
+            if (cachedHash != 0 && that.cachedHash != 0 && cachedHash != that.cachedHash) {
+                return false;
+            }
+            return Objects.equals(this.normal, that.normal);
+        }
+
+        @Override
+        public int hashCode() {
+            int h = cachedHash;
+            if (h == 0) {
+                h = 1;
+                h = 31 * h + Objects.hashCode(this.normal);
+                cachedHash = h;
+            }
+            return h;
+        }
+
+        @Override
+        public String toString() {
+            return new StringBuilder(28)
+                    .append("Fonts{normal=").append(this.normal)
+                    .append('}').toString();
+        }
+
+        private static InternStripe[] newInternTable() {
+            InternStripe[] table = new InternStripe[16];
+            for (int i = 0; i < table.length; ++i) {
+                table[i] = new InternStripe();
+            }
+            return table;
+        }
+
+        private static Fonts intern(Fonts value) {
+            int h = value.hashCode();
+            InternStripe stripe = INTERN_TABLE[(h ^ (h >>> 16)) & 15];
+            synchronized (stripe) {
+                ++stripe.lookups;
+                WeakReference<Fonts> reference = stripe.get(value);
+                Fonts canonical = reference == null ? null : reference.get();
+                if (canonical != null) {
+                    ++stripe.hits;
+                    return canonical;
+                }
+                stripe.put(value, new WeakReference<Fonts>(value));
+                return value;
+            }
+        }
+
+        /**
+         * @return hits / lookups of build() in the intern table, 0 if never built
+         */
+        public static double internHitRatio() {
+            long lookups = 0;
+            long hits = 0;
+            for (InternStripe stripe : INTERN_TABLE) {
+                synchronized (stripe) {
+                    lookups += stripe.lookups;
+                    hits += stripe.hits;
+                }
+            }
+            return lookups == 0 ? 0 : (double) hits / lookups;
+        }
+
+        private static final class InternStripe extends WeakHashMap<Fonts, WeakReference<Fonts>> {
+            long lookups;
+
+            long hits;
+        }
+
         /**
          * @see Fonts
          */
@@ -49,8 +150,11 @@ public final class Settings4 {
                 return this;
             }
 
+            /**
+             * @return the canonical instance equals to built one
+             */
             public Fonts build() {
-                return new Fonts(this);
+                return Fonts.intern(new Fonts(this));
             }
 
             public Builder setSettingManager(SettingManager settingManager) {
@@ -62,12 +166,24 @@ public final class Settings4 {
                 this.settingManager.setFonts(build());
                 return settingManager;
             }
+
+            /**
+             * Build and add to the commit, publish by {@link Commit#commit()}.
+             * @return the commit
+             */
+            public Commit into(Commit commit) {
+                return commit.setFonts(build());
+            }
         }
     }
 
     public static final class Colors {
+        private static final InternStripe[] INTERN_TABLE = newInternTable();
+
         public final Color foreground;
 
+        private transient int cachedHash;
+
         public Colors() {
             this(new Builder());
         }
@@ -76,6 +192,10 @@ public final class Settings4 {
             this.foreground = builder.foreground;
         }
 
+        private Colors(Color foreground) {
+            this.foreground = foreground;
+        }
+
         public static Builder builder() {
             return new Builder();
         }
@@ -84,6 +204,91 @@ public final class Settings4 {
             return new Builder(this);
         }
 
+        public Colors withForeground(Color foreground) {
+            if (Objects.equals(this.foreground, foreground)) {
+                return this;
+            }
+            return Colors.intern(new Colors(foreground));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Colors that = (Colors) o;
+            if (cachedHash != 0 && that.cachedHash != 0 && cachedHash != that.cachedHash) {
+                return false;
+            }
+            return Objects.equals(this.foreground, that.foreground);
+        }
+
+        @Override
+        public int hashCode() {
+            int h = cachedHash;
+            if (h == 0) {
+                h = 1;
+                h = 31 * h + Objects.hashCode(this.foreground);
+                cachedHash = h;
+            }
+            return h;
+        }
+
+        @Override
+        public String toString() {
+            return new StringBuilder(34)
+                    .append("Colors{foreground=").append(this.foreground)
+                    .append('}').toString();
+        }
+
+        private static InternStripe[] newInternTable() {
+            InternStripe[] table = new InternStripe[16];
+            for (int i = 0; i < table.length; ++i) {
+                table[i] = new InternStripe();
+            }
+            return table;
+        }
+
+        private static Colors intern(Colors value) {
+            int h = value.hashCode();
+            InternStripe stripe = INTERN_TABLE[(h ^ (h >>> 16)) & 15];
+            synchronized (stripe) {
+                ++stripe.lookups;
+                WeakReference<Colors> reference = stripe.get(value);
+                Colors canonical = reference == null ? null : reference.get();
+                if (canonical != null) {
+                    ++stripe.hits;
+                    return canonical;
+                }
+                stripe.put(value, new WeakReference<Colors>(value));
+                return value;
+            }
+        }
+
+        /**
+         * @return hits / lookups of build() in the intern table, 0 if never built
+         */
+        public static double internHitRatio() {
+            long lookups = 0;
+            long hits = 0;
+            for (InternStripe stripe : INTERN_TABLE) {
+                synchronized (stripe) {
+                    lookups += stripe.lookups;
+                    hits += stripe.hits;
+                }
+            }
+            return lookups == 0 ? 0 : (double) hits / lookups;
+        }
+
+        private static final class InternStripe extends WeakHashMap<Colors, WeakReference<Colors>> {
+            long lookups;
+
+            long hits;
+        }
+
         /**
          * @see Colors
          */
@@ -105,8 +310,11 @@ public final class Settings4 {
                 return this;
             }
 
+            /**
+             * @return the canonical instance equals to built one
+             */
             public Colors build() {
-                return new Colors(this);
+                return Colors.intern(new Colors(this));
             }
 
             public Builder setSettingManager(SettingManager settingManager) {
@@ -118,6 +326,136 @@ public final class Settings4 {
                 this.settingManager.setColors(build());
                 return settingManager;
             }
+
+            /**
+             * Build and add to the commit, publish by {@link Commit#commit()}.
+             * @return the commit
+             */
+            public Commit into(Commit commit) {
+                return commit.setColors(build());
+            }
+        }
+    }
+
+    /**
+     * Lock-free holder of {@link Snapshot}, readers are wait-free and always see a consistent one.
+     */
+    public static final class Registry {
+        private final AtomicReference<Snapshot> snapshot;
+
+        public Registry() {
+            this.snapshot = new AtomicReference<>(new Snapshot(null, null));
+        }
+
+        public Fonts getFonts() {
+            return snapshot.get().fonts;
+        }
+
+        /**
+         * Publish by CAS, other groups are kept.
+         */
+        public Registry setFonts(Fonts fonts) {
+            Snapshot current;
+            do {
+                current = snapshot.get();
+            } while (!snapshot.compareAndSet(current, new Snapshot(fonts, current.colors)));
+            return this;
+        }
+
+        public Colors getColors() {
+            return snapshot.get().colors;
+        }
+
+        /**
+         * Publish by CAS, other groups are kept.
+         */
+        public Registry setColors(Colors colors) {
+            Snapshot current;
+            do {
+                current = snapshot.get();
+            } while (!snapshot.compareAndSet(current, new Snapshot(current.fonts, colors)));
+            return this;
+        }
+
+        /**
+         * @return current groups, never changed, wait-free
+         */
+        public Snapshot snapshot() {
+            return snapshot.get();
+        }
+
+        /**
+         * @return new commit for publishing several groups atomically
+         */
+        public Commit begin() {
+            return new Commit(this);
+        }
+    }
+
+    /**
+     * Immutable groups of Settings4, published together.
+     */
+    public static final class Snapshot {
+        private final Fonts fonts;
+
+        private final Colors colors;
+
+        private Snapshot(Fonts fonts, Colors colors) {
+            this.fonts = fonts;
+            this.colors = colors;
+        }
+
+        public Fonts getFonts() {
+            return fonts;
+        }
+
+        public Colors getColors() {
+            return colors;
+        }
+    }
+
+    /**
+     * Pending groups, published in one CAS by {@link #commit()}.
+     */
+    public static final class Commit {
+        private final Registry registry;
+
+        private Fonts fonts;
+
+        private boolean fontsChanged;
+
+        private Colors colors;
+
+        private boolean colorsChanged;
+
+        private Commit(Registry registry) {
+            this.registry = registry;
+        }
+
+        public Commit setFonts(Fonts fonts) {
+            this.fonts = fonts;
+            this.fontsChanged = true;
+            return this;
+        }
+
+        public Commit setColors(Colors colors) {
+            this.colors = colors;
+            this.colorsChanged = true;
+            return this;
+        }
+
+        /**
+         * Publish the groups set in one CAS, other groups are kept.
+         * @return the published snapshot
+         */
+        public Snapshot commit() {
+            Snapshot current;
+            Snapshot next;
+            do {
+                current = registry.snapshot.get();
+                next = new Snapshot(fontsChanged ? fonts : current.fonts, colorsChanged ? colors : current.colors);
+            } while (!registry.snapshot.compareAndSet(current, next));
+            return next;
         }
     }
 }
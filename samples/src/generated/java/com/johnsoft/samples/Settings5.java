@@ -2,9 +2,26 @@ package com.johnsoft.samples;
 
 import com.johnsoft.samples.utils.Nullable;
 import java.lang.IllegalArgumentException;
+import java.lang.IndexOutOfBoundsException;
+import java.lang.Integer;
+import java.lang.Object;
+import java.lang.Override;
 import java.lang.String;
+import java.lang.StringBuilder;
+import java.lang.SuppressWarnings;
+import java.lang.ThreadLocal;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.function.IntConsumer;
+import java.util.function.LongConsumer;
+import java.util.stream.IntStream;
 
 /**
  *  @author John Kenrinus Lee
@@ -24,10 +41,16 @@ public class Settings5 {
 
     public final long xs;
 
-    public final ArrayList<String> keys;
+    public final Set<String> keys;
 
     public final List<String> values;
 
+    private final int[] offsets;
+
+    private final long[] stamps;
+
+    private transient int cachedHash;
+
     public Settings5() {
         this(new Builder());
     }
@@ -36,8 +59,63 @@ public class Settings5 {
         this.name = builder.name;
         this.age = builder.age;
         this.xs = builder.xs;
-        this.keys = builder.keys;
-        this.values = builder.values;
+        this.keys = builder.freezeKeys();
+        this.values = builder.freezeValues();
+        this.offsets = Arrays.copyOf(builder.offsets, builder.offsetsSize);
+        this.stamps = Arrays.copyOf(builder.stamps, builder.stampsSize);
+    }
+
+    private Settings5(String name, int age, long xs, Set<String> keys, List<String> values,
+            int[] offsets, long[] stamps) {
+        this.name = name;
+        this.age = age;
+        this.xs = xs;
+        this.keys = keys;
+        this.values = values;
+        this.offsets = offsets;
+        this.stamps = stamps;
+    }
+
+    public int getOffsets(int index) {
+        return offsets[index];
+    }
+
+    public int offsetsSize() {
+        return offsets.length;
+    }
+
+    public void forEachOffsets(IntConsumer action) {
+        for (int value : offsets) {
+            action.accept(value);
+        }
+    }
+
+    /**
+     * @return a copy of offsets
+     */
+    public int[] offsetsToArray() {
+        return offsets.clone();
+    }
+
+    public long getStamps(int index) {
+        return stamps[index];
+    }
+
+    public int stampsSize() {
+        return stamps.length;
+    }
+
+    public void forEachStamps(LongConsumer action) {
+        for (long value : stamps) {
+            action.accept(value);
+        }
+    }
+
+    /**
+     * @return a copy of stamps
+     */
+    public long[] stampsToArray() {
+        return stamps.clone();
     }
 
     @Nullable
@@ -54,10 +132,438 @@ public class Settings5 {
         return new Builder(this);
     }
 
+    /**
+     * @return changes from this to that, so diff(that).applyTo(this) equals that
+     */
+    public Delta diff(Settings5 that) {
+        Delta delta = new Delta();
+        if (!(Objects.equals(this.name, that.name))) {
+            delta.mask |= Delta.NAME;
+            delta.name = that.name;
+        }
+        if (!(this.age == that.age)) {
+            delta.mask |= Delta.AGE;
+            delta.age = that.age;
+        }
+        if (!(this.xs == that.xs)) {
+            delta.mask |= Delta.XS;
+            delta.xs = that.xs;
+        }
+        if (!(Objects.equals(this.keys, that.keys))) {
+            delta.mask |= Delta.KEYS;
+            delta.keys = that.keys;
+        }
+        if (!(Objects.equals(this.values, that.values))) {
+            delta.mask |= Delta.VALUES;
+            delta.values = that.values;
+        }
+        if (!(Arrays.equals(this.offsets, that.offsets))) {
+            delta.mask |= Delta.OFFSETS;
+            delta.offsets = that.offsets;
+        }
+        if (!(Arrays.equals(this.stamps, that.stamps))) {
+            delta.mask |= Delta.STAMPS;
+            delta.stamps = that.stamps;
+        }
+        return delta;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        Settings5 that = (Settings5) o;
+        if (cachedHash != 0 && that.cachedHash != 0 && cachedHash != that.cachedHash) {
+            return false;
+        }
+        return this.age == that.age
+                && this.xs == that.xs
+                && Objects.equals(this.name, that.name)
+                && Objects.equals(this.keys, that.keys)
+                && Objects.equals(this.values, that.values)
+                && Arrays.equals(this.offsets, that.offsets)
+                && Arrays.equals(this.stamps, that.stamps);
+    }
+
+    @Override
+    public int hashCode() {
+        int h = cachedHash;
+        if (h == 0) {
+            h = 1;
+            h = 31 * h + Objects.hashCode(this.name);
+            h = 31 * h + this.age;
+            h = 31 * h + (int) (this.xs ^ (this.xs >>> 32));
+            h = 31 * h + Objects.hashCode(this.keys);
+            h = 31 * h + Objects.hashCode(this.values);
+            h = 31 * h + Arrays.hashCode(this.offsets);
+            h = 31 * h + Arrays.hashCode(this.stamps);
+            cachedHash = h;
+        }
+        return h;
+    }
+
+    @Override
+    public String toString() {
+        return new StringBuilder(128)
+                .append("Settings5{name=").append(this.name)
+                .append(", age=").append(this.age)
+                .append(", xs=").append(this.xs)
+                .append(", keys=").append(this.keys)
+                .append(", values=").append(this.values)
+                .append(", offsets=").append(Arrays.toString(this.offsets))
+                .append(", stamps=").append(Arrays.toString(this.stamps))
+                .append('}').toString();
+    }
+
+    /**
+     * Rows of Settings5 as columns, one array per field, so scan of one column is a linear pass.
+     * Use {@code StreamSupport.intStream(batch.spliterator(), true)} for parallel stream of row indexes.
+     */
+    public static final class Batch {
+        private String[] name;
+
+        private int[] age;
+
+        private long[] xs;
+
+        @SuppressWarnings("rawtypes")
+        private Set[] keys;
+
+        @SuppressWarnings("rawtypes")
+        private List[] values;
+
+        private int[][] offsets;
+
+        private long[][] stamps;
+
+        private int size;
+
+        public Batch() {
+            this(16);
+        }
+
+        @SuppressWarnings("rawtypes")
+        public Batch(int capacity) {
+            this.name = new String[capacity];
+            this.age = new int[capacity];
+            this.xs = new long[capacity];
+            this.keys = new Set[capacity];
+            this.values = new List[capacity];
+            this.offsets = new int[capacity][];
+            this.stamps = new long[capacity][];
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public Batch add(Settings5 value) {
+            if (this.size == this.name.length) {
+                grow();
+            }
+            this.name[this.size] = value.name;
+            this.age[this.size] = value.age;
+            this.xs[this.size] = value.xs;
+            this.keys[this.size] = value.keys;
+            this.values[this.size] = value.values;
+            this.offsets[this.size] = value.offsets;
+            this.stamps[this.size] = value.stamps;
+            ++this.size;
+            return this;
+        }
+
+        /**
+         * Same as add(builder.build()), but never interned
+         */
+        public Batch add(Builder<?> builder) {
+            return add(new Settings5(builder));
+        }
+
+        /**
+         * Remove all rows, and release the referenced values
+         */
+        public void clear() {
+            Arrays.fill(this.name, 0, this.size, null);
+            Arrays.fill(this.keys, 0, this.size, null);
+            Arrays.fill(this.values, 0, this.size, null);
+            Arrays.fill(this.offsets, 0, this.size, null);
+            Arrays.fill(this.stamps, 0, this.size, null);
+            this.size = 0;
+        }
+
+        @Nullable
+        public String getName(int i) {
+            checkIndex(i);
+            return this.name[i];
+        }
+
+        public int getAge(int i) {
+            checkIndex(i);
+            return this.age[i];
+        }
+
+        public long getXs(int i) {
+            checkIndex(i);
+            return this.xs[i];
+        }
+
+        @SuppressWarnings("unchecked")
+        public Set<String> getKeys(int i) {
+            checkIndex(i);
+            return this.keys[i];
+        }
+
+        @SuppressWarnings("unchecked")
+        public List<String> getValues(int i) {
+            checkIndex(i);
+            return this.values[i];
+        }
+
+        public int getOffsets(int i, int index) {
+            checkIndex(i);
+            return this.offsets[i][index];
+        }
+
+        public int offsetsSize(int i) {
+            checkIndex(i);
+            return this.offsets[i].length;
+        }
+
+        public long getStamps(int i, int index) {
+            checkIndex(i);
+            return this.stamps[i][index];
+        }
+
+        public int stampsSize(int i) {
+            checkIndex(i);
+            return this.stamps[i].length;
+        }
+
+        /**
+         * @return a new Settings5 with the values of the row
+         */
+        @SuppressWarnings("unchecked")
+        public Settings5 materialize(int i) {
+            checkIndex(i);
+            return new Settings5(this.name[i], this.age[i], this.xs[i], this.keys[i], this.values[i], this.offsets[i], this.stamps[i]);
+        }
+
+        /**
+         * @return spliterator of row indexes, from 0 to size() exclusive
+         */
+        public Spliterator.OfInt spliterator() {
+            return IntStream.range(0, size).spliterator();
+        }
+
+        private void checkIndex(int i) {
+            if (i < 0 || i >= size) {
+                throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+            }
+        }
+
+        private void grow() {
+            int capacity = Math.max(16, size * 2);
+            this.name = Arrays.copyOf(this.name, capacity);
+            this.age = Arrays.copyOf(this.age, capacity);
+            this.xs = Arrays.copyOf(this.xs, capacity);
+            this.keys = Arrays.copyOf(this.keys, capacity);
+            this.values = Arrays.copyOf(this.values, capacity);
+            this.offsets = Arrays.copyOf(this.offsets, capacity);
+            this.stamps = Arrays.copyOf(this.stamps, capacity);
+        }
+    }
+
+    /**
+     * Changed properties from one Settings5 to another, see {@link Settings5#diff(Settings5)}.
+     */
+    public static final class Delta {
+        public static final long NAME = 1L << 0;
+
+        public static final long AGE = 1L << 1;
+
+        public static final long XS = 1L << 2;
+
+        public static final long KEYS = 1L << 3;
+
+        public static final long VALUES = 1L << 4;
+
+        public static final long OFFSETS = 1L << 5;
+
+        public static final long STAMPS = 1L << 6;
+
+        private long mask;
+
+        private String name;
+
+        private int age;
+
+        private long xs;
+
+        private Set<String> keys;
+
+        private List<String> values;
+
+        private int[] offsets;
+
+        private long[] stamps;
+
+        private Delta() {
+        }
+
+        /**
+         * @return bits of changed properties, e.g. NAME
+         */
+        public long mask() {
+            return mask;
+        }
+
+        public boolean isEmpty() {
+            return mask == 0;
+        }
+
+        /**
+         * @return true if any of the properties changed
+         */
+        public boolean isChanged(long properties) {
+            return (mask & properties) != 0;
+        }
+
+        /**
+         * @return the target with changed values, or itself if nothing changed
+         */
+        public Settings5 applyTo(Settings5 target) {
+            if (mask == 0) {
+                return target;
+            }
+            Builder<?> builder = target.newBuilder();
+            applyTo(builder);
+            return builder.build();
+        }
+
+        /**
+         * Write the changed values into builder
+         */
+        public void applyTo(Builder<?> builder) {
+            if ((mask & NAME) != 0) {
+                builder.name = this.name;
+            }
+            if ((mask & AGE) != 0) {
+                builder.age = this.age;
+            }
+            if ((mask & XS) != 0) {
+                builder.xs = this.xs;
+            }
+            if ((mask & KEYS) != 0) {
+                builder.keysFrozen = builder.keys = this.keys;
+            }
+            if ((mask & VALUES) != 0) {
+                builder.valuesFrozen = builder.values = this.values;
+            }
+            if ((mask & OFFSETS) != 0) {
+                builder.offsets = this.offsets;
+                builder.offsetsSize = this.offsets.length;
+            }
+            if ((mask & STAMPS) != 0) {
+                builder.stamps = this.stamps;
+                builder.stampsSize = this.stamps.length;
+            }
+        }
+    }
+
+    /**
+     * Primitive fields of Settings5 inline, written under a sequence lock, read without lock or allocation.
+     */
+    public static final class Live {
+        private volatile int sequence;
+
+        private volatile int age;
+
+        private volatile long xs;
+
+        public Live(Settings5 value) {
+            set(value);
+        }
+
+        /**
+         * Publish the primitive fields of value, writers are serialized, readers never block.
+         */
+        public synchronized void set(Settings5 value) {
+            sequence++;
+            this.age = value.age;
+            this.xs = value.xs;
+            sequence++;
+        }
+
+        /**
+         * Copy a consistent snapshot, retry while a writer is in progress.
+         * @return into
+         */
+        public Values read(Values into) {
+            int start;
+            do {
+                start = this.sequence;
+                into.age = this.age;
+                into.xs = this.xs;
+            } while ((start & 1) != 0 || start != this.sequence);
+            return into;
+        }
+
+        /**
+         * @return even number changed by every set(), readers can skip read(Values) if it is the same as last time
+         */
+        public int sequence() {
+            int current;
+            do {
+                current = sequence;
+            } while ((current & 1) != 0);
+            return current;
+        }
+
+        public int getAge() {
+            return this.age;
+        }
+
+        public long getXs() {
+            return this.xs;
+        }
+
+        /**
+         * Caller-owned copy of {@link Live}, reuse it for every read.
+         */
+        public static final class Values {
+            private int age;
+
+            private long xs;
+
+            public int getAge() {
+                return this.age;
+            }
+
+            public long getXs() {
+                return this.xs;
+            }
+        }
+    }
+
     /**
      * @see Settings5
      */
     public static class Builder<T extends Builder> {
+        private static final long DEFAULT_XS = com.johnsoft.samples.utils.Util.Inner.class.hashCode();
+
+        private static final List<Integer> DEFAULT_OFFSETS = java.util.Arrays.asList(0, 8, 16);
+
+        private static final ThreadLocal<Builder<?>[]> POOL = new ThreadLocal<Builder<?>[]>() {
+            @Override
+            protected Builder<?>[] initialValue() {
+                return new Builder<?>[1];
+            }
+        };
+
         @Nullable
         private String name;
 
@@ -65,63 +571,255 @@ public class Settings5 {
 
         private long xs;
 
-        private ArrayList<String> keys;
+        private Set<String> keys;
+
+        private Set<String> keysFrozen;
+
+        private Set<String> keysBuffer;
 
         private List<String> values;
 
+        private List<String> valuesFrozen;
+
+        private List<String> valuesBuffer;
+
+        private int[] offsets;
+
+        private int offsetsSize;
+
+        private int[] offsetsBuffer;
+
+        private long[] stamps;
+
+        private int stampsSize;
+
+        private long[] stampsBuffer;
+
         public Builder() {
             this.name = "dark";
             this.age = 3;
-            this.xs = com.johnsoft.samples.utils.Util.Inner.class.hashCode();
-            this.keys = new java.util.ArrayList<>();
-            this.values = new java.util.ArrayList<>();
+            this.xs = DEFAULT_XS;
+            if (keysBuffer == null) {
+                keysBuffer = new java.util.LinkedHashSet<>();
+            } else {
+                keysBuffer.clear();
+            }
+            this.keys = keysBuffer;
+            if (valuesBuffer == null) {
+                valuesBuffer = new java.util.ArrayList<>();
+            } else {
+                valuesBuffer.clear();
+            }
+            this.values = valuesBuffer;
+            this.offsets = offsetsBuffer == null ? new int[0] : offsetsBuffer;
+            this.offsetsSize = 0;
+            for (int value : DEFAULT_OFFSETS) {
+                if (offsetsSize == offsets.length) {
+                    growOffsets();
+                }
+                offsets[offsetsSize++] = value;
+            }
+            this.stamps = stampsBuffer == null ? new long[0] : stampsBuffer;
+            this.stampsSize = 0;
         }
 
         private Builder(Settings5 settings5) {
             this.name = settings5.name;
             this.age = settings5.age;
             this.xs = settings5.xs;
-            this.keys = settings5.keys;
-            this.values = settings5.values;
+            this.keysFrozen = this.keys = settings5.keys;
+            this.valuesFrozen = this.values = settings5.values;
+            this.offsets = settings5.offsets;
+            this.offsetsSize = offsets.length;
+            this.stamps = settings5.stamps;
+            this.stampsSize = stamps.length;
         }
 
+        @SuppressWarnings("unchecked")
         public T setName(@Nullable String name) {
             this.name = name;
             return (T) this;
         }
 
+        @SuppressWarnings("unchecked")
         public T setAge(int age) {
             int tmp = age; if (tmp > 0) this.age = tmp;
             return (T) this;
         }
 
+        @SuppressWarnings("unchecked")
         public T setXs(long xs) {
             this.xs = xs;
             return (T) this;
         }
 
-        public T setKeys(ArrayList<String> keys) {
+        @SuppressWarnings("unchecked")
+        public T setKeys(Set<String> keys) {
             this.keys = keys;
             return (T) this;
         }
 
+        @SuppressWarnings("unchecked")
         public T addToKeys(String value) {
+            if (keys != null && keys == keysFrozen) {
+                keys = new LinkedHashSet<>(keys);
+            }
             keys.add(value);
             return (T) this;
         }
 
+        @SuppressWarnings("unchecked")
         public T setValues(List<String> values) {
             this.values = values;
             return (T) this;
         }
 
+        @SuppressWarnings("unchecked")
         public T addToValues(String value) {
+            if (values != null && values == valuesFrozen) {
+                values = new ArrayList<>(values);
+            }
             values.add(value);
             return (T) this;
         }
 
+        @SuppressWarnings("unchecked")
+        public T setOffsets(int... values) {
+            this.offsets = values.clone();
+            this.offsetsSize = values.length;
+            return (T) this;
+        }
+
+        @SuppressWarnings("unchecked")
+        public T addToOffsets(int value) {
+            if (offsetsSize == offsets.length) {
+                growOffsets();
+            }
+            offsets[offsetsSize++] = value;
+            return (T) this;
+        }
+
+        private void growOffsets() {
+            offsets = offsetsBuffer = Arrays.copyOf(offsets, Math.max(8, offsets.length + (offsets.length >> 1)));
+        }
+
+        @SuppressWarnings("unchecked")
+        public T setStamps(long... values) {
+            this.stamps = values.clone();
+            this.stampsSize = values.length;
+            return (T) this;
+        }
+
+        @SuppressWarnings("unchecked")
+        public T addToStamps(long value) {
+            if (stampsSize == stamps.length) {
+                growStamps();
+            }
+            stamps[stampsSize++] = value;
+            return (T) this;
+        }
+
+        private void growStamps() {
+            stamps = stampsBuffer = Arrays.copyOf(stamps, Math.max(8, stamps.length + (stamps.length >> 1)));
+        }
+
         public Settings5 build() {
             return new Settings5(this);
         }
+
+        /**
+         * Restore default values in place, for reuse.
+         */
+        @SuppressWarnings("unchecked")
+        public T reset() {
+            this.name = "dark";
+            this.age = 3;
+            this.xs = DEFAULT_XS;
+            if (keysBuffer == null) {
+                keysBuffer = new java.util.LinkedHashSet<>();
+            } else {
+                keysBuffer.clear();
+            }
+            this.keys = keysBuffer;
+            if (valuesBuffer == null) {
+                valuesBuffer = new java.util.ArrayList<>();
+            } else {
+                valuesBuffer.clear();
+            }
+            this.values = valuesBuffer;
+            this.offsets = offsetsBuffer == null ? new int[0] : offsetsBuffer;
+            this.offsetsSize = 0;
+            for (int value : DEFAULT_OFFSETS) {
+                if (offsetsSize == offsets.length) {
+                    growOffsets();
+                }
+                offsets[offsetsSize++] = value;
+            }
+            this.stamps = stampsBuffer == null ? new long[0] : stampsBuffer;
+            this.stampsSize = 0;
+            this.keysFrozen = null;
+            this.valuesFrozen = null;
+            return (T) this;
+        }
+
+        /**
+         * @return pooled Builder of current thread, or new one, call {@link #release()} after build().
+         */
+        public static Builder<?> acquire() {
+            Builder<?>[] slot = POOL.get();
+            Builder<?> builder = slot[0];
+            if (builder == null) {
+                return new Builder<>();
+            }
+            slot[0] = null;
+            return builder;
+        }
+
+        /**
+         * Reset and give back to the pool of current thread, never touch it after release.
+         */
+        public void release() {
+            if (getClass() != Builder.class) {
+                return;
+            }
+            reset();
+            POOL.get()[0] = this;
+        }
+
+        private Set<String> freezeKeys() {
+            if (keys != keysFrozen) {
+                keysFrozen = keys = frozenSet(keys);
+            }
+            return keys;
+        }
+
+        private List<String> freezeValues() {
+            if (values != valuesFrozen) {
+                valuesFrozen = values = frozenList(values);
+            }
+            return values;
+        }
+
+        private static <E> Set<E> frozenSet(Collection<E> values) {
+            if (values == null) {
+                return null;
+            }
+            switch (values.size()) {
+                case 0: return Collections.emptySet();
+                case 1: return Collections.singleton(values.iterator().next());
+                default: return Collections.unmodifiableSet(new LinkedHashSet<>(values));
+            }
+        }
+
+        private static <E> List<E> frozenList(Collection<E> values) {
+            if (values == null) {
+                return null;
+            }
+            switch (values.size()) {
+                case 0: return Collections.emptyList();
+                case 1: return Collections.singletonList(values.iterator().next());
+                default: return Collections.unmodifiableList(new ArrayList<>(values));
+            }
+        }
     }
 }
@@ -0,0 +1,1482 @@
+package com.johnsoft.samples;
+
+import com.johnsoft.annotations.runtime.Codec;
+import com.johnsoft.annotations.runtime.Json;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.lang.Appendable;
+import java.lang.IllegalArgumentException;
+import java.lang.InterruptedException;
+import java.lang.Object;
+import java.lang.Override;
+import java.lang.Runnable;
+import java.lang.String;
+import java.lang.StringBuilder;
+import java.lang.Thread;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ *  Groups saved to a memory-mapped snapshot file, and loaded lazily on the next start.
+ *
+ *  @author John Kenrinus Lee
+ *  @version 2019-05-21
+ */
+public final class Settings6 {
+    public static final class Window {
+        private static final long SCHEMA_FINGERPRINT = 0x56ad4ca575214398L;
+
+        private static final Window DEFAULT = new Window(new Builder());
+
+        public final String title;
+
+        public final int width;
+
+        public final int height;
+
+        public final boolean maximized;
+
+        private transient int cachedHash;
+
+        public Window() {
+            this(DEFAULT);
+        }
+
+        private Window(Window defaults) {
+            this.title = defaults.title;
+            this.width = defaults.width;
+            this.height = defaults.height;
+            this.maximized = defaults.maximized;
+        }
+
+        private Window(Builder builder) {
+            this.title = builder.title;
+            this.width = builder.width;
+            this.height = builder.height;
+            this.maximized = builder.maximized;
+        }
+
+        private Window(String title, int width, int height, boolean maximized) {
+            this.title = title;
+            this.width = width;
+            this.height = height;
+            this.maximized = maximized;
+        }
+
+        public static Builder builder() {
+            return new Builder();
+        }
+
+        public Builder newBuilder() {
+            return new Builder(this);
+        }
+
+        public Window withTitle(String title) {
+            if (Objects.equals(this.title, title)) {
+                return this;
+            }
+            return new Window(title, this.width, this.height, this.maximized);
+        }
+
+        public Window withWidth(int width) {
+            if (this.width == width) {
+                return this;
+            }
+            return new Window(this.title, width, this.height, this.maximized);
+        }
+
+        public Window withHeight(int height) {
+            if (this.height == height) {
+                return this;
+            }
+            return new Window(this.title, this.width, height, this.maximized);
+        }
+
+        public Window withMaximized(boolean maximized) {
+            if (this.maximized == maximized) {
+                return this;
+            }
+            return new Window(this.title, this.width, this.height, maximized);
+        }
+
+        /**
+         * @return bytes written by {@link #writeTo(ByteBuffer)}
+         */
+        public int serializedSize() {
+            int size = 8;
+            size += Codec.stringSize(this.title);
+            size += Codec.varintSize(Codec.zigzag(this.width));
+            size += Codec.varintSize(Codec.zigzag(this.height));
+            size += 1;
+            return size;
+        }
+
+        /**
+         * Write at buffer's position, buffer should have {@link #serializedSize()} remaining.
+         * @return the buffer
+         */
+        public ByteBuffer writeTo(ByteBuffer buffer) {
+            buffer.putLong(SCHEMA_FINGERPRINT);
+            Codec.putString(buffer, this.title);
+            Codec.putVarint(buffer, Codec.zigzag(this.width));
+            Codec.putVarint(buffer, Codec.zigzag(this.height));
+            buffer.put((byte) (this.maximized ? 1 : 0));
+            return buffer;
+        }
+
+        /**
+         * Read from buffer's position, which written by {@link #writeTo(ByteBuffer)}.
+         * @throws IllegalArgumentException if schema mismatch or corrupt
+         * @throws java.nio.BufferUnderflowException if truncated
+         */
+        public static Window readFrom(ByteBuffer buffer) {
+            if (buffer.getLong() != SCHEMA_FINGERPRINT) {
+                throw new IllegalArgumentException("Schema mismatch of Window");
+            }
+            String title = Codec.getString(buffer);
+            int width = (int) Codec.unZigzag(Codec.getVarint(buffer));
+            int height = (int) Codec.unZigzag(Codec.getVarint(buffer));
+            boolean maximized = buffer.get() != 0;
+            return new Window(title, width, height, maximized);
+        }
+
+        /**
+         * @return changes from this to that, so diff(that).applyTo(this) equals that
+         */
+        public Delta diff(Window that) {
+            Delta delta = new Delta();
+            if (!(Objects.equals(this.title, that.title))) {
+                delta.mask |= Delta.TITLE;
+                delta.title = that.title;
+            }
+            if (!(this.width == that.width)) {
+                delta.mask |= Delta.WIDTH;
+                delta.width = that.width;
+            }
+            if (!(this.height == that.height)) {
+                delta.mask |= Delta.HEIGHT;
+                delta.height = that.height;
+            }
+            if (!(this.maximized == that.maximized)) {
+                delta.mask |= Delta.MAXIMIZED;
+                delta.maximized = that.maximized;
+            }
+            return delta;
+        }
+
+        /**
+         * Write as JSON object, which can be read by {@link #fromJson(Reader)}.
+         */
+        public void toJson(Appendable out) throws IOException {
+            out.append("{\"title\":");
+            Json.writeString(out, title);
+            out.append(",\"width\":");
+            out.append(String.valueOf(width));
+            out.append(",\"height\":");
+            out.append(String.valueOf(height));
+            out.append(",\"maximized\":");
+            out.append(String.valueOf(maximized));
+            out.append('}');
+        }
+
+        /**
+         * Read one JSON object, missing keys keep the defaults of {@link Builder}, unknown keys are skipped.
+         * @throws IllegalArgumentException if malformed
+         */
+        public static Window fromJson(Reader in) throws IOException {
+            Json reader = new Json(in);
+            Builder builder = new Builder();
+            builder.readJson(reader);
+            reader.expectEnd();
+            return builder.build();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Window that = (Window) o;
+            if (cachedHash != 0 && that.cachedHash != 0 && cachedHash != that.cachedHash) {
+                return false;
+            }
+            return this.width == that.width
+                    && this.height == that.height
+                    && this.maximized == that.maximized
+                    && Objects.equals(this.title, that.title);
+        }
+
+        @Override
+        public int hashCode() {
+            int h = cachedHash;
+            if (h == 0) {
+                h = 1;
+                h = 31 * h + Objects.hashCode(this.title);
+                h = 31 * h + this.width;
+                h = 31 * h + this.height;
+                h = 31 * h + (this.maximized ? 1231 : 1237);
+                cachedHash = h;
+            }
+            return h;
+        }
+
+        @Override
+        public String toString() {
+            return new StringBuilder(82)
+                    .append("Window{title=").append(this.title)
+                    .append(", width=").append(this.width)
+                    .append(", height=").append(this.height)
+                    .append(", maximized=").append(this.maximized)
+                    .append('}').toString();
+        }
+
+        /**
+         * Changed properties from one Window to another, see {@link Window#diff(Window)}.
+         */
+        public static final class Delta {
+            public static final long TITLE = 1L << 0;
+
+            public static final long WIDTH = 1L << 1;
+
+            public static final long HEIGHT = 1L << 2;
+
+            public static final long MAXIMIZED = 1L << 3;
+
+            private long mask;
+
+            private String title;
+
+            private int width;
+
+            private int height;
+
+            private boolean maximized;
+
+            private Delta() {
+            }
+
+            /**
+             * @return bits of changed properties, e.g. TITLE
+             */
+            public long mask() {
+                return mask;
+            }
+
+            public boolean isEmpty() {
+                return mask == 0;
+            }
+
+            /**
+             * @return true if any of the properties changed
+             */
+            public boolean isChanged(long properties) {
+                return (mask & properties) != 0;
+            }
+
+            /**
+             * @return the target with changed values, or itself if nothing changed
+             */
+            public Window applyTo(Window target) {
+                if (mask == 0) {
+                    return target;
+                }
+                Builder builder = target.newBuilder();
+                applyTo(builder);
+                return builder.build();
+            }
+
+            /**
+             * Write the changed values into builder
+             */
+            public void applyTo(Builder builder) {
+                if ((mask & TITLE) != 0) {
+                    builder.title = this.title;
+                }
+                if ((mask & WIDTH) != 0) {
+                    builder.width = this.width;
+                }
+                if ((mask & HEIGHT) != 0) {
+                    builder.height = this.height;
+                }
+                if ((mask & MAXIMIZED) != 0) {
+                    builder.maximized = this.maximized;
+                }
+            }
+
+            /**
+             * @return bytes written by {@link #writeTo(ByteBuffer)}
+             */
+            public int serializedSize() {
+                int size = 8 + Codec.varintSize(mask);
+                if ((mask & TITLE) != 0) {
+                    size += Codec.stringSize(this.title);
+                }
+                if ((mask & WIDTH) != 0) {
+                    size += Codec.varintSize(Codec.zigzag(this.width));
+                }
+                if ((mask & HEIGHT) != 0) {
+                    size += Codec.varintSize(Codec.zigzag(this.height));
+                }
+                if ((mask & MAXIMIZED) != 0) {
+                    size += 1;
+                }
+                return size;
+            }
+
+            /**
+             * Write at buffer's position, the changed values only.
+             * @return the buffer
+             */
+            public ByteBuffer writeTo(ByteBuffer buffer) {
+                buffer.putLong(SCHEMA_FINGERPRINT);
+                Codec.putVarint(buffer, mask);
+                if ((mask & TITLE) != 0) {
+                    Codec.putString(buffer, this.title);
+                }
+                if ((mask & WIDTH) != 0) {
+                    Codec.putVarint(buffer, Codec.zigzag(this.width));
+                }
+                if ((mask & HEIGHT) != 0) {
+                    Codec.putVarint(buffer, Codec.zigzag(this.height));
+                }
+                if ((mask & MAXIMIZED) != 0) {
+                    buffer.put((byte) (this.maximized ? 1 : 0));
+                }
+                return buffer;
+            }
+
+            /**
+             * Read from buffer's position, which written by {@link #writeTo(ByteBuffer)}.
+             * @throws IllegalArgumentException if schema mismatch or corrupt
+             * @throws java.nio.BufferUnderflowException if truncated
+             */
+            public static Delta readFrom(ByteBuffer buffer) {
+                if (buffer.getLong() != SCHEMA_FINGERPRINT) {
+                    throw new IllegalArgumentException("Schema mismatch of Window");
+                }
+                Delta delta = new Delta();
+                delta.mask = Codec.getVarint(buffer);
+                if ((delta.mask & TITLE) != 0) {
+                    String title = Codec.getString(buffer);
+                    delta.title = title;
+                }
+                if ((delta.mask & WIDTH) != 0) {
+                    int width = (int) Codec.unZigzag(Codec.getVarint(buffer));
+                    delta.width = width;
+                }
+                if ((delta.mask & HEIGHT) != 0) {
+                    int height = (int) Codec.unZigzag(Codec.getVarint(buffer));
+                    delta.height = height;
+                }
+                if ((delta.mask & MAXIMIZED) != 0) {
+                    boolean maximized = buffer.get() != 0;
+                    delta.maximized = maximized;
+                }
+                return delta;
+            }
+        }
+
+        /**
+         * @see Window
+         */
+        public static final class Builder {
+            private String title;
+
+            private int width;
+
+            private int height;
+
+            private boolean maximized;
+
+            public Builder() {
+                this.title = "Dessert";
+                this.width = 1280;
+                this.height = 720;
+                this.maximized = false;
+            }
+
+            private Builder(Window window) {
+                this.title = window.title;
+                this.width = window.width;
+                this.height = window.height;
+                this.maximized = window.maximized;
+            }
+
+            public Builder setTitle(String title) {
+                this.title = title;
+                return this;
+            }
+
+            public Builder setWidth(int width) {
+                this.width = width;
+                return this;
+            }
+
+            public Builder setHeight(int height) {
+                this.height = height;
+                return this;
+            }
+
+            public Builder setMaximized(boolean maximized) {
+                this.maximized = maximized;
+                return this;
+            }
+
+            public Window build() {
+                return new Window(this);
+            }
+
+            /**
+             * Build and add to the commit, publish by {@link Commit#commit()}.
+             * @return the commit
+             */
+            public Commit into(Commit commit) {
+                return commit.setWindow(build());
+            }
+
+            private void readJson(Json reader) throws IOException {
+                reader.expect('{');
+                while (reader.hasNext('}')) {
+                    switch (reader.nextName()) {
+                        case "title":
+                            setTitle(reader.nextString());
+                            break;
+                        case "width":
+                            setWidth(reader.nextInt());
+                            break;
+                        case "height":
+                            setHeight(reader.nextInt());
+                            break;
+                        case "maximized":
+                            setMaximized(reader.nextBoolean());
+                            break;
+                        default:
+                            reader.skipValue();
+                    }
+                }
+            }
+        }
+    }
+
+    public static final class Network {
+        private static final long SCHEMA_FINGERPRINT = 0x8f9c92d7c86daafaL;
+
+        public final String host;
+
+        public final int port;
+
+        public final List<String> mirrors;
+
+        public Network() {
+            this(new Builder());
+        }
+
+        private Network(Builder builder) {
+            this.host = builder.host;
+            this.port = builder.port;
+            this.mirrors = builder.mirrors;
+        }
+
+        private Network(String host, int port, List<String> mirrors) {
+            this.host = host;
+            this.port = port;
+            this.mirrors = mirrors;
+        }
+
+        public static Builder builder() {
+            return new Builder();
+        }
+
+        public Builder newBuilder() {
+            return new Builder(this);
+        }
+
+        public Network withHost(String host) {
+            if (Objects.equals(this.host, host)) {
+                return this;
+            }
+            return new Network(host, this.port, this.mirrors);
+        }
+
+        public Network withPort(int port) {
+            if (this.port == port) {
+                return this;
+            }
+            return new Network(this.host, port, this.mirrors);
+        }
+
+        public Network withMirrors(List<String> mirrors) {
+            if (Objects.equals(this.mirrors, mirrors)) {
+                return this;
+            }
+            return new Network(this.host, this.port, mirrors);
+        }
+
+        /**
+         * @return bytes written by {@link #writeTo(ByteBuffer)}
+         */
+        public int serializedSize() {
+            int size = 8;
+            size += Codec.stringSize(this.host);
+            size += Codec.varintSize(Codec.zigzag(this.port));
+            if (this.mirrors == null) {
+                size += 1;
+            } else {
+                size += Codec.varintSize(this.mirrors.size() + 1);
+                for (String value : this.mirrors) {
+                    size += Codec.stringSize(value);
+                }
+            }
+            return size;
+        }
+
+        /**
+         * Write at buffer's position, buffer should have {@link #serializedSize()} remaining.
+         * @return the buffer
+         */
+        public ByteBuffer writeTo(ByteBuffer buffer) {
+            buffer.putLong(SCHEMA_FINGERPRINT);
+            Codec.putString(buffer, this.host);
+            Codec.putVarint(buffer, Codec.zigzag(this.port));
+            if (this.mirrors == null) {
+                Codec.putVarint(buffer, 0);
+            } else {
+                Codec.putVarint(buffer, this.mirrors.size() + 1);
+                for (String value : this.mirrors) {
+                    Codec.putString(buffer, value);
+                }
+            }
+            return buffer;
+        }
+
+        /**
+         * Read from buffer's position, which written by {@link #writeTo(ByteBuffer)}.
+         * @throws IllegalArgumentException if schema mismatch or corrupt
+         * @throws java.nio.BufferUnderflowException if truncated
+         */
+        public static Network readFrom(ByteBuffer buffer) {
+            if (buffer.getLong() != SCHEMA_FINGERPRINT) {
+                throw new IllegalArgumentException("Schema mismatch of Network");
+            }
+            String host = Codec.getString(buffer);
+            int port = (int) Codec.unZigzag(Codec.getVarint(buffer));
+            int mirrorsLength = Codec.getLength(buffer);
+            List<String> mirrors = null;
+            if (mirrorsLength >= 0) {
+                mirrors = new ArrayList<>(mirrorsLength);
+                for (int i = 0; i < mirrorsLength; ++i) {
+                    mirrors.add(Codec.getString(buffer));
+                }
+            }
+            return new Network(host, port, mirrors);
+        }
+
+        /**
+         * @return changes from this to that, so diff(that).applyTo(this) equals that
+         */
+        public Delta diff(Network that) {
+            Delta delta = new Delta();
+            if (!(Objects.equals(this.host, that.host))) {
+                delta.mask |= Delta.HOST;
+                delta.host = that.host;
+            }
+            if (!(this.port == that.port)) {
+                delta.mask |= Delta.PORT;
+                delta.port = that.port;
+            }
+            if (!(Objects.equals(this.mirrors, that.mirrors))) {
+                delta.mask |= Delta.MIRRORS;
+                delta.mirrors = that.mirrors;
+            }
+            return delta;
+        }
+
+        /**
+         * Write as JSON object, which can be read by {@link #fromJson(Reader)}.
+         */
+        public void toJson(Appendable out) throws IOException {
+            out.append("{\"host\":");
+            Json.writeString(out, host);
+            out.append(",\"port\":");
+            out.append(String.valueOf(port));
+            out.append(",\"mirrors\":");
+            if (mirrors == null) {
+                out.append("null");
+            } else {
+                out.append('[');
+                boolean first = true;
+                for (String value : mirrors) {
+                    if (!first) {
+                        out.append(',');
+                    }
+                    first = false;
+                    Json.writeString(out, value);
+                }
+                out.append(']');
+            }
+            out.append('}');
+        }
+
+        /**
+         * Read one JSON object, missing keys keep the defaults of {@link Builder}, unknown keys are skipped.
+         * @throws IllegalArgumentException if malformed
+         */
+        public static Network fromJson(Reader in) throws IOException {
+            Json reader = new Json(in);
+            Builder builder = new Builder();
+            builder.readJson(reader);
+            reader.expectEnd();
+            return builder.build();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Network that = (Network) o;
+            return this.port == that.port
+                    && Objects.equals(this.host, that.host)
+                    && Objects.equals(this.mirrors, that.mirrors);
+        }
+
+        @Override
+        public int hashCode() {
+            int h = 1;
+            h = 31 * h + Objects.hashCode(this.host);
+            h = 31 * h + this.port;
+            h = 31 * h + Objects.hashCode(this.mirrors);
+            return h;
+        }
+
+        @Override
+        public String toString() {
+            return new StringBuilder(63)
+                    .append("Network{host=").append(this.host)
+                    .append(", port=").append(this.port)
+                    .append(", mirrors=").append(this.mirrors)
+                    .append('}').toString();
+        }
+
+        /**
+         * Changed properties from one Network to another, see {@link Network#diff(Network)}.
+         */
+        public static final class Delta {
+            public static final long HOST = 1L << 0;
+
+            public static final long PORT = 1L << 1;
+
+            public static final long MIRRORS = 1L << 2;
+
+            private long mask;
+
+            private String host;
+
+            private int port;
+
+            private List<String> mirrors;
+
+            private Delta() {
+            }
+
+            /**
+             * @return bits of changed properties, e.g. HOST
+             */
+            public long mask() {
+                return mask;
+            }
+
+            public boolean isEmpty() {
+                return mask == 0;
+            }
+
+            /**
+             * @return true if any of the properties changed
+             */
+            public boolean isChanged(long properties) {
+                return (mask & properties) != 0;
+            }
+
+            /**
+             * @return the target with changed values, or itself if nothing changed
+             */
+            public Network applyTo(Network target) {
+                if (mask == 0) {
+                    return target;
+                }
+                Builder builder = target.newBuilder();
+                applyTo(builder);
+                return builder.build();
+            }
+
+            /**
+             * Write the changed values into builder
+             */
+            public void applyTo(Builder builder) {
+                if ((mask & HOST) != 0) {
+                    builder.host = this.host;
+                }
+                if ((mask & PORT) != 0) {
+                    builder.port = this.port;
+                }
+                if ((mask & MIRRORS) != 0) {
+                    builder.mirrors = this.mirrors;
+                }
+            }
+
+            /**
+             * @return bytes written by {@link #writeTo(ByteBuffer)}
+             */
+            public int serializedSize() {
+                int size = 8 + Codec.varintSize(mask);
+                if ((mask & HOST) != 0) {
+                    size += Codec.stringSize(this.host);
+                }
+                if ((mask & PORT) != 0) {
+                    size += Codec.varintSize(Codec.zigzag(this.port));
+                }
+                if ((mask & MIRRORS) != 0) {
+                    if (this.mirrors == null) {
+                        size += 1;
+                    } else {
+                        size += Codec.varintSize(this.mirrors.size() + 1);
+                        for (String value : this.mirrors) {
+                            size += Codec.stringSize(value);
+                        }
+                    }
+                }
+                return size;
+            }
+
+            /**
+             * Write at buffer's position, the changed values only.
+             * @return the buffer
+             */
+            public ByteBuffer writeTo(ByteBuffer buffer) {
+                buffer.putLong(SCHEMA_FINGERPRINT);
+                Codec.putVarint(buffer, mask);
+                if ((mask & HOST) != 0) {
+                    Codec.putString(buffer, this.host);
+                }
+                if ((mask & PORT) != 0) {
+                    Codec.putVarint(buffer, Codec.zigzag(this.port));
+                }
+                if ((mask & MIRRORS) != 0) {
+                    if (this.mirrors == null) {
+                        Codec.putVarint(buffer, 0);
+                    } else {
+                        Codec.putVarint(buffer, this.mirrors.size() + 1);
+                        for (String value : this.mirrors) {
+                            Codec.putString(buffer, value);
+                        }
+                    }
+                }
+                return buffer;
+            }
+
+            /**
+             * Read from buffer's position, which written by {@link #writeTo(ByteBuffer)}.
+             * @throws IllegalArgumentException if schema mismatch or corrupt
+             * @throws java.nio.BufferUnderflowException if truncated
+             */
+            public static Delta readFrom(ByteBuffer buffer) {
+                if (buffer.getLong() != SCHEMA_FINGERPRINT) {
+                    throw new IllegalArgumentException("Schema mismatch of Network");
+                }
+                Delta delta = new Delta();
+                delta.mask = Codec.getVarint(buffer);
+                if ((delta.mask & HOST) != 0) {
+                    String host = Codec.getString(buffer);
+                    delta.host = host;
+                }
+                if ((delta.mask & PORT) != 0) {
+                    int port = (int) Codec.unZigzag(Codec.getVarint(buffer));
+                    delta.port = port;
+                }
+                if ((delta.mask & MIRRORS) != 0) {
+                    int mirrorsLength = Codec.getLength(buffer);
+                    List<String> mirrors = null;
+                    if (mirrorsLength >= 0) {
+                        mirrors = new ArrayList<>(mirrorsLength);
+                        for (int i = 0; i < mirrorsLength; ++i) {
+                            mirrors.add(Codec.getString(buffer));
+                        }
+                    }
+                    delta.mirrors = mirrors;
+                }
+                return delta;
+            }
+        }
+
+        /**
+         * @see Network
+         */
+        public static final class Builder {
+            private String host;
+
+            private int port;
+
+            private List<String> mirrors;
+
+            public Builder() {
+                this.host = "localhost";
+                this.port = 8080;
+                this.mirrors = new java.util.ArrayList<>();
+            }
+
+            private Builder(Network network) {
+                this.host = network.host;
+                this.port = network.port;
+                this.mirrors = network.mirrors;
+            }
+
+            public Builder setHost(String host) {
+                this.host = host;
+                return this;
+            }
+
+            public Builder setPort(int port) {
+                this.port = port;
+                return this;
+            }
+
+            public Builder setMirrors(List<String> mirrors) {
+                this.mirrors = mirrors;
+                return this;
+            }
+
+            public Network build() {
+                return new Network(this);
+            }
+
+            /**
+             * Build and add to the commit, publish by {@link Commit#commit()}.
+             * @return the commit
+             */
+            public Commit into(Commit commit) {
+                return commit.setNetwork(build());
+            }
+
+            private void readJson(Json reader) throws IOException {
+                reader.expect('{');
+                while (reader.hasNext('}')) {
+                    switch (reader.nextName()) {
+                        case "host":
+                            setHost(reader.nextString());
+                            break;
+                        case "port":
+                            setPort(reader.nextInt());
+                            break;
+                        case "mirrors":
+                            if (reader.nextNull()) {
+                                setMirrors(null);
+                                break;
+                            }
+                            List<String> mirrors = new ArrayList<>();
+                            reader.expect('[');
+                            while (reader.hasNext(']')) {
+                                mirrors.add(reader.nextString());
+                            }
+                            setMirrors(mirrors);
+                            break;
+                        default:
+                            reader.skipValue();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Lock-free holder of {@link Snapshot}, readers are wait-free and always see a consistent one.
+     */
+    public static final class Registry {
+        private static final int MAGIC = 0x44535254;
+
+        private static final int FORMAT_VERSION = 1;
+
+        private final AtomicReference<Snapshot> snapshot;
+
+        private final ByteBuffer mapped;
+
+        public Registry() {
+            this(null, 0);
+        }
+
+        private Registry(ByteBuffer mapped, long pending) {
+            this.mapped = mapped;
+            this.snapshot = new AtomicReference<>(new Snapshot(null, null, pending));
+        }
+
+        public Window getWindow() {
+            Snapshot current = snapshot.get();
+            return (current.pending & 0x1L) == 0 ? current.window : loadWindow();
+        }
+
+        private Window loadWindow() {
+            ByteBuffer buffer = mapped.duplicate();
+            int offset = mapped.getInt(12);
+            // decoding never reads other groups, even if corrupt
+            buffer.limit(offset + mapped.getInt(16)).position(offset);
+            Window window = Window.readFrom(buffer);
+            Snapshot current;
+            do {
+                current = snapshot.get();
+                if ((current.pending & 0x1L) == 0) {
+                    return current.window;
+                }
+            } while (!snapshot.compareAndSet(current, new Snapshot(window, current.network, current.pending & ~0x1L)));
+            return window;
+        }
+
+        /**
+         * Publish by CAS, other groups are kept.
+         */
+        public Registry setWindow(Window window) {
+            Snapshot current;
+            do {
+                current = snapshot.get();
+            } while (!snapshot.compareAndSet(current, new Snapshot(window, current.network, current.pending & ~0x1L)));
+            return this;
+        }
+
+        public Network getNetwork() {
+            Snapshot current = snapshot.get();
+            return (current.pending & 0x2L) == 0 ? current.network : loadNetwork();
+        }
+
+        private Network loadNetwork() {
+            ByteBuffer buffer = mapped.duplicate();
+            int offset = mapped.getInt(20);
+            // decoding never reads other groups, even if corrupt
+            buffer.limit(offset + mapped.getInt(24)).position(offset);
+            Network network = Network.readFrom(buffer);
+            Snapshot current;
+            do {
+                current = snapshot.get();
+                if ((current.pending & 0x2L) == 0) {
+                    return current.network;
+                }
+            } while (!snapshot.compareAndSet(current, new Snapshot(current.window, network, current.pending & ~0x2L)));
+            return network;
+        }
+
+        /**
+         * Publish by CAS, other groups are kept.
+         */
+        public Registry setNetwork(Network network) {
+            Snapshot current;
+            do {
+                current = snapshot.get();
+            } while (!snapshot.compareAndSet(current, new Snapshot(current.window, network, current.pending & ~0x2L)));
+            return this;
+        }
+
+        /**
+         * Write all groups to file (replaced atomically), which can be mapped by {@link #load(Path)}.
+         * On Windows, a file still mapped by a loaded Registry can't be replaced, save to other path.
+         */
+        public void save(Path path) throws IOException {
+            Snapshot current = snapshot();
+            int size = 28;
+            int windowLength = current.window == null ? -1 : current.window.serializedSize();
+            size += Math.max(windowLength, 0);
+            int networkLength = current.network == null ? -1 : current.network.serializedSize();
+            size += Math.max(networkLength, 0);
+            ByteBuffer buffer = ByteBuffer.allocate(size);
+            buffer.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(2);
+            int offset = 28;
+            buffer.putInt(offset).putInt(windowLength);
+            offset += Math.max(windowLength, 0);
+            buffer.putInt(offset).putInt(networkLength);
+            offset += Math.max(networkLength, 0);
+            if (current.window != null) {
+                current.window.writeTo(buffer);
+            }
+            if (current.network != null) {
+                current.network.writeTo(buffer);
+            }
+            buffer.flip();
+            Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        /**
+         * Map the file written by {@link #save(Path)}, every group is decoded from the mapping on its first get.
+         * @throws IOException if not readable, corrupt, or written by other version or schema, then build the groups as usual
+         */
+        public static Registry load(Path path) throws IOException {
+            ByteBuffer mapped;
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            if (mapped.limit() < 28 || mapped.getInt(0) != MAGIC || mapped.getInt(4) != FORMAT_VERSION || mapped.getInt(8) != 2) {
+                throw new IOException("Not a snapshot of Settings6: " + path);
+            }
+            long pending = 0;
+            int windowOffset = mapped.getInt(12);
+            int windowLength = mapped.getInt(16);
+            if (windowLength != -1) {
+                if (windowOffset < 28 || windowLength < 8 || windowOffset > mapped.limit() - windowLength) {
+                    throw new IOException("Not a snapshot of Settings6: " + path);
+                }
+                if (mapped.getLong(windowOffset) != Window.SCHEMA_FINGERPRINT) {
+                    throw new IOException("Schema of Window changed: " + path);
+                }
+                pending |= 0x1L;
+            }
+            int networkOffset = mapped.getInt(20);
+            int networkLength = mapped.getInt(24);
+            if (networkLength != -1) {
+                if (networkOffset < 28 || networkLength < 8 || networkOffset > mapped.limit() - networkLength) {
+                    throw new IOException("Not a snapshot of Settings6: " + path);
+                }
+                if (mapped.getLong(networkOffset) != Network.SCHEMA_FINGERPRINT) {
+                    throw new IOException("Schema of Network changed: " + path);
+                }
+                pending |= 0x2L;
+            }
+            return new Registry(mapped, pending);
+        }
+
+        /**
+         * @return current groups, never changed, wait-free
+         */
+        public Snapshot snapshot() {
+            Snapshot current = snapshot.get();
+            if (current.pending == 0) {
+                return current;
+            }
+            // load the groups still in the mapping, they are never pending again
+            getWindow();
+            getNetwork();
+            return snapshot.get();
+        }
+
+        /**
+         * @return new commit for publishing several groups atomically
+         */
+        public Commit begin() {
+            return new Commit(this);
+        }
+    }
+
+    /**
+     * Immutable groups of Settings6, published together.
+     */
+    public static final class Snapshot {
+        private final Window window;
+
+        private final Network network;
+
+        private final long pending;
+
+        private Snapshot(Window window, Network network, long pending) {
+            this.window = window;
+            this.network = network;
+            this.pending = pending;
+        }
+
+        public Window getWindow() {
+            return window;
+        }
+
+        public Network getNetwork() {
+            return network;
+        }
+    }
+
+    /**
+     * Pending groups, published in one CAS by {@link #commit()}.
+     */
+    public static final class Commit {
+        private final Registry registry;
+
+        private Window window;
+
+        private boolean windowChanged;
+
+        private Network network;
+
+        private boolean networkChanged;
+
+        private Commit(Registry registry) {
+            this.registry = registry;
+        }
+
+        public Commit setWindow(Window window) {
+            this.window = window;
+            this.windowChanged = true;
+            return this;
+        }
+
+        public Commit setNetwork(Network network) {
+            this.network = network;
+            this.networkChanged = true;
+            return this;
+        }
+
+        /**
+         * Publish the groups set in one CAS, other groups are kept.
+         * @return the published snapshot
+         */
+        public Snapshot commit() {
+            long done = (windowChanged ? 0x1L : 0) | (networkChanged ? 0x2L : 0);
+            Snapshot current;
+            Snapshot next;
+            do {
+                current = registry.snapshot.get();
+                next = new Snapshot(windowChanged ? window : current.window, networkChanged ? network : current.network, current.pending & ~done);
+            } while (!registry.snapshot.compareAndSet(current, next));
+            return next.pending == 0 ? next : registry.snapshot();
+        }
+    }
+
+    /**
+     * Append-only journal of {@link Registry}, publish through it only, so every change is recorded.
+     */
+    public static final class Journal implements Closeable {
+        private final Registry registry;
+
+        private final Path snapshotPath;
+
+        private final FileChannel channel;
+
+        private final long compactBytes;
+
+        private final Executor compactor;
+
+        private long length;
+
+        private boolean compacting;
+
+        /**
+         * @param registry usually from {@link #recover(Path, Path)}
+         * @param compactBytes compact on compactor when journal is larger
+         */
+        public Journal(Registry registry, Path snapshotPath, Path journalPath, long compactBytes,
+                Executor compactor) throws IOException {
+            this.registry = registry;
+            this.snapshotPath = snapshotPath;
+            this.channel = FileChannel.open(journalPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            this.compactBytes = compactBytes;
+            this.compactor = compactor;
+            this.length = channel.size();
+        }
+
+        public Registry registry() {
+            return registry;
+        }
+
+        /**
+         * Publish the commit, then append the changed fields of the changed groups in one write, and force it to disk.
+         * @return the published snapshot
+         */
+        public synchronized Snapshot commit(Commit commit) throws IOException {
+            Snapshot previous = registry.snapshot();
+            Snapshot next = commit.commit();
+            int size = 0;
+            Window.Delta windowDelta = null;
+            int windowLength = 0;
+            if (previous.getWindow() != next.getWindow()) {
+                if (next.getWindow() == null) {
+                    windowLength = -1;
+                } else {
+                    Window windowBase = previous.getWindow();
+                    windowDelta = (windowBase == null ? new Window() : windowBase).diff(next.getWindow());
+                    windowLength = windowDelta.isEmpty() ? 0 : windowDelta.serializedSize();
+                }
+            }
+            if (windowLength != 0) {
+                size += 8 + Math.max(windowLength, 0);
+            }
+            Network.Delta networkDelta = null;
+            int networkLength = 0;
+            if (previous.getNetwork() != next.getNetwork()) {
+                if (next.getNetwork() == null) {
+                    networkLength = -1;
+                } else {
+                    Network networkBase = previous.getNetwork();
+                    networkDelta = (networkBase == null ? new Network() : networkBase).diff(next.getNetwork());
+                    networkLength = networkDelta.isEmpty() ? 0 : networkDelta.serializedSize();
+                }
+            }
+            if (networkLength != 0) {
+                size += 8 + Math.max(networkLength, 0);
+            }
+            if (size == 0) {
+                return next;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(size);
+            if (windowLength != 0) {
+                buffer.putInt(0).putInt(windowLength);
+                if (windowDelta != null) {
+                    windowDelta.writeTo(buffer);
+                }
+            }
+            if (networkLength != 0) {
+                buffer.putInt(1).putInt(networkLength);
+                if (networkDelta != null) {
+                    networkDelta.writeTo(buffer);
+                }
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+            length += size;
+            if (length >= compactBytes && compactor != null && !compacting) {
+                compacting = true;
+                try {
+                    compactor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                compact();
+                            } catch (IOException e) {
+                                throw new UncheckedIOException(e);
+                            }
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    // the record is durable anyway, try again on the next commit
+                    compacting = false;
+                }
+            }
+            return next;
+        }
+
+        public Snapshot setWindow(Window window) throws IOException {
+            return commit(registry.begin().setWindow(window));
+        }
+
+        public Snapshot setNetwork(Network network) throws IOException {
+            return commit(registry.begin().setNetwork(network));
+        }
+
+        /**
+         * Save the registry as the base snapshot, then empty the journal.
+         */
+        public synchronized void compact() throws IOException {
+            try {
+                registry.save(snapshotPath);
+                channel.truncate(0);
+                length = 0;
+            } finally {
+                compacting = false;
+            }
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            channel.close();
+        }
+
+        /**
+         * Load the base snapshot (if exists), replay the journal (if exists), and cut the torn tail of it.
+         * @throws IOException if not readable, corrupt, or written by other version or schema
+         */
+        public static Registry recover(Path snapshotPath, Path journalPath) throws IOException {
+            Registry registry = Files.exists(snapshotPath) ? Registry.load(snapshotPath) : new Registry();
+            if (!Files.exists(journalPath)) {
+                return registry;
+            }
+            try (FileChannel channel = FileChannel.open(journalPath, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                ByteBuffer journal = ByteBuffer.allocate((int) channel.size());
+                while (journal.hasRemaining() && channel.read(journal) > 0) {
+                    // read all, a file never shrinks while recovering
+                }
+                journal.flip();
+                int valid = 0;
+                while (journal.remaining() >= 8) {
+                    int group = journal.getInt();
+                    int length = journal.getInt();
+                    if (length > journal.remaining()) {
+                        break;
+                    }
+                    ByteBuffer record = journal.slice();
+                    record.limit(Math.max(length, 0));
+                    try {
+                        switch (group) {
+                            case 0:
+                                Window windowBase = registry.getWindow();
+                                registry.setWindow(length < 0 ? null : Window.Delta.readFrom(record).applyTo(windowBase == null ? new Window() : windowBase));
+                                break;
+                            case 1:
+                                Network networkBase = registry.getNetwork();
+                                registry.setNetwork(length < 0 ? null : Network.Delta.readFrom(record).applyTo(networkBase == null ? new Network() : networkBase));
+                                break;
+                            default:
+                                throw new IOException("Unknown group " + group + " in " + journalPath);
+                        }
+                    } catch (IllegalArgumentException | BufferUnderflowException e) {
+                        throw new IOException(journalPath.toString(), e);
+                    }
+                    journal.position(journal.position() + Math.max(length, 0));
+                    valid = journal.position();
+                }
+                channel.truncate(valid);
+            }
+            return registry;
+        }
+    }
+
+    /**
+     * Reload the groups of {@link Registry} from JSON files in a directory, only the changed ones.
+     */
+    public static final class Reloader implements Runnable, Closeable {
+        private final Registry registry;
+
+        private final Path directory;
+
+        private final long debounceMillis;
+
+        private final WatchService watcher;
+
+        private volatile IOException lastError;
+
+        private volatile boolean closed;
+
+        /**
+         * @param directory holds a file per group, e.g. "Window.json"
+         */
+        public Reloader(Registry registry, Path directory, long debounceMillis) throws IOException {
+            this.registry = registry;
+            this.directory = directory;
+            this.debounceMillis = debounceMillis;
+            this.watcher = directory.getFileSystem().newWatchService();
+            directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        }
+
+        /**
+         * Watch until closed (or interrupted, or the directory is not watchable), reload the changed groups after a burst of events.
+         */
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    Set<String> changed = new HashSet<>();
+                    WatchKey key = watcher.take();
+                    boolean valid;
+                    do {
+                        for (WatchEvent<?> event : key.pollEvents()) {
+                            changed.add(event.kind() == StandardWatchEventKinds.OVERFLOW ? "" : event.context().toString());
+                        }
+                        valid = key.reset();
+                        key = valid ? watcher.poll(debounceMillis, TimeUnit.MILLISECONDS) : null;
+                    } while (key != null);
+                    try {
+                        reload(changed.contains("") ? null : changed);
+                    } catch (IOException e) {
+                        lastError = e;
+                    }
+                    if (!valid) {
+                        if (!closed) {
+                            lastError = new IOException("Not watchable any more: " + directory);
+                        }
+                        return;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ClosedWatchServiceException e) {
+                // closed
+            }
+        }
+
+        /**
+         * Parse the files (all if fileNames is null), publish the groups changed in one commit.
+         * @param fileNames e.g. "Window.json"
+         * @return the published snapshot
+         * @throws IOException the first malformed or unreadable file, its group is kept, others are still published
+         */
+        public Snapshot reload(Set<String> fileNames) throws IOException {
+            Commit commit = registry.begin();
+            boolean changed = false;
+            IOException failure = null;
+            if (fileNames == null || fileNames.contains("Window.json")) {
+                try (Reader reader = Files.newBufferedReader(directory.resolve("Window.json"), StandardCharsets.UTF_8)) {
+                    Window window = Window.fromJson(reader);
+                    if (!window.equals(registry.getWindow())) {
+                        commit.setWindow(window);
+                        changed = true;
+                    }
+                } catch (NoSuchFileException e) {
+                    // keep the current one
+                } catch (IOException | IllegalArgumentException e) {
+                    failure = failure != null ? failure : new IOException("Window.json", e);
+                }
+            }
+            if (fileNames == null || fileNames.contains("Network.json")) {
+                try (Reader reader = Files.newBufferedReader(directory.resolve("Network.json"), StandardCharsets.UTF_8)) {
+                    Network network = Network.fromJson(reader);
+                    if (!network.equals(registry.getNetwork())) {
+                        commit.setNetwork(network);
+                        changed = true;
+                    }
+                } catch (NoSuchFileException e) {
+                    // keep the current one
+                } catch (IOException | IllegalArgumentException e) {
+                    failure = failure != null ? failure : new IOException("Network.json", e);
+                }
+            }
+            Snapshot snapshot = changed ? commit.commit() : registry.snapshot();
+            if (failure != null) {
+                throw failure;
+            }
+            return snapshot;
+        }
+
+        /**
+         * @return the last failure of reload in run(), or why run() stopped watching, or null
+         */
+        public IOException lastError() {
+            return lastError;
+        }
+
+        /**
+         * Stop watching, run() returns.
+         */
+        @Override
+        public void close() throws IOException {
+            closed = true;
+            watcher.close();
+        }
+    }
+}
@@ -22,7 +22,7 @@ import com.johnsoft.annotations.GenBuilder;
  * @author John Kenrinus Lee
  * @version 2019-04-29
  */
-@GenBuilder
+@GenBuilder(binaryCodec = true, flyweight = true)
 public class Settings1 {
     public String background = "Red";
     public int windowHeight = 440;
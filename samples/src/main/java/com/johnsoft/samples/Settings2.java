@@ -29,10 +29,16 @@ import com.johnsoft.samples.utils.Util;
 @GenBuilder(getter = true, nested = true)
 public class Settings2 {
     public static class Fonts {
+        @GenBuilder.Pure
         public Font normal = new Font("Arial", Font.BOLD, 32);
     }
 
     public static class Colors {
+        @GenBuilder.Lazy
         public Color foreground = Util.getDefaultColor();
+
+        @GenBuilder.Getter("return $N.darker()")
+        @GenBuilder.Lazy
+        public Color shadow = Color.GRAY;
     }
 }
@@ -25,7 +25,8 @@ import com.johnsoft.annotations.GenBuilder;
  * @author John Kenrinus Lee
  * @version 2019-04-29
  */
-@GenBuilder(inheritable = true, elementAdder = true)
+@GenBuilder(inheritable = true, elementAdder = true, packed = true, binaryCodec = true, jsonCodec = true,
+        delta = true)
 public class Settings3 {
     public Map<String, String> fontMap = new HashMap<>();
 
@@ -39,4 +40,7 @@ public class Settings3 {
             MODE_FLY, MODE_RUN, MODE_CLIMB
     })
     public int mode = MODE_FLY;
+
+    public boolean fullScreen;
+    public boolean resizable = true;
 }
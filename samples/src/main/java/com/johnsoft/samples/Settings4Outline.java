@@ -27,7 +27,7 @@ import com.johnsoft.samples.utils.Util;
  * @author John Kenrinus Lee
  * @version 2019-04-29
  */
-@GenBuilder(nested = true, join = { SettingManager.class })
+@GenBuilder(nested = true, intern = true, registry = true, join = { SettingManager.class })
 public class Settings4Outline {
     public static class Fonts {
         public Font normal = new Font("Arial", Font.BOLD, 32);
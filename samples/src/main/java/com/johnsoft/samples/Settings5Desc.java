@@ -17,7 +17,10 @@
 package com.johnsoft.samples;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 import com.johnsoft.annotations.GenBuilder;
 import com.johnsoft.samples.utils.Nullable;
@@ -27,7 +30,8 @@ import com.johnsoft.samples.utils.Util;
  * @author John Kenrinus Lee
  * @version 2019-04-29
  */
-@GenBuilder(inheritable = true, nested = true, getter = false, elementAdder = true)
+@GenBuilder(inheritable = true, nested = true, getter = false, elementAdder = true, reusable = true,
+        copyOnWrite = true, batch = true, delta = true, live = true)
 public class Settings5Desc {
     /**
      * a comment will be copied
@@ -42,11 +46,18 @@ public class Settings5Desc {
     @GenBuilder.Setter("int tmp = $N; if (tmp > 0) this.$N = tmp")
     public int age = 3;
 
+    @GenBuilder.Pure
     public long xs = Util.Inner.class.hashCode();
 
-    public ArrayList<String> keys = new ArrayList<>();
+    public Set<String> keys = new LinkedHashSet<>();
     public List<String> values = new ArrayList<>();
 
+    @GenBuilder.Primitive
+    @GenBuilder.Pure
+    public List<Integer> offsets = Arrays.asList(0, 8, 16);
+    @GenBuilder.Primitive
+    public List<Long> stamps = new ArrayList<>();
+
     @Nullable
     public <T> T test(@Nullable String... stb) throws IllegalArgumentException {
         System.out.println("MMMMMM");
@@ -0,0 +1,44 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.johnsoft.samples;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.johnsoft.annotations.GenBuilder;
+
+/**
+ * Groups saved to a memory-mapped snapshot file, and loaded lazily on the next start.
+ *
+ * @author John Kenrinus Lee
+ * @version 2019-05-21
+ */
+@GenBuilder(nested = true, registry = true, binaryCodec = true, delta = true, jsonCodec = true)
+public class Settings6Outline {
+    public static class Window {
+        public String title = "Dessert";
+        public int width = 1280;
+        public int height = 720;
+        public boolean maximized = false;
+    }
+
+    public static class Network {
+        public String host = "localhost";
+        public int port = 8080;
+        public List<String> mirrors = new ArrayList<>();
+    }
+}
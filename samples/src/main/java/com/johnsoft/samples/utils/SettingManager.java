@@ -24,30 +24,39 @@ import com.johnsoft.samples.Settings3Impl;
 import com.johnsoft.samples.Settings4;
 
 /**
+ * Groups live in {@link Settings4.Registry}, so render threads always read a consistent snapshot without lock.
+ *
  * @author John Kenrinus Lee
- * @version 2019-04-29
+ * @version 2019-05-19
  */
 public enum SettingManager {
     self;
 
-    private Settings4.Colors colors;
-    private Settings4.Fonts fonts;
+    private final Settings4.Registry registry = new Settings4.Registry();
+
+    public Settings4.Snapshot snapshot() {
+        return registry.snapshot();
+    }
+
+    public Settings4.Commit begin() {
+        return registry.begin();
+    }
 
     public Settings4.Colors getColors() {
-        return colors;
+        return registry.getColors();
     }
 
     public SettingManager setColors(final Settings4.Colors colors) {
-        this.colors = colors;
+        registry.setColors(colors);
         return this;
     }
 
     public Settings4.Fonts getFonts() {
-        return fonts;
+        return registry.getFonts();
     }
 
     public SettingManager setFonts(final Settings4.Fonts fonts) {
-        this.fonts = fonts;
+        registry.setFonts(fonts);
         return this;
     }
 
@@ -73,5 +82,12 @@ public enum SettingManager {
                 .setForeground(Color.BLACK).build());
         SettingManager.self.setFonts(new Settings4.Fonts.Builder()
                 .setNormal(Font.decode("Monaco")).build());
+
+        // C, both or neither
+        new Settings4.Fonts.Builder()
+                .setNormal(Font.decode("Monaco"))
+                .into(SettingManager.self.begin())
+                .setColors(new Settings4.Colors.Builder().setForeground(Color.BLACK).build())
+                .commit();
     }
 }
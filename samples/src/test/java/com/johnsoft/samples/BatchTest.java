@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.johnsoft.samples;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.StreamSupport;
+
+import org.junit.Test;
+
+/**
+ * rows of {@link Settings5.Batch}, held as one array per field.
+ *
+ * @author John Kenrinus Lee
+ * @version 2019-05-26
+ */
+public class BatchTest {
+    private static List<Settings5> fill(Settings5.Batch batch, int rows) {
+        List<Settings5> values = new ArrayList<>();
+        for (int i = 0; i < rows; ++i) {
+            Settings5.Builder<?> builder = new Settings5.Builder<>();
+            builder.setAge(i + 1);
+            builder.setName("row" + i);
+            builder.addToStamps(i);
+            Settings5 value = builder.build();
+            if (i % 2 == 0) {
+                batch.add(value);
+            } else {
+                batch.add(builder);
+            }
+            values.add(value);
+        }
+        return values;
+    }
+
+    private static void assertOutOfBounds(Settings5.Batch batch, int i) {
+        try {
+            batch.getAge(i);
+            fail("read row " + i + " of " + batch.size());
+        } catch (IndexOutOfBoundsException expected) {
+            // checked
+        }
+    }
+
+    @Test
+    public void addThenGet() {
+        Settings5.Batch batch = new Settings5.Batch(1);
+        List<Settings5> values = fill(batch, 20);
+        assertEquals(20, batch.size());
+        for (int i = 0; i < values.size(); ++i) {
+            assertEquals(values.get(i), batch.materialize(i));
+        }
+        assertEquals(20, batch.getAge(19));
+        assertEquals("row19", batch.getName(19));
+        assertEquals(1, batch.stampsSize(19));
+        assertEquals(19L, batch.getStamps(19, 0));
+        assertEquals(3, batch.offsetsSize(0));
+        assertOutOfBounds(batch, 20);
+        assertOutOfBounds(batch, -1);
+    }
+
+    @Test
+    public void clearThenAdd() {
+        Settings5.Batch batch = new Settings5.Batch();
+        fill(batch, 3);
+        batch.clear();
+        assertEquals(0, batch.size());
+        assertOutOfBounds(batch, 0);
+        Settings5 value = new Settings5();
+        batch.add(value);
+        assertEquals(value, batch.materialize(0));
+    }
+
+    @Test
+    public void parallelScan() {
+        final Settings5.Batch batch = new Settings5.Batch();
+        fill(batch, 1000);
+        int sum = StreamSupport.intStream(batch.spliterator(), true).map(new IntUnaryOperator() {
+            @Override
+            public int applyAsInt(int i) {
+                return batch.getAge(i);
+            }
+        }).sum();
+        assertEquals(1000 * 1001 / 2, sum);
+    }
+}
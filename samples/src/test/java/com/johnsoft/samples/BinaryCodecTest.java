@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.johnsoft.samples;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Round trip of binaryCodec, and schema check of readFrom.
+ *
+ * @author John Kenrinus Lee
+ * @version 2019-05-26
+ */
+public class BinaryCodecTest {
+    private static ByteBuffer write(Settings1Impl settings) {
+        ByteBuffer buffer = ByteBuffer.allocate(settings.serializedSize());
+        settings.writeTo(buffer);
+        assertFalse("serializedSize() is exact", buffer.hasRemaining());
+        buffer.flip();
+        return buffer;
+    }
+
+    @Test
+    public void roundTrip() {
+        Settings1Impl settings = new Settings1Impl.Builder().setBackground("Blue").setWindowHeight(-7).build();
+        assertEquals(settings, Settings1Impl.readFrom(write(settings)));
+    }
+
+    @Test
+    public void roundTripExtremesAndNull() {
+        for (int height : new int[] { 0, 1, -1, Integer.MAX_VALUE, Integer.MIN_VALUE }) {
+            Settings1Impl settings = new Settings1Impl.Builder().setBackground(null).setWindowHeight(height).build();
+            Settings1Impl read = Settings1Impl.readFrom(write(settings));
+            assertNull(read.background);
+            assertEquals(height, read.windowHeight);
+        }
+    }
+
+    @Test
+    public void roundTripUtf8() {
+        // 1, 2, 3 bytes and a surrogate pair (4 bytes)
+        String text = "a\u00e9\u4e2d\ud83d\ude00";
+        Settings1Impl settings = new Settings1Impl.Builder().setBackground(text).build();
+        assertEquals(text, Settings1Impl.readFrom(write(settings)).background);
+    }
+
+    @Test
+    public void roundTripPackedAndMap() {
+        Settings3Impl settings = new Settings3Impl.Builder<>().setModeToToClimb().setFullScreen(true)
+                                                              .setResizable(false).addToFontMap("title", "Arial")
+                                                              .build();
+        ByteBuffer buffer = ByteBuffer.allocate(settings.serializedSize());
+        settings.writeTo(buffer).flip();
+        assertEquals(settings, Settings3Impl.readFrom(buffer));
+    }
+
+    @Test
+    public void roundTripList() {
+        Settings6.Network network = new Settings6.Network.Builder().setHost("example.com").setPort(443)
+                                                                   .setMirrors(Arrays.asList("a", null, "c"))
+                                                                   .build();
+        ByteBuffer buffer = ByteBuffer.allocate(network.serializedSize());
+        network.writeTo(buffer).flip();
+        assertEquals(network, Settings6.Network.readFrom(buffer));
+    }
+
+    @Test
+    public void rejectOtherSchema() {
+        Settings6.Window window = new Settings6.Window();
+        ByteBuffer buffer = ByteBuffer.allocate(window.serializedSize());
+        window.writeTo(buffer).flip();
+        try {
+            Settings6.Network.readFrom(buffer);
+            fail("read Window as Network");
+        } catch (IllegalArgumentException expected) {
+            // schema mismatch
+        }
+    }
+
+    /**
+     * @return Network's fingerprint followed by bytes
+     */
+    private static ByteBuffer network(int... bytes) {
+        Settings6.Network network = new Settings6.Network();
+        ByteBuffer buffer = ByteBuffer.allocate(network.serializedSize());
+        network.writeTo(buffer);
+        ByteBuffer corrupt = ByteBuffer.allocate(Long.BYTES + bytes.length);
+        corrupt.putLong(buffer.getLong(0));
+        for (int b : bytes) {
+            corrupt.put((byte) b);
+        }
+        corrupt.flip();
+        return corrupt;
+    }
+
+    private static void assertCorrupt(ByteBuffer buffer) {
+        try {
+            Settings6.Network.readFrom(buffer);
+            fail("read corrupt Network");
+        } catch (IllegalArgumentException expected) {
+            // before allocating anything of the corrupt length
+        }
+    }
+
+    @Test
+    public void rejectCorrupt() {
+        // host: varint longer than 10 bytes
+        assertCorrupt(network(0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0x01));
+        // host: 2^28 - 1 bytes of UTF-8
+        assertCorrupt(network(0xFF, 0xFF, 0xFF, 0x7F));
+        // mirrors: null host, port 0, then 2^28 - 1 elements
+        assertCorrupt(network(0x00, 0x00, 0xFF, 0xFF, 0xFF, 0x7F, 0x00));
+        // host: 2 bytes, but a 3 bytes character
+        assertCorrupt(network(0x03, 0xE4, 0xB8, 0xAD, 0x00, 0x00));
+    }
+}
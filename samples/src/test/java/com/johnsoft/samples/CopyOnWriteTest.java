@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.johnsoft.samples;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * build() of {@link Settings5} freezes the collections, newBuilder() copies them on the first change.
+ *
+ * @author John Kenrinus Lee
+ * @version 2019-05-26
+ */
+public class CopyOnWriteTest {
+    @Test
+    public void buildFreezes() {
+        Settings5.Builder<?> builder = new Settings5.Builder<>();
+        builder.addToValues("a");
+        Settings5 first = builder.build();
+        builder.addToValues("b");
+        Settings5 second = builder.build();
+        assertEquals(Collections.singletonList("a"), first.values);
+        assertEquals(Arrays.asList("a", "b"), second.values);
+        try {
+            second.values.add("c");
+            fail("built collection is mutable");
+        } catch (UnsupportedOperationException expected) {
+            // frozen
+        }
+    }
+
+    @Test
+    public void buildCopiesSetCollection() {
+        Set<String> keys = new LinkedHashSet<>(Arrays.asList("a", "b"));
+        Settings5.Builder<?> builder = new Settings5.Builder<>();
+        builder.setKeys(keys);
+        Settings5 settings = builder.build();
+        keys.add("c");
+        assertEquals(new LinkedHashSet<>(Arrays.asList("a", "b")), settings.keys);
+    }
+
+    @Test
+    public void newBuilderCopiesOnFirstChange() {
+        Settings5.Builder<?> builder = new Settings5.Builder<>();
+        builder.addToKeys("a");
+        builder.addToKeys("b");
+        Settings5 settings = builder.build();
+
+        Settings5.Builder<?> copy = settings.newBuilder();
+        Settings5 untouched = copy.build();
+        assertSame(settings.keys, untouched.keys);
+        assertSame(settings.values, untouched.values);
+        copy.addToKeys("c");
+        Settings5 changed = copy.build();
+        assertEquals(2, settings.keys.size());
+        assertEquals(3, changed.keys.size());
+        assertSame(settings.values, changed.values);
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.johnsoft.samples;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+/**
+ * {@link com.johnsoft.annotations.GenBuilder.Pure} defaults are evaluated once, the others per Builder.
+ *
+ * @author John Kenrinus Lee
+ * @version 2019-05-26
+ */
+public class DefaultsTest {
+    @Test
+    public void pureDefaultSharedByAll() {
+        Settings2Impl.Fonts fonts = new Settings2Impl.Fonts();
+        assertSame(fonts.getNormal(), new Settings2Impl.Fonts().getNormal());
+        assertSame(fonts.getNormal(), new Settings2Impl.Fonts.Builder().build().getNormal());
+        assertEquals(fonts, Settings2Impl.Fonts.builder().build());
+    }
+
+    @Test
+    public void noArgConstructorCopiesDefaults() {
+        assertEquals(new Settings1Impl.Builder().build(), new Settings1Impl());
+        assertEquals("Red", new Settings1Impl().background);
+        assertEquals(new Settings6.Window.Builder().build(), new Settings6.Window());
+    }
+
+    @Test
+    public void perInstanceDefaultNotShared() {
+        Settings3Impl first = new Settings3Impl();
+        Settings3Impl second = new Settings3Impl();
+        assertEquals(first.fontMap, second.fontMap);
+        assertNotSame(first.fontMap, second.fontMap);
+    }
+}
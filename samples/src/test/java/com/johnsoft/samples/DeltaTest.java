@@ -0,0 +1,89 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.johnsoft.samples;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+/**
+ * diff, applyTo and the binary round trip of Delta.
+ *
+ * @author John Kenrinus Lee
+ * @version 2019-05-26
+ */
+public class DeltaTest {
+    private static Settings3Impl.Delta roundTrip(Settings3Impl.Delta delta) {
+        ByteBuffer buffer = ByteBuffer.allocate(delta.serializedSize());
+        delta.writeTo(buffer);
+        assertFalse("serializedSize() is exact", buffer.hasRemaining());
+        buffer.flip();
+        return Settings3Impl.Delta.readFrom(buffer);
+    }
+
+    @Test
+    public void changedOnly() {
+        Settings3Impl base = new Settings3Impl();
+        Settings3Impl next = base.newBuilder().setModeToToClimb().setResizable(false).build();
+        Settings3Impl.Delta delta = base.diff(next);
+        assertEquals(Settings3Impl.Delta.MODE | Settings3Impl.Delta.RESIZABLE, delta.mask());
+        assertTrue(delta.isChanged(Settings3Impl.Delta.MODE));
+        assertFalse(delta.isChanged(Settings3Impl.Delta.FULL_SCREEN | Settings3Impl.Delta.FONT_MAP));
+        assertEquals(next, delta.applyTo(base));
+    }
+
+    @Test
+    public void emptyDelta() {
+        Settings3Impl base = new Settings3Impl();
+        Settings3Impl.Delta delta = base.diff(base.newBuilder().build());
+        assertTrue(delta.isEmpty());
+        assertSame(base, delta.applyTo(base));
+        assertTrue(roundTrip(delta).isEmpty());
+    }
+
+    @Test
+    public void binaryRoundTrip() {
+        Settings3Impl base = new Settings3Impl();
+        Settings3Impl next = base.newBuilder().addToFontMap("title", "Monaco").setModeToToRun()
+                                 .setFullScreen(true).build();
+        Settings3Impl.Delta read = roundTrip(base.diff(next));
+        assertEquals(base.diff(next).mask(), read.mask());
+        assertEquals(next, read.applyTo(base));
+        // packed bits of unchanged properties are not carried over
+        Settings3Impl other = base.newBuilder().setResizable(false).build();
+        assertEquals(next.newBuilder().setResizable(false).build(), read.applyTo(other));
+    }
+
+    @Test
+    public void rejectOtherSchema() {
+        Settings6.Window.Delta delta = new Settings6.Window().diff(new Settings6.Window.Builder().setWidth(1).build());
+        ByteBuffer buffer = ByteBuffer.allocate(delta.serializedSize());
+        delta.writeTo(buffer).flip();
+        try {
+            Settings3Impl.Delta.readFrom(buffer);
+            fail("read Delta of Window as Settings3Impl's");
+        } catch (IllegalArgumentException expected) {
+            // schema mismatch
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.johnsoft.samples;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+/**
+ * write, then read in place by {@link Settings1Impl.Flyweight}.
+ *
+ * @author John Kenrinus Lee
+ * @version 2019-05-26
+ */
+public class FlyweightTest {
+    @Test
+    public void writeThenView() {
+        Settings1Impl[] values = {
+                new Settings1Impl.Builder().setBackground("Blue").setWindowHeight(3).build(),
+                new Settings1Impl.Builder().setBackground(null).setWindowHeight(7).build(),
+                new Settings1Impl()
+        };
+        int length = 8;
+        for (Settings1Impl value : values) {
+            length += Settings1Impl.Flyweight.recordLength(value);
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(length);
+        int offset = 8;
+        for (Settings1Impl value : values) {
+            int written = Settings1Impl.Flyweight.write(buffer, offset, value);
+            assertEquals(0, written % 8);
+            offset += written;
+        }
+        assertEquals(length, offset);
+        assertEquals("absolute writes", 0, buffer.position());
+
+        Settings1Impl.Flyweight view = new Settings1Impl.Flyweight().wrap(buffer, 8);
+        assertEquals("Blue", view.getBackground().toString());
+        assertEquals(3, view.getWindowHeight());
+        assertEquals(values[0], view.materialize());
+        CharSequence chars = view.getBackground();
+
+        view.wrap(buffer, view.offset() + view.recordLength());
+        assertNull(view.getBackground());
+        assertEquals(7, view.getWindowHeight());
+        assertEquals(values[1], view.materialize());
+
+        view.wrap(buffer, view.offset() + view.recordLength());
+        assertSame("view of chars is reused", chars, view.getBackground());
+        assertEquals("Red", chars.toString());
+        assertEquals(values[2], view.materialize());
+        assertEquals(length, view.offset() + view.recordLength());
+    }
+
+    @Test
+    public void charsView() {
+        Settings1Impl value = new Settings1Impl.Builder().setBackground("Hello").build();
+        ByteBuffer buffer = ByteBuffer.allocate(Settings1Impl.Flyweight.recordLength(value));
+        Settings1Impl.Flyweight.write(buffer, 0, value);
+        CharSequence chars = new Settings1Impl.Flyweight().wrap(buffer, 0).getBackground();
+        assertEquals(5, chars.length());
+        assertEquals('e', chars.charAt(1));
+        assertEquals("ll", chars.subSequence(2, 4).toString());
+        assertEquals(0, chars.subSequence(5, 5).length());
+        try {
+            chars.charAt(5);
+            fail("read out of the string");
+        } catch (StringIndexOutOfBoundsException expected) {
+            // checked
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.johnsoft.samples;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.awt.Font;
+
+import org.junit.Test;
+
+/**
+ * build() and withX of {@link Settings4} return the canonical instance of equal values.
+ *
+ * @author John Kenrinus Lee
+ * @version 2019-05-26
+ */
+public class InternTest {
+    @Test
+    public void equalValuesShareOneInstance() {
+        Settings4.Colors pink = new Settings4.Colors.Builder().setForeground(Color.PINK).build();
+        assertSame(pink, new Settings4.Colors.Builder().setForeground(new Color(Color.PINK.getRGB())).build());
+        assertSame(pink, pink.newBuilder().build());
+        Settings4.Colors cyan = pink.withForeground(Color.CYAN);
+        assertNotSame(pink, cyan);
+        assertSame(pink, cyan.withForeground(Color.PINK));
+        // a constructor can't return the canonical one, only build() and withX do
+        Settings4.Colors defaults = new Settings4.Colors();
+        assertSame(defaults.newBuilder().build(), new Settings4.Colors.Builder().setForeground(Color.BLUE).build());
+    }
+
+    @Test
+    public void hitRatio() {
+        Settings4.Fonts.Builder builder = new Settings4.Fonts.Builder().setNormal(new Font("Serif", Font.PLAIN, 11));
+        Settings4.Fonts fonts = builder.build();
+        double ratio = Settings4.Fonts.internHitRatio();
+        assertTrue(ratio >= 0 && ratio < 1);
+        for (int i = 0; i < 100; ++i) {
+            assertSame(fonts, builder.build());
+        }
+        assertTrue(Settings4.Fonts.internHitRatio() > ratio);
+        assertEquals(fonts, new Settings4.Fonts.Builder().setNormal(new Font("Serif", Font.PLAIN, 11)).build());
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.johnsoft.samples;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Append, recover and compact of {@link Settings6.Journal}.
+ *
+ * @author John Kenrinus Lee
+ * @version 2019-05-26
+ */
+public class JournalTest {
+    private static final Executor INLINE = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path snapshotPath;
+    private Path journalPath;
+
+    @Before
+    public void setUp() {
+        snapshotPath = folder.getRoot().toPath().resolve("settings.snapshot");
+        journalPath = folder.getRoot().toPath().resolve("settings.journal");
+    }
+
+    private Settings6.Journal open(long compactBytes, Executor compactor) throws IOException {
+        return new Settings6.Journal(Settings6.Journal.recover(snapshotPath, journalPath), snapshotPath, journalPath,
+                compactBytes, compactor);
+    }
+
+    @Test
+    public void appendThenRecover() throws IOException {
+        Settings6.Journal journal = open(Long.MAX_VALUE, null);
+        Settings6.Window window = new Settings6.Window.Builder().setTitle("first").build();
+        journal.setWindow(window);
+        for (int i = 0; i < 10; ++i) {
+            window = window.withWidth(i);
+            journal.setWindow(window);
+        }
+        long length = Files.size(journalPath);
+        journal.setWindow(window.newBuilder().build());
+        assertEquals("an equal group appends nothing", length, Files.size(journalPath));
+        journal.setNetwork(new Settings6.Network.Builder().setPort(1).build());
+        journal.setNetwork(null);
+        journal.close();
+
+        Settings6.Registry registry = Settings6.Journal.recover(snapshotPath, journalPath);
+        assertEquals(window, registry.getWindow());
+        assertNull(registry.getNetwork());
+        assertFalse(Files.exists(snapshotPath));
+    }
+
+    @Test
+    public void recoverCutsTornTail() throws IOException {
+        Settings6.Journal journal = open(Long.MAX_VALUE, null);
+        Settings6.Window window = new Settings6.Window.Builder().setHeight(1).build();
+        journal.setWindow(window);
+        journal.close();
+        long length = Files.size(journalPath);
+        // header of a record longer than the rest, as a crash in the middle of the write leaves
+        Files.write(journalPath, new byte[] { 0, 0, 0, 0, 0, 0, 0, 99, 1 }, StandardOpenOption.APPEND);
+
+        assertEquals(window, Settings6.Journal.recover(snapshotPath, journalPath).getWindow());
+        assertEquals(length, Files.size(journalPath));
+    }
+
+    @Test
+    public void compactThenRecover() throws IOException {
+        Settings6.Journal journal = open(64, INLINE);
+        Settings6.Window window = new Settings6.Window();
+        for (int i = 0; i < 20; ++i) {
+            window = window.withHeight(i);
+            journal.setWindow(window);
+            assertTrue("compacted on threshold", Files.size(journalPath) < 64);
+        }
+        assertTrue(Files.exists(snapshotPath));
+        Settings6.Network network = new Settings6.Network.Builder().setHost("example.com").build();
+        journal.setNetwork(network);
+        journal.close();
+
+        Settings6.Registry registry = Settings6.Journal.recover(snapshotPath, journalPath);
+        assertEquals(window, registry.getWindow());
+        assertEquals(network, registry.getNetwork());
+    }
+
+    @Test
+    public void compactAfterRejected() throws IOException {
+        final int[] rejected = { 0 };
+        Settings6.Journal journal = open(1, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                if (rejected[0]++ == 0) {
+                    throw new RejectedExecutionException();
+                }
+                command.run();
+            }
+        });
+        Settings6.Window window = new Settings6.Window().withTitle("rejected");
+        journal.setWindow(window);
+        assertFalse(Files.exists(snapshotPath));
+        window = window.withTitle("compacted");
+        journal.setWindow(window);
+        assertEquals(2, rejected[0]);
+        assertTrue(Files.exists(snapshotPath));
+        assertEquals(0, Files.size(journalPath));
+        journal.close();
+
+        assertEquals(window, Settings6.Journal.recover(snapshotPath, journalPath).getWindow());
+    }
+
+    @Test
+    public void corruptRecord() throws IOException {
+        Settings6.Window window = new Settings6.Window();
+        Settings6.Window.Delta delta = window.diff(window.withWidth(1));
+        ByteBuffer bytes = ByteBuffer.allocate(delta.serializedSize());
+        delta.writeTo(bytes);
+        // group 0, schema fingerprint is right, but the changed title is missing
+        ByteBuffer record = ByteBuffer.allocate(8 + 9);
+        record.putInt(0).putInt(9).putLong(bytes.getLong(0)).put((byte) Settings6.Window.Delta.TITLE).flip();
+        Files.write(journalPath, record.array());
+        try {
+            Settings6.Journal.recover(snapshotPath, journalPath);
+            fail("recovered a corrupt record");
+        } catch (IOException expected) {
+            // not BufferUnderflowException
+        }
+    }
+}
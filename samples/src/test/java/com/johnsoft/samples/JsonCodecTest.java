@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.johnsoft.samples;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Round trip of jsonCodec, and malformed input which must not be truncated or guessed.
+ *
+ * @author John Kenrinus Lee
+ * @version 2019-05-26
+ */
+public class JsonCodecTest {
+    private static String toJson(Settings3Impl settings) throws IOException {
+        StringBuilder out = new StringBuilder();
+        settings.toJson(out);
+        return out.toString();
+    }
+
+    private static void assertMalformed(String json) throws IOException {
+        try {
+            Settings6.Window.fromJson(new StringReader(json));
+            fail("accepted " + json);
+        } catch (IllegalArgumentException expected) {
+            // malformed
+        }
+    }
+
+    private static void assertMalformedSettings3(String json) throws IOException {
+        try {
+            Settings3Impl.fromJson(new StringReader(json));
+            fail("accepted " + json);
+        } catch (IllegalArgumentException expected) {
+            // malformed
+        }
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        Settings3Impl settings = new Settings3Impl.Builder<>().setModeToToRun().setFullScreen(true)
+                                                              .addToFontMap("quote \"\\", "line\n").build();
+        assertEquals(settings, Settings3Impl.fromJson(new StringReader(toJson(settings))));
+    }
+
+    @Test
+    public void roundTripList() throws IOException {
+        Settings6.Network network = new Settings6.Network.Builder().setMirrors(Arrays.asList("a", null)).build();
+        StringBuilder out = new StringBuilder();
+        network.toJson(out);
+        assertEquals(network, Settings6.Network.fromJson(new StringReader(out.toString())));
+    }
+
+    @Test
+    public void missingKeysKeepDefaultsUnknownSkipped() throws IOException {
+        Settings6.Window window = Settings6.Window.fromJson(
+                new StringReader(" { \"unknown\" : [1, {\"a\": null}], \"width\" : -1 } "));
+        assertEquals(new Settings6.Window.Builder().setWidth(-1).build(), window);
+    }
+
+    @Test
+    public void rejectUnknownEnumValue() throws IOException {
+        assertMalformedSettings3("{\"mode\":0}");
+        assertMalformedSettings3("{\"mode\":4}");
+        // 5 fits into the 2 bits of the packed slot (as 0), it must not become MODE_FLY
+        assertMalformedSettings3("{\"mode\":5}");
+        assertEquals(Settings3Impl.MODE_CLIMB,
+                Settings3Impl.fromJson(new StringReader("{\"mode\":3}")).getMode());
+    }
+
+    @Test
+    public void rejectOutOfRange() throws IOException {
+        assertMalformed("{\"width\":2147483648}");
+        assertMalformed("{\"width\":-2147483649}");
+        // truncated to 1920 by (int) cast
+        assertMalformed("{\"width\":" + (0x100000000L + 1920) + "}");
+        assertMalformed("{\"width\":99999999999999999999}");
+        assertEquals(Integer.MIN_VALUE,
+                Settings6.Window.fromJson(new StringReader("{\"width\":-2147483648}")).width);
+    }
+
+    @Test
+    public void rejectMissingOrExtraComma() throws IOException {
+        assertMalformed("{\"width\":1 \"height\":2}");
+        assertMalformed("{\"width\":1,}");
+        assertMalformed("{,\"width\":1}");
+        assertMalformed("{\"unknown\":[1 2]}");
+        assertMalformed("{\"width\":1}{");
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.johnsoft.samples;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.awt.Color;
+import java.lang.reflect.Field;
+
+import org.junit.Test;
+
+/**
+ * Deferred default of {@link Settings2Impl.Colors} is computed on the first get only.
+ *
+ * @author John Kenrinus Lee
+ * @version 2019-05-26
+ */
+public class LazyTest {
+    @Test
+    public void notForcedByValueMethods() throws Exception {
+        Field foreground = Settings2Impl.Colors.class.getDeclaredField("foreground");
+        foreground.setAccessible(true);
+        Settings2Impl.Colors colors = new Settings2Impl.Colors();
+        Settings2Impl.Colors shadowed = colors.withShadow(Color.RED);
+        assertSame(shadowed, shadowed.withShadow(Color.RED));
+        assertEquals(shadowed, new Settings2Impl.Colors().withShadow(Color.RED));
+        assertEquals(shadowed.hashCode(), colors.withShadow(Color.RED).hashCode());
+        shadowed.toString();
+        assertNull("default computed before the getter", foreground.get(shadowed));
+
+        Color color = shadowed.getForeground();
+        assertSame(color, foreground.get(shadowed));
+        assertSame(shadowed, shadowed.withForeground(color));
+        assertEquals(Color.BLUE, shadowed.withForeground(Color.BLUE).getForeground());
+        assertEquals(Color.RED.darker(), shadowed.withForeground(Color.BLUE).getShadow());
+    }
+
+    @Test
+    public void memoizedGetter() {
+        Settings2Impl.Colors colors = new Settings2Impl.Colors().withShadow(Color.GRAY);
+        assertSame(colors.getShadow(), colors.getShadow());
+        assertEquals(Color.GRAY.darker(), colors.getShadow());
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.johnsoft.samples;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+/**
+ * set and read under the sequence lock of {@link Settings5.Live}.
+ *
+ * @author John Kenrinus Lee
+ * @version 2019-05-26
+ */
+public class LiveTest {
+    private static Settings5 settings(int age, long xs) {
+        Settings5.Builder<?> builder = new Settings5.Builder<>();
+        builder.setAge(age);
+        builder.setXs(xs);
+        return builder.build();
+    }
+
+    @Test
+    public void setThenRead() {
+        Settings5.Live live = new Settings5.Live(settings(3, 5));
+        int sequence = live.sequence();
+        assertEquals(0, sequence & 1);
+        Settings5.Live.Values values = new Settings5.Live.Values();
+        assertSame(values, live.read(values));
+        assertEquals(3, values.getAge());
+        assertEquals(5L, values.getXs());
+
+        live.set(settings(7, 11));
+        assertNotEquals(sequence, live.sequence());
+        assertEquals(0, live.sequence() & 1);
+        live.read(values);
+        assertEquals(7, values.getAge());
+        assertEquals(11L, values.getXs());
+        assertEquals(7, live.getAge());
+        assertEquals(11L, live.getXs());
+    }
+
+    @Test
+    public void readsAreConsistent() throws InterruptedException {
+        final Settings5.Live live = new Settings5.Live(settings(1, 1));
+        final AtomicReference<String> torn = new AtomicReference<>();
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Settings5.Live.Values values = new Settings5.Live.Values();
+                while (!Thread.currentThread().isInterrupted()) {
+                    live.read(values);
+                    if (values.getAge() != values.getXs()) {
+                        torn.set(values.getAge() + " != " + values.getXs());
+                    }
+                }
+            }
+        });
+        reader.start();
+        for (int i = 2; i <= 20000; ++i) {
+            live.set(settings(i, i));
+        }
+        reader.interrupt();
+        reader.join();
+        assertNull(torn.get());
+        assertEquals(20000, live.getAge());
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.johnsoft.samples;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Getters and setters of the properties packed into one long of {@link Settings3Impl}.
+ *
+ * @author John Kenrinus Lee
+ * @version 2019-05-26
+ */
+public class PackedLayoutTest {
+    private static final int[] MODES = { Settings3Impl.MODE_FLY, Settings3Impl.MODE_RUN, Settings3Impl.MODE_CLIMB };
+
+    private static Settings3Impl.Builder<?> setMode(Settings3Impl.Builder<?> builder, int mode) {
+        switch (mode) {
+            case Settings3Impl.MODE_FLY:
+                return builder.setModeToToFly();
+            case Settings3Impl.MODE_RUN:
+                return builder.setModeToToRun();
+            default:
+                return builder.setModeToToClimb();
+        }
+    }
+
+    @Test
+    public void defaults() {
+        Settings3Impl settings = new Settings3Impl();
+        assertEquals(Settings3Impl.MODE_FLY, settings.getMode());
+        assertEquals(false, settings.getFullScreen());
+        assertEquals(true, settings.getResizable());
+    }
+
+    @Test
+    public void everyCombination() {
+        for (int mode : MODES) {
+            for (boolean fullScreen : new boolean[] { false, true }) {
+                for (boolean resizable : new boolean[] { false, true }) {
+                    Settings3Impl.Builder<?> builder = new Settings3Impl.Builder<>();
+                    setMode(builder, mode).setFullScreen(fullScreen).setResizable(resizable);
+                    Settings3Impl settings = builder.build();
+                    assertEquals(mode, settings.getMode());
+                    assertEquals(fullScreen, settings.getFullScreen());
+                    assertEquals(resizable, settings.getResizable());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void setterKeepsNeighbours() {
+        for (int from : MODES) {
+            for (int to : MODES) {
+                Settings3Impl.Builder<?> builder = new Settings3Impl.Builder<>();
+                setMode(builder, from).setFullScreen(true).setResizable(false);
+                Settings3Impl settings = setMode(builder.build().newBuilder(), to).build();
+                assertEquals(to, settings.getMode());
+                assertEquals(true, settings.getFullScreen());
+                assertEquals(false, settings.getResizable());
+
+                settings = settings.newBuilder().setFullScreen(false).setResizable(true).build();
+                assertEquals(to, settings.getMode());
+                assertEquals(false, settings.getFullScreen());
+                assertEquals(true, settings.getResizable());
+            }
+        }
+    }
+
+    @Test
+    public void equalsByValue() {
+        Settings3Impl a = new Settings3Impl.Builder<>().setModeToToRun().setFullScreen(true).build();
+        Settings3Impl b = new Settings3Impl().newBuilder().setFullScreen(true).setModeToToClimb().setModeToToRun()
+                                             .build();
+        assertEquals(a, b);
+        assertEquals(a.hashCode(), b.hashCode());
+    }
+}
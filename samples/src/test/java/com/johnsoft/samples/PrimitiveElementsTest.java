@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.johnsoft.samples;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.function.LongConsumer;
+
+import org.junit.Test;
+
+/**
+ * {@link com.johnsoft.annotations.GenBuilder.Primitive} elements of {@link Settings5}, held as int[] and long[].
+ *
+ * @author John Kenrinus Lee
+ * @version 2019-05-26
+ */
+public class PrimitiveElementsTest {
+    @Test
+    public void defaultsThenAdd() {
+        Settings5 defaults = new Settings5();
+        assertArrayEquals(new int[] { 0, 8, 16 }, defaults.offsetsToArray());
+        assertEquals(0, defaults.stampsSize());
+
+        Settings5.Builder<?> builder = defaults.newBuilder();
+        builder.addToOffsets(24);
+        for (int i = 0; i < 20; ++i) {
+            builder.addToStamps(i);
+        }
+        Settings5 settings = builder.build();
+        assertEquals(4, settings.offsetsSize());
+        assertEquals(24, settings.getOffsets(3));
+        assertEquals(20, settings.stampsSize());
+        assertEquals(19L, settings.getStamps(19));
+        final long[] sum = { 0 };
+        settings.forEachStamps(new LongConsumer() {
+            @Override
+            public void accept(long value) {
+                sum[0] += value;
+            }
+        });
+        assertEquals(190L, sum[0]);
+        assertArrayEquals("shared array not touched", new int[] { 0, 8, 16 }, defaults.offsetsToArray());
+    }
+
+    @Test
+    public void arraysAreCopied() {
+        int[] values = { 1, 2 };
+        Settings5.Builder<?> builder = new Settings5.Builder<>();
+        builder.setOffsets(values);
+        values[0] = 9;
+        Settings5 settings = builder.build();
+        settings.offsetsToArray()[1] = 9;
+        builder.addToOffsets(3);
+        assertArrayEquals(new int[] { 1, 2 }, settings.offsetsToArray());
+    }
+
+    @Test
+    public void equalsOnElements() {
+        Settings5.Builder<?> grown = new Settings5.Builder<>();
+        for (int i = 0; i < 10; ++i) {
+            grown.addToStamps(i);
+        }
+        Settings5.Builder<?> set = new Settings5.Builder<>();
+        set.setStamps(0, 1, 2, 3, 4, 5, 6, 7, 8, 9);
+        assertEquals(grown.build(), set.build());
+        assertEquals(grown.build().hashCode(), set.build().hashCode());
+    }
+}
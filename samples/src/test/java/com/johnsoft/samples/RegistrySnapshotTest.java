@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.johnsoft.samples;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * save and load of the mapped snapshot of {@link Settings6.Registry}, including corrupt files.
+ *
+ * @author John Kenrinus Lee
+ * @version 2019-05-26
+ */
+public class RegistrySnapshotTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path path;
+    private Settings6.Window window;
+
+    @Before
+    public void setUp() throws IOException {
+        path = folder.getRoot().toPath().resolve("settings.snapshot");
+        window = new Settings6.Window.Builder().setTitle("saved").setWidth(800).setMaximized(true).build();
+        Settings6.Registry registry = new Settings6.Registry();
+        registry.setWindow(window);
+        registry.save(path);
+    }
+
+    private void overwrite(int position, int value) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(4);
+            buffer.putInt(value).flip();
+            channel.write(buffer, position);
+        }
+    }
+
+    private void assertCorrupt() {
+        try {
+            Settings6.Registry.load(path).getWindow();
+            fail("loaded a corrupt snapshot");
+        } catch (IOException expected) {
+            // rejected on load
+        }
+    }
+
+    @Test
+    public void saveThenLoad() throws IOException {
+        Settings6.Registry registry = Settings6.Registry.load(path);
+        assertEquals(window, registry.getWindow());
+        assertNull(registry.getNetwork());
+        Settings6.Network network = new Settings6.Network.Builder().setMirrors(Arrays.asList("a", "b")).build();
+        registry.setNetwork(network);
+        Path other = folder.getRoot().toPath().resolve("other.snapshot");
+        registry.save(other);
+        Settings6.Registry loaded = Settings6.Registry.load(other);
+        assertEquals(window, loaded.snapshot().getWindow());
+        assertEquals(network, loaded.snapshot().getNetwork());
+    }
+
+    @Test
+    public void rejectBadMagic() throws IOException {
+        overwrite(0, 0x12345678);
+        assertCorrupt();
+    }
+
+    @Test
+    public void rejectOffsetOutOfFile() throws IOException {
+        overwrite(12, 0x7FFFFFF0);
+        assertCorrupt();
+    }
+
+    @Test
+    public void rejectOffsetInHeader() throws IOException {
+        overwrite(12, 4);
+        assertCorrupt();
+    }
+
+    @Test
+    public void rejectLengthShorterThanFingerprint() throws IOException {
+        overwrite(16, 7);
+        assertCorrupt();
+    }
+
+    @Test
+    public void rejectOtherSchema() throws IOException {
+        overwrite(28, 0);
+        assertCorrupt();
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.johnsoft.samples;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import com.johnsoft.samples.utils.SettingManager;
+
+/**
+ * CAS publish and commit of {@link Settings4.Registry}, and the join target delegating to it.
+ *
+ * @author John Kenrinus Lee
+ * @version 2019-05-26
+ */
+public class RegistryTest {
+    private static Settings4.Fonts fonts(int size) {
+        return new Settings4.Fonts.Builder().setNormal(new Font("Arial", Font.PLAIN, size)).build();
+    }
+
+    private static Settings4.Colors colors(int rgb) {
+        return new Settings4.Colors.Builder().setForeground(new Color(rgb)).build();
+    }
+
+    @Test
+    public void setKeepsOtherGroups() {
+        Settings4.Registry registry = new Settings4.Registry();
+        Settings4.Snapshot empty = registry.snapshot();
+        assertNull(registry.getFonts());
+        Settings4.Fonts fonts = fonts(12);
+        Settings4.Colors colors = colors(1);
+        registry.setFonts(fonts).setColors(colors);
+        assertSame(fonts, registry.getFonts());
+        assertSame(colors, registry.snapshot().getColors());
+        assertNull("published snapshots never change", empty.getFonts());
+    }
+
+    @Test
+    public void commitPublishesTogether() {
+        Settings4.Registry registry = new Settings4.Registry();
+        Settings4.Fonts fonts = fonts(12);
+        registry.setFonts(fonts);
+        Settings4.Commit commit = registry.begin();
+        Settings4.Colors colors = colors(2);
+        assertSame(commit, colors.newBuilder().into(commit));
+        assertNull("pending until commit", registry.getColors());
+        Settings4.Snapshot published = commit.commit();
+        assertSame(published, registry.snapshot());
+        assertSame(fonts, published.getFonts());
+        assertSame(colors, published.getColors());
+        registry.begin().setFonts(null).commit();
+        assertNull(registry.getFonts());
+        assertSame(colors, registry.getColors());
+    }
+
+    @Test
+    public void readersSeeWholeCommits() throws InterruptedException {
+        final Settings4.Registry registry = new Settings4.Registry();
+        registry.begin().setFonts(fonts(1)).setColors(colors(1)).commit();
+        final AtomicReference<String> torn = new AtomicReference<>();
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (!Thread.currentThread().isInterrupted()) {
+                    Settings4.Snapshot snapshot = registry.snapshot();
+                    int size = snapshot.getFonts().normal.getSize();
+                    int rgb = snapshot.getColors().foreground.getRGB() & 0xFFFFFF;
+                    if (size != rgb) {
+                        torn.set(size + " != " + rgb);
+                    }
+                }
+            }
+        });
+        reader.start();
+        for (int i = 2; i < 2000; ++i) {
+            registry.begin().setFonts(fonts(i)).setColors(colors(i)).commit();
+        }
+        reader.interrupt();
+        reader.join();
+        assertNull(torn.get());
+        assertEquals(1999, registry.getFonts().normal.getSize());
+    }
+
+    @Test
+    public void concurrentSetsNotLost() throws InterruptedException {
+        final Settings4.Registry registry = new Settings4.Registry();
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 1; i <= 2000; ++i) {
+                    registry.setColors(colors(i));
+                }
+            }
+        });
+        writer.start();
+        for (int i = 1; i <= 2000; ++i) {
+            registry.setFonts(fonts(i));
+        }
+        writer.join();
+        assertEquals(2000, registry.getFonts().normal.getSize());
+        assertEquals(2000, registry.getColors().foreground.getRGB() & 0xFFFFFF);
+    }
+
+    @Test
+    public void joinTargetDelegates() {
+        Settings4.Colors colors = colors(3);
+        SettingManager.self.newColors().setForeground(colors.foreground).intoSettingManager();
+        assertSame(colors, SettingManager.self.getColors());
+        assertSame(colors, SettingManager.self.snapshot().getColors());
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.johnsoft.samples;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * reload of the changed JSON files by {@link Settings6.Reloader}.
+ *
+ * @author John Kenrinus Lee
+ * @version 2019-05-26
+ */
+public class ReloaderTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path directory;
+    private Settings6.Registry registry;
+    private Settings6.Reloader reloader;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = folder.getRoot().toPath();
+        registry = new Settings6.Registry();
+        reloader = new Settings6.Reloader(registry, directory, 50);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        reloader.close();
+    }
+
+    private void write(String fileName, String json) throws IOException {
+        Files.write(directory.resolve(fileName), json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void write(Settings6.Window window) throws IOException {
+        StringBuilder json = new StringBuilder();
+        window.toJson(json);
+        write("Window.json", json.toString());
+    }
+
+    private void write(Settings6.Network network) throws IOException {
+        StringBuilder json = new StringBuilder();
+        network.toJson(json);
+        write("Network.json", json.toString());
+    }
+
+    @Test
+    public void reloadOnlyChangedGroups() throws IOException {
+        Settings6.Window window = new Settings6.Window().withTitle("first");
+        Settings6.Network network = new Settings6.Network().withPort(1);
+        write(window);
+        write(network);
+        Settings6.Snapshot first = reloader.reload(null);
+        assertEquals(window, first.getWindow());
+        assertEquals(network, first.getNetwork());
+
+        window = window.withTitle("second");
+        write(window);
+        write(network);
+        Settings6.Snapshot second = reloader.reload(new HashSet<>(Arrays.asList("Window.json", "Network.json")));
+        assertEquals(window, second.getWindow());
+        assertSame("an equal group is kept", first.getNetwork(), second.getNetwork());
+
+        write(network.withPort(2));
+        Settings6.Snapshot third = reloader.reload(Collections.singleton("Window.json"));
+        assertSame("other files are not read", second, third);
+    }
+
+    @Test
+    public void malformedFileKeepsItsGroup() throws IOException {
+        Settings6.Network network = new Settings6.Network().withHost("example.com");
+        write("Window.json", "{\"title\":");
+        write(network);
+        try {
+            reloader.reload(null);
+            fail("reloaded a malformed file");
+        } catch (IOException expected) {
+            assertEquals("Window.json", expected.getMessage());
+        }
+        assertNull(registry.getWindow());
+        assertEquals(network, registry.getNetwork());
+    }
+
+    @Test
+    public void watchThenPublish() throws Exception {
+        Thread watcher = new Thread(reloader);
+        watcher.start();
+        Settings6.Window window = new Settings6.Window().withWidth(640);
+        write(window);
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!window.equals(registry.getWindow()) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(window, registry.getWindow());
+        assertNull(registry.getNetwork());
+        reloader.close();
+        watcher.join(10000);
+        assertFalse(watcher.isAlive());
+        assertNull(reloader.lastError());
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.johnsoft.samples;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+/**
+ * reset() and the thread-local pool of {@link Settings5.Builder}.
+ *
+ * @author John Kenrinus Lee
+ * @version 2019-05-26
+ */
+public class ReusableBuilderTest {
+    private static void change(Settings5.Builder<?> builder) {
+        builder.setName("light");
+        builder.setAge(9);
+        builder.setXs(1);
+        builder.addToKeys("k");
+        builder.addToValues("v");
+        builder.addToOffsets(24);
+        builder.addToStamps(5);
+    }
+
+    @Test
+    public void resetRestoresDefaults() {
+        Settings5.Builder<?> builder = new Settings5.Builder<>();
+        change(builder);
+        Settings5 changed = builder.build();
+        assertSame(builder, builder.reset());
+        assertEquals(new Settings5(), builder.build());
+        // built ones never see the reused buffers
+        change(builder);
+        builder.addToValues("w");
+        assertEquals(Collections.singletonList("v"), changed.values);
+        assertEquals(4, changed.offsetsSize());
+        assertEquals(1, changed.stampsSize());
+    }
+
+    @Test
+    public void acquireReusesReleased() {
+        Settings5.Builder<?> builder = Settings5.Builder.acquire();
+        assertEquals(new Settings5(), builder.build());
+        change(builder);
+        Settings5 built = builder.build();
+        builder.release();
+        assertSame(builder, Settings5.Builder.acquire());
+        assertEquals(new Settings5(), builder.build());
+        builder.addToValues("w");
+        assertEquals(Arrays.asList("v"), built.values);
+        assertNotSame("pool holds one per thread", builder, Settings5.Builder.acquire());
+    }
+
+    @Test
+    public void subclassNotPooled() {
+        Settings5.Builder<?> subclass = new Settings5.Builder<Settings5.Builder<?>>() {
+        };
+        subclass.release();
+        assertNotSame(subclass, Settings5.Builder.acquire());
+    }
+}
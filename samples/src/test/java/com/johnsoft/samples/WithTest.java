@@ -0,0 +1,65 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.johnsoft.samples;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * withX returns itself for an equal value, and a copy with only X changed otherwise.
+ *
+ * @author John Kenrinus Lee
+ * @version 2019-05-26
+ */
+public class WithTest {
+    @Test
+    public void sameForEqualValue() {
+        Settings1Impl settings = new Settings1Impl.Builder().setBackground("Blue").setWindowHeight(3).build();
+        assertSame(settings, settings.withBackground(new String("Blue")));
+        assertSame(settings, settings.withWindowHeight(3));
+
+        Settings6.Window window = new Settings6.Window();
+        assertSame(window, window.withTitle(window.title).withWidth(window.width).withHeight(window.height)
+                                 .withMaximized(window.maximized));
+
+        Settings6.Network network = new Settings6.Network.Builder().setMirrors(Arrays.asList("a")).build();
+        assertSame(network, network.withMirrors(Arrays.asList("a")).withPort(network.port));
+    }
+
+    @Test
+    public void copyForChangedValue() {
+        Settings1Impl settings = new Settings1Impl.Builder().setBackground("Blue").setWindowHeight(3).build();
+        Settings1Impl changed = settings.withWindowHeight(4);
+        assertNotSame(settings, changed);
+        assertEquals(4, changed.windowHeight);
+        assertEquals("Blue", changed.background);
+        assertEquals(3, settings.windowHeight);
+        assertNull(settings.withBackground(null).background);
+
+        Settings6.Window window = new Settings6.Window();
+        Settings6.Window maximized = window.withMaximized(!window.maximized);
+        assertNotEquals(window, maximized);
+        assertEquals(window.newBuilder().setMaximized(!window.maximized).build(), maximized);
+    }
+}